@@ -64,6 +64,9 @@ public class Main extends ApplicationAdapter {
 
     @Override
     public void dispose() {
+        // NOTE: the editor finishes its background writes and frees its textures
+        //  while the imgui context is still alive
+        editor.dispose();
         assets.dispose();
         imgui.dispose();
     }
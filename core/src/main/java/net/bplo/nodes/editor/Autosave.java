@@ -0,0 +1,151 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.Util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves the graph to a separate autosave file without stalling rendering.
+ * The render thread only captures a {@link GraphSnapshot}, which copies just the nodes
+ * changed since the last one, the snapshot is serialized and written on a background thread.
+ * <p>
+ * Edits made while a write is in progress don't affect it, the snapshot is immutable,
+ * and they're picked up by the next autosave. The file is written to a temp file and
+ * moved over the previous autosave, so it's never left half written.
+ * <p>
+ * NOTE: skipped while a large graph is lazily loaded, it would have to be fully
+ *  materialized to be snapshot, see {@link LazyNodeGraph}
+ */
+public class Autosave implements Disposable {
+
+    private static final String TAG = Autosave.class.getSimpleName();
+
+    /**
+     * Seconds between autosaves, if anything changed
+     */
+    public static final float INTERVAL = 30f;
+
+    /**
+     * Nodes checked per frame to recapture the ones that changed, keeps the
+     * snapshot itself cheap without spending more than a fraction of a frame on it
+     */
+    static final int REFRESH_NODES_PER_FRAME = 1024;
+
+    private final Editor editor;
+    private final Path path;
+    private final EditorSerializer serializer;
+    private final ExecutorService executor;
+
+    private float elapsed;
+    private int refreshIndex;
+    private Future<?> pendingWrite;
+
+    // ChangeTracker version as of the last snapshot written, to skip autosaves with nothing new
+    private int savedVersion;
+    private volatile boolean writeFailed;
+
+    public Autosave(Editor editor, Path path) {
+        this.editor = editor;
+        this.path = path;
+        this.serializer = new EditorSerializer(editor.loadContext);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.savedVersion = editor.changes.version();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Whether a snapshot is still being written in the background
+     */
+    boolean isWriting() {
+        return pendingWrite != null && !pendingWrite.isDone();
+    }
+
+    public void update(float delta) {
+        if (editor.lazyGraph == null) {
+            refreshIndex = GraphSnapshot.refresh(editor, refreshIndex, REFRESH_NODES_PER_FRAME);
+        }
+
+        elapsed += delta;
+        if (elapsed < INTERVAL) return;
+        elapsed = 0;
+        save();
+    }
+
+    /**
+     * Capture a snapshot of the graph and start writing it,
+     * returns false if there was nothing to save or the previous write is still in progress
+     */
+    public boolean save() {
+        if (isWriting()) return false;
+        if (editor.lazyGraph != null) return false;
+
+        var version = editor.changes.version();
+        if (version == savedVersion && !writeFailed) return false;
+
+        var start = System.nanoTime();
+        var snapshot = GraphSnapshot.capture(editor);
+        var snapshotMillis = (System.nanoTime() - start) / 1_000_000f;
+
+        savedVersion = version;
+        writeFailed = false;
+        pendingWrite = executor.submit(() -> write(snapshot, snapshotMillis));
+        return true;
+    }
+
+    private void write(GraphSnapshot snapshot, float snapshotMillis) {
+        var tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            // NOTE: Json isn't thread safe, the editor's instance stays on the render thread
+            var json = new Json();
+            try (var writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                json.setWriter(writer);
+                serializer.write(json, snapshot);
+                json.getWriter().flush();
+            }
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Util.log(TAG, "Autosaved %d nodes to '%s' (%.2fms snapshot)".formatted(snapshot.nodes.size(), path, snapshotMillis));
+        } catch (IOException | SerializationException e) {
+            writeFailed = true;
+            Gdx.app.error(TAG, "Failed to autosave: " + path, e);
+        }
+    }
+
+    /**
+     * Finish the write in progress, if any
+     */
+    @Override
+    public void dispose() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                Gdx.app.error(TAG, "Timed out waiting for autosave to finish: " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
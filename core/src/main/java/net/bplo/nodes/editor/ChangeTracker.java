@@ -0,0 +1,176 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import java.util.function.Supplier;
+
+/**
+ * Tracks which nodes were edited since the graph was last saved, so a save
+ * only has to rewrite what changed, see {@link ChunkedGraphFile#save}.
+ * <p>
+ * Everything that's saved with a node marks it dirty: prop edits, links created or removed
+ * at either end (a link is saved with its src node), moves, and adding or removing the node.
+ * <p>
+ * {@link Listener}s are told about each change as it's made, with the object that changed,
+ * eg. to journal edits between saves, see {@link EditJournal}, or to undo them, see {@link UndoHistory}.
+ */
+public class ChangeTracker {
+
+    public interface Listener {
+        void nodeAdded(Node node);
+        /** The node's props or pins were added or removed */
+        void nodeChanged(Node node);
+        void nodeRemoved(Node node);
+        /** The node was moved from the specified position, its new position is in the node editor */
+        void nodeMoved(Node node, float fromX, float fromY);
+        void propChanged(Prop prop);
+        void linkAdded(Link link);
+        void linkRemoved(Link link);
+    }
+
+    private final ObjectSet<Node> dirtyNodes = new ObjectSet<>();
+    private final ObjectSet<Node> removedNodes = new ObjectSet<>();
+
+    private final Array<Listener> listeners = new Array<>();
+
+    // incremented on every change, lets callers tell whether anything changed since they last looked
+    private int version;
+
+    // NOTE: objects being added by a load aren't edits, see ignoring()
+    private boolean ignoring;
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public boolean hasChanges() {
+        return dirtyNodes.size > 0 || removedNodes.size > 0;
+    }
+
+    public int dirtyCount() {
+        return dirtyNodes.size;
+    }
+
+    public int removedCount() {
+        return removedNodes.size;
+    }
+
+    public void markAdded(Node node) {
+        if (ignoring) return;
+        dirty(node);
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).nodeAdded(node);
+        }
+    }
+
+    public void markDirty(Node node) {
+        if (ignoring) return;
+        dirty(node);
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).nodeChanged(node);
+        }
+    }
+
+    public void markDirty(Prop prop) {
+        if (ignoring) return;
+        dirty(prop.node);
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).propChanged(prop);
+        }
+    }
+
+    public void markMoved(Node node, float fromX, float fromY) {
+        if (ignoring) return;
+        dirty(node);
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).nodeMoved(node, fromX, fromY);
+        }
+    }
+
+    public void markAdded(Link link) {
+        if (ignoring) return;
+        dirty(link.src.getNode());
+        dirty(link.dst.getNode());
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).linkAdded(link);
+        }
+    }
+
+    /**
+     * NOTE: marks the nodes at both ends dirty, if either of them is also being removed
+     *  it has to be marked removed after this, so that it's tracked as removed rather than dirty
+     */
+    public void markRemoved(Link link) {
+        if (ignoring) return;
+        dirty(link.src.getNode());
+        dirty(link.dst.getNode());
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).linkRemoved(link);
+        }
+    }
+
+    public void markRemoved(Node node) {
+        if (ignoring) return;
+        dirtyNodes.remove(node);
+        removedNodes.add(node);
+        version++;
+        for (int i = 0; i < listeners.size; i++) {
+            listeners.get(i).nodeRemoved(node);
+        }
+    }
+
+    private void dirty(Node node) {
+        node.snapshot = null;
+        removedNodes.remove(node);
+        dirtyNodes.add(node);
+        version++;
+    }
+
+    /**
+     * Run the action without tracking the changes it makes,
+     * for adding objects as they were saved rather than as edits.
+     */
+    public void ignoring(Runnable action) {
+        ignoring(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T ignoring(Supplier<T> action) {
+        var wasIgnoring = ignoring;
+        ignoring = true;
+        try {
+            return action.get();
+        } finally {
+            ignoring = wasIgnoring;
+        }
+    }
+
+    /**
+     * Nodes changed since the last save, not including removed nodes
+     */
+    public ObjectSet<Node> dirtyNodes() {
+        return dirtyNodes;
+    }
+
+    /**
+     * Nodes removed since the last save, a node dirtied and then removed is only in here
+     */
+    public ObjectSet<Node> removedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * Start tracking from a clean slate, eg. after a save or load
+     */
+    public void clear() {
+        dirtyNodes.clear();
+        removedNodes.clear();
+    }
+}
@@ -0,0 +1,554 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static net.bplo.nodes.editor.EditorBinarySerializer.readString;
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarInt;
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarLong;
+import static net.bplo.nodes.editor.EditorBinarySerializer.writeString;
+import static net.bplo.nodes.editor.EditorBinarySerializer.writeVarLong;
+
+/**
+ * Node graph file made of separately written chunks of nodes, so that saving only
+ * rewrites the chunks holding nodes that changed since the last save, see {@link ChangeTracker}.
+ * <p>
+ * Layout, with the same varints, strings and node records as {@link EditorBinarySerializer}:
+ * <pre>
+ * superblocks  two fixed size slots: magic, version, generation, directory offset, length and crc32, crc32 of the slot
+ * records      chunks and directories, only ever appended after the superblocks
+ * chunk        string table, node count, node records, link count, then per link: id, src pin id, dst pin id
+ * directory    max object id, metadata path, chunk count, then per chunk: offset, length, crc32
+ * </pre>
+ * A save appends the rewritten chunks and a new directory after everything already in the file
+ * and syncs them to disk, then points the older of the two superblocks at the new directory and syncs again.
+ * Readers use the valid superblock with the highest generation, so a crash at any point in a save
+ * leaves the file as of either the previous save or the new one, never a mix of both.
+ * <p>
+ * Superseded records are left in place until they make up most of the file, then the live
+ * records are copied to a new file that atomically replaces this one.
+ * Nodes stay in the chunk they were first saved in, links are saved in the chunk of their src node.
+ */
+public class ChunkedGraphFile implements Closeable {
+
+    private static final String TAG = ChunkedGraphFile.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = "nodestore";
+
+    static final int MAGIC = 0x4e4f4443; // 'NODC'
+    static final int VERSION = 1;
+
+    private static final int SUPERBLOCK_SIZE = 64;
+    private static final long RECORDS_START = 2 * SUPERBLOCK_SIZE;
+
+    /**
+     * Nodes per chunk, small enough that editing one node rewrites little,
+     * large enough that the directory stays a small fraction of the file.
+     */
+    static final int CHUNK_NODES = 64;
+
+    // files smaller than this aren't worth compacting
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    private static class Chunk {
+        final Array<Node> nodes = new Array<>(CHUNK_NODES);
+        long offset;
+        int length;
+        int crc;
+
+        // NOTE: only cleared once a save that writes the chunk succeeds, so a failed save is retried in full
+        boolean dirty;
+    }
+
+    private final Path path;
+    private final Array<Chunk> chunks = new Array<>();
+    private final LongMap<Chunk> chunksByNodeId = new LongMap<>();
+    private FileChannel channel;
+
+    // state of the committed superblock and directory
+    private long generation;
+    private long directoryOffset;
+    private int directoryLength;
+    private int directoryCrc;
+    private long maxObjectId;
+    private String metadataPath = "";
+
+    // where the next record is written, past any records left by an interrupted save
+    private long appendOffset;
+
+    public static boolean isChunkedFile(Path path) {
+        return path.getFileName().toString().endsWith("." + FILE_EXTENSION);
+    }
+
+    private ChunkedGraphFile(Path path) {
+        this.path = path;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Open an existing file for reading and saving, call {@link #read} before saving
+     * so the file knows which chunk each of its nodes is in.
+     */
+    public static ChunkedGraphFile open(Path path) throws IOException {
+        var file = new ChunkedGraphFile(path);
+        file.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            file.readSuperblocks();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Read a saved node list from the specified file, without keeping it open for saving
+     */
+    public static EditorSerializer.NodeList read(Json json, Path path, EditorSerializer.LoadContext context) throws IOException {
+        var file = new ChunkedGraphFile(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file.channel = channel;
+            file.readSuperblocks();
+            return file.read(json, context);
+        }
+    }
+
+    /**
+     * Write every node in the list into a new file at the specified path, replacing any existing file,
+     * and return it open for incremental saves. The change tracker is cleared once it's written.
+     */
+    public static ChunkedGraphFile create(Json json, List<Node> nodes, NodePositions positions, Path path, String metadataPath, ChangeTracker changes) throws IOException {
+        var file = new ChunkedGraphFile(path);
+        for (var node : nodes) {
+            var chunk = file.openChunk();
+            chunk.nodes.add(node);
+            chunk.dirty = true;
+            file.chunksByNodeId.put(node.id, chunk);
+        }
+        try {
+            file.rewrite(json, positions, EditorObject.maxAssignedId(), metadataPath);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        changes.clear();
+
+        Util.log(TAG, "Wrote %d nodes in %d chunks to '%s'".formatted(nodes.size(), file.chunks.size, path));
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+    // ------------------------------------------------------------------------
+
+    private void readSuperblocks() throws IOException {
+        var slots = readBytes(0, (int) RECORDS_START);
+        var found = false;
+        for (int slot = 0; slot < 2; slot++) {
+            var superblock = ByteBuffer.wrap(slots, slot * SUPERBLOCK_SIZE, SUPERBLOCK_SIZE).slice();
+            if (superblock.getInt(0) != MAGIC || superblock.getInt(SUPERBLOCK_SIZE - 4) != crc(slots, slot * SUPERBLOCK_SIZE, SUPERBLOCK_SIZE - 4)) {
+                continue;
+            }
+            var version = superblock.getInt(4);
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported chunked node graph version: %d, expected %d".formatted(version, VERSION));
+            }
+            var slotGeneration = superblock.getLong(8);
+            if (!found || slotGeneration > generation) {
+                found = true;
+                generation = slotGeneration;
+                directoryOffset = superblock.getLong(16);
+                directoryLength = superblock.getInt(24);
+                directoryCrc = superblock.getInt(28);
+            }
+        }
+        if (!found) {
+            throw new SerializationException("Not a chunked node graph file, or both of its superblocks are corrupt: " + path);
+        }
+
+        var directory = ByteBuffer.wrap(readRecord(directoryOffset, directoryLength, directoryCrc));
+        try {
+            maxObjectId = readVarLong(directory);
+            metadataPath = readString(directory);
+            var chunkCount = readVarInt(directory);
+            chunks.ensureCapacity(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                var chunk = new Chunk();
+                chunk.offset = readVarLong(directory);
+                chunk.length = readVarInt(directory);
+                chunk.crc = directory.getInt();
+                chunks.add(chunk);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated directory in chunked node graph file: " + path, e);
+        }
+
+        // NOTE: not the directory's end, an interrupted save may have appended past it
+        appendOffset = Math.max(RECORDS_START, channel.size());
+    }
+
+    /**
+     * Decode every chunk into a node list, remembering which chunk each node came from
+     */
+    public EditorSerializer.NodeList read(Json json, EditorSerializer.LoadContext context) throws IOException {
+        var nodes = new EditorSerializer.NodeList();
+        if (metadataPath.isEmpty()) {
+            Util.log(TAG, "Missing required metadata path in chunked data, unable to load nodes");
+            return nodes;
+        }
+
+        // load required metadata first
+        var metadata = EditorSerializer.loadMetadata(context, metadataPath);
+
+        var pinsById = new LongMap<Pin>();
+        var pendingLinks = new LongArray();
+        nodes.ensureCapacity(chunks.size * CHUNK_NODES);
+        for (var chunk : chunks) {
+            var buffer = ByteBuffer.wrap(readRecord(chunk.offset, chunk.length, chunk.crc));
+            try {
+                var strings = new String[readVarInt(buffer)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(buffer);
+                }
+                var header = new EditorBinarySerializer.Header(VERSION, maxObjectId, metadataPath, strings);
+
+                var nodeCount = readVarInt(buffer);
+                for (int i = 0; i < nodeCount; i++) {
+                    var node = EditorBinarySerializer.readNode(json, buffer, header, pinsById, context);
+                    chunk.nodes.add(node);
+                    chunksByNodeId.put(node.id, chunk);
+                    nodes.add(node);
+                }
+
+                var linkCount = readVarInt(buffer);
+                for (int i = 0; i < linkCount; i++) {
+                    pendingLinks.add(readVarLong(buffer), readVarLong(buffer), readVarLong(buffer));
+                }
+            } catch (BufferUnderflowException e) {
+                throw new SerializationException("Truncated chunk at offset %d in: %s".formatted(chunk.offset, path), e);
+            }
+        }
+        EditorSerializer.createLinks(pendingLinks, pinsById);
+        EditorSerializer.resolveBindings(metadata, nodes);
+
+        Util.log(TAG, "Read %d nodes, %d links from %d chunks".formatted(nodes.size(), pendingLinks.size / 3, chunks.size));
+        return nodes;
+    }
+
+    public long maxObjectId() {
+        return maxObjectId;
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Save the changes tracked since the last save or load, rewriting only the chunks holding
+     * changed nodes, then clear the change tracker. If the save fails the tracker is left as is,
+     * so the next save retries it.
+     * NOTE: node positions are read through {@link Editor#positions}, normally the node editor,
+     *  so this has to be called from the render thread just like {@link EditorSerializer#write}
+     */
+    public void save(Json json, NodePositions positions, ChangeTracker changes, String metadataPath) throws IOException {
+        for (var node : changes.removedNodes()) {
+            var chunk = chunksByNodeId.remove(node.id);
+            if (chunk != null) {
+                chunk.nodes.removeValue(node, true);
+                chunk.dirty = true;
+            }
+        }
+        for (var node : changes.dirtyNodes()) {
+            var chunk = chunksByNodeId.get(node.id);
+            if (chunk == null) {
+                chunk = openChunk();
+                chunk.nodes.add(node);
+                chunksByNodeId.put(node.id, chunk);
+            }
+            chunk.dirty = true;
+        }
+
+        var rewritten = 0;
+        var position = appendOffset;
+        for (int i = chunks.size - 1; i >= 0; i--) {
+            var chunk = chunks.get(i);
+            if (!chunk.dirty) continue;
+            if (chunk.nodes.isEmpty()) {
+                chunks.removeIndex(i);
+                continue;
+            }
+            position = writeChunk(channel, position, json, positions, chunk);
+            rewritten++;
+        }
+
+        var directory = encodeDirectory(EditorObject.maxAssignedId(), metadataPath, chunks);
+        var newDirectoryOffset = position;
+        position = writeBytes(channel, position, directory);
+
+        // NOTE: the records have to be on disk before the superblock that points at them,
+        //  otherwise a crash could leave a superblock pointing at records that were never written
+        channel.force(true);
+        var newGeneration = generation + 1;
+        writeBytes(channel, superblockOffset(newGeneration), encodeSuperblock(newGeneration, newDirectoryOffset, directory));
+        channel.force(true);
+
+        // committed
+        generation = newGeneration;
+        directoryOffset = newDirectoryOffset;
+        directoryLength = directory.length;
+        directoryCrc = crc(directory, 0, directory.length);
+        maxObjectId = EditorObject.maxAssignedId();
+        this.metadataPath = metadataPath;
+        appendOffset = position;
+        for (var chunk : chunks) {
+            chunk.dirty = false;
+        }
+
+        Util.log(TAG, "Saved %d changed and %d removed nodes, rewrote %d of %d chunks".formatted(
+            changes.dirtyNodes().size, changes.removedNodes().size, rewritten, chunks.size));
+        changes.clear();
+
+        // NOTE: compacting copies the live records as they are, nothing is re-encoded
+        var liveBytes = directoryLength;
+        for (var chunk : chunks) {
+            liveBytes += chunk.length;
+        }
+        if (appendOffset >= MIN_COMPACT_SIZE && liveBytes * 2L < appendOffset) {
+            var fileSize = appendOffset;
+            rewrite(json, positions, maxObjectId, metadataPath);
+            Util.log(TAG, "Compacted '%s' from %d to %d bytes".formatted(path, fileSize, appendOffset));
+        }
+    }
+
+    /**
+     * Last chunk if it has room for another node, otherwise a new chunk
+     */
+    private Chunk openChunk() {
+        if (chunks.notEmpty() && chunks.peek().nodes.size < CHUNK_NODES) {
+            return chunks.peek();
+        }
+        var chunk = new Chunk();
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    /**
+     * Write every chunk to a new file that then replaces this one, encoding dirty chunks
+     * and copying the rest as they are, which leaves out all the superseded records.
+     */
+    private void rewrite(Json json, NodePositions positions, long maxObjectId, String metadataPath) throws IOException {
+        var tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        var offsets = new long[chunks.size];
+        var lengths = new int[chunks.size];
+        var crcs = new int[chunks.size];
+        byte[] directory;
+        long position;
+
+        // NOTE: offsets aren't updated until the new file has replaced this one,
+        //  if anything fails before then this file stays as it was
+        var newChunks = new Array<Chunk>(chunks.size);
+        try (var out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            position = RECORDS_START;
+            for (int i = 0; i < chunks.size; i++) {
+                var chunk = chunks.get(i);
+                offsets[i] = position;
+                if (chunk.dirty) {
+                    var bytes = encodeChunk(json, positions, chunk);
+                    lengths[i] = bytes.length;
+                    crcs[i] = crc(bytes, 0, bytes.length);
+                    position = writeBytes(out, position, bytes);
+                } else {
+                    lengths[i] = chunk.length;
+                    crcs[i] = chunk.crc;
+                    out.position(position);
+                    var copied = 0L;
+                    while (copied < chunk.length) {
+                        copied += channel.transferTo(chunk.offset + copied, chunk.length - copied, out);
+                    }
+                    position += chunk.length;
+                }
+
+                var newChunk = new Chunk();
+                newChunk.offset = offsets[i];
+                newChunk.length = lengths[i];
+                newChunk.crc = crcs[i];
+                newChunks.add(newChunk);
+            }
+
+            directory = encodeDirectory(maxObjectId, metadataPath, newChunks);
+            var newDirectoryOffset = position;
+            position = writeBytes(out, position, directory);
+            writeBytes(out, superblockOffset(1), encodeSuperblock(1, newDirectoryOffset, directory));
+            out.force(true);
+        }
+
+        // the file can't be replaced while it's open on some platforms
+        close();
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Util.log(TAG, "Atomic move not supported, replacing '%s' non-atomically".formatted(path));
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // NOTE: reopened even if the move failed, this file is then still as it was
+            if (Files.exists(path)) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        // committed
+        for (int i = 0; i < chunks.size; i++) {
+            var chunk = chunks.get(i);
+            chunk.offset = offsets[i];
+            chunk.length = lengths[i];
+            chunk.crc = crcs[i];
+            chunk.dirty = false;
+        }
+        generation = 1;
+        directoryOffset = position - directory.length;
+        directoryLength = directory.length;
+        directoryCrc = crc(directory, 0, directory.length);
+        this.maxObjectId = maxObjectId;
+        this.metadataPath = metadataPath;
+        appendOffset = position;
+    }
+
+    private static long writeChunk(FileChannel out, long position, Json json, NodePositions positions, Chunk chunk) throws IOException {
+        var bytes = encodeChunk(json, positions, chunk);
+        chunk.offset = position;
+        chunk.length = bytes.length;
+        chunk.crc = crc(bytes, 0, bytes.length);
+        return writeBytes(out, position, bytes);
+    }
+
+    private static byte[] encodeChunk(Json json, NodePositions positions, Chunk chunk) throws IOException {
+        var strings = new EditorBinarySerializer.StringTable();
+        var linkCount = 0;
+        for (var node : chunk.nodes) {
+            EditorBinarySerializer.addStrings(strings, node);
+            linkCount += node.outgoingLinks.size();
+        }
+
+        var bytes = new ByteArrayOutputStream(chunk.nodes.size * 256);
+        var out = new DataOutputStream(bytes);
+        writeVarLong(out, strings.values.size);
+        for (var string : strings.values) {
+            writeString(out, string);
+        }
+        writeVarLong(out, chunk.nodes.size);
+        for (var node : chunk.nodes) {
+            EditorBinarySerializer.writeNode(out, json, node, strings, positions);
+        }
+        // NOTE: only outgoing links, every link is someone's outgoing link
+        writeVarLong(out, linkCount);
+        for (var node : chunk.nodes) {
+            for (var link : node.outgoingLinks) {
+                writeVarLong(out, link.id);
+                writeVarLong(out, link.src.id);
+                writeVarLong(out, link.dst.id);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDirectory(long maxObjectId, String metadataPath, Array<Chunk> chunks) throws IOException {
+        var bytes = new ByteArrayOutputStream(64 + chunks.size * 12);
+        var out = new DataOutputStream(bytes);
+        writeVarLong(out, maxObjectId);
+        writeString(out, metadataPath);
+        writeVarLong(out, chunks.size);
+        for (var chunk : chunks) {
+            writeVarLong(out, chunk.offset);
+            writeVarLong(out, chunk.length);
+            out.writeInt(chunk.crc);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generations alternate between the two superblocks, so a save never overwrites the one that's committed
+     */
+    private static long superblockOffset(long generation) {
+        return (generation % 2) * SUPERBLOCK_SIZE;
+    }
+
+    private static byte[] encodeSuperblock(long generation, long directoryOffset, byte[] directory) {
+        var superblock = ByteBuffer.allocate(SUPERBLOCK_SIZE);
+        superblock.putInt(MAGIC);
+        superblock.putInt(VERSION);
+        superblock.putLong(generation);
+        superblock.putLong(directoryOffset);
+        superblock.putInt(directory.length);
+        superblock.putInt(crc(directory, 0, directory.length));
+        var bytes = superblock.array();
+        superblock.putInt(SUPERBLOCK_SIZE - 4, crc(bytes, 0, SUPERBLOCK_SIZE - 4));
+        return bytes;
+    }
+
+    // ------------------------------------------------------------------------
+    // File access
+    // ------------------------------------------------------------------------
+
+    private static long writeBytes(FileChannel out, long position, byte[] bytes) throws IOException {
+        var buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        return position;
+    }
+
+    private byte[] readBytes(long position, int length) throws IOException {
+        var bytes = new byte[length];
+        var buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new SerializationException("Truncated chunked node graph file: " + path);
+            }
+        }
+        return bytes;
+    }
+
+    private byte[] readRecord(long offset, int length, int expectedCrc) throws IOException {
+        var bytes = readBytes(offset, length);
+        if (crc(bytes, 0, length) != expectedCrc) {
+            throw new SerializationException("Corrupt record at offset %d in: %s".formatted(offset, path));
+        }
+        return bytes;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        var crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,76 @@
+package net.bplo.nodes.editor;
+
+import net.bplo.nodes.runtime.DialogueProgram;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles editor {@link Node}s, such as a loaded {@link EditorSerializer.NodeList},
+ * into a {@link DialogueProgram} that can be stepped through without the editor.
+ * <p>
+ * Each node becomes an instruction, its flow links become successors
+ * (ordered by output pin, node pins before prop pins) and the values of
+ * its text, number and select props are copied into the program.
+ * Other props, like thumbnails, are editor only and skipped.
+ * <p>
+ * NOTE: links to nodes that aren't in the compiled list are dropped,
+ *  so a subset of a graph can be compiled on its own.
+ */
+public class DialogueCompiler {
+
+    public static DialogueProgram compile(List<Node> nodes) {
+        var builder = new DialogueProgram.Builder();
+
+        var compiledNodes = new HashSet<Node>(nodes.size() * 2);
+        compiledNodes.addAll(nodes);
+
+        for (var node : nodes) {
+            builder.instruction(node.id, node.nodeTypeId, node.headerText);
+
+            for (int i = 0; i < node.pins.size(); i++) {
+                addSuccessors(builder, node.pins.get(i), compiledNodes);
+            }
+            for (int i = 0; i < node.props.size(); i++) {
+                var prop = node.props.get(i);
+                for (int j = 0; j < prop.pins.size(); j++) {
+                    addSuccessors(builder, prop.pins.get(j), compiledNodes);
+                }
+            }
+
+            for (int i = 0; i < node.props.size(); i++) {
+                addProp(builder, node.props.get(i));
+            }
+        }
+        return builder.build();
+    }
+
+    private static void addSuccessors(DialogueProgram.Builder builder, Pin pin, Set<Node> compiledNodes) {
+        if (!Pin.isOutput(pin)) return;
+
+        for (int i = 0; i < pin.outgoingLinks.size(); i++) {
+            var link = pin.outgoingLinks.get(i);
+            if (!FlowGraph.isFlow(link)) continue;
+
+            var dst = link.dst.getNode();
+            if (compiledNodes.contains(dst)) {
+                builder.successor(dst.id);
+            }
+        }
+    }
+
+    private static void addProp(DialogueProgram.Builder builder, Prop prop) {
+        switch (prop) {
+            case PropSelect select -> {
+                var selected = ((PropSelect.Data) select.getData()).getSelectedOption();
+                builder.selectProp(select.name, select.propTypeId, selected.isEmpty() ? null : selected);
+            }
+            case PropInputText text -> builder.textProp(text.name, text.propTypeId, text.getText());
+            case PropInputTextMultiline text -> builder.textProp(text.name, text.propTypeId, text.getText());
+            case PropInteger integer -> builder.intProp(integer.name, integer.propTypeId, (Integer) integer.getData());
+            case PropFloat number -> builder.floatProp(number.name, number.propTypeId, (Float) number.getData());
+            default -> {}
+        }
+    }
+}
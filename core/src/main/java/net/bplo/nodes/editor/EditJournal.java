@@ -0,0 +1,695 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static net.bplo.nodes.editor.EditorBinarySerializer.readString;
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarInt;
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarLong;
+import static net.bplo.nodes.editor.EditorBinarySerializer.writeString;
+import static net.bplo.nodes.editor.EditorBinarySerializer.writeVarLong;
+
+/**
+ * Write-ahead journal of the edits made since the graph was last loaded or saved,
+ * so the session can be reconstructed on the next launch after a crash, or after
+ * exiting without saving, see {@link #recover()}.
+ * <p>
+ * Layout, with the same varints, strings and node records as {@link EditorBinarySerializer}:
+ * <pre>
+ * header   magic, version, base graph file path (empty for a new graph), metadata path
+ * records  type, payload length, payload, crc32 of the payload
+ * </pre>
+ * Edits are reported by the {@link ChangeTracker}. Records are encoded into memory as edits
+ * are made and written to the file once per frame by {@link #flush()}, so journaling costs
+ * the encoding of what changed, not a write per edit. A node or prop changed several times
+ * in a frame is only journaled once, at the end of the frame.
+ * <p>
+ * NOTE: records are handed to the OS every frame but not synced, so they survive
+ *  the editor crashing but not necessarily the OS crashing or losing power.
+ * <p>
+ * Saving or loading a graph restarts the journal from that file. Between saves, once the journal
+ * grows past {@link #MAX_SIZE} the graph is written to a snapshot file and the journal restarts
+ * from the snapshot, so replay never has to work through an unbounded number of records.
+ * Like {@link Autosave}, the render thread only captures a {@link GraphSnapshot}, the snapshot
+ * is written and the restarted journal prepared on a background thread, with the records
+ * journaled in the meantime carried over to it once it's ready, see {@link #compact()}.
+ */
+public class EditJournal implements ChangeTracker.Listener, Disposable {
+
+    private static final String TAG = EditJournal.class.getSimpleName();
+
+    static final int MAGIC = 0x4e4f444a; // 'NODJ'
+    static final int VERSION = 1;
+
+    // record types
+    static final byte NODE        = 1; // string table, node record, link count, links
+    static final byte NODE_REMOVE = 2; // node id
+    static final byte NODE_MOVE   = 3; // node id, x, y
+    static final byte PROP        = 4; // string table, node id, prop id, prop data
+    static final byte LINK        = 5; // link
+    static final byte LINK_REMOVE = 6; // link
+    // where a link is: id, src node id, src pin id, dst node id, dst pin id
+
+    /**
+     * Journal size that triggers writing a snapshot to restart the journal from
+     */
+    static final long MAX_SIZE = 16L * 1024 * 1024;
+
+    private final Editor editor;
+    private final Path path;
+    private final Path snapshotPath;
+    private final Path tempPath;
+    private final Json json = new Json();
+    private final EditorSerializer snapshotSerializer;
+    private final ExecutorService executor;
+
+    // null if the journal couldn't be opened or written, edits are then not journaled
+    private FileChannel channel;
+    // NOTE: volatile so a compaction in progress can copy the records written so far
+    private volatile long size;
+
+    // the compaction in progress if any, and the number of resets, a compaction started before the last reset is stale
+    private Future<Compaction> pendingCompaction;
+    private int generation;
+
+    // encoded records waiting for the end of the frame, and the record being encoded
+    private final Bytes pendingBytes = new Bytes(4096);
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private final Bytes recordBytes = new Bytes(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+
+    // changed this frame, journaled once at the end of the frame, or before any record that depends on them
+    private final ObjectSet<Node> changedNodes = new ObjectSet<>();
+    private final ObjectSet<Prop> changedProps = new ObjectSet<>();
+
+    // NOTE: replayed edits are tracked as changes, they're unsaved, but aren't journaled again
+    private boolean replaying;
+    // scratch for the links read from a record during replay
+    private final LongArray links = new LongArray();
+
+    public EditJournal(Editor editor, Path path, Path snapshotPath) {
+        this.editor = editor;
+        this.path = path;
+        this.snapshotPath = snapshotPath;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.snapshotSerializer = new EditorSerializer(editor.loadContext);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long size() {
+        return size + pendingBytes.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Journaling
+    // ------------------------------------------------------------------------
+
+    private boolean isJournaling() {
+        return channel != null && !replaying;
+    }
+
+    @Override
+    public void nodeAdded(Node node) {
+        if (!isJournaling()) return;
+        changedNodes.add(node);
+    }
+
+    @Override
+    public void nodeChanged(Node node) {
+        if (!isJournaling()) return;
+        changedNodes.add(node);
+    }
+
+    @Override
+    public void nodeRemoved(Node node) {
+        if (!isJournaling()) return;
+        changedNodes.remove(node);
+        writeChanged();
+
+        recordBytes.reset();
+        encode(() -> writeVarLong(record, node.id));
+        append(NODE_REMOVE);
+    }
+
+    @Override
+    public void nodeMoved(Node node, float fromX, float fromY) {
+        if (!isJournaling()) return;
+        // the node's record has its position as of the end of the frame
+        if (changedNodes.contains(node)) return;
+
+        recordBytes.reset();
+        encode(() -> {
+            writeVarLong(record, node.id);
+            record.writeFloat(editor.positions.x(node.id));
+            record.writeFloat(editor.positions.y(node.id));
+        });
+        append(NODE_MOVE);
+    }
+
+    @Override
+    public void propChanged(Prop prop) {
+        if (!isJournaling()) return;
+        changedProps.add(prop);
+    }
+
+    @Override
+    public void linkAdded(Link link) {
+        if (!isJournaling()) return;
+        // replay creates the link between the pins of the nodes journaled so far
+        writeChanged();
+
+        recordBytes.reset();
+        encode(() -> EditorBinarySerializer.writeDetachedLink(record, link));
+        append(LINK);
+    }
+
+    @Override
+    public void linkRemoved(Link link) {
+        if (!isJournaling()) return;
+        writeChanged();
+
+        recordBytes.reset();
+        encode(() -> EditorBinarySerializer.writeDetachedLink(record, link));
+        append(LINK_REMOVE);
+    }
+
+    /**
+     * Encode the nodes and props changed so far this frame
+     */
+    private void writeChanged() {
+        for (var node : changedNodes) {
+            recordBytes.reset();
+            encode(() -> EditorBinarySerializer.writeDetachedNode(record, json, node, editor.positions));
+            append(NODE);
+        }
+
+        for (var prop : changedProps) {
+            // the node's record already has the prop's data
+            if (changedNodes.contains(prop.node)) continue;
+
+            recordBytes.reset();
+            encode(() -> {
+                var data = prop.getData();
+                var strings = new EditorBinarySerializer.StringTable();
+                if (data instanceof PropSelect.Data select) {
+                    for (var option : select.options) {
+                        strings.add(option);
+                    }
+                }
+                writeVarLong(record, strings.values.size);
+                for (var string : strings.values) {
+                    writeString(record, string);
+                }
+                writeVarLong(record, prop.node.id);
+                writeVarLong(record, prop.id);
+                EditorBinarySerializer.writeData(record, json, data, strings);
+            });
+            append(PROP);
+        }
+
+        changedNodes.clear();
+        changedProps.clear();
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        void encode() throws IOException;
+    }
+
+    private void encode(Encoder encoder) {
+        try {
+            encoder.encode();
+        } catch (IOException e) {
+            // NOTE: only writes to memory, so this shouldn't happen
+            throw new GdxRuntimeException("Failed to encode journal record", e);
+        }
+    }
+
+    /**
+     * Frame the encoded record and add it to the pending records
+     */
+    private void append(byte type) {
+        crc.reset();
+        crc.update(recordBytes.buffer(), 0, recordBytes.size());
+        try {
+            pending.writeByte(type);
+            writeVarLong(pending, recordBytes.size());
+            recordBytes.writeTo(pending);
+            pending.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Failed to encode journal record", e);
+        }
+    }
+
+    /**
+     * Write the records for this frame's edits to the journal file,
+     * called once at the end of every frame
+     */
+    public void flush() {
+        if (channel == null) return;
+        if (pendingCompaction != null && pendingCompaction.isDone()) {
+            finishCompaction();
+        }
+        writeChanged();
+        if (pendingBytes.size() == 0) return;
+
+        try {
+            var buffer = ByteBuffer.wrap(pendingBytes.buffer(), 0, pendingBytes.size());
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer, size);
+            }
+            pendingBytes.reset();
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to write journal, edits will no longer be journaled: " + path, e);
+            close();
+            return;
+        }
+
+        // NOTE: a lazily loaded graph would have to be fully materialized to snapshot it,
+        //  its journal keeps growing until it's saved instead
+        if (size > MAX_SIZE && pendingCompaction == null && editor.lazyGraph == null) {
+            compact();
+        }
+    }
+
+    /**
+     * A restarted journal written by a compaction, with the records copied to it so far
+     */
+    private record Compaction(FileChannel channel, long size, long copiedTo, int generation) {}
+
+    /**
+     * Capture the whole graph and start writing it to the snapshot file, along with
+     * a journal restarted from the snapshot, see {@link #finishCompaction()}
+     */
+    private void compact() {
+        var snapshot = GraphSnapshot.capture(editor);
+        var header = encodeHeader(snapshotPath.toAbsolutePath().toString());
+        var source = channel;
+        var snapshotEnd = size;
+        var compactionGeneration = generation;
+        pendingCompaction = executor.submit(() -> writeCompaction(snapshot, header, source, snapshotEnd, compactionGeneration));
+    }
+
+    /**
+     * Write the snapshot, then the restarted journal: its header followed by the records
+     * journaled after the snapshot was captured, as many as have been written by now.
+     * Runs on the background thread, returns null if anything failed.
+     */
+    private Compaction writeCompaction(GraphSnapshot snapshot, byte[] header, FileChannel source, long snapshotEnd, int compactionGeneration) {
+        var snapshotTempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            // NOTE: Json isn't thread safe, the journal's instance stays on the render thread
+            var snapshotJson = new Json();
+            try (var writer = Files.newBufferedWriter(snapshotTempPath, StandardCharsets.UTF_8)) {
+                snapshotJson.setWriter(writer);
+                snapshotSerializer.write(snapshotJson, snapshot);
+                snapshotJson.getWriter().flush();
+            }
+            // the snapshot has to be on disk before the journal records it replaces are dropped
+            try (var snapshotChannel = FileChannel.open(snapshotTempPath, StandardOpenOption.WRITE)) {
+                snapshotChannel.force(true);
+            }
+            move(snapshotTempPath, snapshotPath);
+        } catch (IOException | SerializationException e) {
+            Gdx.app.error(TAG, "Failed to write journal snapshot: " + snapshotPath, e);
+            return null;
+        }
+
+        FileChannel restarted = null;
+        try {
+            restarted = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            var restartedSize = write(restarted, ByteBuffer.wrap(header), 0);
+            var copiedTo = size;
+            restartedSize += copy(source, snapshotEnd, copiedTo, restarted, restartedSize);
+            restarted.force(true);
+            return new Compaction(restarted, restartedSize, copiedTo, compactionGeneration);
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to write compacted journal: " + tempPath, e);
+            closeQuietly(restarted);
+            return null;
+        }
+    }
+
+    /**
+     * Switch to the journal restarted by the finished compaction, after copying
+     * the last few records journaled while it was being written
+     */
+    private void finishCompaction() {
+        Compaction compaction;
+        try {
+            compaction = pendingCompaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Gdx.app.error(TAG, "Failed to compact journal: " + path, e.getCause());
+            compaction = null;
+        }
+        pendingCompaction = null;
+        if (compaction == null) return;
+
+        // the journal was restarted from a save or load, or closed, while the compaction was running
+        if (compaction.generation != generation || channel == null) {
+            discard(compaction);
+            return;
+        }
+
+        try {
+            var restartedSize = compaction.size + copy(channel, compaction.copiedTo, size, compaction.channel, compaction.size);
+            move(tempPath, path);
+
+            var journalSize = size;
+            closeQuietly(channel);
+            channel = compaction.channel;
+            size = restartedSize;
+            Util.log(TAG, "Compacted %d byte journal into snapshot '%s'".formatted(journalSize, snapshotPath));
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to switch to compacted journal, keeping the current one: " + path, e);
+            discard(compaction);
+        }
+    }
+
+    private void discard(Compaction compaction) {
+        closeQuietly(compaction.channel);
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to delete compacted journal: " + tempPath, e);
+        }
+    }
+
+    /**
+     * Copy the bytes between the source offsets to the destination offset, returns the number of bytes copied
+     */
+    private static long copy(FileChannel source, long from, long to, FileChannel destination, long position) throws IOException {
+        var copied = 0L;
+        while (from + copied < to) {
+            var count = source.transferTo(from + copied, to - from - copied, destination.position(position + copied));
+            if (count <= 0) throw new IOException("Journal ended before offset " + to);
+            copied += count;
+        }
+        return copied;
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        var written = 0L;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to close journal channel", e);
+        }
+    }
+
+    /**
+     * The journal header for a journal restarted from the specified file
+     */
+    private byte[] encodeHeader(String basePath) {
+        var metadataPath = (editor.metadata != null) ? editor.metadata.path : "";
+        recordBytes.reset();
+        encode(() -> {
+            record.writeInt(MAGIC);
+            writeVarLong(record, VERSION);
+            writeString(record, basePath);
+            writeString(record, metadataPath);
+        });
+        return recordBytes.toByteArray();
+    }
+
+    /**
+     * Restart the journal from the graph in the specified file, empty for a new graph,
+     * dropping any edits journaled before now
+     */
+    public void reset(String basePath) {
+        changedNodes.clear();
+        changedProps.clear();
+        pendingBytes.reset();
+        // a compaction in progress is of the journal being dropped
+        generation++;
+
+        var header = encodeHeader(basePath);
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            channel.truncate(0);
+            size = write(channel, ByteBuffer.wrap(header), 0);
+            channel.force(true);
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to reset journal, edits will not be journaled: " + path, e);
+            close();
+        }
+    }
+
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to close journal: " + path, e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Finish the compaction in progress, if any, and close the journal
+     */
+    @Override
+    public void dispose() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                Gdx.app.error(TAG, "Timed out waiting for journal compaction to finish: " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pendingCompaction != null && pendingCompaction.isDone()) {
+            finishCompaction();
+        }
+        close();
+    }
+
+    // ------------------------------------------------------------------------
+    // Recovery
+    // ------------------------------------------------------------------------
+
+    /**
+     * Reconstruct the session the journal was written in: load its base graph file,
+     * replay its records on top, then continue journaling after the last intact record.
+     * Replayed edits are tracked by the {@link ChangeTracker} as unsaved changes.
+     */
+    public void recover() {
+        if (!Files.exists(path)) {
+            reset("");
+            return;
+        }
+
+        ByteBuffer buffer;
+        String basePath;
+        String metadataPath;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < 4 || buffer.getInt() != MAGIC || readVarInt(buffer) != VERSION) {
+                Gdx.app.error(TAG, "Not a journal or unsupported version, starting a new one: " + path);
+                reset("");
+                return;
+            }
+            basePath = readString(buffer);
+            metadataPath = readString(buffer);
+        } catch (IOException | BufferUnderflowException e) {
+            Gdx.app.error(TAG, "Failed to read journal, starting a new one: " + path, e);
+            reset("");
+            return;
+        }
+
+        var recordCount = 0;
+        var validEnd = buffer.position();
+        replaying = true;
+        try {
+            if (!basePath.isEmpty()) {
+                if (!editor.load(Path.of(basePath))) {
+                    Gdx.app.error(TAG, "Failed to load journal base graph, replaying onto an empty graph: " + basePath);
+                }
+            } else if (!metadataPath.isEmpty()) {
+                editor.loadMetadata(metadataPath);
+            }
+
+            // NOTE: replay finds nodes by id, so every node of a lazily loaded graph has to exist
+            if (editor.lazyGraph != null && buffer.hasRemaining()) {
+                editor.lazyGraph.materializeAll();
+            }
+
+            while (buffer.hasRemaining()) {
+                var payload = nextRecord(buffer);
+                if (payload == null) {
+                    Util.log(TAG, "Journal ends in a torn or corrupt record at offset %d, dropping it".formatted(validEnd));
+                    break;
+                }
+                replay(buffer.get(validEnd), payload);
+                recordCount++;
+                validEnd = buffer.position();
+            }
+        } catch (RuntimeException e) {
+            Gdx.app.error(TAG, "Failed to replay journal record at offset %d, dropping the rest".formatted(validEnd), e);
+        } finally {
+            replaying = false;
+        }
+
+        // NOTE: *** important *** update id counter to max(id) + 1, see Editor.load()
+        var maxObjectId = EditorObject.maxAssignedId();
+        var objectIds = editor.objectsById.keys();
+        while (objectIds.hasNext) {
+            maxObjectId = Math.max(maxObjectId, objectIds.next());
+        }
+        EditorObject.updateNextIdAfterLoad(maxObjectId);
+
+        // continue journaling after the last record that was replayed
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(validEnd);
+            size = validEnd;
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to reopen journal, edits will not be journaled: " + path, e);
+            close();
+        }
+
+        Util.log(TAG, "Replayed %d journaled edits onto '%s'".formatted(recordCount, basePath.isEmpty() ? "new graph" : basePath));
+    }
+
+    /**
+     * The payload of the record at the buffer's position, advancing past it,
+     * or null if the record is truncated or fails its checksum
+     */
+    private ByteBuffer nextRecord(ByteBuffer buffer) {
+        try {
+            buffer.get(); // type
+            var length = readVarInt(buffer);
+            if (length < 0 || buffer.remaining() < length + 4) return null;
+
+            var payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            buffer.position(buffer.position() + length);
+            if (buffer.getInt() != (int) crc.getValue()) return null;
+            return payload;
+        } catch (BufferUnderflowException | SerializationException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private void replay(byte type, ByteBuffer buffer) {
+        switch (type) {
+            case NODE -> {
+                // the record is the node's current state, it replaces any earlier state
+                links.clear();
+                var node = EditorBinarySerializer.readDetachedNode(json, buffer, links, editor.loadContext);
+                editor.restore(node, links);
+            }
+            case NODE_REMOVE -> editor.findNode(readVarLong(buffer)).ifPresent(editor::remove);
+            case NODE_MOVE -> {
+                var nodeId = readVarLong(buffer);
+                var x = buffer.getFloat();
+                var y = buffer.getFloat();
+                editor.findNode(nodeId).ifPresent(node -> {
+                    var fromX = editor.positions.x(nodeId);
+                    var fromY = editor.positions.y(nodeId);
+                    editor.loadContext.setNodePosition(nodeId, x, y);
+                    editor.changes.markMoved(node, fromX, fromY);
+                });
+            }
+            case PROP -> {
+                var header = readStrings(buffer);
+                var nodeId = readVarLong(buffer);
+                var propId = readVarLong(buffer);
+                var data = EditorBinarySerializer.readData(buffer, header);
+                editor.findNode(nodeId).ifPresent(node -> {
+                    for (var prop : node.props) {
+                        if (prop.id != propId) continue;
+                        prop.setData(json, data);
+                        editor.changes.markDirty(prop);
+                    }
+                });
+            }
+            case LINK -> {
+                // either end may have been removed since, or not journaled yet if it's in a later record
+                links.clear();
+                EditorBinarySerializer.readDetachedLink(buffer, links);
+                editor.restoreLink(links.get(0), links.get(1), links.get(2));
+            }
+            case LINK_REMOVE -> {
+                links.clear();
+                EditorBinarySerializer.readDetachedLink(buffer, links);
+                editor.findLink(links.get(0)).ifPresent(editor::remove);
+            }
+            default -> throw new SerializationException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static EditorBinarySerializer.Header readStrings(ByteBuffer buffer) {
+        var strings = new String[readVarInt(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        return new EditorBinarySerializer.Header(EditorBinarySerializer.VERSION, 0, "", strings);
+    }
+
+    /**
+     * Exposes the written bytes without copying them
+     */
+    private static class Bytes extends ByteArrayOutputStream {
+        Bytes(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
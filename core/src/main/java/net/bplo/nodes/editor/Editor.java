@@ -4,82 +4,193 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.Json;
-import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.SerializationException;
 import com.badlogic.gdx.utils.Timer;
 import imgui.ImGui;
 import imgui.extension.nodeditor.NodeEditor;
 import imgui.extension.nodeditor.NodeEditorConfig;
 import imgui.extension.nodeditor.NodeEditorContext;
 import imgui.flag.ImGuiDockNodeFlags;
+import imgui.flag.ImGuiKey;
 import imgui.flag.ImGuiStyleVar;
 import net.bplo.nodes.Main;
 import net.bplo.nodes.Util;
 import net.bplo.nodes.editor.meta.AssetResolver;
 import net.bplo.nodes.editor.meta.Metadata;
+import net.bplo.nodes.editor.meta.PropBindingResolver;
 import net.bplo.nodes.editor.utils.PinKind;
 import net.bplo.nodes.editor.utils.PinType;
 import net.bplo.nodes.imgui.ImGuiPlatform;
+import net.bplo.nodes.runtime.DialogueProgramFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 public class Editor implements Disposable {
 
     public static final String TAG = Editor.class.getSimpleName();
     public static final String SETTINGS_FILE = "editor.json";
+    public static final String JOURNAL_FILE = "editor.journal";
+    public static final String JOURNAL_SNAPSHOT_FILE = "editor-journal.json";
+    public static final String AUTOSAVE_FILE = "editor-autosave.json";
     public static final String DEFAULT_FONT = "play-regular.ttf";
 
+    /**
+     * Where the editor keeps its per-user state between runs: the journal, autosave and content cache.
+     * NOTE: not the working directory, when run from gradle that's the assets directory,
+     *  which is packaged as resources
+     */
+    public static final Path STATE_DIR = Path.of(System.getProperty("user.home"), ".nodes");
+
     private final Json json;
+    private final EditorSerializer serializer;
+    private final EditorBinarySerializer binarySerializer;
     private final NodeEditorContext editorContext;
 
     public final Main app;
     public final List<Node> nodes;
     public final List<Prop> props;
     public final List<Pin>  pins;
-    public final List<Link> links;
-    public final Map<Long, EditorObject> objectsById;
+    public final LinkList links;
+    public final LongMap<EditorObject> objectsById;
+    public final NodeSpatialIndex spatialIndex;
+    public final FlowGraph flowGraph;
+    public final SearchIndex searchIndex;
+    public final ChangeTracker changes;
+    public final NodePositions positions;
+    final EditJournal journal;
+    final UndoHistory history;
+    final Autosave autosave;
+
+    // NOTE: the journal is replayed on the first frame rather than on construction,
+    //  restoring node positions needs the node editor to be running
+    private boolean journalRecovered;
 
     final EditorInfoPane infoPane;
     final EditorNodePane nodePane;
+    final EditorSearchPane searchPane;
 
     public Metadata metadata;
     public AssetResolver assetResolver;
 
+    // non-null while a large binary graph file is loaded lazily, see LazyNodeGraph
+    LazyNodeGraph lazyGraph;
+
+    // non-null while the graph was loaded from or last saved to a chunked file, saving to it again
+    // only rewrites what changed, see ChunkedGraphFile
+    ChunkedGraphFile chunkedFile;
+
+    // loaded graphs bring their metadata and saved node positions into the editor through this
+    final EditorSerializer.LoadContext loadContext = new EditorSerializer.LoadContext() {
+        @Override
+        public Metadata loadMetadata(String path) {
+            Editor.this.loadMetadata(path);
+            return metadata;
+        }
+
+        @Override
+        public void setNodePosition(long nodeId, float x, float y) {
+            positions.set(nodeId, x, y);
+            // NOTE: a node that's already in the editor is being moved, eg. by a journaled move
+            if (objectsById.get(nodeId) instanceof Node node) {
+                spatialIndex.invalidate(node);
+            }
+        }
+    };
+
     public Editor() {
-        EditorObject.editor = this;
-        EditorContent.refresh();
+        this(NodePositions.NODE_EDITOR, true);
+    }
 
-        var config = new NodeEditorConfig();
-        config.setSettingsFile(SETTINGS_FILE);
+    /**
+     * Limited access constructor for working on the graph without a node editor or any ui,
+     * eg. in tests, node positions are kept in the specified store and nothing can be rendered
+     */
+    Editor(NodePositions positions) {
+        this(positions, false);
+    }
+
+    private Editor(NodePositions positions, boolean withNodeEditor) {
+        EditorObject.editor = this;
+        if (withNodeEditor) {
+            createStateDir();
+            EditorContent.refresh();
+        }
 
         this.app = Main.app;
+        this.positions = positions;
         this.nodes = new ArrayList<>();
         this.props = new ArrayList<>();
         this.pins = new ArrayList<>();
-        this.links = new ArrayList<>();
-        this.objectsById = new HashMap<>();
-        this.editorContext = NodeEditor.createEditor(config);
-
-        NodeEditor.setCurrentEditor(editorContext);
-        // NOTE: disabling key shortcuts because 'f' is bound to zoom by default
-        //  and I can't find an easy way to override it when doing text input
-        NodeEditor.enableShortcuts(false);
+        this.links = new LinkList(LinkList.Role.EDITOR);
+        this.objectsById = new LongMap<>();
+        this.spatialIndex = new NodeSpatialIndex();
+        this.flowGraph = new FlowGraph();
+        this.searchIndex = new SearchIndex();
+        this.changes = new ChangeTracker();
+
+        if (withNodeEditor) {
+            var config = new NodeEditorConfig();
+            config.setSettingsFile(SETTINGS_FILE);
+            this.editorContext = NodeEditor.createEditor(config);
+
+            NodeEditor.setCurrentEditor(editorContext);
+            // NOTE: disabling key shortcuts because 'f' is bound to zoom by default
+            //  and I can't find an easy way to override it when doing text input
+            NodeEditor.enableShortcuts(false);
+        } else {
+            this.editorContext = null;
+        }
 
         this.json = new Json();
-        json.setSerializer(EditorSerializer.NodeList.class, new EditorSerializer());
+        this.serializer = new EditorSerializer(loadContext);
+        json.setSerializer(EditorSerializer.NodeList.class, serializer);
+        this.binarySerializer = new EditorBinarySerializer(loadContext);
+
+        this.infoPane = withNodeEditor ? new EditorInfoPane(this) : null;
+        this.nodePane = withNodeEditor ? new EditorNodePane(this) : null;
+        this.searchPane = withNodeEditor ? new EditorSearchPane(this) : null;
+
+        this.journal = new EditJournal(this, STATE_DIR.resolve(JOURNAL_FILE), STATE_DIR.resolve(JOURNAL_SNAPSHOT_FILE));
+        this.history = new UndoHistory(this);
+        changes.addListener(journal);
+        changes.addListener(history);
+        this.autosave = new Autosave(this, STATE_DIR.resolve(AUTOSAVE_FILE));
+    }
 
-        this.infoPane = new EditorInfoPane(this);
-        this.nodePane = new EditorNodePane(this);
+    private static void createStateDir() {
+        try {
+            Files.createDirectories(STATE_DIR);
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to create state directory, the journal and autosave won't be written: " + STATE_DIR, e);
+        }
     }
 
     @Override
     public void dispose() {
-        NodeEditor.destroyEditor(editorContext);
+        if (assetResolver != null) {
+            assetResolver.dispose();
+        }
+        closeChunkedFile();
+        journal.dispose();
+        autosave.dispose();
+        // NOTE: without a node editor there's no content scan to stop either, see the constructor
+        if (editorContext != null) {
+            EditorContent.dispose();
+            NodeEditor.destroyEditor(editorContext);
+        }
     }
 
     /**
@@ -89,9 +200,34 @@ public class Editor implements Disposable {
      * to ensure that the input processor is active.
      */
     public void update() {
+        if (!journalRecovered) {
+            journalRecovered = true;
+            journal.recover();
+            // NOTE: the recovered edits can't be undone, there's nothing before them to go back to
+            history.clear();
+        }
+
         var delta = ImGui.getIO().getDeltaTime();
         infoPane.update(delta);
         nodePane.update(delta);
+        searchPane.update(delta);
+        autosave.update(delta);
+
+        // NOTE: a text input being edited has its own undo
+        var io = ImGui.getIO();
+        if (io.getKeyCtrl() && !io.getWantTextInput()) {
+            if (ImGui.isKeyPressed(ImGuiKey.Z, false)) {
+                if (io.getKeyShift()) history.redo();
+                else                  history.undo();
+            } else if (ImGui.isKeyPressed(ImGuiKey.Y, false)) {
+                history.redo();
+            }
+        }
+
+        // upload any thumbnail textures that finished decoding in the background
+        if (assetResolver != null) {
+            assetResolver.update();
+        }
     }
 
     public void render() {
@@ -100,7 +236,12 @@ public class Editor implements Disposable {
         pushStyles();
         nodePane.render();
         infoPane.render();
+        searchPane.render();
         popStyles();
+
+        // NOTE: edits are journaled and recorded for undo once per frame, after everything that can make them
+        history.flush();
+        journal.flush();
     }
 
     public void fitToContent() {
@@ -108,7 +249,7 @@ public class Editor implements Disposable {
     }
 
     public void fitToContent(float duration) {
-        NodeEditor.navigateToContent(duration);
+        nodePane.fitToContent(duration);
     }
 
     public void navigateToSelection() {
@@ -122,53 +263,229 @@ public class Editor implements Disposable {
                 node.pins.forEach(this::add);
                 node.props.forEach(this::add);
                 nodes.add(node);
+                spatialIndex.invalidate(node);
+                flowGraph.addNode(node);
+                searchIndex.add(node);
+                changes.markAdded(node);
             }
             case Prop prop -> {
                 objectsById.put(prop.id, prop);
+                prop.undoData = GraphSnapshot.copyData(prop.getData());
                 prop.pins.forEach(this::add);
                 props.add(prop);
+                searchIndex.add(prop);
+                changes.markDirty(prop.node);
             }
             case Pin pin -> {
                 objectsById.put(pin.id, pin);
                 pins.add(pin);
+                changes.markDirty(pin.getNode());
             }
             case Link link -> {
                 objectsById.put(link.id, link);
-                links.add(link);
+                if (links.add(link)) {
+                    spatialIndex.addLink(link);
+                    flowGraph.addLink(link);
+                    changes.markAdded(link);
+                }
             }
             case null, default ->
                 throw new GdxRuntimeException("Cannot add editor object with null value or unsupported type");
         }
     }
 
+    /**
+     * Remove a single editor object, see {@link #removeAll(Collection)}.
+     */
     public void remove(EditorObject object) {
-        switch (object) {
-            case Node node -> {
-                node.pins.forEach(this::remove);
-                node.props.forEach(this::remove);
-                nodes.remove(node);
-                objectsById.remove(node.id);
+        // NOTE: singletonList rather than List.of so a null object hits the exception in removeAll
+        removeAll(Collections.singletonList(object));
+    }
+
+    /**
+     * Add a batch of nodes along with their props and pins in a single pass,
+     * and any of their links whose nodes on both ends are in the editor afterward.
+     * Prefer this over {@link #add(EditorObject)} per node when adding many at once.
+     */
+    public void addAll(Collection<? extends Node> newNodes) {
+        // NOTE: a whole graph, eg. on load, is ordered in one pass rather than link by link
+        var rebuildFlowGraph = (flowGraph.nodeCount() == 0);
+
+        if (nodes instanceof ArrayList<Node> nodeList) {
+            nodeList.ensureCapacity(nodes.size() + newNodes.size());
+        }
+
+        for (var node : newNodes) {
+            objectsById.put(node.id, node);
+            nodes.add(node);
+            spatialIndex.invalidate(node);
+            if (!rebuildFlowGraph) {
+                flowGraph.addNode(node);
             }
-            case Prop prop -> {
-                prop.pins.forEach(this::remove);
-                props.remove(prop);
-                objectsById.remove(prop.id);
+            searchIndex.add(node);
+            changes.markAdded(node);
+            for (var pin : node.pins) {
+                objectsById.put(pin.id, pin);
+                pins.add(pin);
             }
-            case Pin pin -> {
-                pins.remove(pin);
-                objectsById.remove(pin.id);
+            for (var prop : node.props) {
+                objectsById.put(prop.id, prop);
+                prop.undoData = GraphSnapshot.copyData(prop.getData());
+                props.add(prop);
+                searchIndex.add(prop);
+                for (var pin : prop.pins) {
+                    objectsById.put(pin.id, pin);
+                    pins.add(pin);
+                }
             }
-            case Link link -> {
-                link.disconnect();
-                links.remove(link);
-                objectsById.remove(link.id);
+        }
+
+        // NOTE: done after all nodes are added so links within the batch are found from either end,
+        //  adding to links is idempotent so links seen from both of their nodes are only added once
+        var addedLinks = new ArrayList<Link>();
+        for (var node : newNodes) {
+            for (int i = 0; i < node.outgoingLinks.size(); i++) {
+                addLinkIfConnected(node.outgoingLinks.get(i), addedLinks);
             }
-            case null, default ->
-                throw new GdxRuntimeException("Cannot remove editor object with null value or unsupported type");
+            for (int i = 0; i < node.incomingLinks.size(); i++) {
+                addLinkIfConnected(node.incomingLinks.get(i), addedLinks);
+            }
+        }
+
+        if (rebuildFlowGraph) {
+            flowGraph.rebuild(nodes);
+        } else {
+            flowGraph.addLinks(addedLinks);
+        }
+    }
+
+    private void addLinkIfConnected(Link link, List<Link> addedLinks) {
+        var srcNode = link.src.getNode();
+        var dstNode = link.dst.getNode();
+        if (objectsById.containsKey(srcNode.id) && objectsById.containsKey(dstNode.id) && links.add(link)) {
+            objectsById.put(link.id, link);
+            spatialIndex.addLink(link);
+            addedLinks.add(link);
+            changes.markAdded(link);
+        }
+    }
+
+    /**
+     * Remove a batch of editor objects in a single pass over each editor list,
+     * rather than a linear list removal per object. Removing a node or prop
+     * also removes its pins, and removing a pin disconnects and removes its links.
+     */
+    public void removeAll(Collection<? extends EditorObject> objects) {
+        if (objects.isEmpty()) return;
+
+        // expand to the full set of objects being removed
+        var removed = new ObjectSet<EditorObject>(objects.size() * 2);
+        var removedPins = new ArrayList<Pin>();
+        var removedLinks = new ArrayList<Link>();
+        var hasNodes = false;
+        var hasProps = false;
+        for (var object : objects) {
+            switch (object) {
+                case Node node -> {
+                    hasNodes |= removed.add(node);
+                    for (var pin : node.pins) {
+                        if (removed.add(pin)) removedPins.add(pin);
+                    }
+                    for (var prop : node.props) {
+                        hasProps |= removed.add(prop);
+                        for (var pin : prop.pins) {
+                            if (removed.add(pin)) removedPins.add(pin);
+                        }
+                    }
+                }
+                case Prop prop -> {
+                    hasProps |= removed.add(prop);
+                    for (var pin : prop.pins) {
+                        if (removed.add(pin)) removedPins.add(pin);
+                    }
+                }
+                case Pin pin -> {
+                    if (removed.add(pin)) removedPins.add(pin);
+                }
+                case Link link -> {
+                    if (removed.add(link)) removedLinks.add(link);
+                }
+                case null, default ->
+                    throw new GdxRuntimeException("Cannot remove editor object with null value or unsupported type");
+            }
+        }
+
+        // cascade to links attached to removed pins, a link between two removed pins
+        // is seen from both ends, the removed set filters out the second visit
+        for (var pin : removedPins) {
+            for (int i = 0; i < pin.outgoingLinks.size(); i++) {
+                var link = pin.outgoingLinks.get(i);
+                if (removed.add(link)) removedLinks.add(link);
+            }
+            for (int i = 0; i < pin.incomingLinks.size(); i++) {
+                var link = pin.incomingLinks.get(i);
+                if (removed.add(link)) removedLinks.add(link);
+            }
+        }
+
+        // NOTE: disconnecting mutates the pins' link lists, so it's done after collecting
+        for (var link : removedLinks) {
+            link.disconnect();
+            if (links.remove(link)) {
+                spatialIndex.removeLink(link);
+                flowGraph.removeLink(link);
+            }
+            // NOTE: removed nodes are marked removed below, after their links
+            changes.markRemoved(link);
+        }
+
+        for (var object : removed) {
+            objectsById.remove(object.id);
+            switch (object) {
+                case Node node -> {
+                    spatialIndex.remove(node);
+                    flowGraph.removeNode(node);
+                    searchIndex.remove(node);
+                    changes.markRemoved(node);
+                }
+                case PropThumbnail thumbnail -> {
+                    thumbnail.clearImage();
+                    markDirtyUnlessRemoved(thumbnail.node, removed);
+                }
+                case Prop prop -> {
+                    searchIndex.remove(prop);
+                    markDirtyUnlessRemoved(prop.node, removed);
+                }
+                case Pin pin -> markDirtyUnlessRemoved(pin.getNode(), removed);
+                default -> {}
+            }
+        }
+
+        if (hasNodes) nodes.removeIf(removed::contains);
+        if (hasProps) props.removeIf(removed::contains);
+        if (!removedPins.isEmpty()) pins.removeIf(removed::contains);
+    }
+
+    /**
+     * Nodes that are being removed are tracked as removed rather than changed, see {@link ChangeTracker}
+     */
+    private void markDirtyUnlessRemoved(Node node, ObjectSet<EditorObject> removed) {
+        if (!removed.contains(node)) {
+            changes.markDirty(node);
         }
     }
 
     void loadMetadata(String filePath) {
+        // thumbnails hold textures owned by the current resolver, let go of them before it's disposed
+        if (assetResolver != null) {
+            for (var prop : props) {
+                if (prop instanceof PropThumbnail thumbnail) {
+                    thumbnail.clearImage();
+                }
+            }
+            assetResolver.dispose();
+        }
+
         metadata = new Metadata(filePath);
         assetResolver = new AssetResolver(metadata);
         for (var nodeType : metadata.nodeTypes.values()) {
@@ -183,19 +500,119 @@ public class Editor implements Disposable {
             return;
         }
 
-        var nodeList = new EditorSerializer.NodeList(nodes);
-        var nodeListJson = json.prettyPrint(nodeList); // calls EditorSerializer.write(...)
-        Util.log(TAG, "Exported node graph as json:\n%s".formatted(nodeListJson));
+        // NOTE: json is streamed straight to the file as it's written by EditorSerializer.write(...),
+        //  the document is never built up as a string in memory
+        // NOTE: the lazily loaded graph has to be fully materialized before saving,
+        //  its file stays mapped until the buffer is collected though, see writeReplacing()
+        if (lazyGraph != null) {
+            lazyGraph.materializeAll();
+            lazyGraph = null;
+        }
 
+        var metadataPath = (metadata != null) ? metadata.path : "";
+        var path = file.toPath();
         try {
-            var fileHandle = Gdx.files.absolute(file.getAbsolutePath());
-            fileHandle.writeString(nodeListJson, false);
-            Util.log(TAG, "Saved node graph json to file: '%s'".formatted(file.getPath()));
-        } catch (GdxRuntimeException e) {
+            if (ChunkedGraphFile.isChunkedFile(path)) {
+                saveChunked(path, metadataPath);
+            } else if (EditorBinarySerializer.isBinaryFile(path)) {
+                writeReplacing(path, tempPath -> binarySerializer.write(json, nodes, positions, metadataPath, tempPath));
+            } else {
+                writeReplacing(path, tempPath -> {
+                    try (var writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                        json.setWriter(writer);
+                        serializer.write(json, nodes, positions, metadataPath);
+                        json.getWriter().flush();
+                    }
+                });
+            }
+            Util.log(TAG, "Saved node graph to file: '%s'".formatted(file.getPath()));
+
+            // the saved file has every edit journaled so far, replay can start from it
+            journal.reset(path.toAbsolutePath().toString());
+        } catch (IOException | SerializationException e) {
             Gdx.app.error(TAG, "Failed to save file: " + file.getPath(), e);
         }
     }
 
+    private interface FileWriter {
+        void write(Path path) throws IOException;
+    }
+
+    /**
+     * Write a file to a temp file next to it, then move that over the file.
+     * A failed save leaves the previous file as it was, and a file that a lazily loaded graph
+     * still has mapped is replaced rather than written through underneath the mapping.
+     * <p>
+     * NOTE: on platforms that can't replace a mapped file at all the move fails,
+     *  and the error is reported with the original file intact
+     */
+    private static void writeReplacing(Path path, FileWriter writer) throws IOException {
+        var tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writer.write(tempPath);
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Save only the changes since the last save if the graph was loaded from or last saved to
+     * the same chunked file, otherwise write every node into a new chunked file.
+     */
+    private void saveChunked(Path path, String metadataPath) throws IOException {
+        if (chunkedFile != null && chunkedFile.path().equals(path)) {
+            chunkedFile.save(json, positions, changes, metadataPath);
+        } else {
+            closeChunkedFile();
+            chunkedFile = ChunkedGraphFile.create(json, nodes, positions, path, metadataPath, changes);
+        }
+    }
+
+    private void closeChunkedFile() {
+        if (chunkedFile == null) return;
+        try {
+            chunkedFile.close();
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Failed to close file: " + chunkedFile.path(), e);
+        }
+        chunkedFile = null;
+    }
+
+    /**
+     * Compile the graph into a {@link net.bplo.nodes.runtime.DialogueProgram}
+     * and write it in the runtime format, see {@link DialogueProgramFile}.
+     */
+    void export() {
+        var file = EditorFileDialog.openExportFile();
+        if (file == null) {
+            Gdx.app.log(TAG, "No file selected");
+            return;
+        }
+
+        // NOTE: unlike save(), a lazily loaded graph is materialized but kept,
+        //  exporting to a different format can't overwrite its mapped file
+        if (lazyGraph != null) {
+            lazyGraph.materializeAll();
+        }
+
+        var path = file.toPath();
+        if (!DialogueProgramFile.isProgramFile(path)) {
+            path = path.resolveSibling(path.getFileName() + "." + DialogueProgramFile.FILE_EXTENSION);
+        }
+        try {
+            var program = DialogueCompiler.compile(nodes);
+            DialogueProgramFile.write(program, path);
+            Util.log(TAG, "Exported %d instructions to file: '%s'".formatted(program.instructionCount(), path));
+        } catch (IOException | IllegalStateException e) {
+            Gdx.app.error(TAG, "Failed to export file: " + path, e);
+        }
+    }
+
     void load() {
         var file = EditorFileDialog.openLoadFile();
         if (file == null) {
@@ -203,71 +620,74 @@ public class Editor implements Disposable {
             return;
         }
 
+        // edits journaled before the load were discarded along with the graph they were made to,
+        // a failed load leaves an empty graph to journal edits to
+        var path = file.toPath();
+        var loaded = load(path);
+        journal.reset(loaded ? path.toAbsolutePath().toString() : "");
+    }
+
+    /**
+     * Replace the graph in the editor with the one in the specified file,
+     * returns false if the file couldn't be read, leaving the editor empty.
+     */
+    boolean load(Path path) {
         // clear existing editor objects
+        lazyGraph = null;
+        closeChunkedFile();
         nodes.clear();
         props.clear();
         pins.clear();
         links.clear();
         objectsById.clear();
+        spatialIndex.clear();
+        flowGraph.clear();
+        searchIndex.clear();
+        changes.clear();
+        history.clear();
 
         EditorSerializer.NodeList nodeList = null;
         try {
-            // read json from the file and output it for debugging
-            var path = file.toPath();
-            var nodeListJson = new String(Files.readAllBytes(path));
-            Util.log(TAG, "Loaded node graph json from '%s':\n%s".formatted(path, nodeListJson));
-
-            // read json from the file into a NodeList object
-            var jsonValue = new JsonReader().parse(nodeListJson);
-            var editorSerializer = json.getSerializer(EditorSerializer.NodeList.class);
-            nodeList = editorSerializer.read(json, jsonValue, EditorSerializer.NodeList.class);
-        } catch (IOException e) {
+            if (EditorBinarySerializer.isBinaryFile(path) && Files.size(path) >= LazyNodeGraph.MIN_FILE_SIZE) {
+                loadLazy(path);
+                return (lazyGraph != null);
+            } else if (ChunkedGraphFile.isChunkedFile(path)) {
+                chunkedFile = ChunkedGraphFile.open(path);
+                nodeList = chunkedFile.read(json, loadContext);
+            } else if (EditorBinarySerializer.isBinaryFile(path)) {
+                nodeList = binarySerializer.read(json, path);
+            } else {
+                try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    // read json from the file into a NodeList object, one node at a time
+                    nodeList = serializer.read(json, reader);
+                }
+            }
+            Util.log(TAG, "Loaded node graph from '%s'".formatted(path));
+        } catch (IOException | SerializationException e) {
             Gdx.app.error(TAG, "Failed to read file", e);
+            closeChunkedFile();
         }
 
         if (nodeList == null) {
-            Gdx.app.error(TAG, "Failed to parse node graph json");
-            return;
+            Gdx.app.error(TAG, "Failed to parse node graph");
+            return false;
         }
 
-        // put loaded editor objects in Editor containers
-        nodes.addAll(nodeList);
-        for (var node : nodes) {
-            objectsById.put(node.id, node);
-
-            pins.addAll(node.pins);
-            node.pins.forEach(pin -> objectsById.put(pin.id, pin));
-
-            props.addAll(node.props);
-            node.props.forEach(prop -> {
-                objectsById.put(prop.id, prop);
-
-                pins.addAll(prop.pins);
-                prop.pins.forEach(pin -> objectsById.put(pin.id, pin));
-            });
-
-            node.incomingLinks.forEach(link -> {
-                var insertedValue = objectsById.putIfAbsent(link.id, link);
-                if (insertedValue == null) {
-                    links.add(link);
-                }
-            });
-            node.outgoingLinks.forEach(link -> {
-                var insertedValue = objectsById.putIfAbsent(link.id, link);
-                if (insertedValue == null) {
-                    links.add(link);
-                }
-            });
-        }
+        // put loaded editor objects in Editor containers,
+        // they're as saved, not edits, so they aren't tracked as changes
+        var loadedNodes = nodeList;
+        changes.ignoring(() -> addAll(loadedNodes));
 
         // NOTE: *** important *** update id counter to max(id) + 1
         //  otherwise objects created after load will clobber loaded objects
-        var maxObjectId = objectsById.keySet().stream()
-            .mapToLong(Long::longValue)
-            .max().orElse(0L);
+        var maxObjectId = 0L;
+        var objectIds = objectsById.keys();
+        while (objectIds.hasNext) {
+            maxObjectId = Math.max(maxObjectId, objectIds.next());
+        }
         EditorObject.updateNextIdAfterLoad(maxObjectId);
 
-        Util.log(TAG, "Parsed node graph json into current session");
+        Util.log(TAG, "Parsed node graph into current session");
 
         // NOTE: pan/zoom values get persisted into the settings file set in the constructor above,
         //  but it doesn't seem to persist through a new launch. Even if we read that file back on save
@@ -281,22 +701,86 @@ public class Editor implements Disposable {
                 fitToContent(0.33f);
             }
         }, 0.2f);
+        return true;
+    }
+
+    /**
+     * Index a large binary graph file without materializing any of its nodes,
+     * {@link EditorNodePane} materializes them as they scroll into view.
+     */
+    private void loadLazy(Path path) throws IOException {
+        lazyGraph = LazyNodeGraph.open(this, json, path);
+        if (lazyGraph == null) {
+            Gdx.app.error(TAG, "Failed to parse node graph");
+            return;
+        }
+
+        // NOTE: *** important *** update id counter to max(id) + 1, see load()
+        EditorObject.updateNextIdAfterLoad(lazyGraph.maxObjectId());
+
+        Util.log(TAG, "Lazily loaded node graph with %d nodes from '%s'".formatted(lazyGraph.nodeCount(), path));
+    }
+
+    /**
+     * Put back a node that was recorded detached from the graph, replacing any node with the same id,
+     * then recreate its links to pins that still exist. Links are (id, src pin id, dst pin id) triples,
+     * see {@link EditorBinarySerializer#readDetachedNode}.
+     */
+    void restore(Node node, LongArray links) {
+        findNode(node.id).ifPresent(this::remove);
+        add(node);
+        if (metadata != null) {
+            metadata.findNodeType(node.nodeTypeId).ifPresent(nodeType ->
+                new PropBindingResolver(metadata).resolveBindings(node, nodeType.props));
+        }
+
+        for (int i = 0; i < links.size; i += 3) {
+            restoreLink(links.get(i), links.get(i + 1), links.get(i + 2));
+        }
+    }
+
+    /**
+     * Recreate a link if it doesn't exist and both of its pins do,
+     * either end may have been removed since the link was recorded
+     */
+    void restoreLink(long linkId, long srcPinId, long dstPinId) {
+        if (findLink(linkId).isPresent()) return;
+
+        var srcPin = findPin(srcPinId);
+        var dstPin = findPin(dstPinId);
+        if (srcPin.isPresent() && dstPin.isPresent()) {
+            add(new Link(linkId, srcPin.get(), dstPin.get()));
+        }
     }
 
     Optional<Node> findNode(long id) {
-        return nodes.stream().filter(node -> node.id == id).findFirst();
+        var node = find(id, Node.class);
+        if (node.isEmpty() && lazyGraph != null) {
+            // materialize on lookup if the node hasn't been scrolled into view yet
+            return Optional.ofNullable(lazyGraph.findNode(id));
+        }
+        return node;
     }
 
     Optional<Prop> findProp(long id) {
-        return props.stream().filter(prop -> prop.id == id).findFirst();
+        return find(id, Prop.class);
     }
 
     Optional<Pin> findPin(long id) {
-        return pins.stream().filter(pin -> pin.id == id).findFirst();
+        return find(id, Pin.class);
     }
 
     Optional<Link> findLink(long id) {
-        return links.stream().filter(link -> link.id == id).findFirst();
+        return find(id, Link.class);
+    }
+
+    /**
+     * Constant time lookup of an editor object by id, ids are unique across
+     * all object types so the type check only guards against stale or mismatched ids.
+     */
+    private <T extends EditorObject> Optional<T> find(long id, Class<T> type) {
+        var object = objectsById.get(id);
+        return type.isInstance(object) ? Optional.of(type.cast(object)) : Optional.empty();
     }
 
     private void pushStyles() {
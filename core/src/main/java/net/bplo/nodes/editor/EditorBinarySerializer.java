@@ -0,0 +1,538 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.Util;
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Compact binary alternative to the json format written by {@link EditorSerializer},
+ * selected by saving or loading a file with the {@link #FILE_EXTENSION} extension.
+ * <p>
+ * Layout, where ids, counts and lengths are unsigned LEB128 varints:
+ * <pre>
+ * header  magic, version, max object id, metadata path
+ * strings count, then utf-8 strings referenced elsewhere by (table index + 1), 0 for null
+ * nodes   count, then per node: byte length, id, x, y, width, nodeTypeId, headerText, pins, props
+ * links   count, then per link: id, src node index, src pin id, dst node index, dst pin id
+ * </pre>
+ * Prop class names, propTypeIds, nodeTypeIds and the other short repeated strings
+ * go through the string table, prop data strings are written inline.
+ * Each link is written once instead of in both its src and dst node,
+ * and node records are length prefixed so a reader can step over them without decoding.
+ */
+public class EditorBinarySerializer {
+
+    private static final String TAG = EditorBinarySerializer.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = "nodes";
+
+    static final int MAGIC = 0x4e4f4447; // 'NODG'
+    static final int VERSION = 1;
+
+    // prop data tags
+    static final byte DATA_NULL   = 0;
+    static final byte DATA_STRING = 1;
+    static final byte DATA_INT    = 2;
+    static final byte DATA_FLOAT  = 3;
+    static final byte DATA_SELECT = 4;
+    static final byte DATA_JSON   = 5;
+
+    private final EditorSerializer.LoadContext context;
+
+    public EditorBinarySerializer(EditorSerializer.LoadContext context) {
+        this.context = context;
+    }
+
+    public static boolean isBinaryFile(Path path) {
+        return path.getFileName().toString().endsWith("." + FILE_EXTENSION);
+    }
+
+    /**
+     * Header fields, everything before the first node record.
+     */
+    record Header(int version, long maxObjectId, String metadataPath, String[] strings) {
+
+        static Header read(ByteBuffer buffer) {
+            var magic = buffer.getInt();
+            if (magic != MAGIC) {
+                throw new SerializationException("Not a binary node graph file, bad magic: 0x%08x".formatted(magic));
+            }
+            var version = readVarInt(buffer);
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported binary node graph version: %d, expected %d".formatted(version, VERSION));
+            }
+            var maxObjectId = readVarLong(buffer);
+            var metadataPath = readString(buffer);
+
+            var strings = new String[readVarInt(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+            return new Header(version, maxObjectId, metadataPath, strings);
+        }
+
+        String string(int ref) {
+            return (ref == 0) ? null : strings[ref - 1];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write the node list to the specified file, with node positions read from the specified store.
+     * NOTE: when that's the node editor this has to be called from the render thread,
+     *  just like {@link EditorSerializer#write(Json, List, NodePositions, String)}
+     */
+    public void write(Json json, List<Node> nodeList, NodePositions positions, String metadataPath, Path path) throws IOException {
+
+        // first pass: gather the string table, links and max id so the header can be written up front
+        var strings = new StringTable();
+        var links = new Array<Link>();
+        var nodeIndices = new ObjectIntMap<Node>(nodeList.size());
+        var maxObjectId = 0L;
+        for (int i = 0; i < nodeList.size(); i++) {
+            var node = nodeList.get(i);
+            nodeIndices.put(node, i);
+            maxObjectId = Math.max(maxObjectId, node.id);
+            addStrings(strings, node);
+            for (var pin : node.pins) {
+                maxObjectId = Math.max(maxObjectId, pin.id);
+            }
+            for (var prop : node.props) {
+                maxObjectId = Math.max(maxObjectId, prop.id);
+                for (var pin : prop.pins) {
+                    maxObjectId = Math.max(maxObjectId, pin.id);
+                }
+            }
+            // NOTE: only outgoing links, every link is someone's outgoing link
+            for (var link : node.outgoingLinks) {
+                maxObjectId = Math.max(maxObjectId, link.id);
+                links.add(link);
+            }
+        }
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            writeVarLong(out, VERSION);
+            writeVarLong(out, maxObjectId);
+            writeString(out, metadataPath);
+
+            writeVarLong(out, strings.values.size);
+            for (var string : strings.values) {
+                writeString(out, string);
+            }
+
+            // node records are encoded into a scratch buffer first so they can be length prefixed
+            var recordBytes = new ByteArrayOutputStream(256);
+            var record = new DataOutputStream(recordBytes);
+            writeVarLong(out, nodeList.size());
+            for (var node : nodeList) {
+                recordBytes.reset();
+                writeNode(record, json, node, strings, positions);
+                writeVarLong(out, recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+
+            // links whose ends aren't both in the node list can't be recreated on load, skip them
+            var linkCount = 0;
+            for (var link : links) {
+                if (nodeIndices.containsKey(link.dst.getNode())) linkCount++;
+            }
+            writeVarLong(out, linkCount);
+            for (var link : links) {
+                var srcNodeIndex = nodeIndices.get(link.src.getNode(), -1);
+                var dstNodeIndex = nodeIndices.get(link.dst.getNode(), -1);
+                if (dstNodeIndex == -1) continue;
+
+                writeVarLong(out, link.id);
+                writeVarLong(out, srcNodeIndex);
+                writeVarLong(out, link.src.id);
+                writeVarLong(out, dstNodeIndex);
+                writeVarLong(out, link.dst.id);
+            }
+        }
+
+        Util.log(TAG, "Wrote %d nodes, %d links, %d strings".formatted(nodeList.size(), links.size, strings.values.size));
+    }
+
+    /**
+     * Add the strings a node record refers to through the string table, see {@link #writeNode}
+     */
+    static void addStrings(StringTable strings, Node node) {
+        strings.add(node.nodeTypeId);
+        strings.add(node.headerText);
+        for (var prop : node.props) {
+            strings.add(prop.name);
+            strings.add(prop.getClass().getName());
+            strings.add(prop.propTypeId);
+            if (prop.getData() instanceof PropSelect.Data select) {
+                for (var option : select.options) {
+                    strings.add(option);
+                }
+            }
+        }
+    }
+
+    static void writeNode(DataOutputStream out, Json json, Node node, StringTable strings, NodePositions positions) throws IOException {
+        writeVarLong(out, node.id);
+        out.writeFloat(positions.x(node.id));
+        out.writeFloat(positions.y(node.id));
+        out.writeFloat(node.width);
+        writeVarLong(out, strings.ref(node.nodeTypeId));
+        writeVarLong(out, strings.ref(node.headerText));
+
+        writePins(out, node.pins);
+
+        writeVarLong(out, node.props.size());
+        for (var prop : node.props) {
+            writeVarLong(out, prop.id);
+            writeVarLong(out, strings.ref(prop.name));
+            writeVarLong(out, strings.ref(prop.getClass().getName()));
+            writeVarLong(out, strings.ref(prop.propTypeId));
+            writeData(out, json, prop.getData(), strings);
+            writePins(out, prop.pins);
+        }
+    }
+
+    /**
+     * Write a node on its own rather than as part of a graph file: the strings it refers to,
+     * its node record, and the links at both of its ends, for recording a node between saves,
+     * see {@link EditJournal} and {@link UndoHistory}
+     */
+    static void writeDetachedNode(DataOutputStream out, Json json, Node node, NodePositions positions) throws IOException {
+        var strings = new StringTable();
+        addStrings(strings, node);
+        writeVarLong(out, strings.values.size);
+        for (var string : strings.values) {
+            writeString(out, string);
+        }
+
+        writeNode(out, json, node, strings, positions);
+
+        writeVarLong(out, node.incomingLinks.size() + node.outgoingLinks.size());
+        for (int i = 0; i < node.incomingLinks.size(); i++) {
+            writeDetachedLink(out, node.incomingLinks.get(i));
+        }
+        for (int i = 0; i < node.outgoingLinks.size(); i++) {
+            writeDetachedLink(out, node.outgoingLinks.get(i));
+        }
+    }
+
+    /**
+     * Write a link as id, src node id, src pin id, dst node id, dst pin id
+     */
+    static void writeDetachedLink(DataOutputStream out, Link link) throws IOException {
+        writeVarLong(out, link.id);
+        writeVarLong(out, link.src.getNode().id);
+        writeVarLong(out, link.src.id);
+        writeVarLong(out, link.dst.getNode().id);
+        writeVarLong(out, link.dst.id);
+    }
+
+    private static void writePins(DataOutputStream out, List<Pin> pins) throws IOException {
+        writeVarLong(out, pins.size());
+        for (var pin : pins) {
+            writeVarLong(out, pin.id);
+            out.writeByte((pin.kind.ordinal() << 4) | pin.type.ordinal());
+        }
+    }
+
+    static void writeData(DataOutputStream out, Json json, Object data, StringTable strings) throws IOException {
+        switch (data) {
+            case null -> out.writeByte(DATA_NULL);
+            case String string -> {
+                out.writeByte(DATA_STRING);
+                writeString(out, string);
+            }
+            case Integer value -> {
+                out.writeByte(DATA_INT);
+                writeVarLong(out, zigzag(value));
+            }
+            case Float value -> {
+                out.writeByte(DATA_FLOAT);
+                out.writeFloat(value);
+            }
+            case PropSelect.Data select -> {
+                out.writeByte(DATA_SELECT);
+                writeVarLong(out, zigzag(select.selectedIndex));
+                writeVarLong(out, select.options.length);
+                for (var option : select.options) {
+                    writeVarLong(out, strings.ref(option));
+                }
+            }
+            // anything else falls back to json, same as the json format
+            default -> {
+                out.writeByte(DATA_JSON);
+                writeString(out, json.toJson(data));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+    // ------------------------------------------------------------------------
+
+    /**
+     * Read a saved node list from the specified file, the file is memory mapped
+     * rather than copied onto the heap and decoded straight out of the mapping.
+     */
+    public EditorSerializer.NodeList read(Json json, Path path) throws IOException {
+        var nodes = new EditorSerializer.NodeList();
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            var header = Header.read(buffer);
+            if (header.metadataPath.isEmpty()) {
+                Util.log(TAG, "Missing required metadata path in binary data, unable to load nodes");
+                return nodes;
+            }
+
+            // load required metadata first
+            var metadata = EditorSerializer.loadMetadata(context, header.metadataPath);
+
+            var pinsById = new LongMap<Pin>();
+            var nodeCount = readVarInt(buffer);
+            nodes.ensureCapacity(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                var length = readVarInt(buffer);
+                var end = buffer.position() + length;
+                nodes.add(readNode(json, buffer, header, pinsById, context));
+                buffer.position(end);
+            }
+
+            var linkCount = readVarInt(buffer);
+            var pendingLinks = new LongArray(linkCount * 3);
+            for (int i = 0; i < linkCount; i++) {
+                var linkId = readVarLong(buffer);
+                readVarInt(buffer); // src node index
+                var srcPinId = readVarLong(buffer);
+                readVarInt(buffer); // dst node index
+                var dstPinId = readVarLong(buffer);
+                pendingLinks.add(linkId, srcPinId, dstPinId);
+            }
+            EditorSerializer.createLinks(pendingLinks, pinsById);
+            EditorSerializer.resolveBindings(metadata, nodes);
+
+            Util.log(TAG, "Read %d nodes, %d pins, %d links".formatted(nodes.size(), pinsById.size, linkCount));
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated binary node graph file: " + path, e);
+        }
+        return nodes;
+    }
+
+    /**
+     * Create a {@link Node} along with its pins and props from the node record
+     * at the buffer's current position, registering each created pin in {@code pinsById}.
+     */
+    static Node readNode(Json json, ByteBuffer buffer, Header header, LongMap<Pin> pinsById, EditorSerializer.LoadContext context) {
+        var node = new Node(readVarLong(buffer));
+
+        // NOTE: see EditorSerializer.readNode() for why the position has to be set explicitly
+        var x = buffer.getFloat();
+        var y = buffer.getFloat();
+        context.setNodePosition(node.id, x, y);
+
+        node.width = buffer.getFloat();
+        node.nodeTypeId = orEmpty(header.string(readVarInt(buffer)));
+        node.headerText = orEmpty(header.string(readVarInt(buffer)));
+
+        var pinCount = readVarInt(buffer);
+        for (int i = 0; i < pinCount; i++) {
+            var pinId = readVarLong(buffer);
+            var kindAndType = buffer.get();
+            // Don't need to add to node.pins as constructor already does this
+            var pin = new Pin(pinId, node, pinKind(kindAndType), pinType(kindAndType));
+            pinsById.put(pin.id, pin);
+        }
+
+        var propCount = readVarInt(buffer);
+        for (int i = 0; i < propCount; i++) {
+            var propId        = readVarLong(buffer);
+            var propName      = orEmpty(header.string(readVarInt(buffer)));
+            var propClassName = header.string(readVarInt(buffer));
+            var propTypeId    = header.string(readVarInt(buffer));
+            var propDataValue = readData(buffer, header);
+
+            // Don't need to add to node as constructor already does this
+            var prop = EditorSerializer.createProp(propClassName, propId, node);
+            prop.name = propName;
+            prop.propTypeId = propTypeId;
+            prop.setData(json, propDataValue);
+
+            var propPinCount = readVarInt(buffer);
+            for (int j = 0; j < propPinCount; j++) {
+                var pinId = readVarLong(buffer);
+                var kindAndType = buffer.get();
+                // Don't need to add to prop.pins as constructor already does this
+                var pin = new Pin(pinId, prop, pinKind(kindAndType), pinType(kindAndType));
+                pinsById.put(pin.id, pin);
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Read a node written by {@link #writeDetachedNode}, its links are added to {@code links}
+     * as (id, src pin id, dst pin id) triples, to be recreated once the node is in the editor,
+     * see {@link Editor#restore(Node, LongArray)}
+     */
+    static Node readDetachedNode(Json json, ByteBuffer buffer, LongArray links, EditorSerializer.LoadContext context) {
+        var strings = new String[readVarInt(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        var header = new Header(VERSION, 0, "", strings);
+        var node = readNode(json, buffer, header, new LongMap<>(), context);
+
+        var linkCount = readVarInt(buffer);
+        for (int i = 0; i < linkCount; i++) {
+            readDetachedLink(buffer, links);
+        }
+        return node;
+    }
+
+    /**
+     * Read a link written by {@link #writeDetachedLink}, adding it to {@code links} as an (id, src pin id, dst pin id) triple
+     */
+    static void readDetachedLink(ByteBuffer buffer, LongArray links) {
+        var linkId = readVarLong(buffer);
+        readVarLong(buffer); // src node id
+        var srcPinId = readVarLong(buffer);
+        readVarLong(buffer); // dst node id
+        var dstPinId = readVarLong(buffer);
+        links.add(linkId, srcPinId, dstPinId);
+    }
+
+    /**
+     * Decode tagged prop data into the same {@link JsonValue} shape the json format
+     * produces, so {@link Prop#setData(Json, JsonValue)} doesn't need to know about either format.
+     */
+    static JsonValue readData(ByteBuffer buffer, Header header) {
+        var tag = buffer.get();
+        return switch (tag) {
+            case DATA_NULL   -> new JsonValue(JsonValue.ValueType.nullValue);
+            case DATA_STRING -> new JsonValue(readString(buffer));
+            case DATA_INT    -> new JsonValue(unzigzag(readVarLong(buffer)));
+            case DATA_FLOAT  -> new JsonValue(buffer.getFloat());
+            case DATA_SELECT -> {
+                var selectedIndex = (int) unzigzag(readVarLong(buffer));
+                var options = new JsonValue(JsonValue.ValueType.array);
+                var optionCount = readVarInt(buffer);
+                for (int i = 0; i < optionCount; i++) {
+                    options.addChild(new JsonValue(header.string(readVarInt(buffer))));
+                }
+                var value = new JsonValue(JsonValue.ValueType.object);
+                value.addChild("options", options);
+                value.addChild("selectedIndex", new JsonValue(selectedIndex));
+                yield value;
+            }
+            case DATA_JSON -> new JsonReader().parse(readString(buffer));
+            default -> throw new SerializationException("Unknown prop data tag: " + tag);
+        };
+    }
+
+    private static PinKind pinKind(byte kindAndType) {
+        return PinKind.values()[(kindAndType >> 4) & 0xF];
+    }
+
+    private static PinType pinType(byte kindAndType) {
+        return PinType.values()[kindAndType & 0xF];
+    }
+
+    private static String orEmpty(String string) {
+        return (string == null) ? "" : string;
+    }
+
+    // ------------------------------------------------------------------------
+    // Encoding primitives
+    // ------------------------------------------------------------------------
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        var value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            var b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint at position: " + buffer.position());
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        return Math.toIntExact(readVarLong(buffer));
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        var length = readVarInt(buffer);
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Interned strings in first-seen order, null is never added
+     * and is written as reference 0.
+     */
+    static class StringTable {
+        final Array<String> values = new Array<>();
+        final ObjectIntMap<String> indices = new ObjectIntMap<>();
+
+        void add(String string) {
+            if (string != null && !indices.containsKey(string)) {
+                indices.put(string, values.size);
+                values.add(string);
+            }
+        }
+
+        int ref(String string) {
+            return (string == null) ? 0 : indices.get(string, -1) + 1;
+        }
+    }
+}
@@ -4,23 +4,62 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import net.bplo.nodes.Util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface for working with content metadata such as
  * game asset files or config data, that needs to be surfaced
  * in the editor for use by nodes.
+ * <p>
+ * The content root is scanned recursively on a background thread, starting from the
+ * {@link #CACHE_FILE scan cache} written by the previous run so that a large root has its
+ * metadata available right away, the walk then only reports files that were added, removed,
+ * or changed size or modification time since. Afterwards a {@link WatchService} keeps it
+ * up to date, file system events only rescan the paths they're about.
+ * <p>
+ * NOTE: {@link #metadata} is only ever modified on the render thread, the background
+ *  thread posts the keys that changed with {@link com.badlogic.gdx.Application#postRunnable}
  */
 public class EditorContent {
 
     private static final String TAG = EditorContent.class.getSimpleName();
+
+    public static final String CACHE_FILE = "editor-content.cache";
+
+    // NOTE: distinct from the graph file and journal magics so a stray cache is never mistaken for either,
+    //  caches written under the old shared magic just fail the check and get rebuilt
+    private static final int CACHE_MAGIC = 0x4e4f444b; // 'NODK'
+    private static final int CACHE_VERSION = 1;
+
+    // the watcher waits for a burst of events to go quiet for this long before applying them together
+    private static final long WATCH_SETTLE_MILLIS = 100;
+
     private static FileHandle rootPath = Gdx.files.absolute("../sprites");
 
     public static String selectedMetadataKey = rootPath.path();
@@ -35,23 +74,49 @@ public class EditorContent {
         String filename,
         String extension
     ) {
-        public Metadata(FileHandle fileHandle) {
-            this(
-                fileHandle.pathWithoutExtension().substring(rootPath.path().length() + 1),
-                fileHandle.path(),
-                fileHandle.name(),
-                fileHandle.extension()
+        /**
+         * Metadata for a file, by its path relative to the content root with '/' separators
+         */
+        static Metadata of(String rootPath, String relativePath) {
+            var slash = relativePath.lastIndexOf('/');
+            var dot = relativePath.lastIndexOf('.');
+            var hasExtension = dot > slash;
+            return new Metadata(
+                key(relativePath),
+                rootPath + "/" + relativePath,
+                relativePath.substring(slash + 1),
+                hasExtension ? relativePath.substring(dot + 1) : ""
             );
         }
-        private static String key(FileHandle fileHandle) {
-            return fileHandle.path().substring(rootPath.path().length());
+
+        static String key(String relativePath) {
+            var dot = relativePath.lastIndexOf('.');
+            return (dot > relativePath.lastIndexOf('/')) ? relativePath.substring(0, dot) : relativePath;
         }
     }
 
     public static Map<String, Metadata> metadata = new HashMap<>();
 
+    // metadataKeys() is called every frame the content combo is open, so the sorted keys are kept
+    private static List<String> sortedKeys = List.of();
+    private static boolean sortedKeysStale;
+
+    // NOTE: scans and watch events for every root are handled on this one thread, in order
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the current root's scan, replaced when the root changes, only accessed from the render thread
+    private static Scan scan;
+
     public static List<String> metadataKeys() {
-        return metadata.keySet().stream().sorted().toList();
+        if (sortedKeysStale) {
+            sortedKeysStale = false;
+            sortedKeys = metadata.keySet().stream().sorted().toList();
+        }
+        return sortedKeys;
     }
 
     public static FileHandle rootPath() {
@@ -66,9 +131,22 @@ public class EditorContent {
         refresh();
     }
 
+    /**
+     * Start scanning the content root in the background, replacing the previous root's metadata
+     * as it's found, and watching it for changes. Must be called from the render thread.
+     */
     public static void refresh() {
         Util.log(TAG, "Refreshing content root path: %s".formatted(rootPath));
 
+        if (scan != null) {
+            scan.close();
+        }
+        scan = new Scan(rootPath.path(), Editor.STATE_DIR.resolve(CACHE_FILE));
+
+        metadata.clear();
+        sortedKeysStale = true;
+        selectedMetadataKey = rootPath.path();
+
         if (rootPath.exists() && rootPath.isDirectory()) {
             Util.log(TAG, "Content root path exists and is a directory, scanning for files...");
         } else {
@@ -76,31 +154,421 @@ public class EditorContent {
             return;
         }
 
-        // recursively scan for files in path and convert to Metadata
-        var newMetadata = Arrays.stream(rootPath.list())
-            .flatMap(EditorContent::recurseDirectories)
-            .filter(EditorContent::isFile)
-            .map(Metadata::new)
-            .peek(EditorContent::logMetadata)
-            .collect(Collectors.toMap(Metadata::key, Function.identity(), (a, b) -> a));
+        var started = scan;
+        executor.execute(started::start);
+    }
 
-        metadata.clear();
-        metadata.putAll(newMetadata);
+    /**
+     * Stop watching the content root
+     */
+    public static void dispose() {
+        if (scan != null) {
+            scan.close();
+            scan = null;
+        }
+    }
 
-        Util.log(TAG, "Found %d files in content root path".formatted(metadata.size()));
+    /**
+     * Apply metadata found by the scan, a null value means there's no longer a file with that key
+     */
+    private static void apply(Scan from, Map<String, Metadata> updates) {
+        if (from != scan) return;
 
-        selectedMetadataKey = metadata.keySet().stream().findFirst().orElse(rootPath.path());
-    }
+        for (var entry : updates.entrySet()) {
+            if (entry.getValue() == null) {
+                metadata.remove(entry.getKey());
+            } else {
+                metadata.put(entry.getKey(), entry.getValue());
+            }
+        }
+        sortedKeysStale = true;
 
-    private static Stream<FileHandle> recurseDirectories(FileHandle fileHandle) {
-        return fileHandle.isDirectory() ? Arrays.stream(fileHandle.list()) : Stream.of(fileHandle);
+        if (!metadata.containsKey(selectedMetadataKey)) {
+            var keys = metadataKeys();
+            selectedMetadataKey = keys.isEmpty() ? rootPath.path() : keys.get(0);
+        }
     }
 
-    private static boolean isFile(FileHandle fileHandle) {
-        return !fileHandle.isDirectory();
-    }
+    /**
+     * Scan state for one content root, everything but {@link #close} runs on the {@link #executor}
+     */
+    private static class Scan {
+
+        record FileState(long modified, long size) {}
+
+        record Event(Path dir, WatchEvent.Kind<?> kind, Path name) {}
+
+        final String rootPath;
+        final Path root;
+        final Path cachePath;
+
+        // files by their path relative to the root, and the relative path of the file shown for each key,
+        // NOTE: files with the same name but different extensions share a key, the first path in order wins,
+        //  the rest are kept in collisions so one can take its place if it's removed
+        final Map<String, FileState> files = new HashMap<>();
+        final Map<String, String> pathsByKey = new HashMap<>();
+        final Map<String, TreeSet<String>> collisions = new HashMap<>();
+
+        volatile WatchService watchService;
+        volatile boolean closed;
+
+        Scan(String rootPath, Path cachePath) {
+            this.rootPath = rootPath;
+            this.root = Path.of(rootPath);
+            this.cachePath = cachePath;
+        }
+
+        void start() {
+            if (closed) return;
+
+            var start = System.nanoTime();
+            var touched = new HashSet<String>();
+            var cached = readCache(touched);
+            if (cached) {
+                post(touched);
+                Util.log(TAG, "Loaded %d files from scan cache in %.2fms"
+                    .formatted(files.size(), (System.nanoTime() - start) / 1_000_000f));
+            }
+
+            try {
+                watchService = root.getFileSystem().newWatchService();
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to watch content root path, changes won't be picked up: " + rootPath, e);
+            }
+
+            start = System.nanoTime();
+            var changed = walk();
+            if (closed) {
+                // NOTE: closed while the watch service was being created, close() may have missed it
+                closeWatchService();
+                return;
+            }
+            Util.log(TAG, "Found %d files in content root path, %d changed since last scan, in %.2fms"
+                .formatted(files.size(), changed, (System.nanoTime() - start) / 1_000_000f));
+            if (changed > 0 || !cached) {
+                writeCache();
+            }
+
+            var service = watchService;
+            if (service != null) {
+                var watchThread = new Thread(() -> watch(service), TAG + "-watch");
+                watchThread.setDaemon(true);
+                watchThread.start();
+            }
+        }
+
+        /**
+         * Walk the whole root, registering every directory with the watch service,
+         * and post the keys of the files that differ from the ones known so far.
+         * Returns the number of files added, removed or changed.
+         */
+        int walk() {
+            var found = new HashMap<String, FileState>(Math.max(16, files.size() * 4 / 3));
+            walk(root, found);
+            if (closed) return 0;
+
+            var touched = new HashSet<String>();
+            var changed = 0;
+            for (var entry : found.entrySet()) {
+                var relativePath = entry.getKey();
+                var previous = files.get(relativePath);
+                if (entry.getValue().equals(previous)) continue;
+
+                changed++;
+                if (previous == null) {
+                    add(relativePath, touched);
+                }
+                files.put(relativePath, entry.getValue());
+            }
+            for (var relativePath : List.copyOf(files.keySet())) {
+                if (found.containsKey(relativePath)) continue;
+                changed++;
+                remove(relativePath, touched);
+            }
+
+            post(touched);
+            return changed;
+        }
+
+        void walk(Path start, Map<String, FileState> found) {
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (closed) return FileVisitResult.TERMINATE;
+                        register(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (!attrs.isDirectory()) {
+                            found.put(relativize(file), state(attrs));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
 
-    private static void logMetadata(Metadata metadata) {
-        Util.log(TAG, "- %s -> %s".formatted(metadata.key, metadata.path));
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        Gdx.app.error(TAG, "Failed to scan content path: " + file, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to scan content root path: " + start, e);
+            }
+        }
+
+        void register(Path dir) {
+            if (watchService == null) return;
+            try {
+                dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (ClosedWatchServiceException e) {
+                // closed while scanning, the scan is being discarded
+            } catch (IOException e) {
+                // NOTE: likely out of inotify watches on linux, keep scanning without watching
+                Gdx.app.error(TAG, "Failed to watch content path, changes won't be picked up: " + dir, e);
+                closeWatchService();
+            }
+        }
+
+        /**
+         * Runs on its own thread, collecting file system events and handing them to the executor
+         * once they settle, so that eg. copying a directory of files is applied in one go
+         */
+        void watch(WatchService watchService) {
+            try {
+                while (!closed) {
+                    var events = new ArrayList<Event>();
+                    var key = watchService.take();
+                    while (key != null) {
+                        var dir = (Path) key.watchable();
+                        for (var event : key.pollEvents()) {
+                            events.add(new Event(dir, event.kind(), (Path) event.context()));
+                        }
+                        key.reset();
+                        key = watchService.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    executor.execute(() -> update(events));
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                // closed, the root changed or the editor is shutting down
+            }
+        }
+
+        /**
+         * Rescan only the paths the events are about
+         */
+        void update(List<Event> events) {
+            if (closed) return;
+
+            var touched = new HashSet<String>();
+            var changed = 0;
+            for (var event : events) {
+                if (event.kind == StandardWatchEventKinds.OVERFLOW) {
+                    // NOTE: events were dropped, there's no telling what changed without walking everything
+                    Util.log(TAG, "Too many content changes to track, rescanning content root path");
+                    changed += walk();
+                    continue;
+                }
+
+                var path = event.dir.resolve(event.name);
+                var relativePath = relativize(path);
+                changed += (event.kind == StandardWatchEventKinds.ENTRY_DELETE)
+                    ? removeAll(relativePath, touched)
+                    : rescan(path, relativePath, event.kind == StandardWatchEventKinds.ENTRY_CREATE, touched);
+            }
+
+            if (changed > 0 && !closed) {
+                post(touched);
+                Util.log(TAG, "Updated %d changed files in content root path".formatted(changed));
+                writeCache();
+            }
+        }
+
+        int rescan(Path path, String relativePath, boolean created, Set<String> touched) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // already deleted again, there'll be a delete event for it
+                return 0;
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to read content path: " + path, e);
+                return 0;
+            }
+
+            if (!attrs.isDirectory()) {
+                var state = state(attrs);
+                var previous = files.put(relativePath, state);
+                if (previous == null) {
+                    add(relativePath, touched);
+                }
+                return state.equals(previous) ? 0 : 1;
+            }
+
+            // NOTE: a directory that was modified is watched itself, its contents have their own events,
+            //  but one that was created or moved in has to be walked and watched
+            if (!created) return 0;
+
+            var found = new HashMap<String, FileState>();
+            walk(path, found);
+            var changed = 0;
+            for (var entry : found.entrySet()) {
+                var previous = files.put(entry.getKey(), entry.getValue());
+                if (previous == null) {
+                    add(entry.getKey(), touched);
+                }
+                if (!entry.getValue().equals(previous)) {
+                    changed++;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Remove the file at the path, or everything under it if it was a directory
+         */
+        int removeAll(String relativePath, Set<String> touched) {
+            if (files.containsKey(relativePath)) {
+                remove(relativePath, touched);
+                return 1;
+            }
+
+            var prefix = relativePath + "/";
+            var removed = files.keySet().stream().filter(path -> path.startsWith(prefix)).toList();
+            for (var path : removed) {
+                remove(path, touched);
+            }
+            return removed.size();
+        }
+
+        void add(String relativePath, Set<String> touched) {
+            var key = Metadata.key(relativePath);
+            touched.add(key);
+            var existing = pathsByKey.putIfAbsent(key, relativePath);
+            if (existing == null || existing.equals(relativePath)) return;
+
+            var paths = collisions.computeIfAbsent(key, k -> new TreeSet<>());
+            paths.add(existing);
+            paths.add(relativePath);
+            pathsByKey.put(key, paths.first());
+        }
+
+        void remove(String relativePath, Set<String> touched) {
+            files.remove(relativePath);
+            var key = Metadata.key(relativePath);
+            touched.add(key);
+
+            var paths = collisions.get(key);
+            if (paths == null) {
+                pathsByKey.remove(key, relativePath);
+                return;
+            }
+            paths.remove(relativePath);
+            pathsByKey.put(key, paths.first());
+            if (paths.size() == 1) {
+                collisions.remove(key);
+            }
+        }
+
+        /**
+         * Hand the current metadata for the specified keys to the render thread
+         */
+        void post(Set<String> keys) {
+            if (keys.isEmpty() || closed) return;
+
+            var updates = new HashMap<String, Metadata>(keys.size() * 4 / 3 + 1);
+            for (var key : keys) {
+                var path = pathsByKey.get(key);
+                updates.put(key, (path == null) ? null : Metadata.of(rootPath, path));
+            }
+            Gdx.app.postRunnable(() -> apply(this, updates));
+        }
+
+        String relativize(Path path) {
+            return root.relativize(path).toString().replace('\\', '/');
+        }
+
+        static FileState state(BasicFileAttributes attrs) {
+            return new FileState(attrs.lastModifiedTime().toMillis(), attrs.size());
+        }
+
+        /**
+         * Load the files found by the last scan of the same root, returns false if there wasn't one
+         */
+        boolean readCache(Set<String> touched) {
+            if (!Files.exists(cachePath)) return false;
+
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath)))) {
+                if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                    Util.log(TAG, "Ignoring scan cache with unknown format: %s".formatted(cachePath));
+                    return false;
+                }
+                if (!in.readUTF().equals(root.toAbsolutePath().toString())) {
+                    return false;
+                }
+
+                var count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    var relativePath = in.readUTF();
+                    files.put(relativePath, new FileState(in.readLong(), in.readLong()));
+                    add(relativePath, touched);
+                }
+                return true;
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to read scan cache, rescanning everything: " + cachePath, e);
+                files.clear();
+                pathsByKey.clear();
+                collisions.clear();
+                return false;
+            }
+        }
+
+        void writeCache() {
+            var tempPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+            try {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                    out.writeInt(CACHE_MAGIC);
+                    out.writeInt(CACHE_VERSION);
+                    out.writeUTF(root.toAbsolutePath().toString());
+                    out.writeInt(files.size());
+                    for (var entry : files.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(entry.getValue().modified);
+                        out.writeLong(entry.getValue().size);
+                    }
+                }
+                try {
+                    Files.move(tempPath, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to write scan cache: " + cachePath, e);
+            }
+        }
+
+        /**
+         * Called from the render thread, anything the scan hasn't posted yet is discarded
+         */
+        void close() {
+            closed = true;
+            closeWatchService();
+        }
+
+        void closeWatchService() {
+            var service = watchService;
+            if (service == null) return;
+            watchService = null;
+            try {
+                service.close();
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Failed to stop watching content root path: " + rootPath, e);
+            }
+        }
     }
 }
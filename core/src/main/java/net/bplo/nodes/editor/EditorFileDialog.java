@@ -2,6 +2,7 @@ package net.bplo.nodes.editor;
 
 import net.bplo.nodes.Main;
 import net.bplo.nodes.assets.Assets;
+import net.bplo.nodes.runtime.DialogueProgramFile;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
@@ -13,8 +14,11 @@ public class EditorFileDialog {
 
     private static final String PREFS_KEY = "editor.last-directory";
     private static final FileFilter JSON_FILTER = new FileNameExtensionFilter("JSON Files", "json");
+    private static final FileFilter BINARY_FILTER = new FileNameExtensionFilter("Binary Node Files", EditorBinarySerializer.FILE_EXTENSION);
+    private static final FileFilter CHUNKED_FILTER = new FileNameExtensionFilter("Chunked Node Files", ChunkedGraphFile.FILE_EXTENSION);
+    private static final FileFilter PROGRAM_FILTER = new FileNameExtensionFilter("Dialogue Program Files", DialogueProgramFile.FILE_EXTENSION);
 
-    private enum Type { SAVE, LOAD }
+    private enum Type { SAVE, LOAD, EXPORT }
 
     public static File openSaveFile() {
         return open(Type.SAVE);
@@ -24,16 +28,30 @@ public class EditorFileDialog {
         return open(Type.LOAD);
     }
 
+    public static File openExportFile() {
+        return open(Type.EXPORT);
+    }
+
     private static File open(Type type) {
-        var title = (type == Type.SAVE) ? "Save File" : "Load File";
+        var title = switch (type) {
+            case SAVE -> "Save File";
+            case LOAD -> "Load File";
+            case EXPORT -> "Export Dialogue Program";
+        };
         var prefs = Main.app.assets.prefs;
         var lastDir = prefs.getString(PREFS_KEY);
 
         var fileChooser = new JFileChooser(lastDir);
-        fileChooser.setFileFilter(JSON_FILTER);
+        if (type == Type.EXPORT) {
+            fileChooser.setFileFilter(PROGRAM_FILTER);
+        } else {
+            fileChooser.addChoosableFileFilter(BINARY_FILTER);
+            fileChooser.addChoosableFileFilter(CHUNKED_FILTER);
+            fileChooser.setFileFilter(JSON_FILTER);
+        }
         fileChooser.setDialogTitle(title);
 
-        var result = (type == Type.SAVE)
+        var result = (type != Type.LOAD)
             ? fileChooser.showSaveDialog(null)
             : fileChooser.showOpenDialog(null);
 
@@ -42,7 +60,16 @@ public class EditorFileDialog {
             prefs.putString(PREFS_KEY, lastDir).flush();
 
             var selectedFile = fileChooser.getSelectedFile();
-            return Paths.get(selectedFile.getAbsolutePath()).toFile();
+            var path = Paths.get(selectedFile.getAbsolutePath());
+
+            // NOTE: the save format is picked by file extension, so a name typed without one
+            //  gets the extension of the selected filter rather than silently being saved as json
+            var name = path.getFileName().toString();
+            if (type == Type.SAVE && !name.contains(".")
+             && fileChooser.getFileFilter() instanceof FileNameExtensionFilter filter) {
+                path = path.resolveSibling(name + "." + filter.getExtensions()[0]);
+            }
+            return path.toFile();
         }
 
         return null;
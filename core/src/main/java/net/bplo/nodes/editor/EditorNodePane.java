@@ -16,9 +16,8 @@ import net.bplo.nodes.editor.meta.Metadata;
 import net.bplo.nodes.editor.utils.PinKind;
 import net.bplo.nodes.imgui.ImGuiColors;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 public class EditorNodePane extends EditorPane {
 
@@ -30,9 +29,48 @@ public class EditorNodePane extends EditorPane {
     private static final String POPUP_PIN  = "Pin Context Menu";
     private static final String POPUP_LINK = "Link Context Menu";
 
+    // nodes and links outside the visible region by more than this are culled
+    private static final float CULL_MARGIN = 50f;
+    // nodes render header only when zoomed out past this many screen pixels per canvas unit
+    private static final float LOD_HEADER_ONLY_SCALE = 0.4f;
+
     private final ContextMenu contextMenu;
 
     private long[] selectedObjectIds;
+    private final List<Node> selectedNodes = new ArrayList<>();
+
+    // nodes submitted to the node editor this frame and the links rendered between them, see cullNodesAndLinks()
+    private final List<Node> visibleNodes = new ArrayList<>();
+    private final List<Link> visibleLinks = new ArrayList<>();
+
+    // nodes submitted this frame wherever they are, selected nodes because they can be dragged
+    // from off screen, and nodes the spatial index can't find yet, see NodeSpatialIndex.invalidate()
+    private final List<Node> pinnedNodes = new ArrayList<>();
+
+    // set by fitToContent(), every node is submitted for a frame so the node editor knows their bounds
+    private float fitToContentDuration = -1f;
+
+    // nodes rendered in full this frame and last frame, see releaseHiddenContent()
+    private List<Node> contentNodes = new ArrayList<>();
+    private List<Node> lastContentNodes = new ArrayList<>();
+    private int frame;
+
+    // canvas space corners of the visible region, reused each frame
+    private final ImVec2 visibleMin = new ImVec2();
+    private final ImVec2 visibleMax = new ImVec2();
+
+    // out params for node editor queries, reused each frame
+    private final ImLong queryPinIdA = new ImLong();
+    private final ImLong queryPinIdB = new ImLong();
+    private final ImLong queryDeletedId = new ImLong();
+    private final ImVec2 mousePos = new ImVec2();
+    private final ImVec4 createLinkColor = new ImVec4();
+
+    // objects accepted for deletion this frame, removed from the editor in one batch
+    private final List<EditorObject> deletedObjects = new ArrayList<>();
+
+    // node to select and navigate to next frame, requested from outside the node editor context
+    private Node navigateTarget;
 
     // TODO(brian): this should be ordered, and match insertion order in the 'create node' context menu
     final ObjectMap<String, Metadata.NodeType> nodeTypes = new ObjectMap<>();
@@ -46,34 +84,92 @@ public class EditorNodePane extends EditorPane {
         this.selectedObjectIds = new long[0];
     }
 
+    /**
+     * Fit the view to all the nodes on the next frame, the node editor only knows the bounds of
+     * nodes that were submitted in the last frame, so every node is submitted for that frame
+     */
+    public void fitToContent(float duration) {
+        fitToContentDuration = duration;
+    }
+
+    /**
+     * Select the node and navigate to it on the next frame,
+     * can be called outside of the node editor context, eg. from other panes.
+     */
+    public void navigateTo(Node node) {
+        navigateTarget = node;
+    }
+
     @Override
     public void render() {
         ImGui.setNextWindowPos(0, 0, ImGuiCond.Always);
-        ImGui.setNextWindowSize(ImGui.getMainViewport().getSize(), ImGuiCond.Always);
+        var viewport = ImGui.getMainViewport();
+        ImGui.setNextWindowSize(viewport.getSizeX(), viewport.getSizeY(), ImGuiCond.Always);
         var flags = ImGuiWindowFlags.NoBringToFrontOnFocus | ImGuiWindowFlags.NoCollapse | ImGuiWindowFlags.NoResize;
         if (ImGui.begin("Editor", flags)) {
             // render editor menubar widgets
                               EditorWidget.renderSaveButton(editor);
             ImGui.sameLine(); EditorWidget.renderLoadButton(editor);
+            ImGui.sameLine(); EditorWidget.renderExportButton(editor);
             ImGui.sameLine(); EditorWidget.renderShowIdsToggle(editor);
             ImGui.sameLine(); EditorWidget.renderShowThumbnailsToggle(editor);
             ImGui.sameLine(); EditorWidget.renderLoadMetadataButton(editor);
             ImGui.sameLine(); EditorWidget.renderDragSlider(editor);
 
+            // the node editor canvas fills the rest of the window, grab its screen space region
+            var canvasScreenX = ImGui.getCursorScreenPosX();
+            var canvasScreenY = ImGui.getCursorScreenPosY();
+            var canvasScreenW = ImGui.getContentRegionAvailX();
+            var canvasScreenH = ImGui.getContentRegionAvailY();
+
             NodeEditor.begin("Editor");
             pushStyles();
 
-            editor.nodes.forEach(Node::render);
-            editor.links.forEach(Link::render);
+            NodeEditor.screenToCanvas(visibleMin, canvasScreenX, canvasScreenY);
+            NodeEditor.screenToCanvas(visibleMax, canvasScreenX + canvasScreenW, canvasScreenY + canvasScreenH);
+            if (editor.lazyGraph != null) {
+                editor.lazyGraph.materializeVisible(visibleMin.x, visibleMin.y, visibleMax.x, visibleMax.y);
+            }
+            frame++;
+            cullNodesAndLinks();
+
+            // screen pixels per canvas unit, below the threshold props are too small to read
+            var canvasWidth = visibleMax.x - visibleMin.x;
+            var scale = (canvasWidth > 0) ? canvasScreenW / canvasWidth : 1f;
+            var headerOnly = (scale < LOD_HEADER_ONLY_SCALE);
+
+            for (int i = 0; i < visibleNodes.size(); i++) {
+                var node = visibleNodes.get(i);
+                if      (node.culled) node.renderCulled();
+                else if (headerOnly)  node.renderHeaderOnly();
+                else {
+                    node.render();
+                    node.contentFrame = frame;
+                    contentNodes.add(node);
+                }
+            }
+            visibleLinks.forEach(Link::render);
+            releaseHiddenContent();
+            updateSpatialIndex();
+
+            if (fitToContentDuration >= 0) {
+                NodeEditor.navigateToContent(fitToContentDuration);
+                fitToContentDuration = -1f;
+            }
 
-            if (showIds) {
-                editor.nodes.forEach(Node::renderIds);
+            if (showIds && !headerOnly) {
+                for (int i = 0; i < visibleNodes.size(); i++) {
+                    var node = visibleNodes.get(i);
+                    if (!node.culled) node.renderIds();
+                }
             }
 
             // imgui-node-editor doesn't support a subset of imgui widgets within a node context,
             // props can emulate some of those by using a popup rendered outside a node context
             NodeEditor.suspend();
-            for (var node : editor.nodes) {
+            for (int i = 0; i < visibleNodes.size(); i++) {
+                var node = visibleNodes.get(i);
+                if (node.culled) continue;
                 for (var prop : node.props) {
                     prop.renderPopup();
                 }
@@ -83,6 +179,7 @@ public class EditorNodePane extends EditorPane {
             handleCreateLink();
             handleDeleteObject();
             handleContextMenus();
+            handleNavigateTarget();
             handleSelectionChanges();
 
             popStyles();
@@ -91,10 +188,121 @@ public class EditorNodePane extends EditorPane {
         ImGui.end();
     }
 
+    private void cullNodesAndLinks() {
+        pinnedNodes.clear();
+        if (fitToContentDuration >= 0) {
+            for (int i = 0; i < editor.nodes.size(); i++) {
+                pinnedNodes.add(editor.nodes.get(i));
+            }
+        }
+        // NOTE: the selection is from the end of last frame, a selected node may have been removed since
+        for (int i = 0; i < selectedNodes.size(); i++) {
+            var node = selectedNodes.get(i);
+            if (editor.objectsById.get(node.id) == node) {
+                pinnedNodes.add(node);
+            }
+        }
+        editor.spatialIndex.takeStale(pinnedNodes);
+
+        cullNodesAndLinks(editor.spatialIndex,
+            visibleMin.x - CULL_MARGIN, visibleMin.y - CULL_MARGIN,
+            visibleMax.x + CULL_MARGIN, visibleMax.y + CULL_MARGIN,
+            pinnedNodes, frame, visibleNodes, visibleLinks);
+    }
+
+    /**
+     * Refresh the indexed bounds of the nodes that may have moved or changed size this frame, which are the
+     * pinned nodes, since only selected nodes can be dragged, and the nodes whose render changed their size.
+     * Moves that weren't made through the editor, ie. drags, are recorded as changes.
+     */
+    private void updateSpatialIndex() {
+        for (int i = 0; i < pinnedNodes.size(); i++) {
+            updateSpatialIndex(pinnedNodes.get(i));
+        }
+        for (int i = 0; i < visibleNodes.size(); i++) {
+            var node = visibleNodes.get(i);
+            if (node.resized) {
+                node.resized = false;
+                updateSpatialIndex(node);
+            }
+        }
+    }
+
+    private void updateSpatialIndex(Node node) {
+        var spatialIndex = editor.spatialIndex;
+        if (spatialIndex.update(node)) {
+            // node editor positions are offset from the rendered bounds, but move by the same amount
+            var fromX = NodeEditor.getNodePositionX(node.id) - spatialIndex.movedX;
+            var fromY = NodeEditor.getNodePositionY(node.id) - spatialIndex.movedY;
+            editor.changes.markMoved(node, fromX, fromY);
+        }
+    }
+
+    /**
+     * Nodes that were rendered in full last frame but not this one, because they were culled,
+     * drawn header only or removed, release what their props hold for drawing, eg. thumbnail textures,
+     * so that the asset resolver can evict them. Only looks at last frame's nodes, not every node.
+     */
+    private void releaseHiddenContent() {
+        for (int i = 0; i < lastContentNodes.size(); i++) {
+            var node = lastContentNodes.get(i);
+            if (node.contentFrame != frame) {
+                node.releaseContent();
+            }
+        }
+        var released = lastContentNodes;
+        released.clear();
+        lastContentNodes = contentNodes;
+        contentNodes = released;
+    }
+
+    /**
+     * Collect the nodes to submit to the node editor this frame and the links that need rendering.
+     * Nodes overlapping the visible region are submitted, and so are the nodes at both ends of each link
+     * that's rendered, because the node editor can only draw a link between pins that were submitted this frame.
+     * A link is rendered if the box spanning both of its nodes overlaps the visible region, which includes
+     * links that only pass through it. Pinned nodes are submitted wherever they are, flagged as culled
+     * if they're not otherwise submitted. Nodes that aren't submitted aren't touched, so the work done
+     * depends on what's in view rather than on the size of the graph.
+     * <p>
+     * NOTE: runs every frame, so it loops by index and reuses the output lists, it mustn't allocate
+     */
+    static void cullNodesAndLinks(NodeSpatialIndex spatialIndex,
+                                  float minX, float minY, float maxX, float maxY,
+                                  List<Node> pinnedNodes, int frame,
+                                  List<Node> visibleNodes, List<Link> visibleLinks) {
+        spatialIndex.query(minX, minY, maxX, maxY, visibleNodes);
+        for (int i = 0; i < visibleNodes.size(); i++) {
+            var node = visibleNodes.get(i);
+            node.submittedFrame = frame;
+            node.culled = false;
+        }
+
+        spatialIndex.queryLinks(minX, minY, maxX, maxY, visibleLinks);
+        for (int i = 0; i < visibleLinks.size(); i++) {
+            var link = visibleLinks.get(i);
+            submit(link.src.getNode(), false, frame, visibleNodes);
+            submit(link.dst.getNode(), false, frame, visibleNodes);
+        }
+
+        // NOTE: nodes that haven't been rendered yet aren't in the spatial index, they're pinned
+        //  and culled for their first frame and picked up by the queries after that, as are their links
+        for (int i = 0; i < pinnedNodes.size(); i++) {
+            submit(pinnedNodes.get(i), true, frame, visibleNodes);
+        }
+    }
+
+    private static void submit(Node node, boolean culled, int frame, List<Node> visibleNodes) {
+        if (node.submittedFrame == frame) return;
+        node.submittedFrame = frame;
+        node.culled = culled;
+        visibleNodes.add(node);
+    }
+
     private void handleCreateLink() {
-        if (NodeEditor.beginCreate(ImGuiColors.medBlue.asVec4(), 6f)) {
-            var aPinId = new ImLong();
-            var bPinId = new ImLong();
+        if (NodeEditor.beginCreate(ImGuiColors.medBlue.asVec4(createLinkColor), 6f)) {
+            var aPinId = queryPinIdA;
+            var bPinId = queryPinIdB;
 
             if (NodeEditor.queryNewLink(aPinId, bPinId)) {
                 var srcPin = editor.findPin(aPinId.get());
@@ -116,10 +324,10 @@ public class EditorNodePane extends EditorPane {
                     var compatibility = src.canLinkTo(dst);
                     if (compatibility.incompatible()) {
                         EditorMessage.show(EditorMessage.Type.ERROR, compatibility.message());
-                        NodeEditor.rejectNewItem(ImGuiColors.red.asVec4(), 4f);
+                        NodeEditor.rejectNewItem(ImGuiColors.red.asVec4(createLinkColor), 4f);
                     } else {
                         EditorMessage.show(EditorMessage.Type.ACCEPT, "Create link");
-                        if (NodeEditor.acceptNewItem(ImGuiColors.lime.asVec4(), 8f)) {
+                        if (NodeEditor.acceptNewItem(ImGuiColors.lime.asVec4(createLinkColor), 8f)) {
                             editor.add(new Link(src, dst));
                         }
                     }
@@ -133,28 +341,34 @@ public class EditorNodePane extends EditorPane {
     private void handleDeleteObject() {
         // handle deleting nodes and links
         if (NodeEditor.beginDelete()) {
-            var id = new ImLong();
+            var id = queryDeletedId;
 
             // if this is a node, remove it
             while (NodeEditor.queryDeletedNode(id)) {
                 if (NodeEditor.acceptDeletedItem()) {
-                    editor.findNode(id.get()).ifPresent(editor::remove);
+                    editor.findNode(id.get()).ifPresent(deletedObjects::add);
                 }
             }
 
             // if this is a link, remove it
             while (NodeEditor.queryDeletedLink(id)) {
                 if (NodeEditor.acceptDeletedItem()) {
-                    editor.findLink(id.get()).ifPresent(editor::remove);
+                    editor.findLink(id.get()).ifPresent(deletedObjects::add);
                 }
             }
 
             NodeEditor.endDelete();
+
+            // NOTE: removed as a batch, deleting a large selection one object at a time is quadratic
+            if (!deletedObjects.isEmpty()) {
+                editor.removeAll(deletedObjects);
+                deletedObjects.clear();
+            }
         }
     }
 
     private void handleContextMenus() {
-        var mousePos = ImGui.getMousePos();
+        ImGui.getMousePos(mousePos);
 
         // NOTE: about reference frame switching:
         //  popup windows are not done in graph space, they're done in screen space.
@@ -175,7 +389,7 @@ public class EditorNodePane extends EditorPane {
             // NOTE(brian): we want the mouse pos in 'graph' space not screen space
             //  because its used to position a new node, so we need to 'stash' the
             //  value retrieved above, before NodeEditor.suspend() to use it below
-            contextMenu.newNodePosition = new ImVec2(mousePos);
+            contextMenu.newNodePosition.set(mousePos);
         }
 
         // node context popup -------------------------------------------------
@@ -208,7 +422,7 @@ public class EditorNodePane extends EditorPane {
         // create new node popup ----------------------------------------------
         if (ImGui.beginPopup(POPUP_CREATE_NODE)) {
             ImGui.pushFont(EditorUtil.Fonts.nodeHeader);
-            ImGui.textColored(ImGuiColors.cyan.asVec4(), POPUP_CREATE_NODE);
+            ImGui.textColored(ImGuiColors.cyan.asInt(), POPUP_CREATE_NODE);
             ImGui.popFont();
             if (nodeTypes.isEmpty()) {
                 ImGui.separator();
@@ -285,31 +499,45 @@ public class EditorNodePane extends EditorPane {
         NodeEditor.resume();
     }
 
+    private void handleNavigateTarget() {
+        if (navigateTarget == null) return;
+
+        // the node may have been removed since navigation was requested
+        if (editor.objectsById.get(navigateTarget.id) == navigateTarget) {
+            NodeEditor.selectNode(navigateTarget.id, false);
+            NodeEditor.navigateToSelection(false, 0.5f);
+        }
+        navigateTarget = null;
+    }
+
     private void handleSelectionChanges() {
         var selectedObjectCount = NodeEditor.getSelectedObjectCount();
         if (selectedObjectCount != selectedObjectIds.length) {
             selectedObjectIds = new long[selectedObjectCount];
         }
 
+        // NOTE: cleared either way, selected nodes are submitted every frame while they're selected
+        selectedNodes.clear();
         var selectedNodesCount = NodeEditor.getSelectedNodes(selectedObjectIds, selectedObjectCount);
         if (selectedNodesCount == 0) {
             editor.infoPane.clear();
         } else {
-            var selectedNodes = Arrays.stream(selectedObjectIds)
-                .mapToObj(editor::findNode)
-                .flatMap(Optional::stream)
-                .toList();
+            for (int i = 0; i < selectedNodesCount; i++) {
+                if (editor.objectsById.get(selectedObjectIds[i]) instanceof Node node) {
+                    selectedNodes.add(node);
+                }
+            }
             editor.infoPane.select(selectedNodes);
         }
     }
 
     private void pushStyles() {
-        NodeEditor.pushStyleColor(NodeEditorStyleColor.NodeBg,        new ImVec4(1f, 1f, 1f, 0.0f));
-        NodeEditor.pushStyleColor(NodeEditorStyleColor.NodeBorder,    new ImVec4( 0.6f,  0.6f,  0.6f, 0.8f));
-        NodeEditor.pushStyleColor(NodeEditorStyleColor.PinRect,       new ImVec4( 0.24f, 0.6f, 1f, 0.6f));
-        NodeEditor.pushStyleColor(NodeEditorStyleColor.PinRectBorder, new ImVec4( 0.24f, 0.6f, 1f, 0.6f));
+        NodeEditor.pushStyleColor(NodeEditorStyleColor.NodeBg,        1f,    1f,   1f, 0.0f);
+        NodeEditor.pushStyleColor(NodeEditorStyleColor.NodeBorder,    0.6f,  0.6f, 0.6f, 0.8f);
+        NodeEditor.pushStyleColor(NodeEditorStyleColor.PinRect,       0.24f, 0.6f, 1f, 0.6f);
+        NodeEditor.pushStyleColor(NodeEditorStyleColor.PinRectBorder, 0.24f, 0.6f, 1f, 0.6f);
 
-        NodeEditor.pushStyleVar(NodeEditorStyleVar.NodePadding,             new ImVec4(4, 4, 4, 4));
+        NodeEditor.pushStyleVar(NodeEditorStyleVar.NodePadding,             4, 4, 4, 4);
         NodeEditor.pushStyleVar(NodeEditorStyleVar.NodeRounding,            5f);
         NodeEditor.pushStyleVar(NodeEditorStyleVar.NodeBorderWidth,         1.5f);
         NodeEditor.pushStyleVar(NodeEditorStyleVar.HoveredNodeBorderWidth,  2.5f);
@@ -317,8 +545,8 @@ public class EditorNodePane extends EditorPane {
         NodeEditor.pushStyleVar(NodeEditorStyleVar.PinBorderWidth,          2f);
         NodeEditor.pushStyleVar(NodeEditorStyleVar.PinRadius,               0f); // NOTE: radius of circle that links can 'slide around' on at their start/end points, 0 means exactly at pivot location
         NodeEditor.pushStyleVar(NodeEditorStyleVar.LinkStrength,            250f);
-        NodeEditor.pushStyleVar(NodeEditorStyleVar.SourceDirection,         new ImVec2( 1.0f, 0.0f));
-        NodeEditor.pushStyleVar(NodeEditorStyleVar.TargetDirection,         new ImVec2(-1.0f, 0.0f));
+        NodeEditor.pushStyleVar(NodeEditorStyleVar.SourceDirection,          1.0f, 0.0f);
+        NodeEditor.pushStyleVar(NodeEditorStyleVar.TargetDirection,         -1.0f, 0.0f);
     }
 
     private void popStyles() {
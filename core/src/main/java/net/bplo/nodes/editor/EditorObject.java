@@ -17,6 +17,9 @@ public abstract class EditorObject {
     public final Type objectType;
     public final long id;
 
+    // NOTE: labels are used as widget ids every frame, so only format them once
+    private String label;
+
     public EditorObject(Type objectType) {
         this.objectType = objectType;
         this.id = NEXT_ID++;
@@ -41,8 +44,19 @@ public abstract class EditorObject {
         NEXT_ID = maxExistingId + 1;
     }
 
+    /**
+     * Upper bound on the ids of every {@link EditorObject} created or loaded so far,
+     * for saving without scanning every object for the max id.
+     */
+    static long maxAssignedId() {
+        return NEXT_ID - 1;
+    }
+
     public String label() {
-        return "%s-%d".formatted(objectType.name().toLowerCase(), id);
+        if (label == null) {
+            label = "%s-%d".formatted(objectType.name().toLowerCase(), id);
+        }
+        return label;
     }
 
     public abstract void render();
@@ -0,0 +1,124 @@
+package net.bplo.nodes.editor;
+
+import imgui.ImGui;
+import imgui.flag.ImGuiCol;
+import imgui.flag.ImGuiCond;
+import imgui.flag.ImGuiKey;
+import imgui.type.ImString;
+import net.bplo.nodes.imgui.ImGuiColors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full text search over node headers and text props, see {@link SearchIndex}.
+ * Selecting a hit, or pressing enter in the query field for the best hit,
+ * selects its node and navigates the node editor to it.
+ */
+public class EditorSearchPane extends EditorPane {
+
+    private static final int MAX_HITS = 100;
+    private static final int MAX_PREVIEW_LENGTH = 80;
+
+    private final ImString query = new ImString(256);
+    private final List<SearchIndex.Hit> hits = new ArrayList<>();
+    private final List<String> hitLabels = new ArrayList<>();
+    private final List<String> hitPreviews = new ArrayList<>();
+    private int matchCount;
+
+    // NOTE: the query only runs when its text or the index changes, not every frame
+    private String searchedQuery = "";
+    private int searchedVersion = -1;
+
+    public EditorSearchPane(Editor editor) {
+        super(editor);
+    }
+
+    @Override
+    public void render() {
+        setInitialPositionAndSize();
+
+        if (ImGui.begin("Search")) {
+            ImGui.setNextItemWidth(ImGui.getContentRegionAvailX());
+            ImGui.inputTextWithHint("##search_query", "Search headers and text, \"quote\" phrases", query);
+            var submitted = ImGui.isItemFocused() && ImGui.isKeyPressed(ImGuiKey.Enter);
+
+            refreshHits();
+
+            if (searchedQuery.isBlank()) {
+                ImGui.textDisabled("%d texts indexed".formatted(editor.searchIndex.size()));
+            } else {
+                var shown = (matchCount > hits.size()) ? ", showing %d".formatted(hits.size()) : "";
+                var approximate = editor.searchIndex.isMatchCountExact() ? "" : "up to ";
+                ImGui.textDisabled("%s%d matches%s".formatted(approximate, matchCount, shown));
+            }
+            ImGui.separator();
+
+            if (submitted && !hits.isEmpty()) {
+                navigateTo(hits.get(0));
+            }
+
+            ImGui.pushFont(EditorUtil.Fonts.small);
+            for (int i = 0; i < hits.size(); i++) {
+                ImGui.pushStyleColor(ImGuiCol.Text, ImGuiColors.goldenrod.asInt());
+                var clicked = ImGui.selectable(hitLabels.get(i));
+                ImGui.popStyleColor();
+                ImGui.indent();
+                ImGui.textWrapped(hitPreviews.get(i));
+                ImGui.unindent();
+
+                if (clicked) {
+                    navigateTo(hits.get(i));
+                }
+            }
+            ImGui.popFont();
+        }
+        ImGui.end();
+    }
+
+    private void refreshHits() {
+        var text = query.get();
+        var version = editor.searchIndex.version();
+        if (text.equals(searchedQuery) && version == searchedVersion) return;
+
+        searchedQuery = text;
+        searchedVersion = version;
+        hits.clear();
+        hitLabels.clear();
+        hitPreviews.clear();
+        matchCount = editor.searchIndex.search(text, MAX_HITS, hits);
+
+        for (int i = 0; i < hits.size(); i++) {
+            var hit = hits.get(i);
+            var source = (hit.source() instanceof Prop prop) ? prop.name : "Header";
+            // the id suffix keeps labels unique when several hits have the same text
+            hitLabels.add("%s  [%s]  %s##hit_%d".formatted(hit.node().headerText, hit.node().label(), source, hit.source().id));
+            hitPreviews.add(preview(hit.text()));
+        }
+    }
+
+    private void navigateTo(SearchIndex.Hit hit) {
+        editor.nodePane.navigateTo(hit.node());
+    }
+
+    private static String preview(String text) {
+        var preview = text.strip().replace('\n', ' ');
+        if (preview.length() > MAX_PREVIEW_LENGTH) {
+            preview = preview.substring(0, MAX_PREVIEW_LENGTH) + "...";
+        }
+        return preview;
+    }
+
+    private void setInitialPositionAndSize() {
+        var viewport = ImGui.getMainViewport();
+
+        var padding = 10f;
+        var width = viewport.getSizeX() * 0.25f;
+        var height = viewport.getSizeY() * 0.5f;
+        var x = viewport.getPosX() + viewport.getSizeX() - width - padding;
+        var y = viewport.getPosY() + (viewport.getSizeY() - height) / 2f;
+
+        ImGui.setNextWindowPos(x, y, ImGuiCond.FirstUseEver);
+        ImGui.setNextWindowSize(width, height, ImGuiCond.FirstUseEver);
+    }
+}
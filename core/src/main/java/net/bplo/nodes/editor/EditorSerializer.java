@@ -1,25 +1,54 @@
 package net.bplo.nodes.editor;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
-import imgui.extension.nodeditor.NodeEditor;
-import net.bplo.nodes.Main;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
 import net.bplo.nodes.Util;
+import net.bplo.nodes.editor.meta.Metadata;
 import net.bplo.nodes.editor.meta.PropBindingResolver;
 import net.bplo.nodes.editor.utils.PinKind;
 import net.bplo.nodes.editor.utils.PinType;
 
+import java.io.Reader;
 import java.io.Serial;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 public class EditorSerializer implements Json.Serializer<EditorSerializer.NodeList> {
 
     private static final String TAG = EditorSerializer.class.getSimpleName();
 
+    private static final String NODE_LIST = "nodeList";
+    // NOTE: files written before the key was settled used "nodes"
+    private static final String NODE_LIST_LEGACY = "nodes";
+
+    /**
+     * What loading a node graph needs from outside the serializers, implemented by
+     * the {@link Editor}, or by a headless tool that loads graphs without a node editor.
+     */
+    public interface LoadContext {
+        /**
+         * Load the metadata that a graph was saved with, the path is absolute
+         */
+        Metadata loadMetadata(String path);
+
+        /**
+         * Restore a loaded node's saved canvas position
+         */
+        void setNodePosition(long nodeId, float x, float y);
+    }
+
+    private final LoadContext context;
+
+    public EditorSerializer(LoadContext context) {
+        this.context = context;
+    }
+
     public static class NodeList extends ArrayList<Node> {
         @Serial
         private static final long serialVersionUID = -7384204805940694066L;
@@ -33,257 +62,441 @@ public class EditorSerializer implements Json.Serializer<EditorSerializer.NodeLi
         }
     }
 
+    /**
+     * NOTE: a node list doesn't know its graph's metadata or where its nodes are,
+     *  write it with {@link #write(Json, List, NodePositions, String)} instead
+     */
     @Override
     public void write(Json json, NodeList nodeList, Class knownType) {
-        // write a container object
+        throw new GdxRuntimeException("Node lists are written with EditorSerializer.write(json, nodes, positions, metadataPath)");
+    }
+
+    /**
+     * Write the nodes in the format of a saved {@link NodeList}, with their positions read from the specified store.
+     * NOTE: when that's the node editor this has to be called from the render thread
+     */
+    public void write(Json json, List<Node> nodes, NodePositions positions, String metadataPath) {
         json.writeObjectStart();
 
         // write metadata path so it can be loaded along with a saved node list
-        var editor = Main.app.editor;
-        json.writeValue("metadata", editor.metadata.path);
+        json.writeValue("metadata", metadataPath);
 
         // write an array for all nodes
-        json.writeArrayStart("nodeList");
+        json.writeArrayStart(NODE_LIST);
+        for (var node : nodes) {
+            // NOTE: not the node's cached snapshot, that would keep a copy of the whole graph
+            //  after every save, only autosave needs the copies to last between captures
+            writeNode(json, GraphSnapshot.capture(node, positions));
+        }
+        json.writeArrayEnd();
 
-        for (var node : nodeList) {
-            json.writeObjectStart();
+        json.writeObjectEnd();
+    }
 
-            // Write node props
-            json.writeValue("id", node.id);
-            json.writeValue("width", node.width);
-            json.writeValue("nodeTypeId", node.nodeTypeId);
-            json.writeValue("headerText", node.headerText);
-            json.writeValue("position", NodeEditor.getNodePosition(node.id));
-
-            // Write node pins
-            json.writeArrayStart("pins");
-            for (var pin : node.pins) {
-                json.writeObjectStart();
-                json.writeValue("id", pin.id);
-                json.writeValue("kind", pin.kind.name());
-                json.writeValue("type", pin.type.name());
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
-
-            // Write node props
-            json.writeArrayStart("props");
-            for (Prop prop : node.props) {
-                json.writeObjectStart();
-                json.writeValue("id", prop.id);
-                json.writeValue("name", prop.name);
-                json.writeValue("class", prop.getClass().getName());
-                json.writeValue("data", prop.getData());
-                json.writeValue("propTypeId", prop.propTypeId);
-
-                // Write prop pins
-                json.writeArrayStart("pins");
-                for (var pin : prop.pins) {
-                    json.writeObjectStart();
-                    json.writeValue("id", pin.id);
-                    json.writeValue("kind", pin.kind.name());
-                    json.writeValue("type", pin.type.name());
-                    json.writeObjectEnd();
-                }
-                json.writeArrayEnd();
+    /**
+     * Write a snapshot of the graph in the same format as a saved {@link NodeList}.
+     * Only reads the snapshot, so unlike writing a node list this is safe to do off the render thread.
+     */
+    public void write(Json json, GraphSnapshot snapshot) {
+        json.writeObjectStart();
+        json.writeValue("metadata", snapshot.metadataPath);
 
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
-
-            // Write node links - technically only need to write one set;
-            // either incoming or outgoing, but writing both for simplicity
-            // and easy debugging of json data
-            // NOTE: requires care when recreating the links to avoid duplication
-            json.writeArrayStart("incomingLinks");
-            for (var link : node.incomingLinks) {
-                json.writeObjectStart();
-                json.writeValue("id", link.id);
-                json.writeValue("srcPinId", link.src.id);
-                json.writeValue("dstPinId", link.dst.id);
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
-            json.writeArrayStart("outgoingLinks");
-            for (var link : node.outgoingLinks) {
-                json.writeObjectStart();
-                json.writeValue("id", link.id);
-                json.writeValue("srcPinId", link.src.id);
-                json.writeValue("dstPinId", link.dst.id);
-                json.writeObjectEnd();
-            }
-            json.writeArrayEnd();
+        json.writeArrayStart(NODE_LIST);
+        for (var node : snapshot.nodes) {
+            writeNode(json, node);
+        }
+        json.writeArrayEnd();
+
+        json.writeObjectEnd();
+    }
+
+    private void writeNode(Json json, GraphSnapshot.NodeState node) {
+        json.writeObjectStart();
+
+        // Write node props
+        json.writeValue("id", node.id());
+        json.writeValue("width", node.width());
+        json.writeValue("nodeTypeId", node.nodeTypeId());
+        json.writeValue("headerText", node.headerText());
+        json.writeObjectStart("position");
+        json.writeValue("x", node.x());
+        json.writeValue("y", node.y());
+        json.writeObjectEnd();
+
+        // Write node pins
+        writePins(json, node.pins());
+
+        // Write node props
+        json.writeArrayStart("props");
+        for (var prop : node.props()) {
+            json.writeObjectStart();
+            json.writeValue("id", prop.id());
+            json.writeValue("name", prop.name());
+            json.writeValue("class", prop.className());
+            json.writeValue("data", prop.data());
+            json.writeValue("propTypeId", prop.propTypeId());
+
+            // Write prop pins
+            writePins(json, prop.pins());
 
             json.writeObjectEnd();
         }
-
         json.writeArrayEnd();
 
+        // Write node links - technically only need to write one set;
+        // either incoming or outgoing, but writing both for simplicity
+        // and easy debugging of json data
+        // NOTE: requires care when recreating the links to avoid duplication
+        writeLinks(json, "incomingLinks", node.incomingLinks());
+        writeLinks(json, "outgoingLinks", node.outgoingLinks());
+
         json.writeObjectEnd();
     }
 
+    private void writePins(Json json, GraphSnapshot.PinState[] pins) {
+        json.writeArrayStart("pins");
+        for (var pin : pins) {
+            json.writeObjectStart();
+            json.writeValue("id", pin.id());
+            json.writeValue("kind", pin.kind().name());
+            json.writeValue("type", pin.type().name());
+            json.writeObjectEnd();
+        }
+        json.writeArrayEnd();
+    }
+
+    private void writeLinks(Json json, String name, GraphSnapshot.LinkState[] links) {
+        json.writeArrayStart(name);
+        for (var link : links) {
+            json.writeObjectStart();
+            json.writeValue("id", link.id());
+            json.writeValue("srcPinId", link.srcPinId());
+            json.writeValue("dstPinId", link.dstPinId());
+            json.writeObjectEnd();
+        }
+        json.writeArrayEnd();
+    }
+
     @Override
     public NodeList read(Json json, JsonValue jsonData, Class clazz) {
         var nodes = new NodeList();
 
         // load required metadata first
-        var editor = Main.app.editor;
         var metadataPath = jsonData.getString("metadata", "");
         if (metadataPath.isEmpty()) {
             Util.log(TAG, "Missing required metadata path in json data, unable to load nodes");
             return nodes;
-        } else {
-            // make sure we have an absolute path, even if the saved path is relative
-            var path = Paths.get(metadataPath).toAbsolutePath().toString();
-            editor.loadMetadata(path);
         }
+        var metadata = loadMetadata(context, metadataPath);
 
         // get the node list array from the json data for the rest of the parsing
-        jsonData = jsonData.get("nodes");
-
-        // Maps to store objects by id for reference during reconstruction
-        var nodesById = new HashMap<Long, Node>();
-        var propsById = new HashMap<Long, Prop>();
-        var pinsById  = new HashMap<Long, Pin>();
-        var linksById = new HashMap<Long, Link>();
+        var nodesArray = jsonData.has(NODE_LIST) ? jsonData.get(NODE_LIST) : jsonData.get(NODE_LIST_LEGACY);
+        if (nodesArray == null) {
+            Util.log(TAG, "Missing node list in json data, nothing to load");
+            return nodes;
+        }
 
         // First pass: create all nodes, props and pins
-        for (var nodeValue = jsonData.child; nodeValue != null; nodeValue = nodeValue.next) {
-            var id = nodeValue.getLong("id");
-            var node = new Node(id);
-            Util.log(TAG, "Node created: %s".formatted(node.label()));
-
-            // Set node metadata
-            node.width = nodeValue.getFloat("width", Node.DEFAULT_WIDTH);
-            node.nodeTypeId = nodeValue.getString("nodeTypeId", "");
-            node.headerText = nodeValue.getString("headerText", "");
-
-            // Set node position
-            // NOTE(brian): required to maintain saved node positions on load,
-            //  otherwise node locations - which are saved automatically in the
-            //  editor's settings file - can get cleared and the resulting positions
-            //  can be clobbered, with all the nodes piled up on top of each other
-            var positionValue = nodeValue.get("position");
-            if (positionValue != null) {
-                var x = positionValue.getFloat("x", 0);
-                var y = positionValue.getFloat("y", 0);
-                NodeEditor.setNodePosition(node.id, x, y);
-            }
+        var pinsById = new LongMap<Pin>();
+        var pendingLinks = new LongArray();
+        for (var nodeValue = nodesArray.child; nodeValue != null; nodeValue = nodeValue.next) {
+            nodes.add(readNode(json, nodeValue, pinsById, context));
+            collectLinks(nodeValue, pendingLinks);
+        }
 
-            // Recreate node pins
-            var pinsArray = nodeValue.get("pins");
-            if (pinsArray != null) {
-                for (var pinValue = pinsArray.child; pinValue != null; pinValue = pinValue.next) {
-                    var pinId = pinValue.getLong("id");
-                    var kind = PinKind.valueOf(pinValue.getString("kind"));
-                    var type = PinType.valueOf(pinValue.getString("type"));
+        // Recreate links - separate pass so that all nodes, pins, and props
+        // are already created and can be linked on Link construction as normal
+        createLinks(pendingLinks, pinsById);
 
-                    var pin = new Pin(pinId, node, kind, type);
-                    // Don't need to add to node.pins as constructor already does this
-                    Util.log(TAG, "Node Pin created: %s".formatted(pin.label()));
+        resolveBindings(metadata, nodes);
+        return nodes;
+    }
 
-                    pinsById.put(pin.id, pin);
-                }
+    /**
+     * Incrementally read a saved node list from a character stream.
+     * Unlike {@link #read(Json, JsonValue, Class)} a full {@link JsonValue} tree
+     * is never built for the document, each node's json is materialized on its own,
+     * converted into a {@link Node} as soon as its closing brace is parsed, then dropped.
+     */
+    public NodeList read(Json json, Reader reader) {
+        var nodeListReader = new NodeListReader(json, context);
+        nodeListReader.parse(reader);
+
+        var nodes = nodeListReader.nodes;
+        if (nodeListReader.metadataPath == null || nodeListReader.metadataPath.isEmpty()) {
+            Util.log(TAG, "Missing required metadata path in json data, unable to load nodes");
+            return new NodeList();
+        }
+
+        var metadata = loadMetadata(context, nodeListReader.metadataPath);
+        createLinks(nodeListReader.pendingLinks, nodeListReader.pinsById);
+        resolveBindings(metadata, nodes);
+
+        Util.log(TAG, "Read %d nodes, %d pins".formatted(nodes.size(), nodeListReader.pinsById.size));
+        return nodes;
+    }
+
+    static Metadata loadMetadata(LoadContext context, String metadataPath) {
+        // make sure we have an absolute path, even if the saved path is relative
+        var path = Paths.get(metadataPath).toAbsolutePath().toString();
+        return context.loadMetadata(path);
+    }
+
+    static void resolveBindings(Metadata metadata, List<Node> nodes) {
+        // after all nodes are loaded, resolve bindings for each node
+        var propBindingResolver = new PropBindingResolver(metadata);
+        for (var node : nodes) {
+            metadata.findNodeType(node.nodeTypeId)
+                .ifPresent(nodeType -> propBindingResolver.resolveBindings(node, nodeType.props));
+        }
+    }
+
+    /**
+     * Create a {@link Node} along with its pins and props from its saved json data,
+     * registering each created pin in {@code pinsById} for later link creation.
+     */
+    private static Node readNode(Json json, JsonValue nodeValue, LongMap<Pin> pinsById, LoadContext context) {
+        var id = nodeValue.getLong("id");
+        var node = new Node(id);
+
+        // Set node metadata
+        node.width = nodeValue.getFloat("width", Node.DEFAULT_WIDTH);
+        node.nodeTypeId = nodeValue.getString("nodeTypeId", "");
+        node.headerText = nodeValue.getString("headerText", "");
+
+        // Set node position
+        // NOTE(brian): required to maintain saved node positions on load,
+        //  otherwise node locations - which are saved automatically in the
+        //  editor's settings file - can get cleared and the resulting positions
+        //  can be clobbered, with all the nodes piled up on top of each other
+        var positionValue = nodeValue.get("position");
+        if (positionValue != null) {
+            var x = positionValue.getFloat("x", 0);
+            var y = positionValue.getFloat("y", 0);
+            context.setNodePosition(node.id, x, y);
+        }
+
+        // Recreate node pins
+        var pinsArray = nodeValue.get("pins");
+        if (pinsArray != null) {
+            for (var pinValue = pinsArray.child; pinValue != null; pinValue = pinValue.next) {
+                var pinId = pinValue.getLong("id");
+                var kind = PinKind.valueOf(pinValue.getString("kind"));
+                var type = PinType.valueOf(pinValue.getString("type"));
+
+                // Don't need to add to node.pins as constructor already does this
+                var pin = new Pin(pinId, node, kind, type);
+                pinsById.put(pin.id, pin);
             }
+        }
 
-            // Recreate props - more complicated than other objects because of inheritance
-            var propsArray = nodeValue.get("props");
-            if (propsArray != null) {
-                for (var propValue = propsArray.child; propValue != null; propValue = propValue.next) {
-                    var propId        = propValue.getLong("id");
-                    var propName      = propValue.getString("name", "");
-                    var propClassName = propValue.getString("class");
-                    var propTypeId    = propValue.getString("propTypeId");
-                    var propDataValue = propValue.get("data");
-
-                    // Create prop instance based on type
-                    Prop prop;
-                    try {
-                        var propClass   = Class.forName(propClassName);
-                        var constructor = propClass.getDeclaredConstructor(long.class, Node.class);
-                        prop = (Prop) constructor.newInstance(propId, node);
-                        prop.name = propName;
-                        prop.propTypeId = propTypeId;
-                        prop.setData(json, propDataValue);
-
-                        // Don't need to add to node as constructor already does this
-                        Util.log(TAG, "Prop created: %s".formatted(prop.label()));
-
-                        propsById.put(prop.id, prop);
-
-                        // Recreate prop pins
-                        var propPinsArray = propValue.get("pins");
-                        if (propPinsArray != null) {
-                            for (var pinValue = propPinsArray.child; pinValue != null; pinValue = pinValue.next) {
-                                var pinId = pinValue.getLong("id");
-                                var kind = PinKind.valueOf(pinValue.getString("kind"));
-                                var type = PinType.valueOf(pinValue.getString("type"));
-
-                                var pin = new Pin(pinId, prop, kind, type);
-
-                                // Don't need to add to prop.pins as constructor already does this
-                                Util.log(TAG, "Prop Pin created: %s".formatted(pin.label()));
-
-                                pinsById.put(pin.id, pin);
-                            }
-                        }
-                    } catch (Exception e) {
-                        var message = "Failed to instantiate prop: %s, error: %s".formatted(propClassName, e);
-                        Util.log(TAG, message);
-                        throw new GdxRuntimeException(message, e);
+        // Recreate props - more complicated than other objects because of inheritance
+        var propsArray = nodeValue.get("props");
+        if (propsArray != null) {
+            for (var propValue = propsArray.child; propValue != null; propValue = propValue.next) {
+                var propId        = propValue.getLong("id");
+                var propName      = propValue.getString("name", "");
+                var propClassName = propValue.getString("class");
+                var propTypeId    = propValue.getString("propTypeId");
+                var propDataValue = propValue.get("data");
+
+                // Create prop instance based on type
+                // Don't need to add to node as constructor already does this
+                var prop = createProp(propClassName, propId, node);
+                prop.name = propName;
+                prop.propTypeId = propTypeId;
+                prop.setData(json, propDataValue);
+
+                // Recreate prop pins
+                var propPinsArray = propValue.get("pins");
+                if (propPinsArray != null) {
+                    for (var pinValue = propPinsArray.child; pinValue != null; pinValue = pinValue.next) {
+                        var pinId = pinValue.getLong("id");
+                        var kind = PinKind.valueOf(pinValue.getString("kind"));
+                        var type = PinType.valueOf(pinValue.getString("type"));
+
+                        // Don't need to add to prop.pins as constructor already does this
+                        var pin = new Pin(pinId, prop, kind, type);
+                        pinsById.put(pin.id, pin);
                     }
                 }
             }
+        }
+
+        return node;
+    }
 
-            nodes.add(node);
-            nodesById.put(node.id, node);
+    /**
+     * Create a {@link Prop} instance of the saved class name using its
+     * limited access {@code (long savedId, Node node)} constructor,
+     * more complicated than other objects because of inheritance.
+     */
+    static Prop createProp(String propClassName, long propId, Node node) {
+        try {
+            var propClass   = Class.forName(propClassName);
+            var constructor = propClass.getDeclaredConstructor(long.class, Node.class);
+            return (Prop) constructor.newInstance(propId, node);
+        } catch (Exception e) {
+            var message = "Failed to instantiate prop: %s, error: %s".formatted(propClassName, e);
+            Util.log(TAG, message);
+            throw new GdxRuntimeException(message, e);
         }
+    }
 
-        // Recreate links - separate pass so that all nodes, pins, and props
-        // are already created and can be linked on Link construction as normal
-        for (var nodeValue = jsonData.child; nodeValue != null; nodeValue = nodeValue.next) {
-            var nodeId = nodeValue.getLong("id");
-            var node = nodesById.get(nodeId);
-            if (node == null) {
-                throw new GdxRuntimeException("Failed to find node #%s for link creation".formatted(nodeId));
+    /**
+     * Collect the saved links for a node as (id, srcPinId, dstPinId) triples,
+     * links can't be created until the pins on both ends have been created.
+     */
+    private static void collectLinks(JsonValue nodeValue, LongArray pendingLinks) {
+        // NOTE: only recreate outgoing links from the current node
+        //  even though both incoming and outgoing links are saved
+        //  in the json data for a node. Both sets of links are saved
+        //  in both the source and dest nodes for easier debugging of
+        //  json data, but creating both sets here would result in
+        //  duplicate links in the editor.
+        var outgoingLinksArray = nodeValue.get("outgoingLinks");
+        if (outgoingLinksArray == null) return;
+
+        for (var linkValue = outgoingLinksArray.child; linkValue != null; linkValue = linkValue.next) {
+            pendingLinks.add(
+                linkValue.getLong("id"),
+                linkValue.getLong("srcPinId"),
+                linkValue.getLong("dstPinId"));
+        }
+    }
+
+    static void createLinks(LongArray pendingLinks, LongMap<Pin> pinsById) {
+        for (int i = 0; i < pendingLinks.size; i += 3) {
+            var linkId = pendingLinks.get(i);
+            var srcPin = pinsById.get(pendingLinks.get(i + 1));
+            var dstPin = pinsById.get(pendingLinks.get(i + 2));
+            if (srcPin != null && dstPin != null) {
+                // Don't need to add to node as constructor already does this
+                new Link(linkId, srcPin, dstPin);
+            } else {
+                Util.log(TAG, "Skipping link #%d, missing src or dst pin".formatted(linkId));
             }
+        }
+    }
 
-            // NOTE: only recreate outgoing links from the current node
-            //  even though both incoming and outgoing links are saved
-            //  in the json data for a node. Both sets of links are saved
-            //  in both the source and dest nodes for easier debugging of
-            //  json data, but creating both sets here would result in
-            //  duplicate links in the editor.
-
-            var outgoingLinksArray = nodeValue.get("outgoingLinks");
-            if (outgoingLinksArray != null) {
-                for (var linkValue = outgoingLinksArray.child; linkValue != null; linkValue = linkValue.next) {
-                    var linkId   = linkValue.getLong("id");
-                    var srcPinId = linkValue.getLong("srcPinId");
-                    var dstPinId = linkValue.getLong("dstPinId");
-
-                    var srcPin = pinsById.get(srcPinId);
-                    var dstPin = pinsById.get(dstPinId);
-
-                    if (srcPin != null && dstPin != null) {
-                        var link = new Link(linkId, srcPin, dstPin);
-                        // Don't need to add to node as constructor already does this
-                        Util.log(TAG, "Link (outgoing) created: %s(%s -> %s)"
-                            .formatted(link.label(), srcPin.label(), dstPin.label()));
-
-                        linksById.put(link.id, link);
-                    }
+    /**
+     * Event driven {@link JsonReader} that builds a small {@link JsonValue} tree
+     * for one element of the node list array at a time, instead of the whole document.
+     * Values outside the node list array are ignored, other than the metadata path.
+     */
+    private static class NodeListReader extends JsonReader {
+
+        private final Json json;
+        private final LoadContext context;
+        private final NodeList nodes = new NodeList();
+        private final LongMap<Pin> pinsById = new LongMap<>();
+        private final LongArray pendingLinks = new LongArray();
+
+        // the node object currently being built, and the last child added at each level
+        private final Array<JsonValue> values = new Array<>();
+        private final Array<JsonValue> lastChildren = new Array<>();
+
+        private String metadataPath;
+        private int depth;
+        private int nodeListDepth = -1;
+
+        NodeListReader(Json json, LoadContext context) {
+            this.json = json;
+            this.context = context;
+        }
+
+        private boolean inNodeList() {
+            return nodeListDepth != -1 && depth > nodeListDepth;
+        }
+
+        @Override
+        protected void startObject(String name) {
+            depth++;
+            if (inNodeList()) {
+                push(name, new JsonValue(JsonValue.ValueType.object));
+            }
+        }
+
+        @Override
+        protected void startArray(String name) {
+            depth++;
+            if (inNodeList()) {
+                push(name, new JsonValue(JsonValue.ValueType.array));
+            } else if (depth == 2 && (NODE_LIST.equals(name) || NODE_LIST_LEGACY.equals(name))) {
+                nodeListDepth = depth;
+            }
+        }
+
+        @Override
+        protected void pop() {
+            if (inNodeList()) {
+                var value = values.pop();
+                lastChildren.pop();
+                if (values.isEmpty()) {
+                    // a complete node object, convert it then let the json go
+                    nodes.add(readNode(json, value, pinsById, context));
+                    collectLinks(value, pendingLinks);
                 }
+            } else if (depth == nodeListDepth) {
+                nodeListDepth = -1;
             }
+            depth--;
         }
 
-        // after all nodes are loaded, resolve bindings for each node
-        var propBindingResolver = new PropBindingResolver(editor);
-        for (var node : nodes) {
-            editor.metadata.findNodeType(node.nodeTypeId)
-                .ifPresent(nodeType -> propBindingResolver.resolveBindings(node, nodeType.props));
+        @Override
+        protected void string(String name, String value) {
+            if (inNodeList()) {
+                add(name, new JsonValue(value));
+            } else if (depth == 1 && "metadata".equals(name)) {
+                metadataPath = value;
+            }
         }
 
-        return nodes;
+        @Override
+        protected void number(String name, double value, String stringValue) {
+            if (inNodeList()) {
+                add(name, new JsonValue(value, stringValue));
+            }
+        }
+
+        @Override
+        protected void number(String name, long value, String stringValue) {
+            if (inNodeList()) {
+                add(name, new JsonValue(value, stringValue));
+            }
+        }
+
+        @Override
+        protected void bool(String name, boolean value) {
+            if (inNodeList()) {
+                add(name, new JsonValue(value));
+            }
+        }
+
+        private void push(String name, JsonValue value) {
+            if (!values.isEmpty()) {
+                add(name, value);
+            }
+            values.add(value);
+            lastChildren.add(null);
+        }
+
+        private void add(String name, JsonValue value) {
+            // NOTE: stray values directly in the node list array aren't nodes, skip them
+            if (values.isEmpty()) return;
+
+            value.setName(name);
+            var parent = values.peek();
+            var last = lastChildren.peek();
+            value.parent = parent;
+            if (last == null) {
+                parent.child = value;
+            } else {
+                last.next = value;
+                value.prev = last;
+            }
+            parent.size++;
+            lastChildren.set(lastChildren.size - 1, value);
+        }
     }
 }
@@ -41,6 +41,16 @@ public class EditorWidget {
         ImGui.popFont();
     }
 
+    static void renderExportButton(Editor editor) {
+        ImGui.pushFont(EditorUtil.Fonts.icons);
+
+        if (ImGui.button(FontAwesomeIcons.fileExport + " Export")) {
+            editor.export();
+        }
+
+        ImGui.popFont();
+    }
+
     static void renderShowIdsToggle(Editor editor) {
         ImGui.pushFont(EditorUtil.Fonts.icons);
 
@@ -0,0 +1,533 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import net.bplo.nodes.Util;
+import net.bplo.nodes.editor.utils.PinType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Structure of the graph formed by {@link PinType#FLOW} links between {@link Node}s,
+ * kept up to date incrementally as nodes and links are added to and removed from the editor.
+ * <p>
+ * Maintains a topological order of the nodes using the dynamic algorithm from
+ * Pearce and Kelly, "A Dynamic Topological Sort Algorithm for Directed Acyclic Graphs".
+ * Adding a link that agrees with the current order is constant time, otherwise only
+ * the nodes between its ends in the order are visited and reordered. That makes
+ * {@link #wouldCreateCycle(Node, Node)} cheap enough to call every frame while a link is dragged.
+ * <p>
+ * NOTE: graphs saved before cycles were rejected can contain them, links that close
+ *  a cycle when added are set aside rather than ordered, see {@link #cyclicLinkCount()}.
+ *  They're retried whenever a flow link is removed, and they're still included
+ *  in {@link #stronglyConnectedComponents(List)}, which doesn't rely on the order.
+ */
+public class FlowGraph {
+
+    private static final String TAG = FlowGraph.class.getSimpleName();
+
+    // node at each position in the topological order, null for positions freed by removed nodes
+    private Node[] nodeAt = new Node[64];
+    private int orderSize;
+    private int nodeCount;
+
+    // flow links that would have closed a cycle when added, excluded from the order
+    private final ObjectSet<Link> cyclicLinks = new ObjectSet<>();
+
+    // reusable search state, nodes are marked visited with a per-search stamp,
+    // NOTE: stamps are per graph so separate graphs can be searched concurrently,
+    //  a node is only in one graph at a time and its stamp is reset when it's added to one
+    private int visitStamp;
+    private Node[] stack = new Node[64];
+    private final List<Node> forward = new ArrayList<>();
+    private final List<Node> backward = new ArrayList<>();
+    private int[] orders = new int[64];
+
+    private static final Comparator<Node> BY_ORDER = Comparator.comparingInt(node -> node.flowOrder);
+
+    public static boolean isFlow(Link link) {
+        return link.src.type == PinType.FLOW && link.dst.type == PinType.FLOW;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int cyclicLinkCount() {
+        return cyclicLinks.size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < orderSize; i++) {
+            if (nodeAt[i] != null) {
+                nodeAt[i].flowOrder = -1;
+                nodeAt[i] = null;
+            }
+        }
+        orderSize = 0;
+        nodeCount = 0;
+        cyclicLinks.clear();
+    }
+
+    /**
+     * Add the node at the end of the order. Any flow links it already has
+     * must be added separately, after the nodes on their other ends.
+     */
+    public void addNode(Node node) {
+        if (node.flowOrder >= 0) return;
+
+        if (orderSize == nodeAt.length) {
+            // reclaim positions left by removed nodes before growing
+            if (nodeCount < orderSize / 2) {
+                compact();
+            } else {
+                nodeAt = Arrays.copyOf(nodeAt, orderSize * 2);
+            }
+        }
+        node.flowOrder = orderSize;
+        node.flowVisitStamp = 0;
+        nodeAt[orderSize++] = node;
+        nodeCount++;
+    }
+
+    /**
+     * Remove the node from the order, its links should be removed first.
+     */
+    public void removeNode(Node node) {
+        if (node.flowOrder < 0) return;
+
+        nodeAt[node.flowOrder] = null;
+        node.flowOrder = -1;
+        nodeCount--;
+    }
+
+    /**
+     * Replace the graph with the specified nodes and the flow links between them, in time
+     * linear in their size. Cheaper than adding nodes and links one by one for a whole graph,
+     * since a poor insertion order can make incremental updates reorder the same nodes repeatedly.
+     */
+    public void rebuild(List<Node> nodes) {
+        clear();
+        for (var node : nodes) {
+            addNode(node);
+        }
+
+        // kahn's algorithm, in-degrees count flow links from nodes in the graph
+        var inDegree = new ObjectIntMap<Node>(nodeCount);
+        for (var node : nodes) {
+            var links = node.outgoingLinks;
+            for (int i = 0; i < links.size(); i++) {
+                var link = links.get(i);
+                var dst = link.dst.getNode();
+                if (isFlow(link) && dst.flowOrder >= 0) {
+                    inDegree.getAndIncrement(dst, 0, 1);
+                }
+            }
+        }
+
+        var ordered = new Node[nodeCount];
+        var head = 0;
+        var tail = 0;
+        for (var node : nodes) {
+            if (inDegree.get(node, 0) == 0) ordered[tail++] = node;
+        }
+        while (head < tail) {
+            var links = ordered[head++].outgoingLinks;
+            for (int i = 0; i < links.size(); i++) {
+                var link = links.get(i);
+                var dst = link.dst.getNode();
+                if (isFlow(link) && dst.flowOrder >= 0 && inDegree.getAndIncrement(dst, 0, -1) == 1) {
+                    ordered[tail++] = dst;
+                }
+            }
+        }
+
+        // nodes on or downstream of a cycle never reach zero in-degree, they go last,
+        // only links among them can disagree with the order so only those are inserted
+        var acyclicCount = tail;
+        var stamp = ++visitStamp;
+        for (int i = 0; i < acyclicCount; i++) {
+            ordered[i].flowVisitStamp = stamp;
+        }
+        for (var node : nodes) {
+            if (node.flowVisitStamp != stamp) ordered[tail++] = node;
+        }
+        for (int i = 0; i < orderSize; i++) {
+            nodeAt[i] = null;
+        }
+        for (int i = 0; i < tail; i++) {
+            place(ordered[i], i);
+        }
+
+        var pending = new ArrayList<Link>();
+        for (int i = acyclicCount; i < tail; i++) {
+            var links = ordered[i].outgoingLinks;
+            for (int j = 0; j < links.size(); j++) {
+                var link = links.get(j);
+                if (isFlow(link) && link.dst.getNode().flowOrder >= acyclicCount) {
+                    pending.add(link);
+                }
+            }
+        }
+        insertAll(pending);
+        if (cyclicLinks.notEmpty()) {
+            Util.log(TAG, "%d flow links close cycles, excluded from topological order".formatted(cyclicLinks.size));
+        }
+    }
+
+    /**
+     * Update the order for a newly added link, ignores links that aren't {@link PinType#FLOW}.
+     * Returns false if the link closes a cycle, in which case it's set aside, see class docs.
+     */
+    public boolean addLink(Link link) {
+        if (!isFlow(link)) return true;
+
+        var src = link.src.getNode();
+        var dst = link.dst.getNode();
+        if (src.flowOrder < 0 || dst.flowOrder < 0) {
+            Util.log(TAG, "Flow link #%d added before its nodes, ignoring".formatted(link.id));
+            return true;
+        }
+
+        if (!insertEdge(src, dst)) {
+            cyclicLinks.add(link);
+            Util.log(TAG, "Flow link #%d closes a cycle, excluded from topological order".formatted(link.id));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Update the order for a batch of links that were all connected before any were added,
+     * see {@link #insertAll(List)}. Returns the number of links that closed a cycle.
+     */
+    public int addLinks(List<Link> links) {
+        var pending = new ArrayList<Link>(links.size());
+        for (var link : links) {
+            if (!isFlow(link)) continue;
+            if (link.src.getNode().flowOrder < 0 || link.dst.getNode().flowOrder < 0) {
+                Util.log(TAG, "Flow link #%d added before its nodes, ignoring".formatted(link.id));
+                continue;
+            }
+            pending.add(link);
+        }
+        var cyclicBefore = cyclicLinks.size;
+        insertAll(pending);
+        return cyclicLinks.size - cyclicBefore;
+    }
+
+    /**
+     * Update for a removed link. Removing a link never invalidates the order,
+     * but it might break a cycle that kept a set aside link out of it.
+     */
+    public void removeLink(Link link) {
+        if (!isFlow(link)) return;
+        if (cyclicLinks.remove(link) || cyclicLinks.isEmpty()) return;
+
+        // NOTE: copied since the set can't be modified while iterating it
+        var retry = new ArrayList<Link>(cyclicLinks.size);
+        for (var cyclicLink : cyclicLinks) {
+            var isOrdered = cyclicLink.src.getNode().flowOrder >= 0 && cyclicLink.dst.getNode().flowOrder >= 0;
+            if (isOrdered) retry.add(cyclicLink);
+        }
+        insertAll(retry);
+    }
+
+    /**
+     * Insert links into the order one at a time, setting aside the ones that close a cycle.
+     * <p>
+     * NOTE: the searches in {@link #insertEdge(Node, Node)} follow the node link lists,
+     *  and only work if every link they follow already agrees with the order.
+     *  So links that are connected but not yet inserted are treated as set aside,
+     *  and skipped by the searches, until it's their turn.
+     */
+    private void insertAll(List<Link> links) {
+        for (var link : links) {
+            cyclicLinks.add(link);
+        }
+        for (var link : links) {
+            cyclicLinks.remove(link);
+            if (!insertEdge(link.src.getNode(), link.dst.getNode())) {
+                cyclicLinks.add(link);
+            }
+        }
+    }
+
+    /**
+     * Whether adding a flow link from {@code src} to {@code dst} would create a cycle.
+     * Constant time when the link agrees with the current order, otherwise a search
+     * limited to the nodes between the two in the order.
+     */
+    public boolean wouldCreateCycle(Node src, Node dst) {
+        if (src == dst) return true;
+        if (src.flowOrder < 0 || dst.flowOrder < 0) return false;
+        if (src.flowOrder < dst.flowOrder) return false;
+        return isReachable(dst, src);
+    }
+
+    /**
+     * Whether there's a path of flow links from {@code from} to {@code to},
+     * excluding any set aside cyclic links.
+     */
+    public boolean isReachable(Node from, Node to) {
+        if (from == to) return true;
+        if (from.flowOrder < 0 || to.flowOrder < 0) return false;
+        // NOTE: every path goes forward in the order, so nothing past 'to' can lead back to it
+        if (from.flowOrder > to.flowOrder) return false;
+
+        forward.clear();
+        return searchForward(from, to, to.flowOrder);
+    }
+
+    /**
+     * Collect the nodes in topological order, the output list is cleared first.
+     */
+    public void topologicalOrder(List<Node> out) {
+        out.clear();
+        for (int i = 0; i < orderSize; i++) {
+            if (nodeAt[i] != null) out.add(nodeAt[i]);
+        }
+    }
+
+    /**
+     * Collect nodes with no incoming flow links, in topological order.
+     * The output list is cleared first.
+     */
+    public void roots(List<Node> out) {
+        out.clear();
+        for (int i = 0; i < orderSize; i++) {
+            var node = nodeAt[i];
+            if (node != null && !hasFlowLink(node.incomingLinks)) out.add(node);
+        }
+    }
+
+    /**
+     * Collect nodes with no outgoing flow links, in topological order.
+     * The output list is cleared first.
+     */
+    public void sinks(List<Node> out) {
+        out.clear();
+        for (int i = 0; i < orderSize; i++) {
+            var node = nodeAt[i];
+            if (node != null && !hasFlowLink(node.outgoingLinks)) out.add(node);
+        }
+    }
+
+    /**
+     * Collect the strongly connected components of the flow graph, including set aside
+     * cyclic links, using an iterative version of Tarjan's algorithm. Only components with
+     * more than one node are collected, so an empty result means the flow graph is acyclic.
+     * The output list is cleared first.
+     */
+    public void stronglyConnectedComponents(List<List<Node>> out) {
+        out.clear();
+        if (nodeCount == 0) return;
+
+        var index = new ObjectIntMap<Node>(nodeCount);
+        var lowLink = new ObjectIntMap<Node>(nodeCount);
+        var onStack = new ObjectSet<Node>();
+        var sccStack = new ArrayList<Node>();
+        // call stack of (node, next outgoing link index) pairs
+        var callNodes = new ArrayList<Node>();
+        var callLinks = new int[nodeCount];
+        var nextIndex = 0;
+
+        for (int i = 0; i < orderSize; i++) {
+            var root = nodeAt[i];
+            if (root == null || index.containsKey(root)) continue;
+
+            callNodes.add(root);
+            callLinks[0] = 0;
+            index.put(root, nextIndex);
+            lowLink.put(root, nextIndex);
+            nextIndex++;
+            sccStack.add(root);
+            onStack.add(root);
+
+            while (!callNodes.isEmpty()) {
+                var depth = callNodes.size() - 1;
+                var node = callNodes.get(depth);
+                var links = node.outgoingLinks;
+
+                var descended = false;
+                while (callLinks[depth] < links.size()) {
+                    var link = links.get(callLinks[depth]++);
+                    if (!isFlow(link)) continue;
+
+                    var next = link.dst.getNode();
+                    if (next.flowOrder < 0) continue;
+                    if (!index.containsKey(next)) {
+                        index.put(next, nextIndex);
+                        lowLink.put(next, nextIndex);
+                        nextIndex++;
+                        sccStack.add(next);
+                        onStack.add(next);
+                        callNodes.add(next);
+                        callLinks[depth + 1] = 0;
+                        descended = true;
+                        break;
+                    } else if (onStack.contains(next)) {
+                        lowLink.put(node, Math.min(lowLink.get(node, 0), index.get(next, 0)));
+                    }
+                }
+                if (descended) continue;
+
+                // all links visited, pop this node and close its component if it's a root
+                callNodes.remove(depth);
+                if (depth > 0) {
+                    var parent = callNodes.get(depth - 1);
+                    lowLink.put(parent, Math.min(lowLink.get(parent, 0), lowLink.get(node, 0)));
+                }
+                if (lowLink.get(node, 0) == index.get(node, 0)) {
+                    var component = new ArrayList<Node>();
+                    Node member;
+                    do {
+                        member = sccStack.remove(sccStack.size() - 1);
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (member != node);
+                    if (component.size() > 1) out.add(component);
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert the edge src -> dst into the order, returns false without changing anything
+     * if the edge would create a cycle.
+     */
+    private boolean insertEdge(Node src, Node dst) {
+        if (src == dst) return false;
+
+        var lowerBound = dst.flowOrder;
+        var upperBound = src.flowOrder;
+        if (lowerBound > upperBound) return true;
+
+        // nodes reachable from dst that are ordered before src, reaching src means a cycle
+        forward.clear();
+        if (searchForward(dst, src, upperBound)) return false;
+
+        // nodes that reach src and are ordered after dst
+        backward.clear();
+        searchBackward(src, lowerBound);
+
+        // reuse the affected positions, everything that reaches src goes before everything dst reaches
+        forward.sort(BY_ORDER);
+        backward.sort(BY_ORDER);
+        var count = forward.size() + backward.size();
+        if (orders.length < count) {
+            orders = new int[Math.max(count, orders.length * 2)];
+        }
+        var n = 0;
+        for (var node : backward) orders[n++] = node.flowOrder;
+        for (var node : forward)  orders[n++] = node.flowOrder;
+        Arrays.sort(orders, 0, count);
+
+        n = 0;
+        for (var node : backward) place(node, orders[n++]);
+        for (var node : forward)  place(node, orders[n++]);
+        return true;
+    }
+
+    private void place(Node node, int order) {
+        node.flowOrder = order;
+        nodeAt[order] = node;
+    }
+
+    /**
+     * Depth first search along outgoing flow links from {@code start}, limited to nodes
+     * ordered at or before {@code upperBound}, collecting visited nodes into {@link #forward}.
+     * Returns true as soon as {@code target} is reached.
+     */
+    private boolean searchForward(Node start, Node target, int upperBound) {
+        var stamp = ++visitStamp;
+        var top = 0;
+        start.flowVisitStamp = stamp;
+        push(top++, start);
+        while (top > 0) {
+            var node = stack[--top];
+            stack[top] = null;
+            forward.add(node);
+
+            var links = node.outgoingLinks;
+            for (int i = 0; i < links.size(); i++) {
+                var link = links.get(i);
+                if (!isFlow(link) || cyclicLinks.contains(link)) continue;
+
+                var next = link.dst.getNode();
+                if (next == target) {
+                    clearStack(top);
+                    return true;
+                }
+                if (next.flowVisitStamp != stamp && next.flowOrder >= 0 && next.flowOrder < upperBound) {
+                    next.flowVisitStamp = stamp;
+                    push(top++, next);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Depth first search along incoming flow links from {@code start}, limited to nodes
+     * ordered after {@code lowerBound}, collecting visited nodes into {@link #backward}.
+     */
+    private void searchBackward(Node start, int lowerBound) {
+        var stamp = ++visitStamp;
+        var top = 0;
+        start.flowVisitStamp = stamp;
+        push(top++, start);
+        while (top > 0) {
+            var node = stack[--top];
+            stack[top] = null;
+            backward.add(node);
+
+            var links = node.incomingLinks;
+            for (int i = 0; i < links.size(); i++) {
+                var link = links.get(i);
+                if (!isFlow(link) || cyclicLinks.contains(link)) continue;
+
+                var prev = link.src.getNode();
+                if (prev.flowVisitStamp != stamp && prev.flowOrder > lowerBound) {
+                    prev.flowVisitStamp = stamp;
+                    push(top++, prev);
+                }
+            }
+        }
+    }
+
+    private void push(int top, Node node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = node;
+    }
+
+    private void clearStack(int top) {
+        Arrays.fill(stack, 0, top, null);
+    }
+
+    private static boolean hasFlowLink(LinkList links) {
+        for (int i = 0; i < links.size(); i++) {
+            if (isFlow(links.get(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Renumber the order without the positions freed by removed nodes.
+     */
+    private void compact() {
+        var n = 0;
+        for (int i = 0; i < orderSize; i++) {
+            var node = nodeAt[i];
+            if (node == null) continue;
+            nodeAt[i] = null;
+            place(node, n++);
+        }
+        orderSize = n;
+    }
+}
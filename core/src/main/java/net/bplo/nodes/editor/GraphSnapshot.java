@@ -0,0 +1,123 @@
+package net.bplo.nodes.editor;
+
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable copy of everything a graph saves, captured on the render thread
+ * so it can be serialized on another thread while editing carries on, see {@link Autosave}.
+ * <p>
+ * Capturing is incremental: each node keeps the state captured for it until the
+ * {@link ChangeTracker} sees it change, so a snapshot only copies the nodes edited since
+ * the last one and otherwise costs a pass over the node list. Between snapshots
+ * {@link #refresh} recaptures changed nodes a few at a time, so a snapshot
+ * taken right after loading a graph, or after a large edit, doesn't copy every node at once.
+ */
+public class GraphSnapshot {
+
+    public record NodeState(long id, float width, String nodeTypeId, String headerText, float x, float y,
+                            PinState[] pins, PropState[] props, LinkState[] incomingLinks, LinkState[] outgoingLinks) {}
+
+    public record PropState(long id, String name, String className, Object data, String propTypeId, PinState[] pins) {}
+
+    public record PinState(long id, PinKind kind, PinType type) {}
+
+    public record LinkState(long id, long srcPinId, long dstPinId) {}
+
+    public final String metadataPath;
+    public final List<NodeState> nodes;
+
+    private GraphSnapshot(String metadataPath, List<NodeState> nodes) {
+        this.metadataPath = metadataPath;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Capture the state of every node in the editor, must be called from the render thread
+     */
+    public static GraphSnapshot capture(Editor editor) {
+        var metadataPath = (editor.metadata != null) ? editor.metadata.path : "";
+        var nodes = new ArrayList<NodeState>(editor.nodes.size());
+        for (var node : editor.nodes) {
+            nodes.add(stateOf(node, editor.positions));
+        }
+        return new GraphSnapshot(metadataPath, nodes);
+    }
+
+    /**
+     * Bring the captured state of the specified number of nodes up to date, starting at the specified index
+     * and wrapping around the node list, returns the index to continue from on the next call.
+     * Must be called from the render thread.
+     */
+    static int refresh(Editor editor, int start, int count) {
+        var nodes = editor.nodes;
+        var index = start;
+        count = Math.min(count, nodes.size());
+        for (int i = 0; i < count; i++) {
+            if (index >= nodes.size()) index = 0;
+            stateOf(nodes.get(index++), editor.positions);
+        }
+        return index;
+    }
+
+    /**
+     * The node's current state, reusing the state captured for it last time if it hasn't changed since
+     */
+    static NodeState stateOf(Node node, NodePositions positions) {
+        if (node.snapshot == null) {
+            node.snapshot = capture(node, positions);
+        }
+        return node.snapshot;
+    }
+
+    /**
+     * Capture the node's current state without keeping it, for writing the graph once,
+     * eg. when it's saved, see {@link EditorSerializer}
+     */
+    static NodeState capture(Node node, NodePositions positions) {
+        var props = new PropState[node.props.size()];
+        for (int i = 0; i < props.length; i++) {
+            var prop = node.props.get(i);
+            props[i] = new PropState(prop.id, prop.name, prop.getClass().getName(),
+                copyData(prop.getData()), prop.propTypeId, capturePins(prop.pins));
+        }
+
+        return new NodeState(node.id, node.width, node.nodeTypeId, node.headerText,
+            positions.x(node.id), positions.y(node.id),
+            capturePins(node.pins), props, captureLinks(node.incomingLinks), captureLinks(node.outgoingLinks));
+    }
+
+    private static PinState[] capturePins(List<Pin> pins) {
+        var states = new PinState[pins.size()];
+        for (int i = 0; i < states.length; i++) {
+            var pin = pins.get(i);
+            states[i] = new PinState(pin.id, pin.kind, pin.type);
+        }
+        return states;
+    }
+
+    private static LinkState[] captureLinks(LinkList links) {
+        var states = new LinkState[links.size()];
+        for (int i = 0; i < states.length; i++) {
+            var link = links.get(i);
+            states[i] = new LinkState(link.id, link.src.id, link.dst.id);
+        }
+        return states;
+    }
+
+    /**
+     * Prop data that's edited in place has to be copied,
+     * the rest is either immutable or replaced rather than edited
+     */
+    static Object copyData(Object data) {
+        if (data instanceof PropSelect.Data select) {
+            var copy = new PropSelect.Data();
+            copy.set(select);
+            return copy;
+        }
+        return data;
+    }
+}
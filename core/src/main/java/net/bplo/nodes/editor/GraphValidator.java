@@ -0,0 +1,195 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import net.bplo.nodes.editor.meta.Metadata;
+import net.bplo.nodes.editor.utils.PinAttachment;
+import net.bplo.nodes.editor.utils.PinKind;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks a loaded node graph for problems the editor would normally prevent
+ * while the graph is being edited, so files that were edited by hand,
+ * or saved by an older version, can be checked without opening them.
+ * <p>
+ * Checks for duplicate object ids, pins attached to the wrong node, links with
+ * incompatible or missing pins, cycles of flow links, and node types, prop types
+ * or prop bindings that aren't in the metadata.
+ * <p>
+ * NOTE: doesn't touch the {@link Editor} or the node editor context, and keeps
+ *  no state between calls, so separate graphs can be validated concurrently.
+ */
+public class GraphValidator {
+
+    public record Issue(long objectId, String message) {
+        @Override
+        public String toString() {
+            return "#%d: %s".formatted(objectId, message);
+        }
+    }
+
+    public static List<Issue> validate(List<Node> nodes, Metadata metadata) {
+        var issues = new ArrayList<Issue>();
+        var objectsById = new LongMap<EditorObject>();
+        var nodeIndices = new ObjectIntMap<Node>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIndices.put(nodes.get(i), i);
+        }
+
+        var links = new ArrayList<Link>();
+        for (var node : nodes) {
+            checkUniqueId(node, objectsById, issues);
+
+            for (var pin : node.pins) {
+                checkUniqueId(pin, objectsById, issues);
+                if (!(pin.attachment instanceof PinAttachment.NodeType(Node attached)) || attached != node) {
+                    issues.add(new Issue(pin.id, "Pin in node #%d is attached elsewhere".formatted(node.id)));
+                }
+                collectLinks(pin, links);
+            }
+
+            for (var prop : node.props) {
+                checkUniqueId(prop, objectsById, issues);
+                if (prop.node != node) {
+                    issues.add(new Issue(prop.id, "Prop in node #%d belongs to node #%d".formatted(node.id, prop.node.id)));
+                }
+                for (var pin : prop.pins) {
+                    checkUniqueId(pin, objectsById, issues);
+                    if (!(pin.attachment instanceof PinAttachment.PropType(Prop attached)) || attached != prop) {
+                        issues.add(new Issue(pin.id, "Pin in prop #%d is attached elsewhere".formatted(prop.id)));
+                    }
+                    collectLinks(pin, links);
+                }
+            }
+
+            if (metadata != null) {
+                checkMetadata(node, metadata, issues);
+            }
+        }
+
+        for (var link : links) {
+            checkUniqueId(link, objectsById, issues);
+            checkLink(link, nodeIndices, issues);
+        }
+
+        checkFlowCycles(nodes, issues);
+        return issues;
+    }
+
+    private static void checkUniqueId(EditorObject object, LongMap<EditorObject> objectsById, List<Issue> issues) {
+        var existing = objectsById.put(object.id, object);
+        if (existing != null && existing != object) {
+            issues.add(new Issue(object.id, "Duplicate id, used by a %s and a %s"
+                .formatted(existing.objectType.name().toLowerCase(), object.objectType.name().toLowerCase())));
+        }
+    }
+
+    /**
+     * Each link is collected once, from its src pin, links that are only
+     * in their dst pin's list are reported by {@link #checkLink}.
+     */
+    private static void collectLinks(Pin pin, List<Link> links) {
+        for (int i = 0; i < pin.outgoingLinks.size(); i++) {
+            links.add(pin.outgoingLinks.get(i));
+        }
+        for (int i = 0; i < pin.incomingLinks.size(); i++) {
+            var link = pin.incomingLinks.get(i);
+            if (!link.src.outgoingLinks.contains(link)) {
+                links.add(link);
+            }
+        }
+    }
+
+    private static void checkLink(Link link, ObjectIntMap<Node> nodeIndices, List<Issue> issues) {
+        var src = link.src;
+        var dst = link.dst;
+        if (src.kind != PinKind.OUTPUT || dst.kind != PinKind.INPUT) {
+            issues.add(new Issue(link.id, "Link must go from an output pin to an input pin"));
+        }
+        if (src.type != dst.type) {
+            issues.add(new Issue(link.id, "Link between incompatible pin types, %s -> %s".formatted(src.type, dst.type)));
+        }
+        if (!src.outgoingLinks.contains(link) || !dst.incomingLinks.contains(link)) {
+            issues.add(new Issue(link.id, "Link is missing from its src or dst pin"));
+        }
+
+        var srcNode = src.getNode();
+        var dstNode = dst.getNode();
+        if (!nodeIndices.containsKey(srcNode) || !nodeIndices.containsKey(dstNode)) {
+            issues.add(new Issue(link.id, "Link references a node that isn't in the graph"));
+        } else if (srcNode == dstNode
+            && src.attachment instanceof PinAttachment.NodeType
+            && dst.attachment instanceof PinAttachment.NodeType) {
+            issues.add(new Issue(link.id, "Link between pins in the same node"));
+        }
+    }
+
+    private static void checkMetadata(Node node, Metadata metadata, List<Issue> issues) {
+        var nodeType = metadata.findNodeType(node.nodeTypeId).orElse(null);
+        if (nodeType == null) {
+            issues.add(new Issue(node.id, "Unknown node type: '%s'".formatted(node.nodeTypeId)));
+            return;
+        }
+
+        var propTypeIds = new HashSet<String>(node.props.size() * 2);
+        for (var prop : node.props) {
+            propTypeIds.add(prop.propTypeId);
+            if (nodeType.findPropType(prop.propTypeId).isEmpty()) {
+                issues.add(new Issue(prop.id, "Unknown prop type '%s' for node type '%s'".formatted(prop.propTypeId, nodeType.id)));
+            }
+        }
+
+        for (var propType : nodeType.props) {
+            var binding = propType.binding;
+            if (binding == null || !propTypeIds.contains(propType.id)) continue;
+
+            if (!propTypeIds.contains(binding.sourceId)) {
+                issues.add(new Issue(node.id, "Prop '%s' is bound to missing source prop '%s'".formatted(propType.id, binding.sourceId)));
+            }
+            if (binding.additionalSourceId != null && !propTypeIds.contains(binding.additionalSourceId)) {
+                issues.add(new Issue(node.id, "Prop '%s' is bound to missing additional source prop '%s'".formatted(propType.id, binding.additionalSourceId)));
+            }
+        }
+    }
+
+    /**
+     * Report every node on a cycle of flow links, ie. in a strongly connected component
+     * of the flow graph with more than one node, or with a flow link to itself.
+     * <p>
+     * NOTE: the nodes are put in a {@link FlowGraph} of their own for the duration of the check,
+     *  so they can't be in the editor's at the same time, see {@link FlowGraph#addNode}
+     */
+    private static void checkFlowCycles(List<Node> nodes, List<Issue> issues) {
+        var flowGraph = new FlowGraph();
+        var components = new ArrayList<List<Node>>();
+        flowGraph.rebuild(nodes);
+        flowGraph.stronglyConnectedComponents(components);
+        flowGraph.clear();
+
+        var cyclic = new ObjectSet<Node>();
+        for (var component : components) {
+            for (var node : component) {
+                cyclic.add(node);
+            }
+        }
+        for (var node : nodes) {
+            var links = node.outgoingLinks;
+            for (int i = 0; i < links.size(); i++) {
+                var link = links.get(i);
+                if (FlowGraph.isFlow(link) && link.dst.getNode() == node) {
+                    cyclic.add(node);
+                }
+            }
+        }
+
+        for (var node : nodes) {
+            if (cyclic.contains(node)) {
+                issues.add(new Issue(node.id, "Node is on a cycle of flow links"));
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.Util;
+import net.bplo.nodes.editor.meta.PropBindingResolver;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarInt;
+import static net.bplo.nodes.editor.EditorBinarySerializer.readVarLong;
+
+/**
+ * A node graph file in the {@link EditorBinarySerializer} format that is memory mapped
+ * and materialized into editor objects on demand, rather than all at once on load.
+ * <p>
+ * Opening the file only scans the node record headers to build an index of
+ * record offsets, ids and positions, along with the link section. Positions are bucketed
+ * into grid cells so the nodes in view are found without scanning every record.
+ * {@link Node} instances (with their props and pins) are decoded from the mapping
+ * and added to the {@link Editor} when they come into view or are looked up by id,
+ * links are created once the nodes on both of their ends have been materialized.
+ * <p>
+ * NOTE: materialized objects are never dropped, so editor memory grows with the
+ *  set of nodes that have been visited rather than with the size of the file.
+ */
+public class LazyNodeGraph {
+
+    private static final String TAG = LazyNodeGraph.class.getSimpleName();
+
+    /**
+     * Binary files smaller than this are loaded eagerly,
+     * the index and the on demand decoding aren't worth it for small graphs.
+     */
+    public static final long MIN_FILE_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * Caps the decoding done in a single frame, so zooming out over
+     * a huge graph spreads its materialization out over several frames.
+     */
+    private static final int MAX_MATERIALIZED_PER_FRAME = 1000;
+
+    // NOTE: only the top left corner of each node is indexed,
+    //  so pad visibility checks by roughly the size of a node
+    private static final float VISIBLE_MARGIN = Node.DEFAULT_WIDTH * 2f;
+
+    private final Editor editor;
+    private final Json json;
+    private final ByteBuffer buffer;
+    private final EditorBinarySerializer.Header header;
+    private final PropBindingResolver propBindingResolver;
+
+    // node record index, ordered as in the file
+    private final int nodeCount;
+    private final long[] nodeIds;
+    private final int[] recordOffsets;
+    private final float[] nodeX;
+    private final float[] nodeY;
+
+    // node record indices bucketed by the grid cell their position is in, in csr form,
+    // with the keys of the occupied cells in ascending order, see NodeSpatialIndex
+    private final long[] cellKeys;
+    private final int[] cellStarts;
+    private final int[] cellNodes;
+
+    // node ids in ascending order, mapped back to their record index
+    private final long[] sortedIds;
+    private final int[] sortedIndices;
+
+    // link section, plus the links touching each node in csr form
+    private final long[] linkIds;
+    private final long[] srcPinIds;
+    private final long[] dstPinIds;
+    private final int[] srcNodeIndices;
+    private final int[] dstNodeIndices;
+    private final int[] nodeLinkStarts;
+    private final int[] nodeLinks;
+    private final BitSet connectedLinks;
+
+    private final Node[] materialized;
+    private final LongMap<Pin> pinsById = new LongMap<>();
+    private int materializedCount;
+
+    // last fully materialized visible region, to skip rescanning while the view is still
+    private float visibleMinX = Float.NaN;
+    private float visibleMinY = Float.NaN;
+    private float visibleMaxX = Float.NaN;
+    private float visibleMaxY = Float.NaN;
+
+    /**
+     * Map the specified file and index its contents, loading the metadata it references.
+     * Returns null if the file is missing its metadata path.
+     */
+    public static LazyNodeGraph open(Editor editor, Json json, Path path) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // NOTE: the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            var header = EditorBinarySerializer.Header.read(buffer);
+            if (header.metadataPath().isEmpty()) {
+                Util.log(TAG, "Missing required metadata path in binary data, unable to load nodes");
+                return null;
+            }
+            EditorSerializer.loadMetadata(editor.loadContext, header.metadataPath());
+            return new LazyNodeGraph(editor, json, buffer, header);
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated binary node graph file: " + path, e);
+        }
+    }
+
+    private LazyNodeGraph(Editor editor, Json json, ByteBuffer buffer, EditorBinarySerializer.Header header) {
+        this.editor = editor;
+        this.json = json;
+        this.buffer = buffer;
+        this.header = header;
+        this.propBindingResolver = new PropBindingResolver(editor.metadata);
+
+        // scan node records, decoding only the id and position at the start of each one
+        this.nodeCount = readVarInt(buffer);
+        this.nodeIds = new long[nodeCount];
+        this.recordOffsets = new int[nodeCount];
+        this.nodeX = new float[nodeCount];
+        this.nodeY = new float[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            var length = readVarInt(buffer);
+            var offset = buffer.position();
+            recordOffsets[i] = offset;
+            nodeIds[i] = readVarLong(buffer);
+            nodeX[i] = buffer.getFloat();
+            nodeY[i] = buffer.getFloat();
+            buffer.position(offset + length);
+        }
+
+        // bucket node positions into grid cells so visible nodes can be found without scanning every record
+        var nodeCellKeys = new long[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeCellKeys[i] = key(cell(nodeX[i]), cell(nodeY[i]));
+        }
+        var sortedCellKeys = nodeCellKeys.clone();
+        Arrays.sort(sortedCellKeys);
+        var cellCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (i == 0 || sortedCellKeys[i] != sortedCellKeys[i - 1]) {
+                sortedCellKeys[cellCount++] = sortedCellKeys[i];
+            }
+        }
+        this.cellKeys = Arrays.copyOf(sortedCellKeys, cellCount);
+        this.cellStarts = new int[cellCount + 1];
+        var nodeCells = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeCells[i] = Arrays.binarySearch(cellKeys, nodeCellKeys[i]);
+            cellStarts[nodeCells[i] + 1]++;
+        }
+        for (int i = 0; i < cellCount; i++) {
+            cellStarts[i + 1] += cellStarts[i];
+        }
+        this.cellNodes = new int[nodeCount];
+        var cellFill = Arrays.copyOf(cellStarts, cellCount);
+        for (int i = 0; i < nodeCount; i++) {
+            cellNodes[cellFill[nodeCells[i]]++] = i;
+        }
+
+        this.sortedIds = nodeIds.clone();
+        Arrays.sort(sortedIds);
+        this.sortedIndices = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            sortedIndices[Arrays.binarySearch(sortedIds, nodeIds[i])] = i;
+        }
+
+        // read the link section and group links by the nodes on either end
+        var linkCount = readVarInt(buffer);
+        this.linkIds = new long[linkCount];
+        this.srcPinIds = new long[linkCount];
+        this.dstPinIds = new long[linkCount];
+        this.srcNodeIndices = new int[linkCount];
+        this.dstNodeIndices = new int[linkCount];
+        this.nodeLinkStarts = new int[nodeCount + 1];
+        for (int i = 0; i < linkCount; i++) {
+            linkIds[i] = readVarLong(buffer);
+            srcNodeIndices[i] = readVarInt(buffer);
+            srcPinIds[i] = readVarLong(buffer);
+            dstNodeIndices[i] = readVarInt(buffer);
+            dstPinIds[i] = readVarLong(buffer);
+            nodeLinkStarts[srcNodeIndices[i] + 1]++;
+            nodeLinkStarts[dstNodeIndices[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            nodeLinkStarts[i + 1] += nodeLinkStarts[i];
+        }
+        this.nodeLinks = new int[linkCount * 2];
+        var fill = Arrays.copyOf(nodeLinkStarts, nodeCount);
+        for (int i = 0; i < linkCount; i++) {
+            nodeLinks[fill[srcNodeIndices[i]]++] = i;
+            nodeLinks[fill[dstNodeIndices[i]]++] = i;
+        }
+        this.connectedLinks = new BitSet(linkCount);
+
+        this.materialized = new Node[nodeCount];
+
+        Util.log(TAG, "Indexed %d nodes, %d links".formatted(nodeCount, linkCount));
+    }
+
+    public long maxObjectId() {
+        return header.maxObjectId();
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int materializedCount() {
+        return materializedCount;
+    }
+
+    public boolean isFullyMaterialized() {
+        return materializedCount == nodeCount;
+    }
+
+    /**
+     * Materialize the node with the specified id if it hasn't been already.
+     * Returns null if there's no such node in the file, or if it was
+     * already materialized, in which case it's either in the editor or was removed from it.
+     */
+    public Node findNode(long id) {
+        var sortedIndex = Arrays.binarySearch(sortedIds, id);
+        if (sortedIndex < 0) return null;
+
+        var index = sortedIndices[sortedIndex];
+        if (materialized[index] != null) return null;
+
+        return materialize(index);
+    }
+
+    /**
+     * Materialize every node positioned within the specified canvas space region,
+     * along with the nodes they link to so those links can be drawn.
+     * Decoding is capped per call, the remainder is picked up on subsequent calls.
+     */
+    public void materializeVisible(float minX, float minY, float maxX, float maxY) {
+        if (isFullyMaterialized()) return;
+        if (minX == visibleMinX && minY == visibleMinY && maxX == visibleMaxX && maxY == visibleMaxY) return;
+
+        var budget = MAX_MATERIALIZED_PER_FRAME;
+        var padMinX = minX - VISIBLE_MARGIN;
+        var padMinY = minY - VISIBLE_MARGIN;
+        var cellMinX = cell(padMinX);
+        var cellMinY = cell(padMinY);
+        var cellMaxX = cell(maxX);
+        var cellMaxY = cell(maxY);
+
+        var cellsInView = ((long) cellMaxX - cellMinX + 1) * ((long) cellMaxY - cellMinY + 1);
+        if (cellsInView <= cellKeys.length) {
+            for (int cx = cellMinX; cx <= cellMaxX && budget > 0; cx++) {
+                for (int cy = cellMinY; cy <= cellMaxY && budget > 0; cy++) {
+                    var cellIndex = Arrays.binarySearch(cellKeys, key(cx, cy));
+                    if (cellIndex < 0) continue;
+                    budget = materializeCell(cellIndex, budget, padMinX, padMinY, maxX, maxY);
+                }
+            }
+        } else {
+            // NOTE: zoomed out so far that there are more cells in view than occupied cells,
+            //  it's cheaper to check each occupied cell than to look up each cell in view
+            for (int i = 0; i < cellKeys.length && budget > 0; i++) {
+                var cx = (int) (cellKeys[i] >> 32);
+                var cy = (int) cellKeys[i];
+                if (cx < cellMinX || cx > cellMaxX || cy < cellMinY || cy > cellMaxY) continue;
+                budget = materializeCell(i, budget, padMinX, padMinY, maxX, maxY);
+            }
+        }
+
+        // only remember the region once it's done, otherwise keep going next frame
+        if (budget > 0) {
+            visibleMinX = minX;
+            visibleMinY = minY;
+            visibleMaxX = maxX;
+            visibleMaxY = maxY;
+        }
+    }
+
+    /**
+     * Materialize the nodes in the grid cell that are within the region, and the nodes they link to,
+     * without decoding more than the remaining budget, returns what's left of the budget
+     */
+    private int materializeCell(int cellIndex, int budget, float minX, float minY, float maxX, float maxY) {
+        for (int n = cellStarts[cellIndex]; n < cellStarts[cellIndex + 1] && budget > 0; n++) {
+            var i = cellNodes[n];
+            var x = nodeX[i];
+            var y = nodeY[i];
+            if (x < minX || x > maxX || y < minY || y > maxY) continue;
+
+            if (materialized[i] == null) {
+                materialize(i);
+                budget--;
+            }
+            for (int j = nodeLinkStarts[i]; j < nodeLinkStarts[i + 1] && budget > 0; j++) {
+                var link = nodeLinks[j];
+                var other = (srcNodeIndices[link] == i) ? dstNodeIndices[link] : srcNodeIndices[link];
+                if (materialized[other] == null) {
+                    materialize(other);
+                    budget--;
+                }
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * Materialize every remaining node, required before the graph can be saved.
+     */
+    public void materializeAll() {
+        for (int i = 0; i < nodeCount; i++) {
+            if (materialized[i] == null) {
+                materialize(i);
+            }
+        }
+        Util.log(TAG, "Materialized all %d nodes".formatted(nodeCount));
+    }
+
+    private Node materialize(int index) {
+        // NOTE: materializing isn't an edit, the node and its links are as saved
+        return editor.changes.ignoring(() -> materializeNode(index));
+    }
+
+    private Node materializeNode(int index) {
+        buffer.position(recordOffsets[index]);
+        var node = EditorBinarySerializer.readNode(json, buffer, header, pinsById, editor.loadContext);
+        materialized[index] = node;
+        materializedCount++;
+
+        editor.add(node);
+        editor.metadata.findNodeType(node.nodeTypeId)
+            .ifPresent(nodeType -> propBindingResolver.resolveBindings(node, nodeType.props));
+
+        // connect links whose other end is already materialized, and still in the editor
+        for (int i = nodeLinkStarts[index]; i < nodeLinkStarts[index + 1]; i++) {
+            var link = nodeLinks[i];
+            if (connectedLinks.get(link)) continue;
+
+            var other = (srcNodeIndices[link] == index) ? dstNodeIndices[link] : srcNodeIndices[link];
+            var otherNode = materialized[other];
+            if (otherNode == null) continue;
+
+            connectedLinks.set(link);
+            if (!editor.objectsById.containsKey(otherNode.id)) continue;
+
+            var srcPin = pinsById.get(srcPinIds[link]);
+            var dstPin = pinsById.get(dstPinIds[link]);
+            if (srcPin != null && dstPin != null) {
+                // Don't need to add to nodes as constructor already does this
+                editor.add(new Link(linkIds[link], srcPin, dstPin));
+            } else {
+                Util.log(TAG, "Skipping link #%d, missing src or dst pin".formatted(linkIds[link]));
+            }
+        }
+
+        return node;
+    }
+
+    private static int cell(float coord) {
+        return (int) Math.floor(coord / NodeSpatialIndex.CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -18,6 +18,10 @@ public class Link extends EditorObject {
 
     private final Appearance appearance;
 
+    // this link's index in each LinkList it belongs to, by LinkList.Role,
+    // stale slots are harmless since membership is checked against the list itself
+    final int[] listSlots = new int[LinkList.Role.COUNT];
+
     @RequiredArgsConstructor
     public enum Appearance {
           FLOW (5f, ImGuiColors.cyan.asVec4())
@@ -53,14 +57,26 @@ public class Link extends EditorObject {
         connect();
     }
 
+    /**
+     * Add this link to the adjacency lists of the pins and nodes on both ends,
+     * constant time and safe to call on a link that's already connected.
+     */
     public void connect() {
-        srcNode().ifPresent(node -> node.outgoingLinks.add(this));
-        dstNode().ifPresent(node -> node.incomingLinks.add(this));
+        src.outgoingLinks.add(this);
+        dst.incomingLinks.add(this);
+        src.getNode().outgoingLinks.add(this);
+        dst.getNode().incomingLinks.add(this);
     }
 
+    /**
+     * Remove this link from the adjacency lists of the pins and nodes on both ends,
+     * constant time and safe to call on a link that's already disconnected.
+     */
     public void disconnect() {
-        srcNode().ifPresent(node -> node.outgoingLinks.remove(this));
-        dstNode().ifPresent(node -> node.incomingLinks.remove(this));
+        src.outgoingLinks.remove(this);
+        dst.incomingLinks.remove(this);
+        src.getNode().outgoingLinks.remove(this);
+        dst.getNode().incomingLinks.remove(this);
     }
 
     public Optional<Node> srcNode() {
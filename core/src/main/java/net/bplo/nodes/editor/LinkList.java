@@ -0,0 +1,105 @@
+package net.bplo.nodes.editor;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Unordered list of {@link Link}s with constant time add, remove and contains.
+ * <p>
+ * Each link records its own index in every list it belongs to, one slot per {@link Role},
+ * so removal swaps the last link into the removed link's place instead of scanning and shifting.
+ * Adding a link that's already in the list does nothing, which makes connecting
+ * and disconnecting links idempotent.
+ * <p>
+ * NOTE: removal doesn't preserve order, and removing through an iterator or
+ *  by index isn't supported, use {@link #remove(Object)} instead.
+ *  Iterate with {@link #get(int)} in hot paths, it doesn't allocate an iterator.
+ */
+public class LinkList extends AbstractList<Link> {
+
+    /**
+     * The relationship between a list and the links in it, a link can be in at most
+     * one list per role at a time since it only has one index slot for each.
+     */
+    public enum Role {
+          SRC_NODE // Node.outgoingLinks
+        , DST_NODE // Node.incomingLinks
+        , SRC_PIN  // Pin.outgoingLinks
+        , DST_PIN  // Pin.incomingLinks
+        , EDITOR   // Editor.links
+        ;
+        static final int COUNT = values().length;
+    }
+
+    private static final Link[] EMPTY = new Link[0];
+
+    private final Role role;
+    private Link[] links = EMPTY;
+    private int size;
+
+    public LinkList(Role role) {
+        this.role = role;
+    }
+
+    @Override
+    public Link get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: %d, size: %d".formatted(index, size));
+        }
+        return links[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        if (!(object instanceof Link link)) return false;
+        var slot = link.listSlots[role.ordinal()];
+        return slot >= 0 && slot < size && links[slot] == link;
+    }
+
+    /**
+     * Add the link if it's not already in this list.
+     * Returns false if it was already present.
+     */
+    @Override
+    public boolean add(Link link) {
+        if (contains(link)) return false;
+
+        if (size == links.length) {
+            links = Arrays.copyOf(links, Math.max(4, size * 2));
+        }
+        link.listSlots[role.ordinal()] = size;
+        links[size++] = link;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Remove the link if it's in this list, moving the last link into its place.
+     * Returns false if it wasn't present.
+     */
+    @Override
+    public boolean remove(Object object) {
+        if (!contains(object)) return false;
+
+        var link = (Link) object;
+        var slot = link.listSlots[role.ordinal()];
+        var last = links[--size];
+        links[slot] = last;
+        last.listSlots[role.ordinal()] = slot;
+        links[size] = null;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(links, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+}
@@ -3,9 +3,11 @@ package net.bplo.nodes.editor;
 import com.badlogic.gdx.graphics.Color;
 import imgui.ImGui;
 import imgui.ImVec2;
+import imgui.ImVec4;
 import imgui.extension.nodeditor.NodeEditor;
 import imgui.extension.nodeditor.flag.NodeEditorStyleColor;
 import net.bplo.nodes.editor.meta.Metadata;
+import net.bplo.nodes.editor.utils.PinKind;
 import net.bplo.nodes.imgui.ImGuiColors;
 import net.bplo.nodes.imgui.ImGuiLayout;
 import net.bplo.nodes.imgui.ImGuiWidgetBounds;
@@ -27,8 +29,8 @@ public class Node extends EditorObject {
 
     public final List<Prop> props         = new ArrayList<>();
     public final List<Pin>  pins          = new ArrayList<>();
-    public final List<Link> incomingLinks = new ArrayList<>();
-    public final List<Link> outgoingLinks = new ArrayList<>();
+    public final LinkList incomingLinks   = new LinkList(LinkList.Role.DST_NODE);
+    public final LinkList outgoingLinks   = new LinkList(LinkList.Role.SRC_NODE);
     public final ImVec2 position          = new ImVec2(0, 0);
 
     public String nodeTypeId;
@@ -36,6 +38,42 @@ public class Node extends EditorObject {
 
     final Bounds bounds = new Bounds();
 
+    // scratch for node editor style values read each frame in renderBackground()
+    private final ImVec4 nodePadding = new ImVec4();
+
+    /**
+     * Set by {@link EditorNodePane} for the nodes it submits each frame, a culled node is outside the
+     * visible region and only submitted as a placeholder, see {@link #renderCulled()}.
+     */
+    boolean culled;
+
+    // the frames in which this node was last submitted and its props last rendered, set by EditorNodePane
+    int submittedFrame;
+    int contentFrame;
+
+    // whether the last render changed the node's size, so its indexed bounds need updating
+    boolean resized;
+
+    // marked by NodeSpatialIndex.invalidate() until the node pane renders it and updates its bounds
+    boolean boundsStale;
+
+    // incremented per linkedNodes() call so nodes with several links between them are only collected once
+    private static int linkedNodesStamp;
+    private int linkedStamp;
+
+    // state captured by the last graph snapshot, cleared by the ChangeTracker when the node changes
+    GraphSnapshot.NodeState snapshot;
+
+    // position in the FlowGraph topological order, -1 when not in it, and its search marker
+    int flowOrder = -1;
+    int flowVisitStamp;
+
+    // derived style, resolved on first use and cached until
+    // a prop changes (see Prop.changed) or the metadata is reloaded
+    private final Color characterColor = new Color(Color.CLEAR);
+    private Metadata characterColorMetadata;
+    private boolean characterColorValid;
+
     public Node() {
         super(Type.NODE);
     }
@@ -68,10 +106,33 @@ public class Node extends EditorObject {
     }
 
     public Stream<Node> linkedNodes() {
-        return Stream.concat(
-            incomingLinks.stream().map(Link::srcNode).flatMap(Optional::stream),
-            outgoingLinks.stream().map(Link::dstNode).flatMap(Optional::stream)
-        ).distinct();
+        var linkedNodes = new ArrayList<Node>();
+        linkedNodes(linkedNodes);
+        return linkedNodes.stream();
+    }
+
+    /**
+     * Collect the distinct nodes on the other end of this node's links, sources
+     * of incoming links first. The output list is cleared first.
+     * Linear in the number of links, and doesn't allocate beyond growing the output list.
+     */
+    public void linkedNodes(List<Node> out) {
+        out.clear();
+        var stamp = ++linkedNodesStamp;
+        for (int i = 0; i < incomingLinks.size(); i++) {
+            var srcNode = incomingLinks.get(i).src.getNode();
+            if (srcNode.linkedStamp != stamp) {
+                srcNode.linkedStamp = stamp;
+                out.add(srcNode);
+            }
+        }
+        for (int i = 0; i < outgoingLinks.size(); i++) {
+            var dstNode = outgoingLinks.get(i).dst.getNode();
+            if (dstNode.linkedStamp != stamp) {
+                dstNode.linkedStamp = stamp;
+                out.add(dstNode);
+            }
+        }
     }
 
     public Stream<Pin> inputPins() {
@@ -86,7 +147,36 @@ public class Node extends EditorObject {
         return pins.stream().filter(filter);
     }
 
+    /**
+     * Mark derived style, like the character color, as needing to be resolved again
+     */
+    public void invalidateStyle() {
+        characterColorValid = false;
+    }
+
     public Color getCharacterColor(Metadata metadata) {
+        return resolveCharacterColor(metadata, new Color());
+    }
+
+    /**
+     * Cached version of {@link #getCharacterColor(Metadata)} for the render path,
+     * the returned instance is owned by this node and must not be modified.
+     */
+    Color getCharacterColor() {
+        var metadata = EditorObject.editor.metadata;
+        if (!characterColorValid || characterColorMetadata != metadata) {
+            if (metadata == null) {
+                characterColor.set(Color.CLEAR);
+            } else {
+                resolveCharacterColor(metadata, characterColor);
+            }
+            characterColorMetadata = metadata;
+            characterColorValid = true;
+        }
+        return characterColor;
+    }
+
+    private Color resolveCharacterColor(Metadata metadata, Color out) {
         var characterSelectProp = findProp("character-select");
         if (characterSelectProp.isPresent() && characterSelectProp.get().getData() != null) {
             var data = (PropSelect.Data) characterSelectProp.get().getData();
@@ -102,17 +192,45 @@ public class Node extends EditorObject {
                     var colorAsset = (Metadata.AssetRef) character.get().properties.get("color");
                     if (colorAsset != null) {
                         var hex = metadata.findAssetType("color").flatMap(color -> color.findItem(colorAsset.itemId));
-                        return hex.map(asset -> Color.valueOf(asset.name)).orElse(Color.CLEAR);
+                        if (hex.isPresent()) {
+                            return Color.valueOf(hex.get().name, out);
+                        }
                     }
                 }
             }
         }
-        return Color.CLEAR;
+        return out.set(Color.CLEAR);
     }
 
     @Override
     public void render() {
-        Color color = getCharacterColor(EditorObject.editor.metadata);
+        render(false);
+    }
+
+    /**
+     * Level of detail rendering for when the editor is zoomed out far enough
+     * that props aren't legible, only the header and its pins are drawn
+     * and the space for the content is reserved at its last rendered size.
+     */
+    public void renderHeaderOnly() {
+        render(true);
+    }
+
+    /**
+     * Submit the node as an empty placeholder of its last rendered size,
+     * this keeps it live in the node editor for selection and content bounds
+     * without paying for its header, props and background drawing.
+     */
+    public void renderCulled() {
+        NodeEditor.beginNode(id);
+        ImGui.dummy(boundsWidth(), boundsHeight());
+        // NOTE: culled nodes can still move, eg. when dragged as part of a selection
+        ImGui.getItemRectMin(position);
+        NodeEditor.endNode();
+    }
+
+    private void render(boolean headerOnly) {
+        Color color = getCharacterColor();
         NodeEditor.pushStyleColor(NodeEditorStyleColor.NodeBg, color.r, color.g, color.b, color.a);
 
         NodeEditor.beginNode(id);
@@ -123,17 +241,56 @@ public class Node extends EditorObject {
         ImGui.beginGroup();
         {
             renderNodeHeader();
-            renderNodeContent();
+            if (headerOnly) {
+                ImGui.dummy(width, bounds.content.size().y);
+            } else {
+                renderNodeContent();
+            }
         }
         ImGui.endGroup();
+        var lastWidth = bounds.node.size().x;
+        var lastHeight = bounds.node.size().y;
         bounds.node.update();
         position.set(bounds.node.min());
+        resized = (bounds.node.size().x != lastWidth || bounds.node.size().y != lastHeight);
 
         ImGui.popID();
         NodeEditor.endNode();
 
         NodeEditor.popStyleColor();
-        renderAfterNode();
+        if (headerOnly) {
+            renderBackground();
+        } else {
+            renderAfterNode();
+        }
+    }
+
+    /**
+     * Canvas space width of the node as of the last time it was rendered,
+     * or a reasonable estimate if it hasn't been rendered yet.
+     */
+    float boundsWidth() {
+        return Math.max(bounds.node.size().x, width);
+    }
+
+    /**
+     * Canvas space height of the node as of the last time it was rendered,
+     * or a reasonable estimate if it hasn't been rendered yet.
+     */
+    float boundsHeight() {
+        return Math.max(bounds.node.size().y, Pin.SIZE);
+    }
+
+    /**
+     * Release what the node's props only hold while they're drawn, for when the node stops being
+     * rendered in full, the props acquire it again when they're next rendered
+     */
+    void releaseContent() {
+        for (var prop : props) {
+            if (prop instanceof PropThumbnail thumbnail) {
+                thumbnail.releaseImage();
+            }
+        }
     }
 
     public void renderIds() {
@@ -144,10 +301,20 @@ public class Node extends EditorObject {
 
     @Override
     public void renderAfterNode() {
+        renderBackground();
+
+        // ensure renderAfterNode is called for all this node's 'child' objects
+        props.forEach(Prop::renderAfterNode);
+        pins.forEach(Pin::renderAfterNode);
+    }
+
+    private void renderBackground() {
         var draw     = NodeEditor.getNodeBackgroundDrawList(id);
-        var padding  = NodeEditor.getStyle().getNodePadding();
-        var rounding = NodeEditor.getStyle().getNodeRounding();
-        var border   = NodeEditor.getStyle().getNodeBorderWidth();
+        var style    = NodeEditor.getStyle();
+        var padding  = nodePadding;
+        var rounding = style.getNodeRounding();
+        var border   = style.getNodeBorderWidth();
+        style.getNodePadding(padding);
 
         // draw node background
         var img = Images.nodeHeader;
@@ -169,10 +336,6 @@ public class Node extends EditorObject {
         // draw the node header text, centered in the header rectangle
         // bounds.headerBackground.setWithPadding(bounds.header, padding, -border);
         // ImGuiUtil.drawTextCentered("Node Header", Colors.white, draw, bounds.headerBackground);
-
-        // ensure renderAfterNode is called for all this node's 'child' objects
-        props.forEach(Prop::renderAfterNode);
-        pins.forEach(Pin::renderAfterNode);
     }
 
     @Override
@@ -194,15 +357,15 @@ public class Node extends EditorObject {
     }
 
     private void renderNodeHeader() {
-        var textColumnSize = new ImVec2(width - 2 * Pin.SIZE, Pin.SIZE);
+        var textColumnWidth = width - 2 * Pin.SIZE;
 
         ImGui.beginGroup();
         {
             ImGuiLayout.beginColumn(Pin.SIZE);
             {
-                inputPins().forEach(Pin::render);
+                renderPins(PinKind.INPUT);
             }
-            ImGuiLayout.nextColumn(textColumnSize.x);
+            ImGuiLayout.nextColumn(textColumnWidth);
             {
                 ImGui.pushFont(Fonts.nodeHeader);
 
@@ -211,17 +374,18 @@ public class Node extends EditorObject {
                 //  the cursor is reset to the start of the column to draw the text
                 //  theoretically the cursor could be adjusted to center the text,
                 //  but there were quirks with that the first time I tried
-                var cursor = ImGui.getCursorPos();
+                var cursorX = ImGui.getCursorPosX();
+                var cursorY = ImGui.getCursorPosY();
                 ImGui.setNextItemAllowOverlap();
-                ImGui.dummy(textColumnSize);
-                ImGui.setCursorPos(cursor);
+                ImGui.dummy(textColumnWidth, Pin.SIZE);
+                ImGui.setCursorPos(cursorX, cursorY);
                 ImGui.textColored(ImGuiColors.white.asInt(), headerText);
 
                 ImGui.popFont();
             }
             ImGuiLayout.nextColumn(Pin.SIZE);
             {
-                outputPins().forEach(Pin::render);
+                renderPins(PinKind.OUTPUT);
             }
             ImGuiLayout.endColumn();
         }
@@ -229,6 +393,16 @@ public class Node extends EditorObject {
         bounds.header.update();
     }
 
+    private void renderPins(PinKind kind) {
+        // NOTE: indexed loop rather than inputPins()/outputPins() streams, this runs every frame
+        for (int i = 0; i < pins.size(); i++) {
+            var pin = pins.get(i);
+            if (pin.kind == kind) {
+                pin.render();
+            }
+        }
+    }
+
     private void renderNodeContent() {
         ImGuiLayout.beginColumn(width);
         {
@@ -33,7 +33,7 @@ public class NodeFactory {
             createProp(node, propType);
         }
 
-        var bindingResolver = new PropBindingResolver(editor);
+        var bindingResolver = new PropBindingResolver(editor.metadata);
         bindingResolver.resolveBindings(node, nodeType.props);
 
         return node;
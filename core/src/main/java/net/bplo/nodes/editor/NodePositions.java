@@ -0,0 +1,34 @@
+package net.bplo.nodes.editor;
+
+import imgui.extension.nodeditor.NodeEditor;
+
+/**
+ * Where the canvas positions of the editor's nodes are kept. While editing that's the node editor,
+ * see {@link #NODE_EDITOR}, but the code that saves, journals or undoes positions outside of rendering
+ * goes through the {@link Editor#positions} instead, so the graph can be edited without a node editor.
+ */
+public interface NodePositions {
+
+    float x(long nodeId);
+
+    float y(long nodeId);
+
+    void set(long nodeId, float x, float y);
+
+    NodePositions NODE_EDITOR = new NodePositions() {
+        @Override
+        public float x(long nodeId) {
+            return NodeEditor.getNodePositionX(nodeId);
+        }
+
+        @Override
+        public float y(long nodeId) {
+            return NodeEditor.getNodePositionY(nodeId);
+        }
+
+        @Override
+        public void set(long nodeId, float x, float y) {
+            NodeEditor.setNodePosition(nodeId, x, y);
+        }
+    };
+}
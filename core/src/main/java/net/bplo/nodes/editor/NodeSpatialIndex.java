@@ -0,0 +1,450 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the canvas space bounds of {@link Node}s, for answering
+ * "which nodes overlap this region" and "which nodes are nearest to this point"
+ * without scanning every node in the editor.
+ * <p>
+ * Each node is stored in every grid cell its bounds overlap. Bounds come from
+ * {@link Node#position} and the node's last rendered size, so the index is kept
+ * current by calling {@link #update(Node)} after a node is rendered; updates where
+ * the bounds haven't changed, or where they still cover the same cells, are cheap.
+ * Nodes that are added, or moved other than by being rendered somewhere else, are
+ * {@link #invalidate invalidated} so that whoever renders them knows to update them.
+ * <p>
+ * {@link Link}s that are {@link #addLink added} are indexed separately by the box spanning
+ * the nodes at both of their ends, which is refreshed whenever either node's bounds change,
+ * so that links passing through a region can be found without checking every link.
+ */
+public class NodeSpatialIndex {
+
+    /**
+     * Canvas units per grid cell, a bit larger than a typical node
+     * so that most nodes only occupy one or two cells.
+     */
+    public static final float CELL_SIZE = 512f;
+
+    /**
+     * Links spanning more cells than this aren't stored in cells,
+     * they're few and checked on every query instead
+     */
+    static final int MAX_LINK_CELLS = 64;
+
+    private static class Entry {
+        final Node node;
+        final Link link;
+        float minX, minY, maxX, maxY;
+        int cellMinX, cellMinY, cellMaxX, cellMaxY;
+        int queryStamp;
+        boolean isLong;
+
+        Entry(Node node, Link link) {
+            this.node = node;
+            this.link = link;
+            // empty cell range until first added to the grid
+            this.cellMaxX = cellMinX - 1;
+        }
+    }
+
+    private final LongMap<Entry> entries = new LongMap<>();
+    private final LongMap<Array<Entry>> cells = new LongMap<>();
+
+    private final LongMap<Entry> linkEntries = new LongMap<>();
+    private final LongMap<Array<Entry>> linkCells = new LongMap<>();
+    private final Array<Entry> longLinks = new Array<>(false, 16);
+
+    // nodes whose bounds need to be updated after they're next rendered, see invalidate()
+    private final Array<Node> staleNodes = new Array<>(false, 16);
+
+    // bounds of every cell that's ever been occupied, limits how far a nearest search expands
+    private int occupiedMinX = Integer.MAX_VALUE;
+    private int occupiedMinY = Integer.MAX_VALUE;
+    private int occupiedMaxX = Integer.MIN_VALUE;
+    private int occupiedMaxY = Integer.MIN_VALUE;
+
+    /**
+     * How far the node that the last {@link #update(Node)} call reported as moved was moved
+     */
+    public float movedX;
+    public float movedY;
+
+    // incremented per query so nodes spanning several cells are only visited once
+    private int queryStamp;
+
+    // nearest search candidates, sorted by ascending distance
+    private Entry[] nearestEntries = new Entry[0];
+    private float[] nearestDistances = new float[0];
+
+    public int size() {
+        return entries.size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < staleNodes.size; i++) {
+            staleNodes.get(i).boundsStale = false;
+        }
+        staleNodes.clear();
+        entries.clear();
+        cells.clear();
+        linkEntries.clear();
+        linkCells.clear();
+        longLinks.clear();
+        occupiedMinX = Integer.MAX_VALUE;
+        occupiedMinY = Integer.MAX_VALUE;
+        occupiedMaxX = Integer.MIN_VALUE;
+        occupiedMaxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Add the node, or refresh its bounds if it's already indexed.
+     * Returns true if the node was already indexed and its position changed, ie. it was moved.
+     */
+    public boolean update(Node node) {
+        var minX = node.position.x;
+        var minY = node.position.y;
+        var maxX = minX + node.boundsWidth();
+        var maxY = minY + node.boundsHeight();
+
+        var entry = entries.get(node.id);
+        var moved = false;
+        if (entry == null) {
+            entry = new Entry(node, null);
+            entries.put(node.id, entry);
+        } else if (entry.minX == minX && entry.minY == minY && entry.maxX == maxX && entry.maxY == maxY) {
+            return false;
+        } else {
+            moved = (entry.minX != minX || entry.minY != minY);
+            movedX = minX - entry.minX;
+            movedY = minY - entry.minY;
+        }
+
+        entry.minX = minX;
+        entry.minY = minY;
+        entry.maxX = maxX;
+        entry.maxY = maxY;
+        updateLinks(node.incomingLinks);
+        updateLinks(node.outgoingLinks);
+
+        var cellMinX = cell(minX);
+        var cellMinY = cell(minY);
+        var cellMaxX = cell(maxX);
+        var cellMaxY = cell(maxY);
+        var isNew = (entry.cellMaxX < entry.cellMinX);
+        if (!isNew && cellMinX == entry.cellMinX && cellMinY == entry.cellMinY
+                   && cellMaxX == entry.cellMaxX && cellMaxY == entry.cellMaxY) {
+            return moved;
+        }
+
+        if (!isNew) {
+            removeFromCells(entry, cells);
+        }
+        entry.cellMinX = cellMinX;
+        entry.cellMinY = cellMinY;
+        entry.cellMaxX = cellMaxX;
+        entry.cellMaxY = cellMaxY;
+        addToCells(entry, cells);
+        occupiedMinX = Math.min(occupiedMinX, entry.cellMinX);
+        occupiedMinY = Math.min(occupiedMinY, entry.cellMinY);
+        occupiedMaxX = Math.max(occupiedMaxX, entry.cellMaxX);
+        occupiedMaxY = Math.max(occupiedMaxY, entry.cellMaxY);
+        return moved;
+    }
+
+    public void remove(Node node) {
+        if (node.boundsStale) {
+            node.boundsStale = false;
+            staleNodes.removeValue(node, true);
+        }
+        var entry = entries.remove(node.id);
+        if (entry != null && entry.cellMaxX >= entry.cellMinX) {
+            removeFromCells(entry, cells);
+        }
+    }
+
+    /**
+     * Mark the node as needing {@link #update(Node)} after it's next rendered, wherever it is,
+     * for nodes that haven't been indexed yet or that were moved without being dragged, eg. by an undo,
+     * since their indexed bounds can't be relied on to find them
+     */
+    public void invalidate(Node node) {
+        if (node.boundsStale) return;
+        node.boundsStale = true;
+        staleNodes.add(node);
+    }
+
+    /**
+     * Move the nodes marked by {@link #invalidate(Node)} to the end of the output list,
+     * they're no longer marked afterward
+     */
+    public void takeStale(List<Node> out) {
+        for (int i = 0; i < staleNodes.size; i++) {
+            var node = staleNodes.get(i);
+            node.boundsStale = false;
+            out.add(node);
+        }
+        staleNodes.clear();
+    }
+
+    /**
+     * Start indexing the link, it's placed once the nodes at both of its ends are indexed
+     */
+    public void addLink(Link link) {
+        if (linkEntries.containsKey(link.id)) return;
+        var entry = new Entry(null, link);
+        linkEntries.put(link.id, entry);
+        updateLink(entry);
+    }
+
+    public void removeLink(Link link) {
+        var entry = linkEntries.remove(link.id);
+        if (entry != null) {
+            unplaceLink(entry);
+        }
+    }
+
+    private void updateLinks(LinkList links) {
+        for (int i = 0; i < links.size(); i++) {
+            var entry = linkEntries.get(links.get(i).id);
+            if (entry != null) {
+                updateLink(entry);
+            }
+        }
+    }
+
+    private void updateLink(Entry entry) {
+        var src = entries.get(entry.link.src.getNode().id);
+        var dst = entries.get(entry.link.dst.getNode().id);
+        if (src == null || dst == null) return;
+
+        entry.minX = Math.min(src.minX, dst.minX);
+        entry.minY = Math.min(src.minY, dst.minY);
+        entry.maxX = Math.max(src.maxX, dst.maxX);
+        entry.maxY = Math.max(src.maxY, dst.maxY);
+
+        var cellMinX = cell(entry.minX);
+        var cellMinY = cell(entry.minY);
+        var cellMaxX = cell(entry.maxX);
+        var cellMaxY = cell(entry.maxY);
+        var isPlaced = (entry.cellMaxX >= entry.cellMinX);
+        if (isPlaced && cellMinX == entry.cellMinX && cellMinY == entry.cellMinY
+                     && cellMaxX == entry.cellMaxX && cellMaxY == entry.cellMaxY) {
+            return;
+        }
+
+        if (isPlaced) {
+            unplaceLink(entry);
+        }
+        entry.cellMinX = cellMinX;
+        entry.cellMinY = cellMinY;
+        entry.cellMaxX = cellMaxX;
+        entry.cellMaxY = cellMaxY;
+        entry.isLong = ((long) cellMaxX - cellMinX + 1) * ((long) cellMaxY - cellMinY + 1) > MAX_LINK_CELLS;
+        if (entry.isLong) {
+            longLinks.add(entry);
+        } else {
+            addToCells(entry, linkCells);
+        }
+    }
+
+    private void unplaceLink(Entry entry) {
+        if (entry.cellMaxX < entry.cellMinX) return;
+        if (entry.isLong) {
+            longLinks.removeValue(entry, true);
+        } else {
+            removeFromCells(entry, linkCells);
+        }
+    }
+
+    /**
+     * Collect every indexed node whose bounds overlap the specified canvas space region.
+     * The output list is cleared first.
+     */
+    public void query(float minX, float minY, float maxX, float maxY, List<Node> out) {
+        out.clear();
+        var stamp = ++queryStamp;
+
+        var cellMinX = Math.max(cell(minX), occupiedMinX);
+        var cellMinY = Math.max(cell(minY), occupiedMinY);
+        var cellMaxX = Math.min(cell(maxX), occupiedMaxX);
+        var cellMaxY = Math.min(cell(maxY), occupiedMaxY);
+        for (int cy = cellMinY; cy <= cellMaxY; cy++) {
+            for (int cx = cellMinX; cx <= cellMaxX; cx++) {
+                var cellEntries = cells.get(key(cx, cy));
+                if (cellEntries == null) continue;
+
+                for (int i = 0; i < cellEntries.size; i++) {
+                    var entry = cellEntries.get(i);
+                    if (entry.queryStamp == stamp) continue;
+                    entry.queryStamp = stamp;
+
+                    if (entry.minX <= maxX && entry.maxX >= minX
+                     && entry.minY <= maxY && entry.maxY >= minY) {
+                        out.add(entry.node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect every indexed link whose box spanning both of its nodes overlaps the specified
+     * canvas space region, which includes links that only pass through it.
+     * The output list is cleared first.
+     */
+    public void queryLinks(float minX, float minY, float maxX, float maxY, List<Link> out) {
+        out.clear();
+        var stamp = ++queryStamp;
+
+        // NOTE: a link's box never extends past the nodes at its ends, so the occupied bounds apply
+        var cellMinX = Math.max(cell(minX), occupiedMinX);
+        var cellMinY = Math.max(cell(minY), occupiedMinY);
+        var cellMaxX = Math.min(cell(maxX), occupiedMaxX);
+        var cellMaxY = Math.min(cell(maxY), occupiedMaxY);
+        for (int cy = cellMinY; cy <= cellMaxY; cy++) {
+            for (int cx = cellMinX; cx <= cellMaxX; cx++) {
+                var cellEntries = linkCells.get(key(cx, cy));
+                if (cellEntries == null) continue;
+
+                for (int i = 0; i < cellEntries.size; i++) {
+                    var entry = cellEntries.get(i);
+                    if (entry.queryStamp == stamp) continue;
+                    entry.queryStamp = stamp;
+                    if (overlaps(entry, minX, minY, maxX, maxY)) {
+                        out.add(entry.link);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < longLinks.size; i++) {
+            var entry = longLinks.get(i);
+            if (overlaps(entry, minX, minY, maxX, maxY)) {
+                out.add(entry.link);
+            }
+        }
+    }
+
+    private static boolean overlaps(Entry entry, float minX, float minY, float maxX, float maxY) {
+        return entry.minX <= maxX && entry.maxX >= minX
+            && entry.minY <= maxY && entry.maxY >= minY;
+    }
+
+    /**
+     * Collect up to {@code k} indexed nodes nearest to the specified canvas space point,
+     * nearest first, by distance to their bounds (zero for nodes containing the point).
+     * The output list is cleared first.
+     * <p>
+     * Searches outward from the point's cell one ring of cells at a time,
+     * stopping once no unvisited cell could hold anything closer than the k-th best so far.
+     */
+    public void nearest(float x, float y, int k, List<Node> out) {
+        out.clear();
+        if (k <= 0 || entries.size == 0) return;
+
+        if (nearestEntries.length < k) {
+            nearestEntries = new Entry[k];
+            nearestDistances = new float[k];
+        }
+        var count = 0;
+        var stamp = ++queryStamp;
+
+        var cx = cell(x);
+        var cy = cell(y);
+        var maxRadius = Math.max(
+            Math.max(Math.abs(cx - occupiedMinX), Math.abs(occupiedMaxX - cx)),
+            Math.max(Math.abs(cy - occupiedMinY), Math.abs(occupiedMaxY - cy)));
+
+        for (int r = 0; r <= maxRadius; r++) {
+            // everything not yet found lies outside the rings already searched
+            if (count == k) {
+                var ringDistance = Math.max(0, r - 1) * CELL_SIZE;
+                if (ringDistance * ringDistance > nearestDistances[k - 1]) break;
+            }
+
+            for (int ry = cy - r; ry <= cy + r; ry++) {
+                var isEdgeRow = (ry == cy - r || ry == cy + r);
+                var step = isEdgeRow ? 1 : 2 * r;
+                for (int rx = cx - r; rx <= cx + r; rx += Math.max(1, step)) {
+                    var cellEntries = cells.get(key(rx, ry));
+                    if (cellEntries == null) continue;
+
+                    for (int i = 0; i < cellEntries.size; i++) {
+                        var entry = cellEntries.get(i);
+                        if (entry.queryStamp == stamp) continue;
+                        entry.queryStamp = stamp;
+                        count = insertNearest(entry, distanceSquared(entry, x, y), count, k);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            out.add(nearestEntries[i].node);
+            nearestEntries[i] = null;
+        }
+    }
+
+    private int insertNearest(Entry entry, float distance, int count, int k) {
+        if (count == k && distance >= nearestDistances[k - 1]) {
+            return count;
+        }
+
+        // insertion sort, k is expected to be small
+        var i = (count == k) ? k - 1 : count++;
+        while (i > 0 && nearestDistances[i - 1] > distance) {
+            nearestEntries[i] = nearestEntries[i - 1];
+            nearestDistances[i] = nearestDistances[i - 1];
+            i--;
+        }
+        nearestEntries[i] = entry;
+        nearestDistances[i] = distance;
+        return count;
+    }
+
+    private static float distanceSquared(Entry entry, float x, float y) {
+        var dx = Math.max(0, Math.max(entry.minX - x, x - entry.maxX));
+        var dy = Math.max(0, Math.max(entry.minY - y, y - entry.maxY));
+        return dx * dx + dy * dy;
+    }
+
+    private static void addToCells(Entry entry, LongMap<Array<Entry>> cells) {
+        for (int cy = entry.cellMinY; cy <= entry.cellMaxY; cy++) {
+            for (int cx = entry.cellMinX; cx <= entry.cellMaxX; cx++) {
+                var key = key(cx, cy);
+                var cellEntries = cells.get(key);
+                if (cellEntries == null) {
+                    cellEntries = new Array<>(false, 4);
+                    cells.put(key, cellEntries);
+                }
+                cellEntries.add(entry);
+            }
+        }
+    }
+
+    private static void removeFromCells(Entry entry, LongMap<Array<Entry>> cells) {
+        for (int cy = entry.cellMinY; cy <= entry.cellMaxY; cy++) {
+            for (int cx = entry.cellMinX; cx <= entry.cellMaxX; cx++) {
+                var key = key(cx, cy);
+                var cellEntries = cells.get(key);
+                if (cellEntries == null) continue;
+
+                cellEntries.removeValue(entry, true);
+                if (cellEntries.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    private static int cell(float coord) {
+        return (int) Math.floor(coord / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
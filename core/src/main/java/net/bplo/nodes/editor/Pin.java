@@ -1,5 +1,6 @@
 package net.bplo.nodes.editor;
 
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import imgui.ImGui;
 import imgui.ImVec4;
 import imgui.extension.nodeditor.NodeEditor;
@@ -15,6 +16,7 @@ public class Pin extends EditorObject {
 
     public static final float SIZE = 30f;
     private static final ImVec4 PIN_RECT_PADDING = new ImVec4(2, 2, 2, 2);
+    private static final ImVec4 UNLINKED_TINT = ImGuiColors.white.asVec4();
 
     public static boolean isInput(Pin pin)  { return pin.kind == PinKind.INPUT; }
     public static boolean isOutput(Pin pin) { return pin.kind == PinKind.OUTPUT; }
@@ -23,9 +25,18 @@ public class Pin extends EditorObject {
     public final PinType type;
     public final PinAttachment attachment;
 
+    // links starting or ending at this pin, see Link.connect()
+    public final LinkList outgoingLinks = new LinkList(LinkList.Role.SRC_PIN);
+    public final LinkList incomingLinks = new LinkList(LinkList.Role.DST_PIN);
+
     private final ImGuiWidgetBounds iconBounds;
     private final ImGuiWidgetBounds pinRectBounds;
 
+    // icon image for the current icon type, only rebuilt when the icon type or its region changes
+    private Icons.Type iconType;
+    private TextureRegion iconRegion;
+    private EditorUtil.Image iconImage;
+
     public Pin(Node node, PinKind kind, PinType type) {
         this(new PinAttachment.NodeType(node), kind, type);
         node.pins.add(this);
@@ -92,13 +103,10 @@ public class Pin extends EditorObject {
 
         ImGui.beginGroup();
         {
-            var pinIcon = buildPinIcon();
-            ImGui.image(
-                pinIcon.image.id(),
-                pinIcon.image.size(),
-                pinIcon.image.uv1(),
-                pinIcon.image.uv2(),
-                pinIcon.tint);
+            var isLinked = NodeEditor.pinHadAnyLinks(id);
+            var image = iconImage(iconType(isLinked));
+            var tint = iconTint(isLinked);
+            ImGui.image(image.id(), image.size(), image.uv1(), image.uv2(), tint);
             iconBounds.update();
 
             // configure the pin rectangle and pivot, ie. where link lines start from
@@ -181,39 +189,46 @@ public class Pin extends EditorObject {
             if (isSameProperty) return PinCompatibility.reject("Cannot link pins in same property");
         }
 
-        // TODO(brian): evaluate whether existing links
-        //  would invalidate the link under consideration
-//        var isLinkedTo = src.node.linkedTo(dst.node);
-//        else if (isLinkedTo) return Compatibility.reject("Cannot link pins already linked");
+        // check whether existing links would invalidate the link under consideration
+        // NOTE: flow links must form a dag, checked against the incrementally maintained order
+        //  rather than a full search since this is called every frame while a link is dragged
+        if (src.type == PinType.FLOW && editor.flowGraph.wouldCreateCycle(src.getNode(), dst.getNode())) {
+            return PinCompatibility.reject("Cannot create a cycle of flow links");
+        }
 
         return PinCompatibility.ok();
     }
 
-    private PinIcon buildPinIcon() {
-        record TintedIcon(Icons.Type icon, ImVec4 tint) {}
-
-        var isLinked = NodeEditor.pinHadAnyLinks(id);
-        var unlinkedColor = ImGuiColors.white.asVec4();
-        var tintedIcon = switch (type) {
-            case FLOW -> isLinked
-                ? new TintedIcon(Icons.Type.PIN_FLOW_LINKED, Link.Appearance.FLOW.color)
-                : new TintedIcon(Icons.Type.PIN_FLOW,        unlinkedColor);
+    private Icons.Type iconType(boolean isLinked) {
+        return switch (type) {
+            case FLOW -> isLinked ? Icons.Type.PIN_FLOW_LINKED : Icons.Type.PIN_FLOW;
             case DATA -> {
-                if (isLinked) {
-                    yield new TintedIcon(Icons.Type.PIN_DATA_LINKED, Link.Appearance.DATA.color);
-                } else {
-                    yield switch (kind) {
-                        case INPUT  -> new TintedIcon(Icons.Type.PIN_DATA_INPUT,  unlinkedColor);
-                        case OUTPUT -> new TintedIcon(Icons.Type.PIN_DATA_OUTPUT, unlinkedColor);
-                    };
-                }
+                if (isLinked) yield Icons.Type.PIN_DATA_LINKED;
+                yield switch (kind) {
+                    case INPUT  -> Icons.Type.PIN_DATA_INPUT;
+                    case OUTPUT -> Icons.Type.PIN_DATA_OUTPUT;
+                };
             }
         };
+    }
 
-        var region = tintedIcon.icon.get();
-        var image = EditorUtil.Image.from(region, SIZE, SIZE);
-        return new PinIcon(image, tintedIcon.tint);
+    private ImVec4 iconTint(boolean isLinked) {
+        if (!isLinked) {
+            return UNLINKED_TINT;
+        }
+        return switch (type) {
+            case FLOW -> Link.Appearance.FLOW.color;
+            case DATA -> Link.Appearance.DATA.color;
+        };
     }
 
-    private record PinIcon(EditorUtil.Image image, ImVec4 tint) {}
+    private EditorUtil.Image iconImage(Icons.Type icon) {
+        var region = icon.get();
+        if (icon != iconType || region != iconRegion) {
+            iconType = icon;
+            iconRegion = region;
+            iconImage = EditorUtil.Image.from(region, SIZE, SIZE);
+        }
+        return iconImage;
+    }
 }
@@ -31,6 +31,14 @@ public abstract class Prop extends EditorObject {
 
     public String name = "";
 
+    // data as of the last change recorded by the UndoHistory, what undoing the next change restores
+    Object undoData;
+
+    // cached widget label for the current name, see widgetLabel()
+    private String widgetLabelName;
+    private String widgetLabelId;
+    private String widgetLabel;
+
     public Prop(Node node) {
         super(Type.PROP);
         this.node = node;
@@ -49,6 +57,33 @@ public abstract class Prop extends EditorObject {
         node.props.add(this);
     }
 
+    /**
+     * Notify that this prop's data was changed, prefer this over calling
+     * {@link #onChange} directly so that state derived from props, like
+     * the owning node's style, is refreshed along with any bound props.
+     */
+    public void changed(Object newValue) {
+        node.invalidateStyle();
+        onChange.changed(newValue);
+        if (editor != null) {
+            editor.changes.markDirty(this);
+        }
+    }
+
+    /**
+     * Get an imgui widget label that displays this prop's {@link #name} with the specified hidden id,
+     * ie. {@code name##widgetId}. The label is cached and only rebuilt when the name or id changes,
+     * so callers should pass an id that's built once rather than one that's formatted per frame.
+     */
+    protected String widgetLabel(String widgetId) {
+        if (name != widgetLabelName || widgetId != widgetLabelId) {
+            widgetLabelName = name;
+            widgetLabelId = widgetId;
+            widgetLabel = name + "##" + widgetId;
+        }
+        return widgetLabel;
+    }
+
     public abstract String defaultName();
 
     public abstract Object getData();
@@ -10,6 +10,8 @@ public class PropFloat extends Prop {
     private static final String TAG = PropFloat.class.getSimpleName();
     private static final String DEFAULT_NAME = "Number";
 
+    private final String widgetId = "%s_%s_%s".formatted(node.label(), label(), TAG.toLowerCase());
+
     private ImFloat value;
 
     public float step = 0.1f;
@@ -61,8 +63,9 @@ public class PropFloat extends Prop {
             var nameWidth = ImGui.calcTextSizeX(name);
             ImGui.setNextItemWidth(node.width - nameWidth);
 
-            var label = "%s##%s_%s_%s".formatted(name, node.label(), label(), TAG.toLowerCase());
-            ImGui.inputFloat(label, value, step, stepFast, "%.1f");
+            if (ImGui.inputFloat(widgetLabel(widgetId), value, step, stepFast, "%.1f")) {
+                changed(value.get());
+            }
         }
         ImGui.endGroup();
         bounds.update();
@@ -3,14 +3,16 @@ package net.bplo.nodes.editor;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
 import imgui.ImGui;
-import imgui.type.ImString;
+import imgui.flag.ImGuiCol;
 import net.bplo.nodes.imgui.ImGuiLayout;
 
 public class PropInputText extends Prop {
 
     private static final String TAG = PropInputText.class.getSimpleName();
 
-    private final ImString text = new ImString(128);
+    // NOTE: the text is edited through a shared buffer, see TextEditBuffers
+    private String text = "";
+    private final String inputId = "##" + label();
 
     public PropInputText(Node node) {
         this(node, "");
@@ -27,7 +29,7 @@ public class PropInputText extends Prop {
     }
 
     private void init(String initialText) {
-        this.text.set(initialText != null ? initialText : "");
+        this.text = (initialText != null) ? initialText : "";
     }
 
     @Override
@@ -46,11 +48,15 @@ public class PropInputText extends Prop {
     }
 
     public String getText() {
-        return text.get();
+        return text;
     }
 
     public void setText(String newText) {
-        text.set(newText != null ? newText : "");
+        text = (newText != null) ? newText : "";
+        if (editor != null) {
+            editor.searchIndex.update(this);
+            editor.changes.markDirty(this);
+        }
     }
 
     @Override
@@ -62,9 +68,13 @@ public class PropInputText extends Prop {
             ImGui.text(name);
             ImGui.popFont();
 
-            ImGui.setNextItemWidth(contentWidth);
-            if (ImGui.inputText("##" + label(), text)) {
-                setText(text.get());
+            // NOTE: an input widget needs the text in a shared edit buffer, encoding it on every frame
+            //  it's drawn, so it's only drawn for the field being hovered or edited, see TextEditBuffers
+            if (TextEditBuffers.isActive(inputId) || isHoveringField(contentWidth)) {
+                ImGui.setNextItemWidth(contentWidth);
+                inputText(inputId);
+            } else {
+                renderField(contentWidth);
             }
         }
         ImGuiLayout.endColumn();
@@ -74,8 +84,43 @@ public class PropInputText extends Prop {
     @Override
     public void renderInfoPane(Editor editor) {
         var label = "%s##%s_%s".formatted(name, label(), "input_text");
-        if (ImGui.inputText(label, text)) {
-            setText(text.get());
+        inputText(label);
+    }
+
+    private static boolean isHoveringField(float width) {
+        var x = ImGui.getCursorScreenPosX();
+        var y = ImGui.getCursorScreenPosY();
+        return ImGui.isMouseHoveringRect(x, y, x + width, y + ImGui.getFrameHeight());
+    }
+
+    /**
+     * Draw the text in a frame that looks like the inactive input widget, without submitting one
+     */
+    private void renderField(float width) {
+        var style = ImGui.getStyle();
+        var minX = ImGui.getCursorScreenPosX();
+        var minY = ImGui.getCursorScreenPosY();
+        var maxX = minX + width;
+        var maxY = minY + ImGui.getFrameHeight();
+
+        var drawList = ImGui.getWindowDrawList();
+        drawList.addRectFilled(minX, minY, maxX, maxY, ImGui.getColorU32(ImGuiCol.FrameBg), style.getFrameRounding());
+        if (style.getFrameBorderSize() > 0) {
+            drawList.addRect(minX, minY, maxX, maxY, ImGui.getColorU32(ImGuiCol.Border), style.getFrameRounding(), 0, style.getFrameBorderSize());
+        }
+        drawList.pushClipRect(minX, minY, maxX - style.getFramePaddingX(), maxY, true);
+        drawList.addText(minX + style.getFramePaddingX(), minY + style.getFramePaddingY(), ImGui.getColorU32(ImGuiCol.Text), text);
+        drawList.popClipRect();
+
+        ImGui.dummy(width, maxY - minY);
+    }
+
+    private void inputText(String label) {
+        var buffer = TextEditBuffers.borrow(label, text);
+        var changed = ImGui.inputText(label, buffer);
+        TextEditBuffers.track(label, ImGui.isItemActive());
+        if (changed) {
+            setText(buffer.get());
         }
     }
 }
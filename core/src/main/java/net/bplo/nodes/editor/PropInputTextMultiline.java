@@ -3,27 +3,39 @@ package net.bplo.nodes.editor;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
 import imgui.ImGui;
-import imgui.ImVec2;
 import imgui.flag.ImGuiCol;
 import imgui.flag.ImGuiInputTextFlags;
 import imgui.flag.ImGuiStyleVar;
-import imgui.type.ImInt;
-import imgui.type.ImString;
 import net.bplo.nodes.imgui.ImGuiColors;
 import net.bplo.nodes.imgui.ImGuiLayout;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class PropInputTextMultiline extends Prop {
 
     private static final String TAG = PropInputTextMultiline.class.getSimpleName();
     private static final int MAX_VISIBLE_LINES = 5;
 
-    private final ImString text = new ImString(4096);
-    private final ImInt scrollPos = new ImInt(0);
+    private final TextDocument document = new TextDocument();
 
-    private String[] previewLines = new String[0];
-    private int totalLines = 0;
+    // offset of the first visible preview row, always the start of a wrapped row
+    private int scrollOffset;
+
+    // wrapped rows of the visible window only, rebuilt when the text, width or scroll offset changes,
+    // so the preview's cost depends on the visible rows rather than the length of the text
+    private final List<String> previewRows = new ArrayList<>();
+    private boolean previewHasMore;
+    private int previewEndOffset;
+    private int previewVersion = -1;
+    private float previewWidth = -1f;
+    private int previewScrollOffset = -1;
+
+    // advance width of latin-1 characters in the preview font, measured once when first needed
+    // NOTE: wrapping measures text with imgui, so it's deferred until render,
+    //  which also keeps loading graphs possible without an imgui context
+    private static float[] charAdvances;
+    private static float charAdvanceScale;
 
     public PropInputTextMultiline(Node node) {
         this(node, "");
@@ -40,9 +52,7 @@ public class PropInputTextMultiline extends Prop {
     }
 
     private void init(String initialText) {
-        this.text.set(initialText != null ? initialText : "");
-        this.text.inputData.isResizable = true;
-        updatePreviewLines();
+        this.document.setText(initialText);
     }
 
     @Override
@@ -61,16 +71,28 @@ public class PropInputTextMultiline extends Prop {
     }
 
     public String getText() {
-        return text.get();
+        return document.toString();
     }
 
     public void setText(String newText) {
-        text.set(newText != null ? newText : "");
-        updatePreviewLines();
+        document.setText(newText);
+        textChanged();
+    }
+
+    public TextDocument getDocument() {
+        return document;
+    }
+
+    private void textChanged() {
+        if (editor != null) {
+            editor.searchIndex.update(this);
+            editor.changes.markDirty(this);
+        }
     }
 
     @Override
     public void render() {
+        layoutPreview(node.width);
         var drawList = ImGui.getWindowDrawList();
 
         ImGui.beginGroup();
@@ -86,8 +108,7 @@ public class PropInputTextMultiline extends Prop {
 
                 // Draw text box background with border
                 var lineHeight = ImGui.getTextLineHeightWithSpacing();
-                var visibleLines = Math.min(totalLines, MAX_VISIBLE_LINES);
-                if (visibleLines < 1) visibleLines = 1;
+                var visibleLines = Math.max(1, previewRows.size());
                 var boxHeight = visibleLines * lineHeight;
 
                 ImGui.pushStyleColor(ImGuiCol.FrameBg, ImGuiColors.darkGray.asInt(0.2f));
@@ -99,29 +120,30 @@ public class PropInputTextMultiline extends Prop {
                 ImGui.beginGroup();
                 {
                     // Draw the frame background
-                    var startPos = ImGui.getCursorScreenPos();
+                    var startX = ImGui.getCursorScreenPosX();
+                    var startY = ImGui.getCursorScreenPosY();
                     ImGui.dummy(contentWidth, boxHeight);
-                    var endPos = new ImVec2(startPos.x + contentWidth, startPos.y + boxHeight);
+                    var endX = startX + contentWidth;
+                    var endY = startY + boxHeight;
 
                     // Draw background
                     drawList.addRectFilled(
-                        startPos.x, startPos.y,
-                        endPos.x, endPos.y,
+                        startX, startY,
+                        endX, endY,
                         ImGuiColors.darkerGray.asInt(), 2f);
 
                     // Draw border
                     drawList.addRect(
-                        startPos.x, startPos.y,
-                        endPos.x, endPos.y,
+                        startX, startY,
+                        endX, endY,
                         ImGuiColors.medGray.asInt(),
                         2f, 0, 1f);
 
-                    // Handle scrolling with mouse wheel
+                    // Handle scrolling with mouse wheel, a row at a time
                     if (ImGui.isItemHovered()) {
                         var wheel = ImGui.getIO().getMouseWheel();
                         if (wheel != 0) {
-                            var maxScroll = Math.max(0, totalLines - MAX_VISIBLE_LINES);
-                            scrollPos.set(Math.max(0, Math.min(maxScroll, scrollPos.get() - (int) wheel)));
+                            scroll(-(int) wheel);
 
                             // consume the scroll event to prevent it from zooming the node graph
                             ImGui.getIO().setMouseWheel(0);
@@ -129,37 +151,37 @@ public class PropInputTextMultiline extends Prop {
                     }
 
                     // Draw visible text lines
-                    var startLine = scrollPos.get();
-                    var endLine = Math.min(startLine + MAX_VISIBLE_LINES, previewLines.length);
-                    var textY = startPos.y + 5f; // Initial padding
+                    var textY = startY + 5f; // Initial padding
 
                     ImGui.pushFont(EditorUtil.Fonts.small);
                     var textColor = ImGuiColors.lightGray.asInt();
                     var textLineHeight = ImGui.getTextLineHeightWithSpacing();
-                    for (int i = startLine; i < endLine; i++) {
-                        var lineText = previewLines[i];
-                        drawList.addText(startPos.x + 5f, textY, textColor, lineText);
+                    for (var row : previewRows) {
+                        drawList.addText(startX + 5f, textY, textColor, row);
                         textY += textLineHeight;
                     }
                     ImGui.popFont();
 
                     // Draw scrollbar if needed
-                    if (totalLines > MAX_VISIBLE_LINES) {
+                    if (scrollOffset > 0 || previewHasMore) {
+                        // NOTE: rows past the visible window are never wrapped, so the scrollbar
+                        //  shows the visible window's position and size as a fraction of the text's length
+                        var length = Math.max(1, document.length());
                         var scrollbarWidth = 8f;
-                        var scrollbarX = endPos.x - scrollbarWidth - 3f;
-                        var scrollStart = startLine / (float) totalLines;
-                        var scrollSize = Math.min(1f, (float) MAX_VISIBLE_LINES / totalLines);
+                        var scrollbarX = endX - scrollbarWidth - 3f;
+                        var scrollStart = scrollOffset / (float) length;
+                        var scrollSize = Math.min(1f, Math.max(0.05f, (previewEndOffset - scrollOffset) / (float) length));
 
                         // Draw scrollbar background
                         drawList.addRectFilled(
-                            scrollbarX, startPos.y,
-                            scrollbarX + scrollbarWidth, endPos.y,
+                            scrollbarX, startY,
+                            scrollbarX + scrollbarWidth, endY,
                             ImGuiColors.darkGray.asInt(0.3f),
                             2f
                         );
 
                         // Draw scrollbar thumb
-                        var thumbY = startPos.y + (boxHeight * scrollStart);
+                        var thumbY = startY + (boxHeight * Math.min(scrollStart, 1f - scrollSize));
                         var thumbHeight = boxHeight * scrollSize;
 
                         drawList.addRectFilled(
@@ -188,108 +210,179 @@ public class PropInputTextMultiline extends Prop {
         var avail = ImGui.getContentRegionAvail();
         var flags = ImGuiInputTextFlags.AllowTabInput;
         var label = "##%s_%s".formatted(label(), "editable_text");
-        if (ImGui.inputTextMultiline(label, text, avail.x, avail.y - 30, flags)) {
-            setText(text.get());
-        }
-    }
 
-    private void updatePreviewLines() {
-        var width = node.width;
+        // NOTE: the widget edits a shared buffer, see TextEditBuffers,
+        //  edits are applied to the document as they're made
+        var buffer = TextEditBuffers.borrow(label, document.toString());
+        var changed = ImGui.inputTextMultiline(label, buffer, avail.x, avail.y - 30, flags);
+        TextEditBuffers.track(label, ImGui.isItemActive());
 
-        // Get the string contents
-        var str = text.get();
-        if (str.isEmpty()) {
-            previewLines = new String[]{"..."};
-            totalLines = 1;
-            return;
+        // only the span that differs from the document is replaced, rather than the whole text
+        if (changed && document.applyChange(buffer.get())) {
+            textChanged();
         }
+    }
 
-        // Split by existing line breaks
-        var lines = str.split("\n", -1);
+    // ------------------------------------------------------------------------
+    // Preview layout
+    // ------------------------------------------------------------------------
+
+    /**
+     * Wrap the rows of the visible window, starting from the scroll offset,
+     * if the text, width or scroll offset changed since they were last wrapped
+     */
+    void layoutPreview(float width) {
+        var version = document.version();
+        if (version == previewVersion && width == previewWidth && scrollOffset == previewScrollOffset) return;
+
+        // an edit may have moved the text out from under the scroll offset,
+        // keep the same line in view, from its first row
+        if (version != previewVersion) {
+            scrollOffset = document.lineStart(document.lineOfOffset(Math.min(scrollOffset, document.length())));
+        }
+        previewVersion = version;
+        previewWidth = width;
 
-        previewLines = applyWordWrapping(lines, width);
-        totalLines = previewLines.length;
+        wrapVisibleRows(width);
 
-        // Reset scroll position if needed
-        if (scrollPos.get() > Math.max(0, totalLines - MAX_VISIBLE_LINES)) {
-            scrollPos.set(Math.max(0, totalLines - MAX_VISIBLE_LINES));
+        // scrolled too far for the text to fill the window, eg. after text was deleted
+        while (previewRows.size() < MAX_VISIBLE_LINES && scrollOffset > 0) {
+            scrollOffset = previousRowStart(scrollOffset, width);
+            wrapVisibleRows(width);
         }
+        previewScrollOffset = scrollOffset;
     }
 
-    private String[] applyWordWrapping(String[] rawLines, float maxWidth) {
-        // Estimate the number of lines after wrapping
-        var wrappedLines = new ArrayList<String>();
-        var count = 0;
+    private void wrapVisibleRows(float width) {
+        previewRows.clear();
+        previewHasMore = false;
+
+        if (document.isEmpty()) {
+            previewRows.add("...");
+            previewEndOffset = 0;
+            return;
+        }
+
+        var offset = scrollOffset;
+        var line = document.lineOfOffset(offset);
+        while (true) {
+            if (previewRows.size() == MAX_VISIBLE_LINES) {
+                previewHasMore = true;
+                break;
+            }
 
-        for (String line : rawLines) {
-            // Skip empty line processing
-            if (line.isEmpty()) {
-                wrappedLines.add("");
-                continue;
+            var lineEnd = document.lineEnd(line);
+            var rowEnd = rowEnd(offset, lineEnd, width);
+            previewRows.add(document.substring(offset, rowEnd));
+            offset = skipWhitespace(rowEnd, lineEnd);
+            if (offset == lineEnd) {
+                if (++line == document.lineCount()) break;
+                offset = document.lineStart(line);
             }
+        }
+        previewEndOffset = offset;
+    }
 
-            // Process line wrapping
-            int start = 0;
-            while (start < line.length()) {
-                // Find how much text fits on this line
-                int end = findBreakPoint(line, start, maxWidth);
+    /**
+     * Scroll the preview by the specified number of rows, down for positive and up for negative
+     */
+    void scroll(int rows) {
+        var width = node.width;
+        for (; rows > 0 && previewHasMore; rows--) {
+            scrollOffset = nextRowStart(scrollOffset, width);
+            wrapVisibleRows(width);
+        }
+        for (; rows < 0 && scrollOffset > 0; rows++) {
+            scrollOffset = previousRowStart(scrollOffset, width);
+            wrapVisibleRows(width);
+        }
+        previewScrollOffset = scrollOffset;
+    }
 
-                // Add the wrapped text
-                wrappedLines.add(line.substring(start, end));
+    private int nextRowStart(int rowStart, float width) {
+        var line = document.lineOfOffset(rowStart);
+        var lineEnd = document.lineEnd(line);
+        var next = skipWhitespace(rowEnd(rowStart, lineEnd, width), lineEnd);
+        if (next < lineEnd) return next;
+        return (line + 1 < document.lineCount()) ? document.lineStart(line + 1) : rowStart;
+    }
 
-                // Move to next segment
-                start = end;
+    /**
+     * Start of the row before the one starting at the offset, which wraps
+     * the line the previous row is in up to that row, but no other lines
+     */
+    private int previousRowStart(int rowStart, float width) {
+        var line = document.lineOfOffset(rowStart);
+        var lineStart = document.lineStart(line);
+        if (rowStart == lineStart) {
+            if (line == 0) return 0;
+            line--;
+            lineStart = document.lineStart(line);
+            rowStart = document.lineEnd(line) + 1;
+        }
 
-                // Skip whitespace at the beginning of continued lines
-                while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
-                    start++;
-                }
+        var lineEnd = document.lineEnd(line);
+        var previous = lineStart;
+        var offset = lineStart;
+        while (offset < rowStart && offset < lineEnd) {
+            previous = offset;
+            offset = skipWhitespace(rowEnd(offset, lineEnd, width), lineEnd);
+        }
+        return previous;
+    }
 
-                // Safety check - limit total lines
-                count++;
-                if (count >= 100) {
-                    wrappedLines.add("...");
-                    return wrappedLines.toArray(new String[0]);
-                }
+    /**
+     * End of the row starting at the offset, the most text that fits in the width,
+     * broken after the last whitespace that fits if there is one
+     */
+    private int rowEnd(int start, int lineEnd, float maxWidth) {
+        var rowWidth = 0f;
+        var breakPoint = -1;
+        for (int end = start; end < lineEnd; end++) {
+            var c = document.charAt(end);
+            rowWidth += charAdvance(c);
+            if (rowWidth > maxWidth) {
+                return (breakPoint > start) ? breakPoint : Math.max(start + 1, end);
+            }
+            if (Character.isWhitespace(c)) {
+                breakPoint = end + 1;
             }
         }
-
-        return wrappedLines.toArray(new String[0]);
+        return lineEnd;
     }
 
-    private int findBreakPoint(String text, int start, float maxWidth) {
-        // Similar implementation to your existing method
-        int textLength = text.length();
-        int end = start;
+    /**
+     * Skip whitespace at the beginning of continued rows
+     */
+    private int skipWhitespace(int offset, int lineEnd) {
+        while (offset < lineEnd && Character.isWhitespace(document.charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
 
-        // Try to fit as much text as possible
-        while (end < textLength) {
-            int nextEnd = end + 1;
+    /**
+     * Use the specified latin-1 character advances instead of measuring the preview font,
+     * for laying out the preview without an imgui context
+     */
+    static void useCharAdvances(float[] advances) {
+        charAdvances = advances;
+        charAdvanceScale = 1f;
+    }
 
-            // Make sure calcTextSize uses the correct font
-            ImGui.pushFont(EditorUtil.Fonts.small);
-            float textWidth = ImGui.calcTextSize(text.substring(start, nextEnd)).x;
+    private static float charAdvance(char c) {
+        var font = EditorUtil.Fonts.small;
+        if (charAdvances == null) {
+            // match the size the preview is rendered at, calcTextSize used the same pushed font
+            ImGui.pushFont(font);
+            charAdvanceScale = ImGui.getFontSize() / font.getFontSize();
             ImGui.popFont();
 
-            if (textWidth > maxWidth) {
-                // Find a good break point
-                if (end > start) {
-                    int breakPoint = end;
-                    while (breakPoint > start && !Character.isWhitespace(text.charAt(breakPoint - 1))) {
-                        breakPoint--;
-                    }
-
-                    if (breakPoint > start) {
-                        return breakPoint;
-                    }
-                }
-
-                return Math.max(start + 1, end);
+            charAdvances = new float[256];
+            for (int i = 0; i < charAdvances.length; i++) {
+                charAdvances[i] = font.getCharAdvance(i) * charAdvanceScale;
             }
-
-            end = nextEnd;
         }
-
-        return textLength;
+        return (c < charAdvances.length) ? charAdvances[c] : font.getCharAdvance(c) * charAdvanceScale;
     }
 }
@@ -10,6 +10,8 @@ public class PropInteger extends Prop {
     private static final String TAG = PropInteger.class.getSimpleName();
     private static final String DEFAULT_NAME = "Number";
 
+    private final String widgetId = "%s_%s_%s".formatted(node.label(), label(), TAG.toLowerCase());
+
     private ImInt value;
 
     public PropInteger(Node node) {
@@ -58,8 +60,9 @@ public class PropInteger extends Prop {
             var nameWidth = ImGui.calcTextSizeX(name);
             ImGui.setNextItemWidth(node.width - nameWidth);
 
-            var label = "%s##%s_%s_%s".formatted(name, node.label(), label(), TAG.toLowerCase());
-            ImGui.inputInt(label, value);
+            if (ImGui.inputInt(widgetLabel(widgetId), value)) {
+                changed(value.get());
+            }
         }
         ImGui.endGroup();
         bounds.update();
@@ -3,7 +3,8 @@ package net.bplo.nodes.editor;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
 import imgui.ImGui;
-import imgui.ImVec2;
+import imgui.ImGuiStyle;
+import imgui.ImVec4;
 import imgui.flag.ImGuiCol;
 import imgui.flag.ImGuiDir;
 import imgui.flag.ImGuiStyleVar;
@@ -19,6 +20,13 @@ public class PropSelect extends Prop {
 
     private boolean showPopup = false;
 
+    // widget ids and style scratch, so rendering the emulated combo doesn't allocate per frame
+    private final String arrowButtonId = "##combo_arrow" + label();
+    private final String clickAreaId = "##combo_clickarea" + label();
+    private final ImVec4 styleColor = new ImVec4();
+    private String popupIdName;
+    private String popupId;
+
     public PropSelect(Node node) {
         this(node, new Data());
     }
@@ -61,43 +69,43 @@ public class PropSelect extends Prop {
         {
             var style = ImGui.getStyle();
             var frameHeight = ImGui.getFrameHeight();
-            var itemInnerSpacing = style.getItemInnerSpacing();
+            var itemInnerSpacingX = style.getItemInnerSpacingX();
 
             // Calculate sizes
             // Allocate portion of width to property name (similar to how ImGui lays out labels)
-            var labelWidth = Math.min(ImGui.calcTextSizeX(name) + itemInnerSpacing.x, contentWidth * 0.3f);
+            var labelWidth = Math.min(ImGui.calcTextSizeX(name) + itemInnerSpacingX, contentWidth * 0.3f);
             var arrowWidth = frameHeight; // arrow button is square
             var widgetAreaWidth = contentWidth - labelWidth;
-            var previewWidth = widgetAreaWidth - arrowWidth * 2 - itemInnerSpacing.x / 2f; // NOTE: this is fiddly, but it lines things up nicely
+            var previewWidth = widgetAreaWidth - arrowWidth * 2 - itemInnerSpacingX / 2f; // NOTE: this is fiddly, but it lines things up nicely
             var comboTotalWidth = previewWidth + arrowWidth;
 
             // Use ImGui's style colors for combo boxes
-            ImGui.pushStyleColor(ImGuiCol.FrameBg, style.getColor(ImGuiCol.FrameBg));
-            ImGui.pushStyleColor(ImGuiCol.FrameBgHovered, style.getColor(ImGuiCol.FrameBgHovered));
-            ImGui.pushStyleColor(ImGuiCol.FrameBgActive, style.getColor(ImGuiCol.FrameBgActive));
+            pushStyleColor(style, ImGuiCol.FrameBg);
+            pushStyleColor(style, ImGuiCol.FrameBgHovered);
+            pushStyleColor(style, ImGuiCol.FrameBgActive);
 
             // Draw the preview part to emulate the combo box
-            var cursorPos = ImGui.getCursorPos();
+            var cursorX = ImGui.getCursorPosX();
+            var cursorY = ImGui.getCursorPosY();
             ImGui.beginGroup();
             {
                 // Draw the frame background
                 var drawList = ImGui.getWindowDrawList();
-                var frameMin = ImGui.getCursorScreenPos();
+                var frameMinX = ImGui.getCursorScreenPosX();
+                var frameMinY = ImGui.getCursorScreenPosY();
                 ImGui.dummy(previewWidth, frameHeight);
-                var frameMax = new ImVec2(frameMin.x + previewWidth, frameMin.y + frameHeight);
 
                 // Draw frame
                 drawList.addRectFilled(
-                    frameMin.x, frameMin.y,
-                    frameMax.x, frameMax.y,
+                    frameMinX, frameMinY,
+                    frameMinX + previewWidth, frameMinY + frameHeight,
                     ImGui.getColorU32(ImGuiCol.FrameBg),
                     style.getFrameRounding());
 
                 // Draw preview text
-                var textPadding = style.getFramePadding();
                 drawList.addText(
-                    frameMin.x + textPadding.x,
-                    frameMin.y + textPadding.y,
+                    frameMinX + style.getFramePaddingX(),
+                    frameMinY + style.getFramePaddingY(),
                     ImGui.getColorU32(ImGuiCol.Text),
                     previewValue());
             }
@@ -105,17 +113,17 @@ public class PropSelect extends Prop {
 
             // Position and draw the arrow button
             ImGui.sameLine(0, 0);
-            if (ImGui.arrowButton("##combo_arrow" + label(), ImGuiDir.Down)) {
+            if (ImGui.arrowButton(arrowButtonId, ImGuiDir.Down)) {
                 showPopup = true;
             }
 
             // Add the property name after the combo preview and arrow button
-            ImGui.sameLine(0, itemInnerSpacing.x);
+            ImGui.sameLine(0, itemInnerSpacingX);
             ImGui.text(name);
 
             // Create an invisible button over just the combo area for better clicking
-            ImGui.setCursorPos(cursorPos);
-            if (ImGui.invisibleButton("##combo_clickarea" + label(), comboTotalWidth, frameHeight)) {
+            ImGui.setCursorPos(cursorX, cursorY);
+            if (ImGui.invisibleButton(clickAreaId, comboTotalWidth, frameHeight)) {
                 showPopup = true;
             }
 
@@ -138,9 +146,9 @@ public class PropSelect extends Prop {
 
         // Match standard combo popup styling
         var style = ImGui.getStyle();
-        ImGui.pushStyleVar(ImGuiStyleVar.WindowPadding, style.getWindowPadding());
-        ImGui.pushStyleVar(ImGuiStyleVar.FramePadding, style.getFramePadding());
-        ImGui.pushStyleColor(ImGuiCol.PopupBg, style.getColor(ImGuiCol.PopupBg));
+        ImGui.pushStyleVar(ImGuiStyleVar.WindowPadding, style.getWindowPaddingX(), style.getWindowPaddingY());
+        ImGui.pushStyleVar(ImGuiStyleVar.FramePadding, style.getFramePaddingX(), style.getFramePaddingY());
+        pushStyleColor(style, ImGuiCol.PopupBg);
 
         if (ImGui.beginPopup(popupId())) {
             // Draw options
@@ -151,7 +159,7 @@ public class PropSelect extends Prop {
                 if (ImGui.selectable(option, selected)) {
                     data.selectedIndex = i;
                     ImGui.closeCurrentPopup();
-                    onChange.changed(data);
+                    changed(data);
                 }
             }
 
@@ -171,7 +179,7 @@ public class PropSelect extends Prop {
                 var selected = data.selectedIndex == i;
                 if (ImGui.selectable(option, selected)) {
                     data.selectedIndex = i;
-                    onChange.changed(data);
+                    changed(data);
                 }
             }
 
@@ -183,11 +191,21 @@ public class PropSelect extends Prop {
         return data.getSelectedOption();
     }
 
+    private void pushStyleColor(ImGuiStyle style, int imGuiCol) {
+        style.getColor(imGuiCol, styleColor);
+        ImGui.pushStyleColor(imGuiCol, styleColor);
+    }
+
     private String popupId() {
-        var niceName = name.toLowerCase()
-            .replaceAll("[^a-z0-9]+", "_")
-            .replaceAll("^_|_$", "");
-        return "##%s-popup-%s-%s".formatted(TAG.toLowerCase(), niceName, node.label());
+        // NOTE: only rebuilt when the name changes, this is looked up every frame
+        if (name != popupIdName) {
+            var niceName = name.toLowerCase()
+                .replaceAll("[^a-z0-9]+", "_")
+                .replaceAll("^_|_$", "");
+            popupIdName = name;
+            popupId = "##%s-popup-%s-%s".formatted(TAG.toLowerCase(), niceName, node.label());
+        }
+        return popupId;
     }
 
     public static class Data {
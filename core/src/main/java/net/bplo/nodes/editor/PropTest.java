@@ -45,21 +45,26 @@ public class PropTest extends Prop {
 
             ImGuiLayout.beginColumn(Pin.SIZE);
             {
-                inputPins().forEach(Pin::render);
+                for (var pin : pins) {
+                    if (Pin.isInput(pin)) pin.render();
+                }
             }
             ImGuiLayout.nextColumn(contentWidth);
             {
                 // NOTE: same approach as in Node.render() to ensure a fixed column width
                 //  when the only widget in the column is text, which collapses to fit the string
-                var cursorPos = ImGui.getCursorPos();
+                var cursorX = ImGui.getCursorPosX();
+                var cursorY = ImGui.getCursorPosY();
                 ImGui.setNextItemAllowOverlap();
                 ImGui.dummy(contentWidth, Pin.SIZE);
-                ImGui.setCursorPos(cursorPos);
+                ImGui.setCursorPos(cursorX, cursorY);
                 ImGui.text("prop");
             }
             ImGuiLayout.nextColumn(Pin.SIZE);
             {
-                outputPins().forEach(Pin::render);
+                for (var pin : pins) {
+                    if (Pin.isOutput(pin)) pin.render();
+                }
             }
             ImGuiLayout.endColumn();
         }
@@ -5,13 +5,21 @@ import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
 import imgui.ImGui;
 import net.bplo.nodes.editor.meta.Metadata;
+import net.bplo.nodes.imgui.ImGuiColors;
 
 public class PropThumbnail extends Prop {
 
     private static final String TAG = PropThumbnail.class.getSimpleName();
+    private static final String LOADING_TEXT = "Loading...";
+    private static final String FAILED_TEXT = "Image unavailable";
 
     public boolean thumbnailVisible = true;
     private EditorWidget.Image image;
+    // cache key of the texture acquired for the image, released when the image is cleared
+    // or stops being drawn, so the resolver can evict it while it's off screen
+    private String imageCacheKey;
+    // set once the resolver gives up on the image, so it isn't asked again every frame
+    private boolean imageFailed;
 
     public Metadata.AssetRef<Texture> assetRef;
 
@@ -40,23 +48,36 @@ public class PropThumbnail extends Prop {
 
     @Override
     public void render() {
-        if (image == null && assetRef != null) {
+        if (thumbnailVisible && image == null && assetRef != null && !imageFailed) {
             // try to resolve the referenced asset and use it to create the thumbnail image
             // TODO(brian): allow override of thumbnail size for property
-            assetRef.resolve(editor.assetResolver, Texture.class)
-                .ifPresent(texture -> image = EditorWidget.Image.from(texture));
+            // NOTE: acquired rather than resolved so the texture can't be evicted while displayed,
+            //  and asynchronously so the image decode doesn't stall the frame, see AssetResolver.update()
+            var texture = editor.assetResolver.acquireAsync(assetRef);
+            if (texture.isPresent()) {
+                image = EditorWidget.Image.from(texture.get());
+                imageCacheKey = assetRef.cacheKey();
+            } else {
+                imageFailed = editor.assetResolver.hasFailed(assetRef);
+            }
         }
 
         ImGui.beginGroup();
         {
-            var label = name + "##" + label();
-            if (ImGui.checkbox(label, thumbnailVisible)) {
+            if (ImGui.checkbox(widgetLabel(label()), thumbnailVisible)) {
                 thumbnailVisible = !thumbnailVisible;
             }
+            if (!thumbnailVisible) {
+                releaseImage();
+            }
             if (thumbnailVisible && image != null) {
-                var cursorPos = ImGui.getCursorPos();
-                ImGui.setCursorPosX(cursorPos.x + (node.width - image.size().x) / 2f);
+                ImGui.setCursorPosX(ImGui.getCursorPosX() + (node.width - image.size().x) / 2f);
                 ImGui.image(image.id(), image.size(), image.uv1(), image.uv2());
+            } else if (thumbnailVisible && imageFailed) {
+                ImGui.textColored(ImGuiColors.red.asInt(), FAILED_TEXT);
+            } else if (thumbnailVisible && assetRef != null) {
+                // placeholder while the texture is decoded in the background
+                ImGui.textDisabled(LOADING_TEXT);
             }
         }
         ImGui.endGroup();
@@ -64,7 +85,18 @@ public class PropThumbnail extends Prop {
     }
 
     public void clearImage() {
+        imageFailed = false;
+        releaseImage();
+    }
+
+    /**
+     * Release the texture held for the image while it isn't drawn, eg. when its node is culled,
+     * it's acquired again the next time the thumbnail is rendered, from the cache if it wasn't evicted
+     */
+    void releaseImage() {
         if (image == null) return;
         image = null;
+        editor.assetResolver.release(imageCacheKey);
+        imageCacheKey = null;
     }
 }
@@ -0,0 +1,567 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the text in a graph, {@link Node#headerText} and the contents
+ * of {@link PropInputText} and {@link PropInputTextMultiline} props, for answering
+ * search queries without scanning every node in the editor.
+ * <p>
+ * Each indexed text is a document, tokenized into lowercase runs of letters and digits.
+ * Every distinct term keeps a posting list of the documents it occurs in, and the
+ * term dictionary is sorted so the terms sharing a prefix are one contiguous range.
+ * Each pair of adjacent terms is also indexed, so a phrase is looked up by its pairs
+ * rather than by checking the order of its terms in every document containing them.
+ * Documents are kept current by {@link Editor} as objects are added and removed,
+ * and by the text props whenever their text changes, see {@link #update(Prop)}.
+ * <p>
+ * Queries are a list of words, each matching any term it's a prefix of, and
+ * quoted phrases, matching those exact terms in consecutive order. A document
+ * has to match every word and phrase, hits are ranked by term frequency weighted
+ * by how rare each term is, favoring exact over prefix matches and node headers over props.
+ * <p>
+ * NOTE: only nodes in the editor are indexed, a lazily loaded graph's nodes
+ *  become searchable as they're materialized, see {@link LazyNodeGraph}
+ */
+public class SearchIndex {
+
+    // a prefix match is worth less than the whole word matching exactly
+    private static final float PREFIX_MATCH_WEIGHT = 0.5f;
+    private static final float HEADER_BOOST = 1.5f;
+
+    // queries for phrases longer than a pair, with more candidates than this,
+    // only check the full phrases in ranked docs
+    private static final int MAX_PHRASE_CHECKS = 4096;
+
+    public record Hit(Node node, EditorObject source, String text, float score) {}
+
+    private static class Term {
+        final int id;
+        // null for a pair of adjacent terms, which is keyed by the ids of both, see pairKey()
+        final String text;
+        final long pairKey;
+        // parallel posting arrays, unordered, removal swaps the last posting into the hole
+        int[] docs = new int[1];
+        int[] freqs = new int[1];
+        int size;
+
+        Term(int id, String text, long pairKey) {
+            this.id = id;
+            this.text = text;
+            this.pairKey = pairKey;
+        }
+    }
+
+    /**
+     * Terms that a hit must contain at least one of, either the range of terms
+     * starting with a query word, or a single exact term or pair from a quoted phrase
+     */
+    private record Clause(String word, Term[] terms) {
+        int cost() {
+            var cost = 0;
+            for (var term : terms) {
+                cost += term.size;
+            }
+            return cost;
+        }
+
+        boolean isExact(Term term) {
+            return word == null || word.equals(term.text);
+        }
+    }
+
+    private static class Doc {
+        final EditorObject source;
+        final Node node;
+        final String text;
+        // the text's full token sequence, for matching phrases
+        final Term[] tokens;
+        // each distinct term and pair, and the index of this doc's posting in its posting list
+        final Term[] terms;
+        final int[] slots;
+
+        Doc(EditorObject source, Node node, String text, Term[] tokens, int termCount) {
+            this.source = source;
+            this.node = node;
+            this.text = text;
+            this.tokens = tokens;
+            this.terms = new Term[termCount];
+            this.slots = new int[termCount];
+        }
+    }
+
+    private final TreeMap<String, Term> dictionary = new TreeMap<>();
+    private final LongMap<Term> pairs = new LongMap<>();
+    private int nextTermId;
+    private final ObjectIntMap<EditorObject> docIds = new ObjectIntMap<>();
+    private final IntArray freeDocIds = new IntArray();
+    private Doc[] docs = new Doc[64];
+    // per doc score multiplier, normalizes for text length and boosts headers
+    private float[] docNorms = new float[64];
+    private int docCount;
+    private int version;
+
+    // per doc query state, each query reserves a stamp per clause, starting from queryStamp,
+    // a doc stamped queryStamp + c has matched clauses 0 through c, older stamps are stale
+    private int[] queryStamps = new int[64];
+    private float[] scores = new float[64];
+    private int queryStamp;
+    private int lastQueryStamp;
+    private boolean matchCountExact = true;
+
+    // reused across queries
+    private final StringBuilder tokenBuilder = new StringBuilder();
+    private final List<String> tokenList = new ArrayList<>();
+    private final ObjectIntMap<Term> termFreqs = new ObjectIntMap<>();
+    private int[] candidates = new int[64];
+    private int candidateCount;
+    // min heap of the best ranked candidates
+    private int[] heapDocs = new int[0];
+    private float[] heapScores = new float[0];
+    private int heapSize;
+
+    public int size() {
+        return docCount;
+    }
+
+    /**
+     * Incremented whenever the indexed text changes, so search results
+     * can be cached and only re-queried when they may be stale.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Whether the match count returned by the last search was exact. Queries for phrases
+     * of more than two words with many candidates only check the whole phrase in the docs
+     * that were ranked, their count also includes docs that have the phrase's pairs in another order.
+     */
+    public boolean isMatchCountExact() {
+        return matchCountExact;
+    }
+
+    public void clear() {
+        dictionary.clear();
+        pairs.clear();
+        nextTermId = 0;
+        docIds.clear();
+        freeDocIds.clear();
+        Arrays.fill(docs, null);
+        docCount = 0;
+        version++;
+    }
+
+    /**
+     * Index the object's text if it's a node or a text prop, other objects are ignored.
+     * A node's props are indexed separately, as they're added to the editor.
+     */
+    public void add(EditorObject object) {
+        switch (object) {
+            case Node node                     -> addDoc(node, node, node.headerText);
+            case PropInputText prop            -> addDoc(prop, prop.node, prop.getText());
+            case PropInputTextMultiline prop   -> addDoc(prop, prop.node, prop.getText());
+            case null, default -> {}
+        }
+    }
+
+    /**
+     * Re-index a text prop after its text changed,
+     * props that aren't in the index yet are ignored.
+     */
+    public void update(Prop prop) {
+        var docId = docIds.get(prop, -1);
+        if (docId == -1) return;
+
+        var text = switch (prop) {
+            case PropInputText textProp           -> textProp.getText();
+            case PropInputTextMultiline textProp  -> textProp.getText();
+            default -> null;
+        };
+        if (text == null || text.equals(docs[docId].text)) return;
+
+        removeDoc(docId);
+        addDoc(prop, prop.node, text);
+    }
+
+    public void remove(EditorObject object) {
+        var docId = docIds.get(object, -1);
+        if (docId != -1) {
+            removeDoc(docId);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Searching
+    // ------------------------------------------------------------------------
+
+    /**
+     * Find the documents matching every word and quoted phrase in the query,
+     * adding up to maxHits of them to the out list, best match first.
+     * Returns the total number of matching documents, which may be more than maxHits,
+     * see {@link #isMatchCountExact()}.
+     */
+    public int search(String query, int maxHits, List<Hit> out) {
+        matchCountExact = true;
+
+        // parse the query into clauses, each a set of terms that every hit must contain at least one of
+        var clauses = new ArrayList<Clause>();
+        var phrases = new ArrayList<Term[]>();
+        var inPhrase = false;
+        var start = 0;
+        for (int i = 0; i <= query.length(); i++) {
+            if (i < query.length() && query.charAt(i) != '"') continue;
+
+            tokenize(query.substring(start, i), tokenList);
+            if (inPhrase) {
+                // NOTE: a phrase with a term or pair that doesn't occur anywhere can't match
+                var phrase = new Term[tokenList.size()];
+                for (int t = 0; t < phrase.length; t++) {
+                    phrase[t] = dictionary.get(tokenList.get(t));
+                    if (phrase[t] == null) return 0;
+                }
+                if (phrase.length == 1) {
+                    clauses.add(new Clause(null, phrase));
+                }
+                for (int t = 1; t < phrase.length; t++) {
+                    var pair = pairs.get(pairKey(phrase[t - 1], phrase[t]));
+                    if (pair == null) return 0;
+                    clauses.add(new Clause(null, new Term[] { pair }));
+                }
+                // the pairs are all in a doc that contains a longer phrase, but not necessarily in order
+                if (phrase.length > 2) {
+                    phrases.add(phrase);
+                }
+            } else {
+                for (var word : tokenList) {
+                    var range = dictionary.subMap(word, true, word + Character.MAX_VALUE, false).values();
+                    if (range.isEmpty()) return 0;
+                    clauses.add(new Clause(word, range.toArray(new Term[0])));
+                }
+            }
+            inPhrase = !inPhrase;
+            start = i + 1;
+        }
+        if (clauses.isEmpty()) return 0;
+
+        // visit the cheapest clause first, only the docs it matches are candidates,
+        // later clauses just mark and score the candidates they also match
+        clauses.sort(Comparator.comparingInt(Clause::cost));
+        nextQueryStamp(clauses.size());
+        candidateCount = 0;
+        for (var term : clauses.get(0).terms) {
+            seed(term, clauseWeight(clauses.get(0), term));
+        }
+        for (int c = 1; c < clauses.size(); c++) {
+            var clause = clauses.get(c);
+            for (var term : clause.terms) {
+                filter(term, clauseWeight(clause, term), c);
+            }
+        }
+
+        // checking a phrase means scanning the doc's tokens, so with many candidates
+        // only the docs that would make it into the ranked hits are checked
+        matchCountExact = phrases.isEmpty() || candidateCount <= MAX_PHRASE_CHECKS;
+        var matchCount = rank(clauses.size(), phrases, matchCountExact, Math.max(0, maxHits));
+
+        // popping the min heap yields the hits worst first, fill the output from the back
+        var first = out.size();
+        for (int i = 0; i < heapSize; i++) {
+            out.add(null);
+        }
+        for (int i = heapSize - 1; i >= 0; i--) {
+            var doc = docs[heapDocs[0]];
+            out.set(first + i, new Hit(doc.node, doc.source, doc.text, heapScores[0]));
+            heapDocs[0] = heapDocs[i];
+            heapScores[0] = heapScores[i];
+            siftDown(heapDocs, heapScores, i);
+        }
+        return matchCount;
+    }
+
+    /**
+     * Collect the candidates that matched every clause and phrase into a min heap
+     * of the best maxHits, returns the number of candidates that matched
+     */
+    private int rank(int clauseCount, List<Term[]> phrases, boolean checkAllPhrases, int maxHits) {
+        if (heapDocs.length < maxHits) {
+            heapDocs = new int[maxHits];
+            heapScores = new float[maxHits];
+        }
+        heapSize = 0;
+
+        var matchCount = 0;
+        var matchedAll = queryStamp + clauseCount - 1;
+        var candidateDocs = candidates;
+        var stamps = queryStamps;
+        var docScores = scores;
+        var norms = docNorms;
+        for (int i = 0; i < candidateCount; i++) {
+            var docId = candidateDocs[i];
+            if (stamps[docId] != matchedAll) continue;
+
+            var score = docScores[docId] * norms[docId];
+            var ranked = (heapSize < maxHits || (heapSize > 0 && score > heapScores[0]));
+            if ((checkAllPhrases || ranked) && !phrases.isEmpty() && !containsPhrases(docs[docId], phrases)) {
+                continue;
+            }
+            matchCount++;
+
+            if (!ranked) continue;
+            if (heapSize < maxHits) {
+                heapDocs[heapSize] = docId;
+                heapScores[heapSize] = score;
+                siftUp(heapDocs, heapScores, heapSize++);
+            } else {
+                heapDocs[0] = docId;
+                heapScores[0] = score;
+                siftDown(heapDocs, heapScores, heapSize);
+            }
+        }
+        return matchCount;
+    }
+
+    /**
+     * Make every doc the term occurs in a candidate, the first clause's terms are the only candidates
+     */
+    private void seed(Term term, float weight) {
+        var stamp = queryStamp;
+        var stamps = queryStamps;
+        var docScores = scores;
+        var docs = term.docs;
+        var freqs = term.freqs;
+        if (candidates.length < candidateCount + term.size) {
+            candidates = Arrays.copyOf(candidates, Math.max(candidateCount + term.size, candidates.length * 2));
+        }
+        var candidateDocs = candidates;
+        var count = candidateCount;
+        for (int p = 0; p < term.size; p++) {
+            var docId = docs[p];
+            if (stamps[docId] != stamp) {
+                stamps[docId] = stamp;
+                docScores[docId] = 0f;
+                candidateDocs[count++] = docId;
+            }
+            docScores[docId] += freqs[p] * weight;
+        }
+        candidateCount = count;
+    }
+
+    /**
+     * Mark and score the candidates the term occurs in that matched every clause before this one
+     */
+    private void filter(Term term, float weight, int clause) {
+        // NOTE: a clause with several terms can match the same doc more than once
+        var matchedPrevious = queryStamp + clause - 1;
+        var matchedThis = queryStamp + clause;
+        var stamps = queryStamps;
+        var docScores = scores;
+        var docs = term.docs;
+        var freqs = term.freqs;
+        for (int p = 0; p < term.size; p++) {
+            var docId = docs[p];
+            var stamp = stamps[docId];
+            if (stamp != matchedPrevious && stamp != matchedThis) continue;
+
+            stamps[docId] = matchedThis;
+            docScores[docId] += freqs[p] * weight;
+        }
+    }
+
+    private float clauseWeight(Clause clause, Term term) {
+        return idf(term) * (clause.isExact(term) ? 1f : PREFIX_MATCH_WEIGHT);
+    }
+
+    private float idf(Term term) {
+        return (float) Math.log(1.0 + (double) docCount / term.size);
+    }
+
+    private static boolean containsPhrases(Doc doc, List<Term[]> phrases) {
+        for (var phrase : phrases) {
+            if (!containsPhrase(doc.tokens, phrase)) return false;
+        }
+        return true;
+    }
+
+    private static boolean containsPhrase(Term[] tokens, Term[] phrase) {
+        outer:
+        for (int i = 0; i + phrase.length <= tokens.length; i++) {
+            for (int j = 0; j < phrase.length; j++) {
+                if (tokens[i + j] != phrase[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void siftUp(int[] heapDocs, float[] heapScores, int index) {
+        while (index > 0) {
+            var parent = (index - 1) / 2;
+            if (heapScores[parent] <= heapScores[index]) break;
+            swap(heapDocs, heapScores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heapDocs, float[] heapScores, int size) {
+        var index = 0;
+        while (true) {
+            var smallest = index;
+            var left = 2 * index + 1;
+            var right = left + 1;
+            if (left  < size && heapScores[left]  < heapScores[smallest]) smallest = left;
+            if (right < size && heapScores[right] < heapScores[smallest]) smallest = right;
+            if (smallest == index) break;
+            swap(heapDocs, heapScores, smallest, index);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heapDocs, float[] heapScores, int a, int b) {
+        var doc = heapDocs[a];
+        heapDocs[a] = heapDocs[b];
+        heapDocs[b] = doc;
+        var score = heapScores[a];
+        heapScores[a] = heapScores[b];
+        heapScores[b] = score;
+    }
+
+    private void nextQueryStamp(int clauseCount) {
+        if (lastQueryStamp > Integer.MAX_VALUE - clauseCount - 1) {
+            // about to wrap around, stale stamps could collide with new ones
+            Arrays.fill(queryStamps, 0);
+            lastQueryStamp = 0;
+        }
+        // skip past every stamp reserved by the previous query
+        queryStamp = lastQueryStamp + 1;
+        lastQueryStamp = queryStamp + clauseCount - 1;
+    }
+
+    // ------------------------------------------------------------------------
+    // Indexing
+    // ------------------------------------------------------------------------
+
+    private void addDoc(EditorObject source, Node node, String text) {
+        if (docIds.containsKey(source)) {
+            remove(source);
+        }
+        if (text == null) text = "";
+
+        tokenize(text, tokenList);
+        var tokens = new Term[tokenList.size()];
+        termFreqs.clear();
+        for (int i = 0; i < tokens.length; i++) {
+            var token = tokenList.get(i);
+            var term = dictionary.get(token);
+            if (term == null) {
+                term = new Term(nextTermId++, token, -1);
+                dictionary.put(token, term);
+            }
+            tokens[i] = term;
+            termFreqs.getAndIncrement(term, 0, 1);
+        }
+        for (int i = 1; i < tokens.length; i++) {
+            var pairKey = pairKey(tokens[i - 1], tokens[i]);
+            var pair = pairs.get(pairKey);
+            if (pair == null) {
+                pair = new Term(nextTermId++, null, pairKey);
+                pairs.put(pairKey, pair);
+            }
+            termFreqs.getAndIncrement(pair, 0, 1);
+        }
+
+        var docId = (freeDocIds.size > 0) ? freeDocIds.pop() : docCount;
+        ensureDocCapacity(docId + 1);
+        var doc = new Doc(source, node, text, tokens, termFreqs.size);
+        docs[docId] = doc;
+        docNorms[docId] = (source instanceof Node ? HEADER_BOOST : 1f) / (float) Math.sqrt(Math.max(1, tokens.length));
+        docIds.put(source, docId);
+        docCount++;
+
+        var i = 0;
+        for (var entry : termFreqs) {
+            var term = entry.key;
+            if (term.size == term.docs.length) {
+                term.docs = Arrays.copyOf(term.docs, term.size * 2);
+                term.freqs = Arrays.copyOf(term.freqs, term.size * 2);
+            }
+            term.docs[term.size] = docId;
+            term.freqs[term.size] = entry.value;
+            doc.terms[i] = term;
+            doc.slots[i] = term.size++;
+            i++;
+        }
+        version++;
+    }
+
+    private void removeDoc(int docId) {
+        var doc = docs[docId];
+        for (int i = 0; i < doc.terms.length; i++) {
+            var term = doc.terms[i];
+            var slot = doc.slots[i];
+            var last = --term.size;
+            if (slot != last) {
+                // move the last posting into the hole, and point its doc at the new slot
+                var movedDocId = term.docs[last];
+                term.docs[slot] = movedDocId;
+                term.freqs[slot] = term.freqs[last];
+                var movedDoc = docs[movedDocId];
+                for (int j = 0; j < movedDoc.terms.length; j++) {
+                    if (movedDoc.terms[j] == term) {
+                        movedDoc.slots[j] = slot;
+                        break;
+                    }
+                }
+            }
+            if (term.size == 0) {
+                if (term.text == null) pairs.remove(term.pairKey);
+                else                   dictionary.remove(term.text);
+            }
+        }
+
+        docIds.remove(doc.source, -1);
+        docs[docId] = null;
+        freeDocIds.add(docId);
+        docCount--;
+        version++;
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity <= docs.length) return;
+
+        var newCapacity = Math.max(capacity, docs.length * 2);
+        docs = Arrays.copyOf(docs, newCapacity);
+        docNorms = Arrays.copyOf(docNorms, newCapacity);
+        queryStamps = Arrays.copyOf(queryStamps, newCapacity);
+        scores = Arrays.copyOf(scores, newCapacity);
+    }
+
+    private static long pairKey(Term first, Term second) {
+        return ((long) first.id << 32) | (second.id & 0xffffffffL);
+    }
+
+    /**
+     * Split the text into lowercase runs of letters and digits
+     */
+    private void tokenize(String text, List<String> out) {
+        out.clear();
+        tokenBuilder.setLength(0);
+        for (int i = 0; i <= text.length(); i++) {
+            var c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                tokenBuilder.append(Character.toLowerCase(c));
+            } else if (!tokenBuilder.isEmpty()) {
+                out.add(tokenBuilder.toString());
+                tokenBuilder.setLength(0);
+            }
+        }
+    }
+}
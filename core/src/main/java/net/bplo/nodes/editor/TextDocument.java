@@ -0,0 +1,472 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text storage for long, frequently edited texts, like {@link PropInputTextMultiline},
+ * where the cost of an edit or of reading a few lines shouldn't grow with the whole text.
+ * <p>
+ * The text is a piece table, the original text and an append only buffer of inserted text,
+ * with a list of pieces referencing spans of either buffer in document order. An edit splits
+ * at most one piece and adds at most one, typing at the end of the last insertion just
+ * extends its piece. Lookups remember the last piece they landed in, so sequential access,
+ * like reading a line or typing, doesn't rescan the piece list.
+ * <p>
+ * Line start offsets are kept in an index that's updated per edit rather than rebuilt,
+ * see {@link LineStarts}, so finding a line, or the line containing an offset, is a lookup.
+ */
+public class TextDocument {
+
+    // once edits have fragmented the text into this many pieces it's flattened back into one
+    private static final int MAX_PIECES = 512;
+
+    private static class Piece {
+        final boolean added;
+        final int start;
+        int length;
+
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private String original = "";
+    private final StringBuilder added = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private final LineStarts lineStarts = new LineStarts();
+    private int length;
+    private int version;
+
+    // piece found by the last lookup, and its offset in the document
+    private int cursorPiece;
+    private int cursorOffset;
+
+    // the whole text, built on demand and kept until the next edit
+    private String text = "";
+
+    public TextDocument() {
+        setText("");
+    }
+
+    public TextDocument(String text) {
+        setText(text);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Incremented by every edit, so anything derived from the text can tell when it's stale
+     */
+    public int version() {
+        return version;
+    }
+
+    // ------------------------------------------------------------------------
+    // Lines
+    // ------------------------------------------------------------------------
+
+    /**
+     * Number of lines, always at least one, a text ending with a line break ends with an empty line
+     */
+    public int lineCount() {
+        return lineStarts.count();
+    }
+
+    public int lineStart(int line) {
+        return lineStarts.start(line);
+    }
+
+    /**
+     * Offset of the end of the line, excluding its line break
+     */
+    public int lineEnd(int line) {
+        return (line + 1 < lineCount()) ? lineStarts.start(line + 1) - 1 : length;
+    }
+
+    public int lineOfOffset(int offset) {
+        return lineStarts.lineOf(offset);
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+    // ------------------------------------------------------------------------
+
+    public char charAt(int offset) {
+        if (offset < 0 || offset >= length) {
+            throw new IndexOutOfBoundsException("Offset %d out of bounds for length %d".formatted(offset, length));
+        }
+        var index = findPiece(offset);
+        var piece = pieces.get(index);
+        var pieceOffset = piece.start + (offset - cursorOffset);
+        return piece.added ? added.charAt(pieceOffset) : original.charAt(pieceOffset);
+    }
+
+    /**
+     * Append the text between the offsets to the builder, visiting only the pieces that overlap it
+     */
+    public void appendTo(StringBuilder out, int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) out of bounds for length %d".formatted(start, end, length));
+        }
+        if (start == end) return;
+
+        var index = findPiece(start);
+        var pieceOffset = cursorOffset;
+        for (var offset = start; offset < end; index++) {
+            var piece = pieces.get(index);
+            var from = piece.start + (offset - pieceOffset);
+            var to = piece.start + Math.min(piece.length, end - pieceOffset);
+            if (piece.added) out.append(added, from, to);
+            else             out.append(original, from, to);
+            offset += to - from;
+            pieceOffset += piece.length;
+        }
+    }
+
+    public String substring(int start, int end) {
+        var builder = new StringBuilder(end - start);
+        appendTo(builder, start, end);
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) {
+            text = substring(0, length);
+        }
+        return text;
+    }
+
+    // ------------------------------------------------------------------------
+    // Editing
+    // ------------------------------------------------------------------------
+
+    /**
+     * Replace the whole text, discarding the edit history in the piece table
+     */
+    public void setText(String newText) {
+        original = (newText != null) ? newText : "";
+        added.setLength(0);
+        pieces.clear();
+        if (!original.isEmpty()) {
+            pieces.add(new Piece(false, 0, original.length()));
+        }
+        length = original.length();
+        cursorPiece = 0;
+        cursorOffset = 0;
+        lineStarts.reset(original);
+        text = original;
+        version++;
+    }
+
+    public void insert(int offset, CharSequence insertion) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("Offset %d out of bounds for length %d".formatted(offset, length));
+        }
+        var insertLength = insertion.length();
+        if (insertLength == 0) return;
+
+        // update the line index before the text, while the offset still maps to its line
+        var line = lineStarts.lineOf(offset);
+        lineStarts.insertText(line, insertLength);
+        for (int i = 0; i < insertLength; i++) {
+            if (insertion.charAt(i) == '\n') {
+                lineStarts.insertLine(++line, offset + i + 1);
+            }
+        }
+
+        var addedStart = added.length();
+        added.append(insertion);
+        insertPiece(offset, addedStart, insertLength);
+        length += insertLength;
+        edited();
+    }
+
+    public void delete(int offset, int deleteLength) {
+        if (offset < 0 || deleteLength < 0 || offset + deleteLength > length) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) out of bounds for length %d".formatted(offset, offset + deleteLength, length));
+        }
+        if (deleteLength == 0) return;
+
+        // lines starting inside the deleted range are merged into the line the range starts in
+        var firstLine = lineStarts.lineOf(offset);
+        var lastLine = lineStarts.lineOf(offset + deleteLength);
+        for (int line = lastLine; line > firstLine; line--) {
+            lineStarts.removeLine(line);
+        }
+        lineStarts.insertText(firstLine, -deleteLength);
+
+        deletePieces(offset, deleteLength);
+        length -= deleteLength;
+        edited();
+    }
+
+    public void replace(int offset, int replaceLength, CharSequence replacement) {
+        delete(offset, replaceLength);
+        insert(offset, replacement);
+    }
+
+    /**
+     * Update the document to the new text as a single replacement of the span where they differ,
+     * for editors that only hand back the whole edited text, like an imgui input text widget.
+     * Returns whether the text changed.
+     */
+    public boolean applyChange(String newText) {
+        if (newText == null) newText = "";
+
+        // NOTE: comparing is a flat pass over the unchanged text on each side of the edit,
+        //  the line index and pieces are only touched where the text actually changed
+        var newLength = newText.length();
+        var maxCommon = Math.min(length, newLength);
+        var prefix = 0;
+        var current = toString();
+        while (prefix < maxCommon && current.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == length && prefix == newLength) return false;
+
+        var suffix = 0;
+        while (suffix < maxCommon - prefix
+            && current.charAt(length - 1 - suffix) == newText.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+
+        replace(prefix, length - prefix - suffix, newText.subSequence(prefix, newLength - suffix));
+        text = newText;
+        return true;
+    }
+
+    private void edited() {
+        text = null;
+        version++;
+        if (pieces.size() > MAX_PIECES) {
+            compact();
+        }
+    }
+
+    /**
+     * Flatten the pieces into a new original text, line starts don't change
+     */
+    private void compact() {
+        original = toString();
+        added.setLength(0);
+        pieces.clear();
+        if (length > 0) {
+            pieces.add(new Piece(false, 0, length));
+        }
+        cursorPiece = 0;
+        cursorOffset = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Pieces
+    // ------------------------------------------------------------------------
+
+    /**
+     * Index of the piece containing the offset, also left in the cursor along with the piece's
+     * document offset. An offset at the end of the document maps to one past the last piece.
+     */
+    private int findPiece(int offset) {
+        // walk from the last lookup, edits and reads tend to stay near each other
+        while (offset < cursorOffset) {
+            cursorPiece--;
+            cursorOffset -= pieces.get(cursorPiece).length;
+        }
+        while (cursorPiece < pieces.size()) {
+            var pieceLength = pieces.get(cursorPiece).length;
+            if (offset < cursorOffset + pieceLength) break;
+            cursorOffset += pieceLength;
+            cursorPiece++;
+        }
+        return cursorPiece;
+    }
+
+    private void insertPiece(int offset, int addedStart, int insertLength) {
+        var index = findPiece(offset);
+
+        // typing at the end of the previous insertion extends its piece,
+        // which moves the cursor piece further into the document
+        if (offset == cursorOffset && index > 0) {
+            var previous = pieces.get(index - 1);
+            if (previous.added && previous.start + previous.length == addedStart) {
+                previous.length += insertLength;
+                cursorOffset += insertLength;
+                return;
+            }
+        }
+
+        var insertion = new Piece(true, addedStart, insertLength);
+        if (offset == cursorOffset) {
+            pieces.add(index, insertion);
+        } else {
+            // split the piece around the insertion
+            var piece = pieces.get(index);
+            var headLength = offset - cursorOffset;
+            pieces.add(index + 1, insertion);
+            pieces.add(index + 2, new Piece(piece.added, piece.start + headLength, piece.length - headLength));
+            piece.length = headLength;
+            index++;
+        }
+        cursorPiece = index;
+        cursorOffset = offset;
+    }
+
+    private void deletePieces(int offset, int deleteLength) {
+        var index = findPiece(offset);
+        var pieceOffset = cursorOffset;
+        var end = offset + deleteLength;
+
+        // the parts of the first and last overlapped pieces that are outside the deleted range remain
+        Piece head = null;
+        Piece tail = null;
+        var removeTo = index;
+        while (pieceOffset < end) {
+            var piece = pieces.get(removeTo++);
+            var pieceEnd = pieceOffset + piece.length;
+            if (pieceOffset < offset) head = new Piece(piece.added, piece.start, offset - pieceOffset);
+            if (pieceEnd > end)       tail = new Piece(piece.added, piece.start + (end - pieceOffset), pieceEnd - end);
+            pieceOffset = pieceEnd;
+        }
+
+        var overlapped = pieces.subList(index, removeTo);
+        overlapped.clear();
+        if (head != null) overlapped.add(head);
+        if (tail != null) overlapped.add(tail);
+
+        cursorPiece = index;
+        cursorOffset = (head != null) ? offset - head.length : offset;
+    }
+
+    // ------------------------------------------------------------------------
+    // Line index
+    // ------------------------------------------------------------------------
+
+    /**
+     * Start offsets of every line, kept current through edits without shifting every
+     * following start. An edit moves the starts of all later lines by the same amount,
+     * so that shift is recorded as a pending step applied lazily to the lines after a given
+     * line, only applied to the lines between it and the next edit's line when they differ.
+     * Consecutive edits in the same area, like typing, only touch the lines between them.
+     * <p>
+     * The same technique as the line partitioning in Scintilla based text editors.
+     */
+    private static class LineStarts {
+        // a start for each line, and a final entry for the end of the text
+        private final IntArray starts = new IntArray();
+        // starts after stepLine are stored without the pending stepLength applied
+        private int stepLine;
+        private int stepLength;
+
+        void reset(String text) {
+            starts.clear();
+            starts.add(0);
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    starts.add(i + 1);
+                }
+            }
+            starts.add(text.length());
+            stepLine = 0;
+            stepLength = 0;
+        }
+
+        int count() {
+            return starts.size - 1;
+        }
+
+        int start(int line) {
+            var start = starts.get(line);
+            return (line > stepLine) ? start + stepLength : start;
+        }
+
+        /**
+         * The last line that starts at or before the offset
+         */
+        int lineOf(int offset) {
+            var low = 0;
+            var high = count() - 1;
+            while (low < high) {
+                var mid = (low + high + 1) >>> 1;
+                if (start(mid) <= offset) low = mid;
+                else                      high = mid - 1;
+            }
+            return low;
+        }
+
+        /**
+         * Shift the starts of every line after this one by delta
+         */
+        void insertText(int line, int delta) {
+            if (stepLength == 0) {
+                stepLine = line;
+                stepLength = delta;
+            } else if (line >= stepLine) {
+                applyStep(line);
+                stepLength += delta;
+            } else if (line >= stepLine - starts.size / 10) {
+                // close enough to undo the step back to this line
+                backStep(line);
+                stepLength += delta;
+            } else {
+                applyStep(starts.size - 1);
+                stepLine = line;
+                stepLength = delta;
+            }
+        }
+
+        /**
+         * Add a line starting at the offset, which has to be after the previous line's start
+         */
+        void insertLine(int line, int offset) {
+            if (stepLine < line) {
+                applyStep(line);
+            }
+            starts.insert(line, offset);
+            stepLine++;
+        }
+
+        void removeLine(int line) {
+            if (line > stepLine) {
+                applyStep(line);
+            }
+            stepLine--;
+            starts.removeIndex(line);
+        }
+
+        private void applyStep(int upTo) {
+            if (stepLength != 0) {
+                addDelta(stepLine + 1, upTo + 1, stepLength);
+            }
+            stepLine = upTo;
+            if (stepLine >= starts.size - 1) {
+                stepLine = starts.size - 1;
+                stepLength = 0;
+            }
+        }
+
+        private void backStep(int downTo) {
+            if (stepLength != 0) {
+                addDelta(downTo + 1, stepLine + 1, -stepLength);
+            }
+            stepLine = downTo;
+        }
+
+        private void addDelta(int from, int to, int delta) {
+            var items = starts.items;
+            for (int i = from; i < to; i++) {
+                items[i] += delta;
+            }
+        }
+    }
+}
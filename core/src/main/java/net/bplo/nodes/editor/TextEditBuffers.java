@@ -0,0 +1,93 @@
+package net.bplo.nodes.editor;
+
+import imgui.ImGui;
+import imgui.type.ImString;
+
+/**
+ * Shared edit buffers for text input widgets, so text props can store plain strings
+ * rather than each holding an {@link ImString} sized for editing.
+ * <p>
+ * Imgui only has one active item at a time, so one buffer is lent to the widget being edited,
+ * for as long as it stays active, and one more is reloaded with the text of each inactive widget
+ * as it's drawn. Reloading encodes the text, so fields that are drawn every frame should only
+ * draw an input widget while it's hovered or {@link #isActive active}, and plain text otherwise.
+ * <p>
+ * Buffers are keyed by the widget's imgui label rather than the prop,
+ * since the same prop can have a widget in its node and another in the info pane.
+ * Usage, around each text input widget:
+ * <pre>{@code
+ * var buffer = TextEditBuffers.borrow(label, text);
+ * var changed = ImGui.inputText(label, buffer);
+ * TextEditBuffers.track(label, ImGui.isItemActive());
+ * if (changed) setText(buffer.get());
+ * }</pre>
+ */
+public class TextEditBuffers {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ImString activeBuffer = createBuffer();
+    private static String activeLabel;
+    private static int activeFrame;
+
+    private static final ImString displayBuffer = createBuffer();
+    private static String displayLabel;
+    private static String displayText;
+
+    /**
+     * Get the buffer to pass to the labelled input widget this frame.
+     * The text is only copied in if the widget isn't being edited,
+     * the buffer of an active widget keeps the edits imgui made to it.
+     */
+    public static ImString borrow(String label, String text) {
+        // the active widget wasn't drawn last frame, so it was closed or removed without deactivating
+        if (activeLabel != null && activeFrame < ImGui.getFrameCount() - 1) {
+            activeLabel = null;
+        }
+        if (label.equals(activeLabel)) {
+            return activeBuffer;
+        }
+
+        // NOTE: the same widget and string instance means the buffer already holds the text,
+        //  which saves re-copying a long text every frame it's shown in the info pane
+        if (!label.equals(displayLabel) || text != displayText) {
+            displayBuffer.set(text);
+            displayLabel = label;
+            displayText = text;
+        }
+        return displayBuffer;
+    }
+
+    /**
+     * Whether the labelled input widget was being edited as of last frame, callers can
+     * skip drawing an input widget for fields that aren't, and don't need {@link #borrow} at all
+     */
+    public static boolean isActive(String label) {
+        return label.equals(activeLabel) && activeFrame >= ImGui.getFrameCount() - 1;
+    }
+
+    /**
+     * Report whether the labelled input widget is active, right after drawing it,
+     * which lends the active buffer to the widget or takes it back
+     */
+    public static void track(String label, boolean active) {
+        if (active) {
+            if (!label.equals(activeLabel)) {
+                // the widget was drawn with the display buffer on the frame it activated,
+                // copy its text over so nothing typed on that frame is lost
+                activeBuffer.set(displayBuffer.get());
+                activeLabel = label;
+                displayLabel = null;
+            }
+            activeFrame = ImGui.getFrameCount();
+        } else if (label.equals(activeLabel)) {
+            activeLabel = null;
+        }
+    }
+
+    private static ImString createBuffer() {
+        var buffer = new ImString(INITIAL_CAPACITY);
+        buffer.inputData.isResizable = true;
+        return buffer;
+    }
+}
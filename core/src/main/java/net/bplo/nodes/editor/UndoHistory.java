@@ -0,0 +1,487 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.OrderedSet;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Undo and redo for edits to the graph, recorded from the {@link ChangeTracker}
+ * as small reversible commands rather than copies of the graph:
+ * <ul>
+ * <li>added and removed nodes as their detached binary record, see {@link EditorBinarySerializer#writeDetachedNode}
+ * <li>created and deleted links as their id and pin ids
+ * <li>prop edits as the prop's data before and after, for text that's the same immutable string the prop holds
+ * <li>moves as the node's position before and after
+ * </ul>
+ * Everything changed in a frame is one step. A step that only edits the same props, or only moves
+ * the same nodes, as the step before it within {@link #COALESCE_MILLIS} is merged into that step,
+ * so a burst of typing or a drag is undone in one go.
+ * <p>
+ * The estimated memory held by the history is kept under {@link #maxBytes} by dropping the oldest steps.
+ * The latest step is always kept, so the last edit can be undone even if it's over the limit on its own.
+ * <p>
+ * NOTE: props and pins added to or removed from a node that's already in the graph aren't recorded,
+ *  the editor only does that as part of adding or removing the whole node
+ */
+public class UndoHistory implements ChangeTracker.Listener {
+
+    private static final String TAG = UndoHistory.class.getSimpleName();
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Longest pause between edits to the same props, or moves of the same nodes, that are still one step
+     */
+    static final long COALESCE_MILLIS = 1000;
+
+    // rough size of an object header and reference, for estimating what a command holds on to
+    private static final int OBJECT_BYTES = 16;
+
+    private sealed interface Command permits NodeAdded, NodeRemoved, LinkAdded, LinkRemoved, PropChanged, NodeMoved {
+        void undo(UndoHistory history);
+        void redo(UndoHistory history);
+        long bytes();
+    }
+
+    private record NodeAdded(long nodeId, byte[] data) implements Command {
+        public void undo(UndoHistory history) { history.removeNode(nodeId); }
+        public void redo(UndoHistory history) { history.restoreNode(data); }
+        public long bytes() { return 2 * OBJECT_BYTES + 8 + data.length; }
+    }
+
+    private record NodeRemoved(long nodeId, byte[] data) implements Command {
+        public void undo(UndoHistory history) { history.restoreNode(data); }
+        public void redo(UndoHistory history) { history.removeNode(nodeId); }
+        public long bytes() { return 2 * OBJECT_BYTES + 8 + data.length; }
+    }
+
+    private record LinkAdded(long linkId, long srcPinId, long dstPinId) implements Command {
+        public void undo(UndoHistory history) { history.editor.findLink(linkId).ifPresent(history.editor::remove); }
+        public void redo(UndoHistory history) { history.editor.restoreLink(linkId, srcPinId, dstPinId); }
+        public long bytes() { return OBJECT_BYTES + 24; }
+    }
+
+    private record LinkRemoved(long linkId, long srcPinId, long dstPinId) implements Command {
+        public void undo(UndoHistory history) { history.editor.restoreLink(linkId, srcPinId, dstPinId); }
+        public void redo(UndoHistory history) { history.editor.findLink(linkId).ifPresent(history.editor::remove); }
+        public long bytes() { return OBJECT_BYTES + 24; }
+    }
+
+    private record PropChanged(long propId, Object from, Object to) implements Command {
+        public void undo(UndoHistory history) { history.setPropData(propId, from); }
+        public void redo(UndoHistory history) { history.setPropData(propId, to); }
+        public long bytes() { return OBJECT_BYTES + 8 + dataBytes(from) + dataBytes(to); }
+    }
+
+    private record NodeMoved(long nodeId, float fromX, float fromY, float toX, float toY) implements Command {
+        public void undo(UndoHistory history) { history.moveNode(nodeId, fromX, fromY); }
+        public void redo(UndoHistory history) { history.moveNode(nodeId, toX, toY); }
+        public long bytes() { return OBJECT_BYTES + 24; }
+    }
+
+    private static class Step {
+        final Command[] commands;
+        final long bytes;
+        long time;
+
+        Step(Command[] commands, long time) {
+            this.commands = commands;
+            this.time = time;
+            var bytes = 2L * OBJECT_BYTES + (long) commands.length * OBJECT_BYTES;
+            for (var command : commands) {
+                bytes += command.bytes();
+            }
+            this.bytes = bytes;
+        }
+
+        /**
+         * The prop or node ids edited by a step of only prop edits or only moves, otherwise null
+         */
+        long[] coalesceKey() {
+            var keys = new long[commands.length];
+            var type = commands[0].getClass();
+            for (int i = 0; i < commands.length; i++) {
+                switch (commands[i]) {
+                    case PropChanged change when type == PropChanged.class -> keys[i] = change.propId;
+                    case NodeMoved move when type == NodeMoved.class -> keys[i] = move.nodeId;
+                    default -> { return null; }
+                }
+            }
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        /**
+         * This step followed by the next, for steps with the same {@link #coalesceKey()}
+         */
+        Step merge(Step next) {
+            var firstById = new LongMap<Command>(commands.length);
+            for (var command : commands) {
+                switch (command) {
+                    case PropChanged change -> firstById.put(change.propId, change);
+                    case NodeMoved move -> firstById.put(move.nodeId, move);
+                    default -> {}
+                }
+            }
+
+            var merged = new Command[next.commands.length];
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] = switch (next.commands[i]) {
+                    case PropChanged change -> new PropChanged(change.propId,
+                        ((PropChanged) firstById.get(change.propId)).from, change.to);
+                    case NodeMoved move -> {
+                        var first = (NodeMoved) firstById.get(move.nodeId);
+                        yield new NodeMoved(move.nodeId, first.fromX, first.fromY, move.toX, move.toY);
+                    }
+                    default -> next.commands[i];
+                };
+            }
+            return new Step(merged, next.time);
+        }
+    }
+
+    /**
+     * Estimated memory the history can hold on to before the oldest steps are dropped
+     */
+    public long maxBytes = DEFAULT_MAX_BYTES;
+
+    private final Editor editor;
+    private final Json json = new Json();
+    private final ArrayDeque<Step> undoSteps = new ArrayDeque<>();
+    private final ArrayDeque<Step> redoSteps = new ArrayDeque<>();
+    private long bytes;
+
+    // the step last recorded from edits, later edits can only be merged into it while it's on top of the undo stack
+    private Step lastRecorded;
+    private long[] lastRecordedKey;
+
+    // changes made this frame in the order they were made, recorded as one step at the end of the frame;
+    // nodes added this frame stand in for their command, they're encoded as they are at the end of the frame
+    private final ArrayList<Object> frameChanges = new ArrayList<>();
+    private final ObjectSet<Node> frameAddedNodes = new ObjectSet<>();
+    private final OrderedSet<Prop> frameChangedProps = new OrderedSet<>();
+
+    // NOTE: changes made by undo and redo themselves aren't recorded, including the moves
+    //  the node pane sees once the moved nodes are drawn at their new position
+    private boolean applying;
+    private final ObjectSet<Node> appliedMoves = new ObjectSet<>();
+    private int appliedMovesFrames;
+
+    private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream nodeOut = new DataOutputStream(nodeBytes);
+    private final LongArray links = new LongArray();
+
+    public UndoHistory(Editor editor) {
+        this.editor = editor;
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty() || !frameChanges.isEmpty() || !frameChangedProps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    public int undoCount() {
+        return undoSteps.size();
+    }
+
+    public int redoCount() {
+        return redoSteps.size();
+    }
+
+    /**
+     * Estimated memory held by the undo and redo steps
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    // ------------------------------------------------------------------------
+    // Recording
+    // ------------------------------------------------------------------------
+
+    private boolean isRecording() {
+        return !applying;
+    }
+
+    @Override
+    public void nodeAdded(Node node) {
+        if (!isRecording()) return;
+        if (frameAddedNodes.add(node)) {
+            frameChanges.add(node);
+        }
+    }
+
+    @Override
+    public void nodeChanged(Node node) {
+        // see class NOTE
+    }
+
+    @Override
+    public void nodeRemoved(Node node) {
+        if (!isRecording()) return;
+        frameChanges.add(new NodeRemoved(node.id, encode(node)));
+    }
+
+    @Override
+    public void nodeMoved(Node node, float fromX, float fromY) {
+        if (!isRecording() || appliedMoves.contains(node)) return;
+        // the node's record has its position as of the end of the frame
+        if (frameAddedNodes.contains(node)) return;
+
+        var toX = editor.positions.x(node.id);
+        var toY = editor.positions.y(node.id);
+        frameChanges.add(new NodeMoved(node.id, fromX, fromY, toX, toY));
+    }
+
+    @Override
+    public void propChanged(Prop prop) {
+        if (!isRecording()) return;
+        frameChangedProps.add(prop);
+    }
+
+    @Override
+    public void linkAdded(Link link) {
+        if (!isRecording()) return;
+        frameChanges.add(new LinkAdded(link.id, link.src.id, link.dst.id));
+    }
+
+    @Override
+    public void linkRemoved(Link link) {
+        if (!isRecording()) return;
+        frameChanges.add(new LinkRemoved(link.id, link.src.id, link.dst.id));
+    }
+
+    /**
+     * Record the changes made this frame as a step, called once at the end of every frame
+     */
+    public void flush() {
+        if (appliedMovesFrames > 0 && --appliedMovesFrames == 0) {
+            appliedMoves.clear();
+        }
+        if (frameChanges.isEmpty() && frameChangedProps.isEmpty()) return;
+
+        var commands = new ArrayList<Command>(frameChanges.size() + frameChangedProps.size);
+        for (var change : frameChanges) {
+            if (change instanceof Node node) {
+                commands.add(new NodeAdded(node.id, encode(node)));
+            } else {
+                commands.add((Command) change);
+            }
+        }
+
+        for (var prop : frameChangedProps) {
+            var from = prop.undoData;
+            var to = GraphSnapshot.copyData(prop.getData());
+            prop.undoData = to;
+
+            // the prop's data is in the record of a node added this frame, or gone with its node
+            if (frameAddedNodes.contains(prop.node) || !editor.objectsById.containsKey(prop.id)) continue;
+            if (!isRestorable(to) || isSameData(from, to)) continue;
+            commands.add(new PropChanged(prop.id, from, to));
+        }
+
+        frameChanges.clear();
+        frameAddedNodes.clear();
+        frameChangedProps.clear();
+
+        if (!commands.isEmpty()) {
+            record(new Step(commands.toArray(new Command[0]), TimeUtils.millis()));
+        }
+    }
+
+    private void record(Step step) {
+        for (var redoStep : redoSteps) {
+            bytes -= redoStep.bytes;
+        }
+        redoSteps.clear();
+
+        var key = step.coalesceKey();
+        var top = undoSteps.peekFirst();
+        if (top != null && top == lastRecorded && key != null && Arrays.equals(key, lastRecordedKey)
+         && step.time - top.time <= COALESCE_MILLIS) {
+            undoSteps.pollFirst();
+            bytes -= top.bytes;
+            step = top.merge(step);
+        }
+
+        undoSteps.push(step);
+        bytes += step.bytes;
+        lastRecorded = step;
+        lastRecordedKey = key;
+
+        while (bytes > maxBytes && undoSteps.size() > 1) {
+            bytes -= undoSteps.pollLast().bytes;
+        }
+    }
+
+    /**
+     * Drop all steps and changes not yet recorded, eg. when a graph is loaded.
+     * Props changed this frame are taken as they are now, undoing a later edit restores that.
+     */
+    public void clear() {
+        for (var prop : frameChangedProps) {
+            prop.undoData = GraphSnapshot.copyData(prop.getData());
+        }
+        frameChanges.clear();
+        frameAddedNodes.clear();
+        frameChangedProps.clear();
+
+        undoSteps.clear();
+        redoSteps.clear();
+        bytes = 0;
+        lastRecorded = null;
+        lastRecordedKey = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Undo and redo
+    // ------------------------------------------------------------------------
+
+    public boolean undo() {
+        flush();
+        var step = undoSteps.pollFirst();
+        if (step == null) return false;
+
+        redoSteps.push(step);
+        lastRecorded = null;
+        apply(step, true);
+        return true;
+    }
+
+    public boolean redo() {
+        flush();
+        var step = redoSteps.pollFirst();
+        if (step == null) return false;
+
+        undoSteps.push(step);
+        lastRecorded = null;
+        apply(step, false);
+        return true;
+    }
+
+    private void apply(Step step, boolean undo) {
+        applying = true;
+        try {
+            if (undo) {
+                for (int i = step.commands.length - 1; i >= 0; i--) {
+                    step.commands[i].undo(this);
+                }
+            } else {
+                for (var command : step.commands) {
+                    command.redo(this);
+                }
+            }
+        } catch (RuntimeException e) {
+            // NOTE: a step that only partly applied leaves the graph out of step with the rest of the history
+            Gdx.app.error(TAG, "Failed to %s, clearing history".formatted(undo ? "undo" : "redo"), e);
+            clear();
+        } finally {
+            applying = false;
+        }
+    }
+
+    private void removeNode(long nodeId) {
+        editor.findNode(nodeId).ifPresent(editor::remove);
+    }
+
+    private void restoreNode(byte[] data) {
+        links.clear();
+        var node = EditorBinarySerializer.readDetachedNode(json, ByteBuffer.wrap(data), links, editor.loadContext);
+        editor.restore(node, links);
+    }
+
+    private void moveNode(long nodeId, float x, float y) {
+        editor.findNode(nodeId).ifPresent(node -> {
+            var fromX = editor.positions.x(nodeId);
+            var fromY = editor.positions.y(nodeId);
+            editor.positions.set(nodeId, x, y);
+            editor.spatialIndex.invalidate(node);
+            editor.changes.markMoved(node, fromX, fromY);
+
+            appliedMoves.add(node);
+            appliedMovesFrames = 2;
+        });
+    }
+
+    private void setPropData(long propId, Object data) {
+        editor.findProp(propId).ifPresent(prop -> {
+            prop.setData(json, toJsonValue(data));
+            prop.undoData = data;
+            // refresh bound props and derived node state as for any other edit
+            prop.changed(prop.getData());
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    // Encoding
+    // ------------------------------------------------------------------------
+
+    private byte[] encode(Node node) {
+        nodeBytes.reset();
+        try {
+            EditorBinarySerializer.writeDetachedNode(nodeOut, json, node, editor.positions);
+        } catch (IOException e) {
+            // NOTE: only writes to memory, so this shouldn't happen
+            throw new GdxRuntimeException("Failed to encode node for undo history", e);
+        }
+        return nodeBytes.toByteArray();
+    }
+
+    /**
+     * Prop data that can be set back on a prop, derived data like thumbnails
+     * is restored along with the prop it's bound to instead
+     */
+    private static boolean isRestorable(Object data) {
+        return data == null
+            || data instanceof String
+            || data instanceof Integer
+            || data instanceof Float
+            || data instanceof PropSelect.Data;
+    }
+
+    private static boolean isSameData(Object a, Object b) {
+        if (a instanceof PropSelect.Data selectA && b instanceof PropSelect.Data selectB) {
+            return selectA.selectedIndex == selectB.selectedIndex && Arrays.equals(selectA.options, selectB.options);
+        }
+        return Objects.equals(a, b);
+    }
+
+    private JsonValue toJsonValue(Object data) {
+        return switch (data) {
+            case null -> new JsonValue(JsonValue.ValueType.nullValue);
+            case String string -> new JsonValue(string);
+            case Integer integer -> new JsonValue(integer.longValue());
+            case Float value -> new JsonValue(value.doubleValue());
+            default -> new JsonReader().parse(json.toJson(data));
+        };
+    }
+
+    private static long dataBytes(Object data) {
+        return switch (data) {
+            case null -> 0;
+            // NOTE: assumes two bytes per char, text that fits in latin-1 takes half that
+            case String string -> 2L * OBJECT_BYTES + 2L * string.length();
+            case PropSelect.Data select -> 2L * OBJECT_BYTES + 8L * select.options.length;
+            default -> OBJECT_BYTES;
+        };
+    }
+}
@@ -1,44 +1,328 @@
 package net.bplo.nodes.editor.meta;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
 import net.bplo.nodes.Util;
 
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 import static net.bplo.nodes.editor.meta.Metadata.AssetItem;
 import static net.bplo.nodes.editor.meta.Metadata.AssetRef;
 
-public class AssetResolver {
+/**
+ * Resolves {@link AssetRef}s to loaded assets, caching them by {@link AssetRef#cacheKey()}.
+ * <p>
+ * The cache is bounded by entry count and by the estimated size of the textures it holds,
+ * least recently used entries are evicted past either bound and their textures disposed.
+ * Assets that are on screen should be {@link #acquire acquired} rather than just resolved,
+ * acquired entries are never evicted until they're {@link #release released}.
+ * <p>
+ * Textures can also be requested without blocking through {@link #acquireAsync(AssetRef)},
+ * their images are decoded on a worker thread and uploaded to the gpu in {@link #update()},
+ * a few per frame, so that loading a graph full of thumbnails doesn't stall rendering.
+ */
+public class AssetResolver implements Disposable {
 
     private static final String TAG = AssetResolver.class.getSimpleName();
 
+    public static final int  DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_MAX_BYTES   = 256L * 1024 * 1024;
+
+    // limits on gpu uploads of decoded textures per call to update()
+    static final int  MAX_UPLOADS_PER_FRAME = 4;
+    static final long UPLOAD_BUDGET_NANOS   = 2_000_000L;
+
+    private static class Entry {
+        final Object asset;
+        final long bytes;
+        int refCount;
+        // uploaded by the last update() for an acquireAsync() caller that hasn't asked again yet
+        boolean fresh;
+
+        Entry(Object asset, long bytes) {
+            this.asset = asset;
+            this.bytes = bytes;
+        }
+    }
+
     private final Metadata metadata;
-    private final Map<String, Object> cache;
+    private final LinkedHashMap<String, Entry> cache;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // textures being decoded off the render thread, in request order, and ones that couldn't be
+    private final Function<String, TextureData> decoder;
+    private final AsyncExecutor decodeExecutor;
+    private final LinkedHashMap<String, AsyncResult<TextureData>> pendingDecodes;
+    private final Set<String> failedDecodes;
+    private final Array<Entry> freshUploads = new Array<>(false, MAX_UPLOADS_PER_FRAME);
+
+    private long cachedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
 
     public AssetResolver(Metadata metadata) {
+        this(metadata, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public AssetResolver(Metadata metadata, int maxEntries, long maxBytes) {
+        this(metadata, maxEntries, maxBytes, AssetResolver::decodeTexture);
+    }
+
+    /**
+     * Resolver that decodes texture files for {@link #acquireAsync(AssetRef)} with the specified decoder,
+     * which runs on a worker thread and returns prepared texture data for {@link #update()} to upload
+     */
+    AssetResolver(Metadata metadata, int maxEntries, long maxBytes, Function<String, TextureData> decoder) {
         this.metadata = metadata;
-        this.cache = new HashMap<>();
+        // NOTE: access ordered, so iteration starts from the least recently used entry
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        this.decoder = decoder;
+        var decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.decodeExecutor = new AsyncExecutor(decodeThreads, TAG);
+        this.pendingDecodes = new LinkedHashMap<>();
+        this.failedDecodes = new HashSet<>();
     }
 
     public <T> Optional<T> resolve(AssetRef<T> ref, Class<T> type) {
-        if (cache.containsKey(ref.cacheKey())) {
-            var cached = cache.get(ref.cacheKey());
-            return Optional.of(type.cast(cached));
+        var entry = lookup(ref, type);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        evict(entry);
+        return Optional.of(type.cast(entry.asset));
+    }
+
+    /**
+     * Resolve the asset and hold a reference to it, so that it stays
+     * in the cache (and undisposed) until a matching {@link #release(String)}.
+     */
+    public <T> Optional<T> acquire(AssetRef<T> ref, Class<T> type) {
+        var entry = lookup(ref, type);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        entry.refCount++;
+        evict(entry);
+        return Optional.of(type.cast(entry.asset));
+    }
+
+    /**
+     * Non-blocking version of {@link #acquire(AssetRef, Class)} for textures.
+     * If the texture isn't loaded yet this starts decoding it in the background,
+     * if it isn't already, and returns empty; callers should show a placeholder
+     * and ask again on a later frame.
+     */
+    public Optional<Texture> acquireAsync(AssetRef<Texture> ref) {
+        var cacheKey = ref.cacheKey();
+        var entry = cache.get(cacheKey);
+        if (entry != null) {
+            hits++;
+            entry.refCount++;
+            return Optional.of((Texture) entry.asset);
         }
 
-        return metadata.findAssetType(ref.typeId)
+        if (!pendingDecodes.containsKey(cacheKey) && !failedDecodes.contains(cacheKey)) {
+            misses++;
+            var item = metadata.findAssetType(ref.typeId).flatMap(assetType -> assetType.findItem(ref.itemId));
+            if (item.isEmpty()) {
+                failedDecodes.add(cacheKey);
+                Util.log(TAG, "Unable to resolve texture: '%s'".formatted(cacheKey));
+            } else {
+                var path = texturePath(item.get());
+                pendingDecodes.put(cacheKey, decodeExecutor.submit(() -> decoder.apply(path)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Whether the texture couldn't be resolved or decoded by {@link #acquireAsync(AssetRef)},
+     * which doesn't retry it, so callers can show an error instead of waiting for it
+     */
+    public boolean hasFailed(AssetRef<Texture> ref) {
+        return failedDecodes.contains(ref.cacheKey());
+    }
+
+    /**
+     * Upload textures that have finished decoding in the background.
+     * Must be called on the render thread, limited to a few uploads
+     * or a couple of milliseconds per call, whichever comes first.
+     */
+    public void update() {
+        // NOTE: textures are kept for a frame after they're uploaded, for the thumbnails waiting on them to
+        //  acquire them, otherwise a cache full of acquired textures would evict them as they're uploaded
+        if (freshUploads.notEmpty()) {
+            for (int i = 0; i < freshUploads.size; i++) {
+                freshUploads.get(i).fresh = false;
+            }
+            freshUploads.clear();
+            evict(null);
+        }
+        if (pendingDecodes.isEmpty()) return;
+
+        var start = TimeUtils.nanoTime();
+        var uploads = 0;
+        var iterator = pendingDecodes.entrySet().iterator();
+        while (iterator.hasNext() && uploads < MAX_UPLOADS_PER_FRAME
+            && TimeUtils.nanoTime() - start < UPLOAD_BUDGET_NANOS) {
+            var pending = iterator.next();
+            if (!pending.getValue().isDone()) continue;
+            iterator.remove();
+
+            var cacheKey = pending.getKey();
+            try {
+                // NOTE: the texture disposes the decoded pixmap once it's uploaded
+                var texture = new Texture(pending.getValue().get());
+
+                var entry = new Entry(texture, sizeOf(texture));
+                entry.fresh = true;
+                freshUploads.add(entry);
+                cache.put(cacheKey, entry);
+                cachedBytes += entry.bytes;
+                evict(entry);
+                uploads++;
+            } catch (GdxRuntimeException e) {
+                failedDecodes.add(cacheKey);
+                Gdx.app.error(TAG, "Failed to decode texture: '%s'".formatted(cacheKey), e);
+            }
+        }
+    }
+
+    /**
+     * Release a reference held through {@link #acquire(AssetRef, Class)},
+     * the asset becomes eligible for eviction once no references remain.
+     */
+    public void release(String cacheKey) {
+        var entry = cache.get(cacheKey);
+        if (entry == null || entry.refCount == 0) {
+            Util.log(TAG, "Released asset that wasn't acquired: '%s'".formatted(cacheKey));
+            return;
+        }
+        entry.refCount--;
+        evict(null);
+    }
+
+    public int size()         { return cache.size(); }
+    public long cachedBytes() { return cachedBytes; }
+    public long hits()        { return hits; }
+    public long misses()      { return misses; }
+    public long evictions()   { return evictions; }
+
+    @Override
+    public void dispose() {
+        // NOTE: waits for in flight decodes to finish so their pixmaps can be freed
+        decodeExecutor.dispose();
+        for (var pending : pendingDecodes.values()) {
+            try {
+                var data = pending.get();
+                if (data != null && data.isPrepared() && data.getType() == TextureData.TextureDataType.Pixmap) {
+                    data.consumePixmap().dispose();
+                }
+            } catch (GdxRuntimeException ignored) {}
+        }
+        pendingDecodes.clear();
+        freshUploads.clear();
+
+        for (var entry : cache.values()) {
+            disposeAsset(entry.asset);
+        }
+        cache.clear();
+        cachedBytes = 0;
+        Util.log(TAG, "Disposed, hits: %d, misses: %d, evictions: %d".formatted(hits, misses, evictions));
+    }
+
+    private Entry lookup(AssetRef<?> ref, Class<?> type) {
+        var cacheKey = ref.cacheKey();
+        var entry = cache.get(cacheKey);
+        if (entry != null) {
+            hits++;
+            return entry;
+        }
+
+        misses++;
+        var asset = metadata.findAssetType(ref.typeId)
             .flatMap(assetType -> assetType.findItem(ref.itemId))
-            .map(assetItem -> loadAsset(ref.cacheKey(), assetItem, type));
+            .map(assetItem -> loadAsset(assetItem, type))
+            .orElse(null);
+        if (asset == null) {
+            return null;
+        }
+
+        entry = new Entry(asset, sizeOf(asset));
+        cache.put(cacheKey, entry);
+        cachedBytes += entry.bytes;
+        return entry;
     }
 
-    private <T> T loadAsset(String cacheKey, AssetItem item, Class<T> type) {
+    /**
+     * Evict least recently used, unreferenced entries until the cache is back within
+     * its bounds, or until only referenced or fresh entries are left. The {@code keep} entry
+     * is skipped so that a newly loaded asset isn't disposed before it's returned.
+     */
+    private void evict(Entry keep) {
+        if (cache.size() <= maxEntries && cachedBytes <= maxBytes) return;
+
+        var iterator = cache.values().iterator();
+        while (iterator.hasNext() && (cache.size() > maxEntries || cachedBytes > maxBytes)) {
+            var entry = iterator.next();
+            if (entry == keep || entry.refCount > 0 || entry.fresh) continue;
+
+            iterator.remove();
+            cachedBytes -= entry.bytes;
+            evictions++;
+            disposeAsset(entry.asset);
+        }
+    }
+
+    /**
+     * Estimated memory used by an asset, assuming 4 bytes per texel for textures
+     */
+    private static long sizeOf(Object asset) {
+        return switch (asset) {
+            case Texture texture -> (long) texture.getWidth() * texture.getHeight() * 4;
+            case Animation<?> animation -> {
+                var bytes = 0L;
+                for (Object frame : animation.getKeyFrames()) {
+                    bytes += sizeOf(frame);
+                }
+                yield bytes;
+            }
+            default -> 0L;
+        };
+    }
+
+    private static void disposeAsset(Object asset) {
+        switch (asset) {
+            case Texture texture -> texture.dispose();
+            case Animation<?> animation -> {
+                for (Object frame : animation.getKeyFrames()) {
+                    disposeAsset(frame);
+                }
+            }
+            default -> {}
+        }
+    }
+
+    private <T> T loadAsset(AssetItem item, Class<T> type) {
         Object asset = null;
         if      (type == Texture.class)   asset = loadTexture(item);
         else if (type == Animation.class) asset = loadAnimation(item);
@@ -46,16 +330,25 @@ public class AssetResolver {
         else if (type == AssetRef.class)  asset = AssetRef.of(item.id, item.name);
         else if (type == String.class)    asset = item.name;
         else Util.log(TAG, "Unsupported asset type: %s".formatted(type.getSimpleName()));
-        if (asset != null) {
-            cache.put(cacheKey, asset);
-        }
         return type.cast(asset);
     }
 
     private Texture loadTexture(AssetItem item) {
+        return new Texture(texturePath(item));
+    }
+
+    /**
+     * Decode a texture file into a pixmap, off the render thread, ready to be uploaded
+     */
+    private static TextureData decodeTexture(String path) {
+        var data = TextureData.Factory.loadFromFile(Gdx.files.absolute(path), false);
+        data.prepare();
+        return data;
+    }
+
+    private String texturePath(AssetItem item) {
         var basePath = Paths.get(metadata.path).getParent();
-        var fullPath = basePath.resolve(item.path).toAbsolutePath().toString();
-        return new Texture(fullPath);
+        return basePath.resolve(item.path).toAbsolutePath().toString();
     }
 
     @SuppressWarnings("unchecked")
@@ -22,6 +22,10 @@ public class Metadata {
     public final Map<String, AssetType> assetTypes = new HashMap<>();
     public final Map<String, NodeType>  nodeTypes = new HashMap<>();
 
+    // indexes across all asset types, built on load by index()
+    private final Map<String, AssetItem> itemsById   = new HashMap<>();
+    private final Map<String, AssetItem> itemsByName = new HashMap<>();
+
     @SuppressWarnings("unchecked")
     public Metadata(String path) {
         this.path = path;
@@ -55,9 +59,32 @@ public class Metadata {
             nodeTypes.put(type.id, type);
         }
 
+        index();
+
         Util.log(TAG, "Loaded %d asset types and %d node types".formatted(assetTypes.size(), nodeTypes.size()));
     }
 
+    /**
+     * (Re)build the lookup indexes for asset items and prop types,
+     * must be called again if types or items are modified after load.
+     * NOTE: when an item id or name is used in more than one asset type
+     *  the first one encountered wins, same as the linear scans these replace
+     */
+    public void index() {
+        itemsById.clear();
+        itemsByName.clear();
+        for (var assetType : assetTypes.values()) {
+            assetType.index();
+            for (var item : assetType.items) {
+                itemsById.putIfAbsent(item.id, item);
+                itemsByName.putIfAbsent(item.name, item);
+            }
+        }
+        for (var nodeType : nodeTypes.values()) {
+            nodeType.index();
+        }
+    }
+
     public Optional<AssetType> findAssetType(String assetTypeId) {
         return Optional.ofNullable(assetTypes.get(assetTypeId));
     }
@@ -66,18 +93,39 @@ public class Metadata {
         return Optional.ofNullable(nodeTypes.get(nodeTypeId));
     }
 
+    /**
+     * Find an asset item by id in any asset type
+     */
+    public Optional<AssetItem> findItem(String itemId) {
+        return Optional.ofNullable(itemsById.get(itemId));
+    }
+
+    /**
+     * Find an asset item by name in any asset type
+     */
+    public Optional<AssetItem> findItemByName(String itemName) {
+        return Optional.ofNullable(itemsByName.get(itemName));
+    }
+
     public static class AssetType {
         public String id;
         public String name;
         public Array<AssetItem> items = new Array<>();
 
-        public Optional<AssetItem> findItem(String itemId) {
+        private transient Map<String, AssetItem> itemsById;
+
+        void index() {
+            itemsById = new HashMap<>(items.size * 2);
             for (var item : items) {
-                if (item.id.equals(itemId)) {
-                    return Optional.of(item);
-                }
+                itemsById.putIfAbsent(item.id, item);
+            }
+        }
+
+        public Optional<AssetItem> findItem(String itemId) {
+            if (itemsById == null) {
+                index();
             }
-            return Optional.empty();
+            return Optional.ofNullable(itemsById.get(itemId));
         }
     }
 
@@ -120,13 +168,20 @@ public class Metadata {
         public int outputs;
         public Array<PropType<?>> props = new Array<>();
 
-        public Optional<PropType<?>> findPropType(String id) {
+        private transient Map<String, PropType<?>> propTypesById;
+
+        void index() {
+            propTypesById = new HashMap<>();
             for (var prop : props) {
-                if (prop.id.equals(id)) {
-                    return Optional.of(prop);
-                }
+                propTypesById.putIfAbsent(prop.id, prop);
+            }
+        }
+
+        public Optional<PropType<?>> findPropType(String id) {
+            if (propTypesById == null) {
+                index();
             }
-            return Optional.empty();
+            return Optional.ofNullable(propTypesById.get(id));
         }
     }
 
@@ -3,7 +3,7 @@ package net.bplo.nodes.editor.meta;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.utils.Array;
 import net.bplo.nodes.Util;
-import net.bplo.nodes.editor.Editor;
+import net.bplo.nodes.editor.EditorObject;
 import net.bplo.nodes.editor.Node;
 import net.bplo.nodes.editor.Prop;
 import net.bplo.nodes.editor.PropInputText;
@@ -19,10 +19,10 @@ public class PropBindingResolver {
 
     private static final String TAG = PropBindingResolver.class.getSimpleName();
 
-    private final Editor editor;
+    private final Metadata metadata;
 
-    public PropBindingResolver(Editor editor) {
-        this.editor = editor;
+    public PropBindingResolver(Metadata metadata) {
+        this.metadata = metadata;
     }
 
     public void resolveBindings(Node node, Array<Metadata.PropType<?>> propTypes) {
@@ -79,7 +79,14 @@ public class PropBindingResolver {
             };
 
             // apply initial value
-            sourceProp.onChange.changed(sourceProp.getData());
+            // NOTE: this derives the bound props from data that was loaded or defaulted, it isn't an edit,
+            //  tracking it would mark every node with bound props dirty on every load, see ChangeTracker
+            var editor = EditorObject.editor;
+            if (editor != null) {
+                editor.changes.ignoring(() -> sourceProp.changed(sourceProp.getData()));
+            } else {
+                sourceProp.changed(sourceProp.getData());
+            }
         }
     }
 
@@ -94,7 +101,7 @@ public class PropBindingResolver {
             selectData.selectedIndex = selectData.options.length > 0 ? 0 : -1;
 
             // trigger change listener to propagate changes to any bound props
-            select.onChange.changed(selectData);
+            select.changed(selectData);
         } else if (targetProp instanceof PropInputText inputText && value instanceof String string) {
             inputText.setText(string);
         }
@@ -152,29 +159,18 @@ public class PropBindingResolver {
     }
 
     private Object getPropertyFromSelection(String selectedName, String propertyPath) {
-        // Find which asset type contains an item with this name
-        for (var assetType : editor.metadata.assetTypes.values()) {
-            var item = Util.asList(assetType.items).stream()
-                .filter(i -> i.name.equals(selectedName))
-                .findFirst();
-
-            if (item.isPresent()) {
-                return item.get().properties.get(propertyPath);
-            }
-        }
-        return null;
+        // Find the item with this name in whichever asset type contains it
+        return metadata.findItemByName(selectedName)
+            .map(item -> item.properties.get(propertyPath))
+            .orElse(null);
     }
 
     private String extractRefName(Object ref) {
         if (ref instanceof AssetRef<?> assetRef) {
             // Look up the asset's name
-            for (var type : editor.metadata.assetTypes.values()) {
-                var item = type.findItem(assetRef.itemId);
-                if (item.isPresent()) {
-                    return item.get().name;
-                }
-            }
-            return assetRef.itemId;
+            return metadata.findItem(assetRef.itemId)
+                .map(item -> item.name)
+                .orElse(assetRef.itemId);
         }
         return "Unknown";
     }
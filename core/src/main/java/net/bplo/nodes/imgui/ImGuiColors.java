@@ -16,25 +16,64 @@ public class ImGuiColors {
         return new ImVec4(r, g, b, a);
     }
 
-    public record Value(String hex) {
+    /**
+     * NOTE: the packed and vector forms are computed once up front since these
+     *  are looked up every frame, the vector itself is never handed out so a caller
+     *  can't change the color for everyone. Code that runs every frame should keep
+     *  its own vector and fill it with {@link #asVec4(ImVec4)} rather than use the
+     *  copy returned by {@link #asVec4()}. Equality is by hex value only.
+     */
+    public static final class Value {
+
+        private final String hex;
+        private final int packed;
+        private final ImVec4 vec4;
+
+        public Value(String hex) {
+            this.hex = hex;
+            this.packed = ImColor.rgba(hex);
+            this.vec4 = toImVec4(packed);
+        }
+
+        public String hex() {
+            return hex;
+        }
 
         public int asInt() {
-            return ImColor.rgba(hex);
+            return packed;
         }
 
         public int asInt(float alpha) {
-            var alphaByte = (int) (alpha * 255);
-            var alphaHex = "%s%02x".formatted(hex.substring(0, 7), alphaByte);
-            return ImColor.rgba(alphaHex);
+            var alphaByte = (int) (alpha * 255) & 0xff;
+            return (packed & 0x00ffffff) | (alphaByte << 24);
         }
 
         public ImVec4 asVec4() {
-            return toImVec4(asInt());
+            return new ImVec4(vec4);
+        }
+
+        public ImVec4 asVec4(ImVec4 out) {
+            return out.set(vec4);
         }
 
         public ImVec4 asVec4(float alpha) {
             return toImVec4(asInt(alpha));
         }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Value value && hex.equals(value.hex);
+        }
+
+        @Override
+        public int hashCode() {
+            return hex.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Value[hex=%s]".formatted(hex);
+        }
     }
 
     public static final Value white       = new Value("#ffffffff");
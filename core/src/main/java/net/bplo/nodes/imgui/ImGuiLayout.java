@@ -11,21 +11,22 @@ import imgui.ImGui;
 public class ImGuiLayout {
 
     public static void beginColumn() {
-        beginColumn(null);
+        ImGui.beginGroup();
     }
 
-    public static void beginColumn(Float width) {
-        if (width != null) {
-            ImGui.setNextItemWidth(width);
-        }
+    // NOTE: primitive width overloads, these are called per column per frame so avoid boxing
+    public static void beginColumn(float width) {
+        ImGui.setNextItemWidth(width);
         ImGui.beginGroup();
     }
 
     public static void nextColumn() {
-        nextColumn(null);
+        ImGui.endGroup();
+        ImGui.sameLine();
+        beginColumn();
     }
 
-    public static void nextColumn(Float width) {
+    public static void nextColumn(float width) {
         ImGui.endGroup();
         ImGui.sameLine();
         beginColumn(width);
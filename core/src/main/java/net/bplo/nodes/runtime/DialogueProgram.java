@@ -0,0 +1,307 @@
+package net.bplo.nodes.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dialogue graph compiled into flat tables, for stepping through at runtime
+ * with {@link Playthrough}s. Each node in the graph becomes one instruction,
+ * identified by its index, with its flow successors and prop values stored
+ * in shared arrays that are indexed by per-instruction start offsets.
+ * <p>
+ * Programs are immutable once built, so a single program can be shared
+ * by any number of playthroughs, on any number of threads.
+ * <p>
+ * NOTE: this package is intentionally free of libGDX and ImGui dependencies
+ *  so that it can be used by a game, or a headless tool, without the editor.
+ */
+public final class DialogueProgram {
+
+    /**
+     * Kind of value stored for a prop, determines how {@link #propValue} is interpreted
+     */
+    public enum PropKind {
+          TEXT   // string table index
+        , INT    // int value
+        , FLOAT  // float bits
+        , SELECT // string table index of the selected option, -1 if none
+        ;
+        private static final PropKind[] VALUES = values();
+    }
+
+    public static final int NONE = -1;
+
+    private final String[] strings;
+    private final Map<String, Integer> stringIndices;
+
+    // per instruction
+    private final long[] nodeIds;
+    private final int[] nodeTypes;
+    private final int[] headerTexts;
+    private final int[] successorStarts;
+    private final int[] propStarts;
+
+    // shared, indexed by the start offsets above
+    private final int[] successors;
+    private final byte[] propKinds;
+    private final int[] propNames;
+    private final int[] propTypes;
+    private final int[] propValues;
+
+    // instructions with no incoming flow links, in node order
+    private final int[] entryPoints;
+
+    DialogueProgram(String[] strings,
+                    long[] nodeIds, int[] nodeTypes, int[] headerTexts,
+                    int[] successorStarts, int[] successors,
+                    int[] propStarts, byte[] propKinds, int[] propNames, int[] propTypes, int[] propValues) {
+        this.strings = strings;
+        this.stringIndices = new HashMap<>(strings.length * 2);
+        for (int i = 0; i < strings.length; i++) {
+            stringIndices.put(strings[i], i);
+        }
+        this.nodeIds = nodeIds;
+        this.nodeTypes = nodeTypes;
+        this.headerTexts = headerTexts;
+        this.successorStarts = successorStarts;
+        this.successors = successors;
+        this.propStarts = propStarts;
+        this.propKinds = propKinds;
+        this.propNames = propNames;
+        this.propTypes = propTypes;
+        this.propValues = propValues;
+
+        var count = nodeIds.length;
+        var hasIncoming = new boolean[count];
+        for (var successor : successors) {
+            hasIncoming[successor] = true;
+        }
+        var entries = 0;
+        var entryPoints = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (!hasIncoming[i]) entryPoints[entries++] = i;
+        }
+        this.entryPoints = Arrays.copyOf(entryPoints, entries);
+    }
+
+    public int instructionCount()      { return nodeIds.length; }
+    public int stringCount()           { return strings.length; }
+    public String string(int index)    { return (index == NONE) ? null : strings[index]; }
+
+    /**
+     * Index of the specified string in the string table, or {@link #NONE}.
+     * Look up strings like prop type ids once and reuse the index.
+     */
+    public int stringIndex(String string) {
+        var index = stringIndices.get(string);
+        return (index != null) ? index : NONE;
+    }
+
+    public long nodeId(int instruction)     { return nodeIds[instruction]; }
+    public int nodeType(int instruction)    { return nodeTypes[instruction]; }
+    public int headerText(int instruction)  { return headerTexts[instruction]; }
+
+    /**
+     * Instruction index for the node with the specified id, or {@link #NONE}.
+     * Linear in the number of instructions, intended for setup rather than stepping.
+     */
+    public int findInstruction(long nodeId) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (nodeIds[i] == nodeId) return i;
+        }
+        return NONE;
+    }
+
+    public int entryPointCount()         { return entryPoints.length; }
+    public int entryPoint(int index)     { return entryPoints[index]; }
+
+    public int successorCount(int instruction) {
+        return successorStarts[instruction + 1] - successorStarts[instruction];
+    }
+
+    public int successor(int instruction, int index) {
+        return successors[successorStarts[instruction] + index];
+    }
+
+    public int propCount(int instruction) {
+        return propStarts[instruction + 1] - propStarts[instruction];
+    }
+
+    /**
+     * Global prop index of the instruction's first prop with the specified
+     * prop type (a string table index), or {@link #NONE}.
+     */
+    public int findProp(int instruction, int propType) {
+        for (int i = propStarts[instruction]; i < propStarts[instruction + 1]; i++) {
+            if (propTypes[i] == propType) return i;
+        }
+        return NONE;
+    }
+
+    /**
+     * Global prop index of the instruction's prop at the specified local index
+     */
+    public int prop(int instruction, int index) {
+        return propStarts[instruction] + index;
+    }
+
+    public PropKind propKind(int prop)  { return PropKind.VALUES[propKinds[prop]]; }
+    public int propName(int prop)       { return propNames[prop]; }
+    public int propType(int prop)       { return propTypes[prop]; }
+
+    /**
+     * Raw prop value, interpreted according to its {@link PropKind}
+     */
+    public int propValue(int prop)      { return propValues[prop]; }
+
+    public int intValue(int prop)       { return propValues[prop]; }
+    public float floatValue(int prop)   { return Float.intBitsToFloat(propValues[prop]); }
+    public String textValue(int prop)   { return string(propValues[prop]); }
+
+    /**
+     * Builds a {@link DialogueProgram} one instruction at a time.
+     * Successors are specified by node id and resolved to instructions in {@link #build()},
+     * so instructions can reference nodes that haven't been added yet.
+     */
+    public static class Builder {
+
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+
+        private int count;
+        private long[] nodeIds = new long[16];
+        private int[] nodeTypes = new int[16];
+        private int[] headerTexts = new int[16];
+        private int[] successorStarts = new int[17];
+        private int[] propStarts = new int[17];
+
+        private int successorCount;
+        private long[] successorNodeIds = new long[16];
+
+        private int propCount;
+        private byte[] propKinds = new byte[16];
+        private int[] propNames = new int[16];
+        private int[] propTypes = new int[16];
+        private int[] propValues = new int[16];
+
+        public int string(String string) {
+            if (string == null) return NONE;
+            var index = stringIndices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndices.put(string, index);
+            }
+            return index;
+        }
+
+        /**
+         * Start a new instruction, subsequent successors and props are added to it
+         */
+        public Builder instruction(long nodeId, String nodeType, String headerText) {
+            if (count == nodeIds.length) {
+                var capacity = count * 2;
+                nodeIds = Arrays.copyOf(nodeIds, capacity);
+                nodeTypes = Arrays.copyOf(nodeTypes, capacity);
+                headerTexts = Arrays.copyOf(headerTexts, capacity);
+                successorStarts = Arrays.copyOf(successorStarts, capacity + 1);
+                propStarts = Arrays.copyOf(propStarts, capacity + 1);
+            }
+            nodeIds[count] = nodeId;
+            nodeTypes[count] = string(nodeType);
+            headerTexts[count] = string(headerText);
+            count++;
+            successorStarts[count] = successorCount;
+            propStarts[count] = propCount;
+            return this;
+        }
+
+        public Builder successor(long nodeId) {
+            requireInstruction();
+            if (successorCount == successorNodeIds.length) {
+                successorNodeIds = Arrays.copyOf(successorNodeIds, successorCount * 2);
+            }
+            successorNodeIds[successorCount++] = nodeId;
+            successorStarts[count] = successorCount;
+            return this;
+        }
+
+        public Builder textProp(String name, String propType, String value) {
+            return prop(PropKind.TEXT, name, propType, string(value));
+        }
+
+        public Builder intProp(String name, String propType, int value) {
+            return prop(PropKind.INT, name, propType, value);
+        }
+
+        public Builder floatProp(String name, String propType, float value) {
+            return prop(PropKind.FLOAT, name, propType, Float.floatToRawIntBits(value));
+        }
+
+        public Builder selectProp(String name, String propType, String selectedOption) {
+            return prop(PropKind.SELECT, name, propType, string(selectedOption));
+        }
+
+        private Builder prop(PropKind kind, String name, String propType, int value) {
+            requireInstruction();
+            if (propCount == propKinds.length) {
+                var capacity = propCount * 2;
+                propKinds = Arrays.copyOf(propKinds, capacity);
+                propNames = Arrays.copyOf(propNames, capacity);
+                propTypes = Arrays.copyOf(propTypes, capacity);
+                propValues = Arrays.copyOf(propValues, capacity);
+            }
+            propKinds[propCount] = (byte) kind.ordinal();
+            propNames[propCount] = string(name);
+            propTypes[propCount] = string(propType);
+            propValues[propCount] = value;
+            propCount++;
+            propStarts[count] = propCount;
+            return this;
+        }
+
+        /**
+         * Resolve successor node ids and build the program.
+         * Throws {@link IllegalStateException} if a successor references a node
+         * that wasn't added, or if a node id was added more than once.
+         */
+        public DialogueProgram build() {
+            var instructionsByNodeId = new HashMap<Long, Integer>(count * 2);
+            for (int i = 0; i < count; i++) {
+                if (instructionsByNodeId.put(nodeIds[i], i) != null) {
+                    throw new IllegalStateException("Duplicate node id: " + nodeIds[i]);
+                }
+            }
+
+            var successors = new int[successorCount];
+            for (int i = 0; i < successorCount; i++) {
+                var instruction = instructionsByNodeId.get(successorNodeIds[i]);
+                if (instruction == null) {
+                    throw new IllegalStateException("Successor references missing node id: " + successorNodeIds[i]);
+                }
+                successors[i] = instruction;
+            }
+            return new DialogueProgram(
+                strings.toArray(new String[0]),
+                Arrays.copyOf(nodeIds, count),
+                Arrays.copyOf(nodeTypes, count),
+                Arrays.copyOf(headerTexts, count),
+                Arrays.copyOf(successorStarts, count + 1),
+                successors,
+                Arrays.copyOf(propStarts, count + 1),
+                Arrays.copyOf(propKinds, propCount),
+                Arrays.copyOf(propNames, propCount),
+                Arrays.copyOf(propTypes, propCount),
+                Arrays.copyOf(propValues, propCount));
+        }
+
+        private void requireInstruction() {
+            if (count == 0) {
+                throw new IllegalStateException("No instruction started, call instruction() first");
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package net.bplo.nodes.runtime;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes {@link DialogueProgram}s in a flat runtime format that's meant
+ * to be shipped with a game instead of the editor's json, see {@link #FILE_EXTENSION}.
+ * <p>
+ * The file is the program's tables written out back to back as little endian
+ * primitive arrays, so loading is one memory mapped read and a bulk copy per table,
+ * with no parsing beyond the string pool:
+ * <pre>
+ * header      magic, version, string count, instruction count, successor count, prop count, string bytes, padding
+ * nodes       long[instructions] node ids, int[instructions] node type and header text string indices
+ * successors  int[instructions + 1] start offsets, int[successors] instruction indices
+ * props       int[instructions + 1] start offsets, int[props] name, type and value columns, byte[props] kinds
+ * strings     int[strings + 1] byte offsets, then the utf-8 bytes of the deduplicated string pool
+ * </pre>
+ * Editor only data, like node positions, widths, pins and prop class names, isn't written.
+ */
+public final class DialogueProgramFile {
+
+    public static final String FILE_EXTENSION = "dlg";
+
+    static final int MAGIC = 0x444c4750; // 'DLGP'
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private DialogueProgramFile() {}
+
+    public static boolean isProgramFile(Path path) {
+        return path.getFileName().toString().endsWith("." + FILE_EXTENSION);
+    }
+
+    // ------------------------------------------------------------------------
+    // Writing
+    // ------------------------------------------------------------------------
+
+    public static void write(DialogueProgram program, Path path) throws IOException {
+        var buffer = toBuffer(program);
+        try (var channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Encode the program into a new buffer, flipped and ready to be read or written
+     */
+    public static ByteBuffer toBuffer(DialogueProgram program) {
+        var instructions = program.instructionCount();
+        var successorCount = 0;
+        var propCount = 0;
+        for (int i = 0; i < instructions; i++) {
+            successorCount += program.successorCount(i);
+            propCount += program.propCount(i);
+        }
+
+        var stringCount = program.stringCount();
+        var stringBytes = new byte[stringCount][];
+        var stringByteCount = 0;
+        for (int i = 0; i < stringCount; i++) {
+            stringBytes[i] = program.string(i).getBytes(StandardCharsets.UTF_8);
+            stringByteCount += stringBytes[i].length;
+        }
+
+        var size = dataSize(stringCount, instructions, successorCount, propCount, stringByteCount);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Program is too large to export: %d bytes".formatted(size));
+        }
+
+        var buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(stringCount)
+            .putInt(instructions)
+            .putInt(successorCount)
+            .putInt(propCount)
+            .putInt(stringByteCount);
+        buffer.position(HEADER_SIZE);
+
+        // nodes
+        for (int i = 0; i < instructions; i++) buffer.putLong(program.nodeId(i));
+        for (int i = 0; i < instructions; i++) buffer.putInt(program.nodeType(i));
+        for (int i = 0; i < instructions; i++) buffer.putInt(program.headerText(i));
+
+        // successors
+        var offset = 0;
+        for (int i = 0; i < instructions; i++) {
+            buffer.putInt(offset);
+            offset += program.successorCount(i);
+        }
+        buffer.putInt(offset);
+        for (int i = 0; i < instructions; i++) {
+            for (int j = 0; j < program.successorCount(i); j++) {
+                buffer.putInt(program.successor(i, j));
+            }
+        }
+
+        // props, global prop indices are already contiguous in instruction order
+        offset = 0;
+        for (int i = 0; i < instructions; i++) {
+            buffer.putInt(offset);
+            offset += program.propCount(i);
+        }
+        buffer.putInt(offset);
+        for (int i = 0; i < propCount; i++) buffer.putInt(program.propName(i));
+        for (int i = 0; i < propCount; i++) buffer.putInt(program.propType(i));
+        for (int i = 0; i < propCount; i++) buffer.putInt(program.propValue(i));
+        for (int i = 0; i < propCount; i++) buffer.put((byte) program.propKind(i).ordinal());
+
+        // strings
+        offset = 0;
+        for (int i = 0; i < stringCount; i++) {
+            buffer.putInt(offset);
+            offset += stringBytes[i].length;
+        }
+        buffer.putInt(offset);
+        for (var bytes : stringBytes) {
+            buffer.put(bytes);
+        }
+
+        return buffer.flip();
+    }
+
+    // ------------------------------------------------------------------------
+    // Reading
+    // ------------------------------------------------------------------------
+
+    /**
+     * Memory map the file and decode the program from it.
+     * The mapping isn't retained, the program owns copies of its tables.
+     */
+    public static DialogueProgram read(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Decode a program from the buffer's remaining bytes, for programs that are
+     * loaded from somewhere other than a file, like a classpath resource.
+     * Throws {@link IOException} if the data is malformed.
+     */
+    public static DialogueProgram read(ByteBuffer source) throws IOException {
+        var buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            var magic = buffer.getInt();
+            if (magic != MAGIC) {
+                throw new IOException("Not a dialogue program file, bad magic: 0x%08x".formatted(magic));
+            }
+            var version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported dialogue program version: %d, expected %d".formatted(version, VERSION));
+            }
+            var stringCount    = requireCount(buffer.getInt(), "string");
+            var instructions   = requireCount(buffer.getInt(), "instruction");
+            var successorCount = requireCount(buffer.getInt(), "successor");
+            var propCount      = requireCount(buffer.getInt(), "prop");
+            var stringBytes    = requireCount(buffer.getInt(), "string byte");
+
+            // NOTE: checked before anything is allocated from the counts, a corrupt header
+            //  could otherwise ask for arrays far larger than the data that's there
+            var size = dataSize(stringCount, instructions, successorCount, propCount, stringBytes);
+            if (size > buffer.limit()) {
+                throw new IOException("Truncated dialogue program data, header counts need %d bytes but there are %d"
+                    .formatted(size, buffer.limit()));
+            }
+            buffer.position(HEADER_SIZE);
+
+            var nodeIds = new long[instructions];
+            var nodeTypes = new int[instructions];
+            var headerTexts = new int[instructions];
+            buffer.asLongBuffer().get(nodeIds);
+            skip(buffer, instructions * Long.BYTES);
+            getInts(buffer, nodeTypes);
+            getInts(buffer, headerTexts);
+
+            var successorStarts = new int[instructions + 1];
+            var successors = new int[successorCount];
+            getInts(buffer, successorStarts);
+            getInts(buffer, successors);
+
+            var propStarts = new int[instructions + 1];
+            var propNames = new int[propCount];
+            var propTypes = new int[propCount];
+            var propValues = new int[propCount];
+            var propKinds = new byte[propCount];
+            getInts(buffer, propStarts);
+            getInts(buffer, propNames);
+            getInts(buffer, propTypes);
+            getInts(buffer, propValues);
+            buffer.get(propKinds);
+
+            var stringOffsets = new int[stringCount + 1];
+            getInts(buffer, stringOffsets);
+            var bytes = new byte[stringBytes];
+            buffer.get(bytes);
+            var strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                var start = stringOffsets[i];
+                var end = stringOffsets[i + 1];
+                if (start < 0 || end < start || end > stringBytes) {
+                    throw new IOException("Invalid string pool offset for string: " + i);
+                }
+                strings[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            }
+
+            // validate everything the runtime indexes with, so a bad file fails here instead of mid playthrough
+            requireOffsets(successorStarts, successorCount, "successor");
+            requireOffsets(propStarts, propCount, "prop");
+            requireIndices(successors, 0, instructions, "successor");
+            requireIndices(nodeTypes, DialogueProgram.NONE, stringCount, "node type");
+            requireIndices(headerTexts, DialogueProgram.NONE, stringCount, "header text");
+            requireIndices(propNames, DialogueProgram.NONE, stringCount, "prop name");
+            requireIndices(propTypes, DialogueProgram.NONE, stringCount, "prop type");
+            var kinds = DialogueProgram.PropKind.values();
+            for (int i = 0; i < propCount; i++) {
+                if (propKinds[i] < 0 || propKinds[i] >= kinds.length) {
+                    throw new IOException("Invalid kind for prop %d: %d".formatted(i, propKinds[i]));
+                }
+                var kind = kinds[propKinds[i]];
+                if (kind == DialogueProgram.PropKind.TEXT || kind == DialogueProgram.PropKind.SELECT) {
+                    if (propValues[i] < DialogueProgram.NONE || propValues[i] >= stringCount) {
+                        throw new IOException("Invalid string index for prop %d: %d".formatted(i, propValues[i]));
+                    }
+                }
+            }
+
+            return new DialogueProgram(strings,
+                nodeIds, nodeTypes, headerTexts,
+                successorStarts, successors,
+                propStarts, propKinds, propNames, propTypes, propValues);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated dialogue program data", e);
+        }
+    }
+
+    private static void getInts(ByteBuffer buffer, int[] dst) {
+        buffer.asIntBuffer().get(dst);
+        skip(buffer, dst.length * Integer.BYTES);
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    /**
+     * Total size of a program's data, header included, computed in longs so that it
+     * can't overflow however large the counts are
+     */
+    private static long dataSize(int stringCount, int instructions, int successorCount, int propCount, int stringBytes) {
+        return HEADER_SIZE
+            + (long) instructions * (Long.BYTES + 2 * Integer.BYTES)
+            + ((long) instructions + 1) * Integer.BYTES + (long) successorCount * Integer.BYTES
+            + ((long) instructions + 1) * Integer.BYTES + (long) propCount * (3 * Integer.BYTES + 1)
+            + ((long) stringCount + 1) * Integer.BYTES + stringBytes;
+    }
+
+    private static int requireCount(int count, String what) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid %s count: %d".formatted(what, count));
+        }
+        return count;
+    }
+
+    private static void requireOffsets(int[] starts, int total, String what) throws IOException {
+        if (starts[0] != 0 || starts[starts.length - 1] != total) {
+            throw new IOException("Invalid %s offsets".formatted(what));
+        }
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i] < starts[i - 1]) {
+                throw new IOException("Invalid %s offsets".formatted(what));
+            }
+        }
+    }
+
+    private static void requireIndices(int[] indices, int min, int max, String what) throws IOException {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < min || indices[i] >= max) {
+                throw new IOException("Invalid %s index at %d: %d".formatted(what, i, indices[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.bplo.nodes.runtime;
+
+/**
+ * One independent run through a {@link DialogueProgram}.
+ * <p>
+ * A playthrough is just a position in the program plus a step counter, all of the
+ * graph data lives in the shared program, so it's cheap to keep many of them around.
+ * Stepping doesn't allocate.
+ * <p>
+ * At each instruction, a single successor is followed with {@link #next()},
+ * multiple successors are choices picked with {@link #choose(int)},
+ * and no successors means the playthrough is finished.
+ * <p>
+ * NOTE: not thread safe, but separate playthroughs of the same program
+ *  can be stepped on separate threads.
+ */
+public final class Playthrough {
+
+    public final DialogueProgram program;
+
+    private int current = DialogueProgram.NONE;
+    private long steps;
+
+    public Playthrough(DialogueProgram program) {
+        this.program = program;
+    }
+
+    /**
+     * Start (or restart) at the program's first entry point, or its first
+     * instruction if every instruction is part of a loop.
+     * Returns false if the program is empty.
+     */
+    public boolean start() {
+        if (program.instructionCount() == 0) {
+            current = DialogueProgram.NONE;
+            return false;
+        }
+        return start(program.entryPointCount() > 0 ? program.entryPoint(0) : 0);
+    }
+
+    /**
+     * Start (or restart) at the specified instruction
+     */
+    public boolean start(int instruction) {
+        if (instruction < 0 || instruction >= program.instructionCount()) {
+            throw new IndexOutOfBoundsException("Invalid instruction: " + instruction);
+        }
+        current = instruction;
+        steps = 0;
+        return true;
+    }
+
+    public int current()          { return current; }
+    public long steps()           { return steps; }
+    public boolean isStarted()    { return current != DialogueProgram.NONE; }
+
+    public boolean isFinished() {
+        return current == DialogueProgram.NONE || program.successorCount(current) == 0;
+    }
+
+    /**
+     * Number of successors of the current instruction, more than one means a choice is required
+     */
+    public int choiceCount() {
+        return (current == DialogueProgram.NONE) ? 0 : program.successorCount(current);
+    }
+
+    /**
+     * Follow the current instruction's only successor.
+     * Returns false without moving if the playthrough is finished or at a choice.
+     */
+    public boolean next() {
+        if (current == DialogueProgram.NONE || program.successorCount(current) != 1) {
+            return false;
+        }
+        current = program.successor(current, 0);
+        steps++;
+        return true;
+    }
+
+    /**
+     * Follow the current instruction's successor at the specified index,
+     * successors are grouped in output pin order.
+     */
+    public boolean choose(int choice) {
+        if (current == DialogueProgram.NONE || choice < 0 || choice >= program.successorCount(current)) {
+            return false;
+        }
+        current = program.successor(current, choice);
+        steps++;
+        return true;
+    }
+
+    /**
+     * Text of the current instruction's prop with the specified prop type,
+     * where the prop type is a string table index, see {@link DialogueProgram#stringIndex(String)}.
+     * Returns null if there's no such prop or it isn't text or a selection.
+     */
+    public String text(int propType) {
+        if (current == DialogueProgram.NONE) return null;
+        var prop = program.findProp(current, propType);
+        if (prop == DialogueProgram.NONE) return null;
+        return switch (program.propKind(prop)) {
+            case TEXT, SELECT -> program.textValue(prop);
+            case INT, FLOAT -> null;
+        };
+    }
+}
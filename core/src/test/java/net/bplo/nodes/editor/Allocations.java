@@ -0,0 +1,35 @@
+package net.bplo.nodes.editor;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures what code run every frame allocates on the calling thread,
+ * the render path is meant to allocate nothing once it's warmed up
+ */
+final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int WARMUP_RUNS = 20_000;
+    private static final int MEASURED_RUNS = 10_000;
+
+    private Allocations() {}
+
+    /**
+     * Average bytes allocated per run of the action, measured after warming it up
+     * so that lazily created state and the jit have settled
+     */
+    static double bytesPerRun(Runnable action) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            action.run();
+        }
+
+        var before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            action.run();
+        }
+        var after = threads.getCurrentThreadAllocatedBytes();
+        return (after - before) / (double) MEASURED_RUNS;
+    }
+}
@@ -0,0 +1,143 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Edits made while an autosave is being written in the background
+ * must not leak into that file, and must not be lost from the next one
+ */
+class AutosaveTest {
+
+    private static final int NODE_COUNT = 5000;
+
+    private record NodeSave(String text, float x, float y) {}
+
+    @TempDir
+    Path dir;
+
+    private HeadlessApplication app;
+    private Editor editor;
+    private Autosave autosave;
+    private final List<PropInputText> texts = new ArrayList<>();
+
+    @BeforeEach
+    void createGraph() {
+        // NOTE: autosave logs through Gdx.app
+        var config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        app = new HeadlessApplication(new ApplicationAdapter() {}, config);
+
+        editor = new Editor(new MemoryPositions());
+        autosave = new Autosave(editor, dir.resolve(Editor.AUTOSAVE_FILE));
+
+        Pin previousOutput = null;
+        for (int i = 0; i < NODE_COUNT; i++) {
+            var node = new Node();
+            node.nodeTypeId = "dialogue";
+            node.headerText = "Dialogue " + i;
+            var input = new Pin(node, PinKind.INPUT, PinType.FLOW);
+            var output = new Pin(node, PinKind.OUTPUT, PinType.FLOW);
+            texts.add(new PropInputText(node, "Line " + i));
+            editor.positions.set(node.id, i * 10f, i * 5f);
+            editor.add(node);
+            if (previousOutput != null) {
+                editor.add(new Link(previousOutput, input));
+            }
+            previousOutput = output;
+        }
+    }
+
+    @AfterEach
+    void dispose() {
+        autosave.dispose();
+        editor.dispose();
+        app.exit();
+    }
+
+    @Test
+    void editsDuringWriteAreNeitherTornNorLost() throws Exception {
+        var atSave = currentState();
+        assertTrue(autosave.save());
+
+        // keep editing text and moving nodes until the background write is done
+        var random = new Random(1);
+        var edits = 0;
+        do {
+            var text = texts.get(random.nextInt(texts.size()));
+            var node = text.node;
+            text.setText("Edited " + edits);
+            var fromX = editor.positions.x(node.id);
+            var fromY = editor.positions.y(node.id);
+            editor.positions.set(node.id, -edits, -edits);
+            editor.changes.markMoved(node, fromX, fromY);
+            edits++;
+        } while (autosave.isWriting());
+
+        // the file holds the graph exactly as it was when the autosave started
+        assertEquals(atSave, savedState(autosave.path()));
+
+        // and the next autosave holds every edit made during the write
+        var afterEdits = currentState();
+        assertFalse(afterEdits.equals(atSave));
+        assertTrue(autosave.save());
+        while (autosave.isWriting()) {
+            Thread.onSpinWait();
+        }
+        assertEquals(afterEdits, savedState(autosave.path()));
+        assertFalse(Files.exists(dir.resolve(Editor.AUTOSAVE_FILE + ".tmp")));
+    }
+
+    private Map<Long, NodeSave> currentState() {
+        var state = new HashMap<Long, NodeSave>();
+        for (var text : texts) {
+            var id = text.node.id;
+            state.put(id, new NodeSave(text.getText(), editor.positions.x(id), editor.positions.y(id)));
+        }
+        return state;
+    }
+
+    private Map<Long, NodeSave> savedState(Path path) throws IOException {
+        JsonValue root;
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            root = new JsonReader().parse(reader);
+        }
+        var nodeList = root.get("nodeList");
+        assertNotNull(nodeList);
+
+        var state = new HashMap<Long, NodeSave>();
+        var links = 0;
+        for (var node = nodeList.child; node != null; node = node.next) {
+            var position = node.get("position");
+            var text = node.get("props").child.getString("data");
+            state.put(node.getLong("id"), new NodeSave(text, position.getFloat("x"), position.getFloat("y")));
+            links += node.get("outgoingLinks").size;
+        }
+        assertEquals(NODE_COUNT - 1, links);
+        return state;
+    }
+}
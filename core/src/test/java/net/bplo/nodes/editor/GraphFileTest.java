@@ -0,0 +1,222 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.SerializationException;
+import net.bplo.nodes.editor.meta.Metadata;
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * A graph saved as json or binary loads back the same from either format,
+ * and a damaged binary file fails to load with a {@link SerializationException}
+ * rather than loading part of the graph or failing some other way
+ */
+class GraphFileTest {
+
+    private static final int NODE_COUNT = 50;
+
+    @TempDir
+    Path dir;
+
+    private HeadlessApplication app;
+    private String metadataPath;
+    private final Json json = new Json();
+    private final MemoryPositions positions = new MemoryPositions();
+    private final List<Node> nodes = new ArrayList<>();
+
+    // the positions of every graph loaded by a test, they can share a store since ids are kept on load
+    private final MemoryPositions loadedPositions = new MemoryPositions();
+
+    private final EditorSerializer.LoadContext context = new EditorSerializer.LoadContext() {
+        @Override
+        public Metadata loadMetadata(String path) {
+            return new Metadata(path);
+        }
+
+        @Override
+        public void setNodePosition(long nodeId, float x, float y) {
+            loadedPositions.set(nodeId, x, y);
+        }
+    };
+
+    /**
+     * A chain of nodes holding each kind of prop, with positions that aren't whole numbers
+     */
+    @BeforeEach
+    void createGraph() throws IOException {
+        // NOTE: the serializers log through Gdx.app, and metadata is read through Gdx.files
+        var config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        app = new HeadlessApplication(new ApplicationAdapter() {}, config);
+
+        var metadataFile = dir.resolve("metadata.json");
+        Files.writeString(metadataFile, "{ assetTypes: [], nodeTypes: [] }");
+        metadataPath = metadataFile.toAbsolutePath().toString();
+
+        Pin previousOutput = null;
+        for (int i = 0; i < NODE_COUNT; i++) {
+            var node = new Node();
+            node.nodeTypeId = "dialogue";
+            node.headerText = "Dialogue " + i;
+            var input = new Pin(node, PinKind.INPUT, PinType.FLOW);
+            var output = new Pin(node, PinKind.OUTPUT, PinType.FLOW);
+            new PropInputText(node, "Line " + i + ", with \"quotes\" and unicode é中");
+            new PropInputTextMultiline(node, "first row\nsecond row " + i + "\n\nafter a blank row");
+            new PropInteger(node, "Count", i * 7 - 100);
+            new PropSelect(node, new PropSelect.Data(i % 3, List.of("Hero", "Villain", "Narrator")));
+            positions.set(node.id, i * 10.25f, -i * 3.5f);
+            if (previousOutput != null) {
+                new Link(previousOutput, input);
+            }
+            previousOutput = output;
+            nodes.add(node);
+        }
+    }
+
+    @AfterEach
+    void dispose() {
+        app.exit();
+    }
+
+    @Test
+    void jsonRoundTrip() throws IOException {
+        var loaded = readJson(writeJson(nodes, positions, "graph.json"));
+        assertEquals(describe(nodes, positions), describe(loaded, loadedPositions));
+    }
+
+    @Test
+    void binaryRoundTrip() throws IOException {
+        var loaded = readBinary(writeBinary(nodes, positions, "graph." + EditorBinarySerializer.FILE_EXTENSION));
+        assertEquals(describe(nodes, positions), describe(loaded, loadedPositions));
+    }
+
+    @Test
+    void binaryToJsonAndBack() throws IOException {
+        var expected = describe(nodes, positions);
+
+        var fromBinary = readBinary(writeBinary(nodes, positions, "first." + EditorBinarySerializer.FILE_EXTENSION));
+        var fromJson = readJson(writeJson(fromBinary, loadedPositions, "second.json"));
+        assertEquals(expected, describe(fromJson, loadedPositions));
+
+        var backToBinary = readBinary(writeBinary(fromJson, loadedPositions, "third." + EditorBinarySerializer.FILE_EXTENSION));
+        assertEquals(expected, describe(backToBinary, loadedPositions));
+    }
+
+    @Test
+    void truncatedBinaryFileFailsToLoad() throws IOException {
+        var path = writeBinary(nodes, positions, "graph." + EditorBinarySerializer.FILE_EXTENSION);
+        var bytes = Files.readAllBytes(path);
+
+        // cut it off at every length short of the whole file, stepping through the records in the middle
+        var truncated = dir.resolve("truncated." + EditorBinarySerializer.FILE_EXTENSION);
+        for (int length = 0; length < bytes.length; length += (length < 256 || length > bytes.length - 256) ? 1 : 17) {
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            assertFailsToLoad(truncated, "truncated to %d of %d bytes".formatted(length, bytes.length));
+        }
+    }
+
+    @Test
+    void binaryFileWithBadHeaderFailsToLoad() throws IOException {
+        var path = writeBinary(nodes, positions, "graph." + EditorBinarySerializer.FILE_EXTENSION);
+        var bytes = Files.readAllBytes(path);
+
+        var badMagic = bytes.clone();
+        ByteBuffer.wrap(badMagic).putInt(0, 0x7b0a2020); // '{\n  ', a json graph with a binary extension
+        Files.write(path, badMagic);
+        assertFailsToLoad(path, "bad magic");
+
+        var badVersion = bytes.clone();
+        badVersion[Integer.BYTES] = (byte) (EditorBinarySerializer.VERSION + 1);
+        Files.write(path, badVersion);
+        assertFailsToLoad(path, "unsupported version");
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private Path writeJson(List<Node> graph, NodePositions from, String fileName) throws IOException {
+        var path = dir.resolve(fileName);
+        try (var writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            json.setWriter(writer);
+            new EditorSerializer(context).write(json, graph, from, metadataPath);
+            json.getWriter().flush();
+        }
+        return path;
+    }
+
+    private List<Node> readJson(Path path) throws IOException {
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return new EditorSerializer(context).read(json, reader);
+        }
+    }
+
+    private Path writeBinary(List<Node> graph, NodePositions from, String fileName) throws IOException {
+        var path = dir.resolve(fileName);
+        new EditorBinarySerializer(context).write(json, graph, from, metadataPath, path);
+        return path;
+    }
+
+    private List<Node> readBinary(Path path) throws IOException {
+        return new EditorBinarySerializer(context).read(json, path);
+    }
+
+    private void assertFailsToLoad(Path path, String damage) throws IOException {
+        try {
+            var loaded = readBinary(path);
+            fail("loaded %d nodes from a binary file with %s".formatted(loaded.size(), damage));
+        } catch (SerializationException expected) {
+            // NOTE: the one exception type the editor reports as a failed load
+        }
+    }
+
+    /**
+     * Everything a graph saves, in a form that compares equal for the same graph
+     */
+    private String describe(List<Node> graph, NodePositions from) {
+        assertTrue(!graph.isEmpty(), "no nodes loaded");
+        var description = new StringBuilder();
+        for (var node : graph) {
+            description.append("node ").append(node.id)
+                .append(' ').append(node.nodeTypeId)
+                .append(' ').append(node.headerText)
+                .append(' ').append(node.width)
+                .append(" at ").append(from.x(node.id)).append(',').append(from.y(node.id)).append('\n');
+            for (var pin : node.pins) {
+                description.append("  pin ").append(pin.id).append(' ').append(pin.kind).append(' ').append(pin.type).append('\n');
+            }
+            for (var prop : node.props) {
+                description.append("  prop ").append(prop.id)
+                    .append(' ').append(prop.getClass().getSimpleName())
+                    .append(' ').append(prop.name)
+                    .append(' ').append(prop.propTypeId)
+                    .append(' ').append(json.toJson(prop.getData())).append('\n');
+            }
+            for (var link : node.outgoingLinks) {
+                description.append("  link ").append(link.id)
+                    .append(' ').append(link.src.id).append(" -> ").append(link.dst.id).append('\n');
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Node positions kept in memory, for editing a graph in tests without a node editor,
+ * nodes that were never positioned are at the origin like they are in the node editor
+ */
+final class MemoryPositions implements NodePositions {
+
+    private final LongMap<Vector2> positions = new LongMap<>();
+
+    @Override
+    public float x(long nodeId) {
+        var position = positions.get(nodeId);
+        return (position != null) ? position.x : 0;
+    }
+
+    @Override
+    public float y(long nodeId) {
+        var position = positions.get(nodeId);
+        return (position != null) ? position.y : 0;
+    }
+
+    @Override
+    public void set(long nodeId, float x, float y) {
+        var position = positions.get(nodeId);
+        if (position == null) {
+            positions.put(nodeId, new Vector2(x, y));
+        } else {
+            position.set(x, y);
+        }
+    }
+}
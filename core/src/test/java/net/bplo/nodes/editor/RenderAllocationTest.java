@@ -0,0 +1,191 @@
+package net.bplo.nodes.editor;
+
+import imgui.ImVec4;
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+import net.bplo.nodes.imgui.ImGuiColors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Regression gates for the parts of a frame that run without an imgui context,
+ * see {@link Allocations}. They're meant to allocate nothing per frame,
+ * the limit only leaves room for measurement noise.
+ */
+class RenderAllocationTest {
+
+    private static final double MAX_BYTES_PER_FRAME = 1;
+    private static final double MAX_BYTES_PER_SCROLL = 1024;
+
+    private static final int GRID_SIZE = 50;
+    private static final float SPACING = 300f;
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final NodeSpatialIndex spatialIndex = new NodeSpatialIndex();
+    private final List<Node> visibleNodes = new ArrayList<>();
+    private final List<Link> visibleLinks = new ArrayList<>();
+    private final List<Node> pinnedNodes = new ArrayList<>();
+
+    private Link diagonalLink;
+
+    // keeps results alive so the measured work isn't optimized away
+    private long sink;
+
+    /**
+     * A grid of nodes each linked to its right hand neighbour,
+     * plus one link across the whole grid from corner to corner
+     */
+    @BeforeEach
+    void createGraph() {
+        var links = new ArrayList<Link>();
+        for (int y = 0; y < GRID_SIZE; y++) {
+            Pin previousOutput = null;
+            for (int x = 0; x < GRID_SIZE; x++) {
+                var node = new Node();
+                node.position.set(x * SPACING, y * SPACING);
+                var input = new Pin(node, PinKind.INPUT, PinType.FLOW);
+                var output = new Pin(node, PinKind.OUTPUT, PinType.FLOW);
+                if (previousOutput != null) {
+                    links.add(new Link(previousOutput, input));
+                }
+                previousOutput = output;
+                nodes.add(node);
+            }
+        }
+        var first = nodes.get(0);
+        var last = nodes.get(nodes.size() - 1);
+        diagonalLink = new Link(first.pins.get(1), last.pins.get(0));
+        links.add(diagonalLink);
+
+        for (var node : nodes) {
+            spatialIndex.update(node);
+        }
+        for (var link : links) {
+            spatialIndex.addLink(link);
+        }
+    }
+
+    @Test
+    void cullingDoesNotAllocate() {
+        var center = GRID_SIZE / 2f * SPACING;
+        // a selected node in the far corner, and a node that's been added but not rendered yet
+        var selected = nodes.get(GRID_SIZE - 1);
+        var added = new Node();
+        spatialIndex.invalidate(added);
+        spatialIndex.takeStale(pinnedNodes);
+        pinnedNodes.add(selected);
+
+        var frame = new int[1];
+        Runnable cull = () -> EditorNodePane.cullNodesAndLinks(spatialIndex,
+            center - 800, center - 450, center + 800, center + 450,
+            pinnedNodes, ++frame[0], visibleNodes, visibleLinks);
+
+        cull.run();
+        assertFalse(visibleNodes.isEmpty());
+        assertTrue(visibleNodes.size() < nodes.size());
+        // the diagonal link passes through the view, so it's drawn and the corner nodes it needs are submitted
+        assertTrue(visibleLinks.contains(diagonalLink));
+        assertSubmitted(nodes.get(0), false, frame[0]);
+        assertSubmitted(nodes.get(nodes.size() - 1), false, frame[0]);
+        // pinned nodes are submitted wherever they are, as placeholders when they're out of view
+        assertSubmitted(selected, true, frame[0]);
+        assertSubmitted(added, true, frame[0]);
+
+        // each node is submitted once, and nodes that aren't submitted aren't touched
+        assertEquals(visibleNodes.size(), new HashSet<>(visibleNodes).size());
+        assertFalse(visibleNodes.contains(nodes.get(1)));
+        for (var node : nodes) {
+            assertEquals(visibleNodes.contains(node), node.submittedFrame == frame[0]);
+        }
+
+        assertNoAllocation(cull);
+    }
+
+    private void assertSubmitted(Node node, boolean culled, int frame) {
+        assertTrue(visibleNodes.contains(node), "node not submitted");
+        assertEquals(frame, node.submittedFrame);
+        assertEquals(culled, node.culled);
+    }
+
+    @Test
+    void spatialIndexQueriesDoNotAllocate() {
+        float[] view = {0, 0, 1600, 900};
+        Runnable query = () -> {
+            spatialIndex.query(view[0], view[1], view[2], view[3], visibleNodes);
+            spatialIndex.queryLinks(view[0], view[1], view[2], view[3], visibleLinks);
+            sink += visibleNodes.size() + visibleLinks.size();
+            // pan across the grid so the queries visit different cells
+            view[0] = (view[0] + 37) % (GRID_SIZE * SPACING);
+            view[2] = view[0] + 1600;
+        };
+
+        assertNoAllocation(query);
+    }
+
+    @Test
+    void colorsDoNotAllocate() {
+        var color = new ImVec4();
+        Runnable lookup = () -> {
+            sink += ImGuiColors.medBlue.asInt();
+            sink += ImGuiColors.medBlue.asInt(0.5f);
+            sink += (long) ImGuiColors.medBlue.asVec4(color).x;
+        };
+
+        assertNoAllocation(lookup);
+    }
+
+    @Test
+    void previewLayoutDoesNotAllocate() {
+        var advances = new float[256];
+        Arrays.fill(advances, 7f);
+        PropInputTextMultiline.useCharAdvances(advances);
+
+        var prop = new PropInputTextMultiline(nodes.get(0), "a line of dialogue that wraps across several rows. ".repeat(200));
+        Runnable layout = () -> prop.layoutPreview(Node.DEFAULT_WIDTH);
+
+        // text that hasn't changed since the last frame is laid out once, not every frame
+        assertNoAllocation(layout);
+    }
+
+    @Test
+    void previewScrollAllocatesOnlyVisibleRows() {
+        var advances = new float[256];
+        Arrays.fill(advances, 7f);
+        PropInputTextMultiline.useCharAdvances(advances);
+
+        var line = "a line of dialogue that wraps across several rows. ";
+        var shortText = scrollBytesPerRow(new PropInputTextMultiline(nodes.get(0), line.repeat(200)));
+        var longText = scrollBytesPerRow(new PropInputTextMultiline(nodes.get(1), line.repeat(20_000)));
+
+        // scrolling rewraps the visible rows only, which are new strings for the draw list,
+        // so it costs the same for a long text as for a short one
+        assertTrue(shortText < MAX_BYTES_PER_SCROLL, "allocated %.1f bytes per scroll".formatted(shortText));
+        assertTrue(longText < MAX_BYTES_PER_SCROLL, "allocated %.1f bytes per scroll of a long text".formatted(longText));
+    }
+
+    /**
+     * Bytes allocated scrolling the preview a row at a time, down a hundred rows and back up
+     */
+    private double scrollBytesPerRow(PropInputTextMultiline prop) {
+        prop.layoutPreview(Node.DEFAULT_WIDTH);
+        int[] step = {0};
+        return Allocations.bytesPerRun(() -> {
+            prop.scroll((step[0]++ % 200 < 100) ? 1 : -1);
+            prop.layoutPreview(Node.DEFAULT_WIDTH);
+        });
+    }
+
+    private static void assertNoAllocation(Runnable frame) {
+        var bytes = Allocations.bytesPerRun(frame);
+        assertTrue(bytes < MAX_BYTES_PER_FRAME, "allocated %.1f bytes per frame".formatted(bytes));
+    }
+}
@@ -0,0 +1,204 @@
+package net.bplo.nodes.editor;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonValue;
+import net.bplo.nodes.editor.utils.PinKind;
+import net.bplo.nodes.editor.utils.PinType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The undo history has to stay within its memory limit however long the session,
+ * by dropping its oldest steps rather than growing with every edit.
+ * <p>
+ * The limit is checked against the history's own estimate, and what the history keeps reachable
+ * is checked with weak references, since the estimate can't catch a step that's dropped
+ * from the estimate but is still referenced, or a command that holds on to more than it counts
+ */
+class UndoHistoryTest {
+
+    private static final int OPERATIONS = 100_000;
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    private final Random random = new Random(7);
+    private final Json json = new Json();
+
+    private HeadlessApplication app;
+    private Editor editor;
+    private UndoHistory history;
+
+    // everything typed into text props, and the nodes removed from the graph
+    private final List<WeakReference<String>> typedTexts = new ArrayList<>();
+    private final List<WeakReference<Node>> removedNodes = new ArrayList<>();
+
+    @BeforeEach
+    void createGraph() {
+        // NOTE: the flow graph logs links that close a cycle through Gdx.app
+        var config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        app = new HeadlessApplication(new ApplicationAdapter() {}, config);
+
+        editor = new Editor(new MemoryPositions());
+        history = editor.history;
+        for (int i = 0; i < 1000; i++) {
+            editor.add(newNode());
+        }
+        history.clear();
+        history.maxBytes = MAX_BYTES;
+    }
+
+    @AfterEach
+    void dispose() {
+        editor.dispose();
+        app.exit();
+    }
+
+    @Test
+    void memoryStaysBoundedOverManyOperations() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            randomOperation();
+            history.flush();
+
+            // the latest step is kept even if it's over the limit on its own
+            if (history.bytes() > MAX_BYTES && history.undoCount() > 1) {
+                fail("history estimates %d bytes in %d steps after %d operations, limit is %d"
+                    .formatted(history.bytes(), history.undoCount(), i + 1, MAX_BYTES));
+            }
+        }
+        assertTrue(history.undoCount() > 1, "history should keep more than the latest step");
+
+        // NOTE: the change tracker keeps removed nodes, and their text, until the next save, as a save would
+        editor.changes.clear();
+
+        // a step holds a text edit as the text before and after it, intermediate texts of merged steps
+        // aren't kept, so no more typed texts than that can be reachable other than through the graph
+        var reachable = reachableTypedTexts();
+        assertTrue(reachable <= 2 * history.undoCount(), "%d of %d typed texts reachable through %d undo steps"
+            .formatted(reachable, typedTexts.size(), history.undoCount()));
+
+        // and dropping the history drops them all
+        history.clear();
+        assertEquals(0, reachableTypedTexts(), "typed texts reachable after the history was cleared");
+    }
+
+    @Test
+    void removedNodesAreNotKeptReachable() {
+        for (int i = 0; i < OPERATIONS; i++) {
+            randomOperation();
+            history.flush();
+        }
+        assertTrue(history.canUndo());
+        assertTrue(removedNodes.size() > 1000, "too few nodes removed: " + removedNodes.size());
+
+        // NOTE: the change tracker keeps removed nodes until the next save, as a save would
+        editor.changes.clear();
+        collectGarbage();
+
+        // removals are recorded as detached node records, undoing one creates a new node from its record
+        var reachable = 0;
+        for (var reference : removedNodes) {
+            if (reference.get() != null) reachable++;
+        }
+        assertEquals(0, reachable, "removed nodes still reachable out of " + removedNodes.size());
+    }
+
+    private Node newNode() {
+        var node = new Node();
+        node.nodeTypeId = "dialogue";
+        node.headerText = "Dialogue";
+        new Pin(node, PinKind.INPUT, PinType.FLOW);
+        new Pin(node, PinKind.OUTPUT, PinType.FLOW);
+        new PropInputText(node, "Line " + random.nextInt(1000));
+        new PropInteger(node);
+        editor.positions.set(node.id, random.nextInt(5000), random.nextInt(5000));
+        return node;
+    }
+
+    /**
+     * One of the edits the history records, weighted towards the common ones: typing and moving
+     */
+    private void randomOperation() {
+        var nodes = editor.nodes;
+        var kind = (nodes.size() < 10) ? 0 : random.nextInt(10);
+        var node = nodes.isEmpty() ? null : nodes.get(random.nextInt(nodes.size()));
+        switch (kind) {
+            case 0 -> editor.add(newNode());
+            case 1 -> {
+                removedNodes.add(new WeakReference<>(node));
+                editor.remove(node);
+            }
+            case 2, 3, 4 -> {
+                var prop = (PropInputText) node.props.get(0);
+                var text = prop.getText() + (char) ('a' + random.nextInt(26));
+                typedTexts.add(new WeakReference<>(text));
+                prop.setText(text);
+            }
+            case 5 -> {
+                var integer = (PropInteger) node.props.get(1);
+                integer.setData(json, new JsonValue(random.nextInt(100)));
+                integer.changed(integer.getData());
+            }
+            case 6, 7 -> {
+                var fromX = editor.positions.x(node.id);
+                var fromY = editor.positions.y(node.id);
+                editor.positions.set(node.id, fromX + random.nextInt(50) - 25, fromY + random.nextInt(50) - 25);
+                editor.changes.markMoved(node, fromX, fromY);
+            }
+            case 8 -> {
+                var other = nodes.get(random.nextInt(nodes.size()));
+                if (other != node) {
+                    editor.add(new Link(node.pins.get(1), other.pins.get(0)));
+                }
+            }
+            default -> {
+                if (editor.links.size() > 0) {
+                    editor.remove(editor.links.get(random.nextInt(editor.links.size())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Typed texts that are still reachable, other than as the current text of a node in the graph
+     */
+    private int reachableTypedTexts() {
+        collectGarbage();
+        var inGraph = new IdentityMap<String, Boolean>();
+        for (var node : editor.nodes) {
+            inGraph.put(((PropInputText) node.props.get(0)).getText(), true);
+        }
+        var reachable = 0;
+        for (var reference : typedTexts) {
+            var text = reference.get();
+            if (text != null && !inGraph.containsKey(text)) reachable++;
+        }
+        return reachable;
+    }
+
+    /**
+     * Collect garbage until an object dropped just before has been collected,
+     * so weak references to everything else that's unreachable are cleared too
+     */
+    private static void collectGarbage() {
+        var sentinel = new WeakReference<>(new Object());
+        for (int i = 0; i < 20 && sentinel.get() != null; i++) {
+            System.gc();
+        }
+        System.gc();
+        assertTrue(sentinel.get() == null, "garbage collection didn't run");
+    }
+}
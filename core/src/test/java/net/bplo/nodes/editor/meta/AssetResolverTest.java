@@ -0,0 +1,275 @@
+package net.bplo.nodes.editor.meta;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.TimeUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.bplo.nodes.editor.meta.Metadata.AssetRef;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Uploading textures decoded in the background has to stay within a frame's
+ * upload budget however many decodes are pending, and still get through all of them.
+ * <p>
+ * Decoding is replaced with texture data that takes a fixed time to upload,
+ * and the gpu with a gl that does nothing, since neither native image decoding
+ * nor a gl context are available to tests
+ */
+class AssetResolverTest {
+
+    private static final String ASSET_TYPE = "thumbnails";
+    private static final int TEXTURE_COUNT = 1000;
+    private static final long UPLOAD_NANOS = 1_500_000L;
+
+    // NOTE: an upload started just inside the budget is allowed to finish
+    private static final long MAX_UPDATE_NANOS = AssetResolver.UPLOAD_BUDGET_NANOS + UPLOAD_NANOS;
+
+    @TempDir
+    Path dir;
+
+    private HeadlessApplication app;
+    private Metadata metadata;
+    private AssetResolver resolver;
+    private final List<AssetRef<Texture>> refs = new ArrayList<>();
+
+    // decodes started, to tell textures reacquired from the cache from ones decoded again
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    // held closed to keep decodes pending, opened to let them all finish
+    private final CountDownLatch decodesReleased = new CountDownLatch(1);
+
+    // how long each call to update took, in nanoseconds
+    private final LongArray updateTimes = new LongArray();
+
+    @BeforeEach
+    void createResolver() throws IOException {
+        // NOTE: metadata is read through Gdx.files, and textures are created through Gdx.gl
+        var config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        app = new HeadlessApplication(new ApplicationAdapter() {}, config);
+        Gdx.gl = Gdx.gl20 = noopGL();
+
+        var items = new StringBuilder();
+        for (int i = 0; i < TEXTURE_COUNT; i++) {
+            items.append("{ id: item%d, name: Item%d, path: item%d.png }\n".formatted(i, i, i));
+            refs.add(AssetRef.of(ASSET_TYPE, "item" + i));
+        }
+        var metadataFile = dir.resolve("metadata.json");
+        Files.writeString(metadataFile, "{ assetTypes: [ { id: %s, name: Thumbnails, items: [\n%s] } ], nodeTypes: [] }"
+            .formatted(ASSET_TYPE, items));
+        metadata = new Metadata(metadataFile.toAbsolutePath().toString());
+
+        resolver = newResolver(AssetResolver.DEFAULT_MAX_ENTRIES);
+    }
+
+    private AssetResolver newResolver(int maxEntries) {
+        return new AssetResolver(metadata, maxEntries, AssetResolver.DEFAULT_MAX_BYTES, path -> {
+            decodes.incrementAndGet();
+            try {
+                decodesReleased.await();
+            } catch (InterruptedException e) {
+                throw new GdxRuntimeException(e);
+            }
+            return new SlowUploadData();
+        });
+    }
+
+    @AfterEach
+    void dispose() {
+        decodesReleased.countDown();
+        resolver.dispose();
+        Gdx.gl = Gdx.gl20 = null;
+        app.exit();
+    }
+
+    @Test
+    void updateStaysWithinBudgetWhileDecodesArePending() {
+        requestAll();
+
+        // none have finished decoding, so there's nothing to upload yet, but there's a lot to look through
+        for (int i = 0; i < 100; i++) {
+            updateTimes.add(timeUpdate());
+        }
+        assertEquals(0, resolver.size());
+        assertTrue(medianUpdateTime() <= AssetResolver.UPLOAD_BUDGET_NANOS, "updates took %.2fms with %d decodes pending and none done"
+            .formatted(medianUpdateTime() / 1e6f, TEXTURE_COUNT));
+    }
+
+    @Test
+    void updateStaysWithinBudgetWhileUploading() {
+        requestAll();
+        decodesReleased.countDown();
+
+        // an upload takes most of the budget, so a frame gets one more upload in after the first at most
+        var maxUploads = (int) Math.min(AssetResolver.MAX_UPLOADS_PER_FRAME,
+            AssetResolver.UPLOAD_BUDGET_NANOS / UPLOAD_NANOS + 1);
+
+        var updates = 0;
+        var deadline = TimeUtils.millis() + 30_000;
+        while (resolver.size() < TEXTURE_COUNT) {
+            var uploaded = resolver.size();
+            var elapsed = timeUpdate();
+            var uploads = resolver.size() - uploaded;
+            updates++;
+
+            // NOTE: only updates that had something to upload, ones waiting on the decode worker are quick
+            if (uploads > 0) {
+                updateTimes.add(elapsed);
+            }
+
+            assertTrue(uploads <= maxUploads, "%d uploads in one update taking %.2fms, at most %d fit in the budget"
+                .formatted(uploads, elapsed / 1e6f, maxUploads));
+
+            if (TimeUtils.millis() > deadline) {
+                fail("only %d of %d textures uploaded after %d updates".formatted(resolver.size(), TEXTURE_COUNT, updates));
+            }
+        }
+        assertTrue(medianUpdateTime() <= MAX_UPDATE_NANOS, "updates took %.2fms uploading %d textures, budget is %.2fms"
+            .formatted(medianUpdateTime() / 1e6f, TEXTURE_COUNT, AssetResolver.UPLOAD_BUDGET_NANOS / 1e6f));
+
+        // and they're handed out from the cache from then on
+        for (var ref : refs) {
+            assertTrue(resolver.acquireAsync(ref).isPresent(), "texture not cached after upload: " + ref.cacheKey());
+        }
+    }
+
+    @Test
+    void releasedTexturesAreEvictedAndReacquiredFromTheCache() {
+        // as many thumbnails on screen as the cache holds, then they're all scrolled off screen
+        var maxEntries = 100;
+        resolver.dispose();
+        resolver = newResolver(maxEntries);
+        decodesReleased.countDown();
+
+        var onScreen = refs.subList(0, maxEntries);
+        acquireAll(onScreen);
+        assertEquals(maxEntries, resolver.size());
+
+        // the next screenful can't be cached without evicting textures that are still held
+        var nextScreen = refs.subList(maxEntries, 2 * maxEntries);
+        acquireAll(nextScreen);
+        assertEquals(2 * maxEntries, resolver.size(), "held textures were evicted");
+        assertEquals(0, resolver.evictions());
+
+        // once the first screenful is released, the cache is back within its bounds
+        for (var ref : onScreen) {
+            resolver.release(ref.cacheKey());
+        }
+        assertEquals(maxEntries, resolver.size());
+        assertEquals(maxEntries, resolver.evictions());
+
+        // scrolling back to a released texture that wasn't evicted takes it from the cache, without decoding it again
+        var decoded = decodes.get();
+        for (var ref : nextScreen) {
+            resolver.release(ref.cacheKey());
+            assertTrue(resolver.acquireAsync(ref).isPresent(), "released texture not in the cache: " + ref.cacheKey());
+        }
+        assertEquals(decoded, decodes.get());
+    }
+
+    /**
+     * Acquire the textures, waiting for them to decode and uploading them as a thumbnail would, one frame at a time
+     */
+    private void acquireAll(List<AssetRef<Texture>> acquired) {
+        var deadline = TimeUtils.millis() + 30_000;
+        var pending = new ArrayList<>(acquired);
+        while (!pending.isEmpty()) {
+            pending.removeIf(ref -> resolver.acquireAsync(ref).isPresent());
+            resolver.update();
+            if (TimeUtils.millis() > deadline) {
+                fail("%d of %d textures not uploaded".formatted(pending.size(), acquired.size()));
+            }
+        }
+    }
+
+    private void requestAll() {
+        for (var ref : refs) {
+            assertTrue(resolver.acquireAsync(ref).isEmpty());
+        }
+        for (var ref : refs) {
+            assertTrue(!resolver.hasFailed(ref), "texture failed to resolve: " + ref.cacheKey());
+        }
+    }
+
+    /**
+     * Time one call to update, in nanoseconds
+     */
+    private long timeUpdate() {
+        var start = TimeUtils.nanoTime();
+        resolver.update();
+        return TimeUtils.nanoTime() - start;
+    }
+
+    /**
+     * The time the timed calls to update took, ignoring the few that the scheduler or the collector
+     * happened to interrupt, the decode workers compete with the test for the cpu
+     */
+    private long medianUpdateTime() {
+        var times = new LongArray(updateTimes);
+        times.sort();
+        return times.get(times.size / 2);
+    }
+
+    /**
+     * A gl that accepts every call and does nothing, returning zero or false where it returns anything
+     */
+    private static GL20 noopGL() {
+        return (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class },
+            (proxy, method, args) -> {
+                var type = method.getReturnType();
+                if (type == boolean.class) return false;
+                if (type == int.class)     return 0;
+                if (type == float.class)   return 0f;
+                if (type == long.class)    return 0L;
+                return null;
+            });
+    }
+
+    /**
+     * Texture data that's decoded as soon as it's created,
+     * and takes {@link #UPLOAD_NANOS} to upload on the render thread
+     */
+    private static class SlowUploadData implements TextureData {
+        @Override public TextureDataType getType()  { return TextureDataType.Custom; }
+        @Override public boolean isPrepared()       { return true; }
+        @Override public void prepare()             {}
+        @Override public Pixmap consumePixmap()     { throw new GdxRuntimeException("Custom texture data has no pixmap"); }
+        @Override public boolean disposePixmap()    { return false; }
+        @Override public int getWidth()             { return 64; }
+        @Override public int getHeight()            { return 64; }
+        @Override public Pixmap.Format getFormat()  { return Pixmap.Format.RGBA8888; }
+        @Override public boolean useMipMaps()       { return false; }
+        @Override public boolean isManaged()        { return false; }
+
+        @Override
+        public void consumeCustomData(int target) {
+            var start = TimeUtils.nanoTime();
+            while (TimeUtils.nanoTime() - start < UPLOAD_NANOS) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
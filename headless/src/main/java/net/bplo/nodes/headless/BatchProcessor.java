@@ -0,0 +1,249 @@
+package net.bplo.nodes.headless;
+
+import com.badlogic.gdx.utils.Json;
+import net.bplo.nodes.editor.ChunkedGraphFile;
+import net.bplo.nodes.editor.DialogueCompiler;
+import net.bplo.nodes.editor.EditorBinarySerializer;
+import net.bplo.nodes.editor.EditorSerializer;
+import net.bplo.nodes.editor.GraphValidator;
+import net.bplo.nodes.runtime.DialogueProgramFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Loads, validates and optionally exports graph files on a fixed size pool of worker threads,
+ * printing a line with timings for each file as it finishes, then a throughput summary.
+ * <p>
+ * Each worker has its own {@link Json}, serializers and metadata cache, nothing
+ * is shared between workers other than the output stream, so graphs are processed
+ * fully in parallel.
+ */
+public class BatchProcessor {
+
+    public record Options(List<Path> inputs, Path exportDir, String metadataOverride, int threads, boolean quiet) {}
+
+    public enum Status { OK, INVALID, SKIPPED, FAILED }
+
+    record Input(Path root, Path file) {}
+
+    record Result(Input input, Status status, int nodeCount, List<GraphValidator.Issue> issues, String error,
+                  long loadNanos, long validateNanos, long exportNanos) {
+        long totalNanos() {
+            return loadNanos + validateNanos + exportNanos;
+        }
+    }
+
+    /**
+     * Per worker state, created on first use by each pool thread
+     */
+    private class Worker {
+        final HeadlessLoadContext context = new HeadlessLoadContext(options.metadataOverride);
+        final Json json = new Json();
+        final EditorSerializer serializer = new EditorSerializer(context);
+        final EditorBinarySerializer binarySerializer = new EditorBinarySerializer(context);
+
+        Worker() {
+            json.setSerializer(EditorSerializer.NodeList.class, serializer);
+        }
+    }
+
+    private final Options options;
+    private final PrintStream out;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public BatchProcessor(Options options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    /**
+     * Process every graph file found in the inputs.
+     * Returns a process exit code, 0 if every graph loaded and validated cleanly, 1 otherwise.
+     */
+    public int run() throws IOException, InterruptedException {
+        var inputs = collectInputs(options.inputs);
+        if (inputs.isEmpty()) {
+            out.println("No graph files found");
+            return 1;
+        }
+
+        var startNanos = System.nanoTime();
+        var results = new ArrayList<Result>(inputs.size());
+        var pool = Executors.newFixedThreadPool(options.threads);
+        try {
+            var futures = new ArrayList<Future<Result>>(inputs.size());
+            for (var input : inputs) {
+                futures.add(pool.submit(() -> report(process(input))));
+            }
+            for (var future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // process() catches everything it expects, so this is a bug rather than a bad file
+                    throw new IllegalStateException("Worker failed unexpectedly", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        var elapsedNanos = System.nanoTime() - startNanos;
+
+        summarize(results, elapsedNanos);
+        var allOk = results.stream().allMatch(result -> result.status == Status.OK || result.status == Status.SKIPPED);
+        return allOk ? 0 : 1;
+    }
+
+    private static List<Input> collectInputs(List<Path> roots) throws IOException {
+        var inputs = new ArrayList<Input>();
+        for (var root : roots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> files = Files.walk(root)) {
+                    files.filter(Files::isRegularFile)
+                        .filter(BatchProcessor::isGraphFile)
+                        .sorted()
+                        .forEach(file -> inputs.add(new Input(root, file)));
+                }
+            } else if (Files.isRegularFile(root)) {
+                inputs.add(new Input(root.getParent(), root));
+            } else {
+                throw new IOException("No such file or directory: " + root);
+            }
+        }
+        return inputs;
+    }
+
+    private static boolean isGraphFile(Path path) {
+        var name = path.getFileName().toString();
+        return name.endsWith(".json") || EditorBinarySerializer.isBinaryFile(path) || ChunkedGraphFile.isChunkedFile(path);
+    }
+
+    private Result process(Input input) {
+        var worker = workers.get();
+        var file = input.file;
+        var loadNanos = 0L;
+        var validateNanos = 0L;
+        var exportNanos = 0L;
+        var startNanos = System.nanoTime();
+        try {
+            worker.context.lastMetadata = null;
+            EditorSerializer.NodeList nodes;
+            if (ChunkedGraphFile.isChunkedFile(file)) {
+                nodes = ChunkedGraphFile.read(worker.json, file, worker.context);
+            } else if (EditorBinarySerializer.isBinaryFile(file)) {
+                nodes = worker.binarySerializer.read(worker.json, file);
+            } else {
+                try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    nodes = worker.serializer.read(worker.json, reader);
+                }
+            }
+            loadNanos = System.nanoTime() - startNanos;
+
+            // json files without a metadata path are most likely metadata or other content, not graphs
+            var metadata = worker.context.lastMetadata;
+            if (metadata == null) {
+                return new Result(input, Status.SKIPPED, 0, List.of(), "not a node graph, no metadata path", loadNanos, 0, 0);
+            }
+
+            startNanos = System.nanoTime();
+            var issues = GraphValidator.validate(nodes, metadata);
+            validateNanos = System.nanoTime() - startNanos;
+
+            if (issues.isEmpty() && options.exportDir != null) {
+                startNanos = System.nanoTime();
+                var program = DialogueCompiler.compile(nodes);
+                var exportPath = exportPath(input);
+                Files.createDirectories(exportPath.getParent());
+                DialogueProgramFile.write(program, exportPath);
+                exportNanos = System.nanoTime() - startNanos;
+            }
+
+            var status = issues.isEmpty() ? Status.OK : Status.INVALID;
+            return new Result(input, status, nodes.size(), issues, null, loadNanos, validateNanos, exportNanos);
+        } catch (Exception e) {
+            // attribute the time spent before the failure to the step that failed
+            var failedNanos = System.nanoTime() - startNanos;
+            if      (loadNanos == 0)     loadNanos = failedNanos;
+            else if (validateNanos == 0) validateNanos = failedNanos;
+            else                         exportNanos = failedNanos;
+            return new Result(input, Status.FAILED, 0, List.of(), String.valueOf(e), loadNanos, validateNanos, exportNanos);
+        }
+    }
+
+    /**
+     * Output path for the file's exported program, mirroring its location under its input root
+     */
+    private Path exportPath(Input input) {
+        var relative = (input.root != null) ? input.root.relativize(input.file) : input.file.getFileName();
+        var name = relative.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        var exportName = ((dot > 0) ? name.substring(0, dot) : name) + "." + DialogueProgramFile.FILE_EXTENSION;
+        return options.exportDir.resolve(relative).resolveSibling(exportName);
+    }
+
+    private Result report(Result result) {
+        if (options.quiet && (result.status == Status.OK || result.status == Status.SKIPPED)) {
+            return result;
+        }
+
+        var line = new StringBuilder();
+        line.append("%-7s %8.2fms  load %7.2fms  validate %7.2fms  export %7.2fms  %6d nodes  %s".formatted(
+            result.status, millis(result.totalNanos()),
+            millis(result.loadNanos), millis(result.validateNanos), millis(result.exportNanos),
+            result.nodeCount, result.input.file));
+        if (result.error != null) {
+            line.append("\n    ").append(result.error);
+        }
+        for (var issue : result.issues) {
+            line.append("\n    ").append(issue);
+        }
+
+        // NOTE: one println per file so lines from concurrent workers don't interleave
+        out.println(line);
+        return result;
+    }
+
+    private void summarize(List<Result> results, long elapsedNanos) {
+        var counts = new int[Status.values().length];
+        var nodeCount = 0L;
+        var workNanos = 0L;
+        for (var result : results) {
+            counts[result.status.ordinal()]++;
+            nodeCount += result.nodeCount;
+            workNanos += result.totalNanos();
+        }
+
+        var seconds = elapsedNanos / 1e9;
+        out.println();
+        out.println("Processed %d files in %.2fs on %d threads".formatted(results.size(), seconds, options.threads));
+        out.println("  ok %d, invalid %d, failed %d, skipped %d".formatted(
+            counts[Status.OK.ordinal()], counts[Status.INVALID.ordinal()],
+            counts[Status.FAILED.ordinal()], counts[Status.SKIPPED.ordinal()]));
+        out.println("  %.1f files/s, %.0f nodes/s, %.2fms mean per file, %.1fx parallel speedup".formatted(
+            results.size() / seconds, nodeCount / seconds,
+            millis(workNanos) / results.size(), (double) workNanos / elapsedNanos));
+
+        var slowest = results.stream()
+            .sorted(Comparator.comparingLong(Result::totalNanos).reversed())
+            .limit(5)
+            .toList();
+        out.println("  slowest:");
+        for (var result : slowest) {
+            out.println("    %8.2fms  %s".formatted(millis(result.totalNanos()), result.input.file));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,84 @@
+package net.bplo.nodes.headless;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/** Launches the headless batch tool for validating and exporting graph files without the editor. */
+public class HeadlessLauncher {
+
+    private static final String TAG = HeadlessLauncher.class.getSimpleName();
+
+    private static final String USAGE = """
+        Usage: headless [options] <file or directory>...
+
+        Loads every graph file (.json, .nodes, .nodestore) under the specified paths, validates it,
+        and optionally exports it as a dialogue program (.dlg).
+
+        Options:
+          --export <dir>      export valid graphs to this directory, mirroring their input paths
+          --metadata <file>   use this metadata for every graph instead of each graph's saved path
+          --threads <n>       number of worker threads, defaults to the number of processors
+          --quiet             only print files that failed or have issues, and the summary
+          --verbose           include log output from loading
+        """;
+
+    public static void main(String[] args) {
+        var inputs = new ArrayList<Path>();
+        Path exportDir = null;
+        String metadata = null;
+        var threads = Runtime.getRuntime().availableProcessors();
+        var quiet = false;
+        var verbose = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--export"   -> exportDir = Path.of(args[++i]);
+                    case "--metadata" -> metadata = Path.of(args[++i]).toAbsolutePath().toString();
+                    case "--threads"  -> threads = Integer.parseInt(args[++i]);
+                    case "--quiet"    -> quiet = true;
+                    case "--verbose"  -> verbose = true;
+                    case "--help", "-h" -> {
+                        System.out.print(USAGE);
+                        return;
+                    }
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        inputs.add(Path.of(args[i]));
+                    }
+                }
+            }
+            if (inputs.isEmpty()) throw new IllegalArgumentException("No input files or directories");
+            if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1");
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            var message = (e instanceof ArrayIndexOutOfBoundsException) ? "Missing option value" : e.getMessage();
+            System.err.println(message);
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        // NOTE: the application only provides Gdx.app and Gdx.files, which metadata loading and logging use,
+        //  its loop never renders, the batch runs here on the main thread
+        var config = new HeadlessApplicationConfiguration();
+        config.updatesPerSecond = -1;
+        new HeadlessApplication(new ApplicationAdapter() {}, config);
+        Gdx.app.setLogLevel(verbose ? Application.LOG_INFO : Application.LOG_ERROR);
+
+        var exitCode = 1;
+        try {
+            var options = new BatchProcessor.Options(inputs, exportDir, metadata, threads, quiet);
+            exitCode = new BatchProcessor(options, System.out).run();
+        } catch (Exception e) {
+            Gdx.app.error(TAG, "Batch failed", e);
+        } finally {
+            Gdx.app.exit();
+        }
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,43 @@
+package net.bplo.nodes.headless;
+
+import net.bplo.nodes.editor.EditorSerializer;
+import net.bplo.nodes.editor.meta.Metadata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads graphs without a node editor, saved node positions are dropped
+ * and metadata is cached by path so it's only parsed once per worker.
+ * <p>
+ * NOTE: one instance per worker thread, metadata isn't shared between workers
+ *  because resolving prop bindings writes transformers into the metadata's prop types
+ */
+class HeadlessLoadContext implements EditorSerializer.LoadContext {
+
+    private final String metadataOverride;
+    private final Map<String, Metadata> metadataByPath = new HashMap<>();
+
+    // the metadata used by the most recently loaded graph, null if it didn't reference any
+    Metadata lastMetadata;
+
+    /**
+     * @param metadataOverride absolute path of metadata to use for every graph,
+     *                         instead of the one each graph was saved with, or null
+     */
+    HeadlessLoadContext(String metadataOverride) {
+        this.metadataOverride = metadataOverride;
+    }
+
+    @Override
+    public Metadata loadMetadata(String path) {
+        var resolvedPath = (metadataOverride != null) ? metadataOverride : path;
+        lastMetadata = metadataByPath.computeIfAbsent(resolvedPath, Metadata::new);
+        return lastMetadata;
+    }
+
+    @Override
+    public void setNodePosition(long nodeId, float x, float y) {
+        // positions are only meaningful to the node editor
+    }
+}